@@ -23,6 +23,7 @@ public enum ContainerHostOperationType {
     LIST_NETWORKS("Host.Network.ListNetworks"),
     LIST_VOLUMES("Host.Volume.ListVolumes"),
     STATS("Host.Container.Stats"),
+    CONTAINER_STATS("Host.Container.ContainerStats"),
     EVENTS_SUBSCRIBE("Host.Events.Subscribe"),
     EVENTS_UNSUBSCRIBE("Host.Events.Unsubscribe");
 
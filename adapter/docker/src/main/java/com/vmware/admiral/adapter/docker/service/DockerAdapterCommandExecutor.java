@@ -11,6 +11,8 @@
 
 package com.vmware.admiral.adapter.docker.service;
 
+import java.util.Map;
+
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Operation.CompletionHandler;
@@ -161,6 +163,8 @@ public interface DockerAdapterCommandExecutor {
     String DOCKER_IMAGE_TAG_PROP_NAME = "tag";
     String DOCKER_IMAGE_NAME_PROP_NAME = "imageName";
     String DOCKER_IMAGE_DATA_PROP_NAME = "imageData";
+    // image tarball to stream on load, takes precedence over the in memory image data
+    String DOCKER_IMAGE_FILE_PROP_NAME = "imageFile";
     String DOCKER_IMAGE_REGISTRY_AUTH = "X-Registry-Auth";
 
     String DOCKER_VOLUME_NAME_PROP_NAME = "Name";
@@ -236,6 +240,11 @@ public interface DockerAdapterCommandExecutor {
 
     void hostUnsubscribeForEvents(CommandInput input, ComputeState computeState);
 
+    /**
+     * Returns the statistics of the opened host events streams, keyed by stat name.
+     */
+    Map<String, Double> getEventsStats();
+
     // Network operations:
     void createNetwork(CommandInput input, CompletionHandler completionHandler);
 
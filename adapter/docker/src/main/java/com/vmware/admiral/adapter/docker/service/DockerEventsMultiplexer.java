@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import com.vmware.xenon.common.UriUtils;
+
+/**
+ * Multiplexes the docker <code>/events</code> streams of all subscribed hosts over a small, fixed
+ * number of non-blocking event loop threads, instead of pinning a thread per host in a blocking
+ * read. Broken streams are reopened with an exponential backoff until the subscription is
+ * cancelled or the maximum number of reconnect attempts is reached.
+ *
+ * A stream counts as open, and the backoff is reset, only once it has delivered an event or stayed
+ * up for a minimum time, so a host that accepts the connection and closes it right away keeps
+ * backing off. Streams that receive nothing for the read timeout are reopened, which detects
+ * half-open connections.
+ */
+public class DockerEventsMultiplexer {
+
+    public static final String STAT_NAME_EVENTS_SUBSCRIPTIONS = "eventsSubscriptions";
+    public static final String STAT_NAME_EVENTS_OPEN_STREAMS = "eventsOpenStreams";
+    public static final String STAT_NAME_EVENTS_RECEIVED_COUNT = "eventsReceivedCount";
+    public static final String STAT_NAME_EVENTS_RECONNECT_COUNT = "eventsReconnectCount";
+    public static final String STAT_NAME_EVENTS_FAILURE_COUNT = "eventsFailureCount";
+    public static final String STAT_NAME_EVENTS_LAG_MILLIS = "eventsLagMillis";
+    public static final String STAT_NAME_EVENTS_MAX_LAG_MILLIS = "eventsMaxLagMillis";
+
+    private static final Logger logger = Logger.getLogger(DockerEventsMultiplexer.class.getName());
+
+    private static final int EVENT_LOOP_THREADS = Integer.getInteger(
+            "com.vmware.admiral.adapter.events.event.loop.threads", 2);
+    private static final int CONNECT_TIMEOUT_MILLIS = Integer.getInteger(
+            "com.vmware.admiral.adapter.events.connect.timeout.millis", 20000);
+    private static final long READ_TIMEOUT_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.read.timeout.millis",
+            TimeUnit.MINUTES.toMillis(5));
+    private static final long STABLE_STREAM_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.stable.stream.millis", 10000);
+    private static final long RECONNECT_INITIAL_DELAY_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.reconnect.initial.delay.millis", 1000);
+    private static final long RECONNECT_MAX_DELAY_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.reconnect.max.delay.millis",
+            TimeUnit.MINUTES.toMillis(2));
+    private static final int RECONNECT_MAX_ATTEMPTS = Integer.getInteger(
+            "com.vmware.admiral.adapter.events.reconnect.max.attempts", 10);
+    private static final int MAX_EVENT_LENGTH = Integer.getInteger(
+            "com.vmware.admiral.adapter.events.max.event.length", 1024 * 1024);
+
+    /**
+     * Receives the data of a single host events stream. Invoked on the event loop threads, so
+     * implementations must not block.
+     */
+    public interface EventsStreamListener {
+        /**
+         * Called every time the stream to a host is (re)opened, once it has delivered an event or
+         * stayed up for a minimum time.
+         */
+        default void onOpen() {
+        }
+
+        /**
+         * Called for every complete line (a single JSON encoded docker event) of the stream.
+         */
+        void onEvent(String event);
+
+        /**
+         * Called once when the stream to a host breaks. It is not called again for the following
+         * failed reconnect attempts, until the stream has been successfully reopened.
+         */
+        void onFailure(Throwable failure);
+    }
+
+    private final EventLoopGroup eventLoopGroup;
+    private final ConcurrentMap<String, EventsSubscription> subscriptions =
+            new ConcurrentHashMap<>();
+
+    private final AtomicLong openStreams = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong reconnectCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public DockerEventsMultiplexer() {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ThreadFactory threadFactory =
+                (r) -> new Thread(r, "EventsReader-" + threadCount.incrementAndGet());
+        this.eventLoopGroup = new NioEventLoopGroup(EVENT_LOOP_THREADS, threadFactory);
+    }
+
+    /**
+     * Opens the events stream to the given URI, unless a subscription for the same host key
+     * already exists.
+     *
+     * @param hostKey unique key of the host, used to unsubscribe
+     * @param uri the full <code>/events</code> URI, including the query parameters
+     * @param sslContext SSL context to use for secure hosts, <code>null</code> for plain HTTP
+     * @param listener the listener of the stream
+     * @return <code>false</code> if the host is already subscribed
+     */
+    public boolean subscribe(String hostKey, URI uri, SSLContext sslContext,
+            EventsStreamListener listener) {
+        EventsSubscription subscription = new EventsSubscription(hostKey, uri, sslContext,
+                listener);
+        if (subscriptions.putIfAbsent(hostKey, subscription) != null) {
+            return false;
+        }
+
+        subscription.connect();
+        return true;
+    }
+
+    /**
+     * Closes the events stream of the given host and stops reconnecting to it.
+     *
+     * @return <code>false</code> if the host was not subscribed
+     */
+    public boolean unsubscribe(String hostKey) {
+        EventsSubscription subscription = subscriptions.remove(hostKey);
+        if (subscription == null) {
+            return false;
+        }
+
+        subscription.cancel();
+        return true;
+    }
+
+    public boolean isSubscribed(String hostKey) {
+        return subscriptions.containsKey(hostKey);
+    }
+
+    /**
+     * Records the delay between the creation of an event on the docker host and its processing.
+     */
+    public void recordEventLag(long lagMillis) {
+        lastLagMillis.set(lagMillis);
+        maxLagMillis.accumulateAndGet(lagMillis, Math::max);
+    }
+
+    public Map<String, Double> getStats() {
+        Map<String, Double> stats = new HashMap<>();
+        stats.put(STAT_NAME_EVENTS_SUBSCRIPTIONS, (double) subscriptions.size());
+        stats.put(STAT_NAME_EVENTS_OPEN_STREAMS, (double) openStreams.get());
+        stats.put(STAT_NAME_EVENTS_RECEIVED_COUNT, (double) receivedCount.get());
+        stats.put(STAT_NAME_EVENTS_RECONNECT_COUNT, (double) reconnectCount.get());
+        stats.put(STAT_NAME_EVENTS_FAILURE_COUNT, (double) failureCount.get());
+        stats.put(STAT_NAME_EVENTS_LAG_MILLIS, (double) lastLagMillis.get());
+        stats.put(STAT_NAME_EVENTS_MAX_LAG_MILLIS, (double) maxLagMillis.get());
+        return stats;
+    }
+
+    public void stop() {
+        for (String hostKey : subscriptions.keySet()) {
+            unsubscribe(hostKey);
+        }
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * State of the subscription to a single host, kept for the whole lifetime of the
+     * subscription, across reconnects.
+     */
+    private class EventsSubscription {
+        private final String hostKey;
+        private final URI uri;
+        private final SSLContext sslContext;
+        private final EventsStreamListener listener;
+
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicBoolean failureReported = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private volatile Channel channel;
+
+        EventsSubscription(String hostKey, URI uri, SSLContext sslContext,
+                EventsStreamListener listener) {
+            this.hostKey = hostKey;
+            this.uri = uri;
+            this.sslContext = sslContext;
+            this.listener = listener;
+        }
+
+        void connect() {
+            if (cancelled) {
+                return;
+            }
+
+            String host = uri.getHost();
+            int port = uri.getPort() != -1 ? uri.getPort()
+                    : UriUtils.HTTPS_SCHEME.equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+
+            Bootstrap bootstrap = new Bootstrap()
+                    .group(eventLoopGroup)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.SO_KEEPALIVE, true)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) throws Exception {
+                            if (sslContext != null) {
+                                SSLEngine engine = sslContext.createSSLEngine(host, port);
+                                engine.setUseClientMode(true);
+                                ch.pipeline().addLast(new SslHandler(engine));
+                            }
+                            ch.pipeline().addLast(new IdleStateHandler(READ_TIMEOUT_MILLIS, 0,
+                                    0, TimeUnit.MILLISECONDS));
+                            ch.pipeline().addLast(new HttpClientCodec());
+                            ch.pipeline().addLast(new EventsStreamHandler(EventsSubscription.this));
+                        }
+                    });
+
+            bootstrap.connect(host, port).addListener((ChannelFuture f) -> {
+                if (!f.isSuccess()) {
+                    handleDisconnect(f.cause());
+                    return;
+                }
+                channel = f.channel();
+                if (cancelled) {
+                    channel.close();
+                }
+            });
+        }
+
+        void cancel() {
+            cancelled = true;
+            Channel ch = channel;
+            if (ch != null) {
+                ch.close();
+            }
+        }
+
+        String requestPath() {
+            String path = uri.getRawPath();
+            if (uri.getRawQuery() != null) {
+                path = path + "?" + uri.getRawQuery();
+            }
+            return path;
+        }
+
+        void handleStable() {
+            attempts.set(0);
+            failureReported.set(false);
+            logger.info(String.format("Events stream to [%s] is open", hostKey));
+            listener.onOpen();
+        }
+
+        void handleDisconnect(Throwable cause) {
+            channel = null;
+            if (cancelled) {
+                logger.info(String.format("Events stream to [%s] is closed", hostKey));
+                return;
+            }
+
+            if (cause instanceof StreamIdleException) {
+                // a quiet host is not a failure, reopen the stream right away
+                logger.fine(String.format("Events stream to [%s] timed out, reopening it",
+                        hostKey));
+                reconnectCount.incrementAndGet();
+                eventLoopGroup.execute(this::connect);
+                return;
+            }
+
+            failureCount.incrementAndGet();
+            if (failureReported.compareAndSet(false, true)) {
+                logger.info(String.format("Events stream to [%s] failed. Error: [%s]",
+                        hostKey, cause == null ? null : cause.getMessage()));
+                listener.onFailure(cause);
+            }
+
+            int attempt = attempts.incrementAndGet();
+            if (attempt > RECONNECT_MAX_ATTEMPTS) {
+                logger.warning(String.format("Giving up reconnecting to events stream of [%s]"
+                        + " after %d attempts", hostKey, RECONNECT_MAX_ATTEMPTS));
+                subscriptions.remove(hostKey, this);
+                return;
+            }
+
+            long delay = Math.min(RECONNECT_MAX_DELAY_MILLIS,
+                    RECONNECT_INITIAL_DELAY_MILLIS << Math.min(attempt - 1, 20));
+            logger.fine(String.format("Reconnecting to events stream of [%s] in %d ms",
+                    hostKey, delay));
+            reconnectCount.incrementAndGet();
+            eventLoopGroup.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the events request and splits the chunked response body into separate events.
+     */
+    private class EventsStreamHandler extends SimpleChannelInboundHandler<HttpObject> {
+        private final EventsSubscription subscription;
+        private ByteBuf buffer;
+        private boolean open;
+        private boolean stable;
+        private Throwable failure;
+
+        EventsStreamHandler(EventsSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            buffer = ctx.alloc().buffer();
+
+            DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                    HttpMethod.GET, subscription.requestPath());
+            request.headers().set(HttpHeaderNames.HOST, subscription.uri.getAuthority());
+            request.headers().set(HttpHeaderNames.ACCEPT, HttpHeaderValues.APPLICATION_JSON);
+            request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            ctx.writeAndFlush(request);
+
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+            if (msg instanceof HttpResponse) {
+                HttpResponseStatus status = ((HttpResponse) msg).status();
+                if (!HttpResponseStatus.OK.equals(status)) {
+                    failure = new IOException("Unexpected events stream response: " + status);
+                    ctx.close();
+                    return;
+                }
+                open = true;
+                openStreams.incrementAndGet();
+                ctx.executor().schedule(() -> {
+                    if (ctx.channel().isActive()) {
+                        markStable();
+                    }
+                }, STABLE_STREAM_MILLIS, TimeUnit.MILLISECONDS);
+            }
+
+            if (msg instanceof HttpContent && open) {
+                buffer.writeBytes(((HttpContent) msg).content());
+                readEvents(ctx);
+
+                if (msg instanceof LastHttpContent) {
+                    failure = new IOException("Events stream ended by the host");
+                    ctx.close();
+                }
+            }
+        }
+
+        private void readEvents(ChannelHandlerContext ctx) {
+            int eol;
+            while ((eol = buffer.indexOf(buffer.readerIndex(), buffer.writerIndex(),
+                    (byte) '\n')) >= 0) {
+                String event = buffer.readCharSequence(eol - buffer.readerIndex(),
+                        StandardCharsets.UTF_8).toString().trim();
+                buffer.skipBytes(1);
+                if (!event.isEmpty()) {
+                    markStable();
+                    receivedCount.incrementAndGet();
+                    subscription.listener.onEvent(event);
+                }
+            }
+
+            if (buffer.readableBytes() > MAX_EVENT_LENGTH) {
+                failure = new IOException("Events stream line exceeds " + MAX_EVENT_LENGTH
+                        + " bytes");
+                ctx.close();
+                return;
+            }
+            buffer.discardReadBytes();
+        }
+
+        private void markStable() {
+            if (!stable) {
+                stable = true;
+                subscription.handleStable();
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent
+                    && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+                // only a stream that has been open long enough is reopened quietly
+                failure = stable ? new StreamIdleException()
+                        : new IOException("Events stream timed out");
+                ctx.close();
+                return;
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            }
+            if (open) {
+                openStreams.decrementAndGet();
+            }
+            subscription.handleDisconnect(failure != null ? failure
+                    : new IOException("Events stream closed by the host"));
+
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            failure = cause;
+            ctx.close();
+        }
+    }
+
+    /**
+     * Nothing has been received on an open stream for the read timeout.
+     */
+    private static class StreamIdleException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StreamIdleException() {
+            super("Events stream read timed out");
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER_DIE;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER_START;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.HostContainerIdCache;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationContext;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+/**
+ * Turns the container events received from the docker hosts into ContainerState power state
+ * updates. Events for the same container received within a short window are coalesced into a
+ * single PATCH and the container state is resolved through the {@link HostContainerIdCache}
+ * before falling back to an index query.
+ */
+public class DockerEventsProcessor {
+
+    public static final String STAT_NAME_EVENTS_PROCESSED_COUNT = "eventsProcessedCount";
+    public static final String STAT_NAME_EVENTS_COALESCED_COUNT = "eventsCoalescedCount";
+    public static final String STAT_NAME_EVENTS_PATCH_COUNT = "eventsPatchCount";
+    public static final String STAT_NAME_EVENTS_LOOKUP_CACHE_HIT_COUNT = "eventsLookupCacheHitCount";
+    public static final String STAT_NAME_EVENTS_LOOKUP_CACHE_MISS_COUNT = "eventsLookupCacheMissCount";
+
+    private static final Logger logger = Logger.getLogger(DockerEventsProcessor.class.getName());
+
+    private static final long COALESCING_WINDOW_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.coalescing.window.millis", 500);
+
+    private static final ObjectReader eventsReader = new ObjectMapper().readerFor(Events.class);
+
+    private final ServiceHost host;
+    private final ConcurrentMap<String, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong patchCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong cacheMissCount = new AtomicLong();
+
+    /**
+     * The latest known power state of a container, waiting for the coalescing window to pass.
+     */
+    private static class PendingUpdate {
+        final String hostLink;
+        final String containerId;
+        final Operation op;
+        ContainerState.PowerState powerState;
+        Long started;
+        long timeNano;
+
+        PendingUpdate(String hostLink, String containerId, Operation op) {
+            this.hostLink = hostLink;
+            this.containerId = containerId;
+            this.op = op;
+        }
+    }
+
+    public DockerEventsProcessor(ServiceHost host) {
+        this.host = host;
+    }
+
+    /**
+     * Parses a single docker event of the given host.
+     *
+     * @param hostLink the self link of the host ComputeState
+     * @param op the subscription operation, used to restore the authorization context
+     * @param inputLine the JSON encoded event
+     * @return the parsed event
+     */
+    public Events process(String hostLink, Operation op, String inputLine) throws IOException {
+        Events event = eventsReader.readValue(inputLine);
+
+        if (!EVENT_TYPE_CONTAINER.equals(event.getType()) || event.getId() == null) {
+            return event;
+        }
+
+        ContainerState.PowerState powerState;
+        if (EVENT_TYPE_CONTAINER_DIE.equals(event.getAction())) {
+            powerState = ContainerState.PowerState.STOPPED;
+        } else if (EVENT_TYPE_CONTAINER_START.equals(event.getAction())) {
+            powerState = ContainerState.PowerState.RUNNING;
+        } else {
+            return event;
+        }
+        logger.fine(inputLine);
+        processedCount.incrementAndGet();
+
+        // events without a timestamp are ordered by their arrival, in the same epoch based time
+        long timeNano = event.getTimeNano() != null ? event.getTimeNano()
+                : TimeUnit.MICROSECONDS.toNanos(Utils.getNowMicrosUtc());
+        String key = hostLink + ":" + event.getId();
+        boolean[] scheduled = new boolean[] { false };
+        pendingUpdates.compute(key, (k, pending) -> {
+            if (pending == null) {
+                pending = new PendingUpdate(hostLink, event.getId(), op);
+                scheduled[0] = true;
+            } else {
+                coalescedCount.incrementAndGet();
+                if (timeNano < pending.timeNano) {
+                    // an older event received out of order
+                    return pending;
+                }
+            }
+            pending.timeNano = timeNano;
+            pending.powerState = powerState;
+            if (ContainerState.PowerState.RUNNING == powerState) {
+                pending.started = TimeUnit.NANOSECONDS.toMillis(timeNano);
+            }
+            return pending;
+        });
+
+        if (scheduled[0]) {
+            host.schedule(() -> flush(key), COALESCING_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        return event;
+    }
+
+    /**
+     * Returns whether the event is fully reflected by the container power state updates of this
+     * processor. Other container, network and volume events require a list data collection.
+     */
+    public static boolean isAppliedIncrementally(Events event) {
+        if (!EVENT_TYPE_CONTAINER.equals(event.getType())) {
+            return false;
+        }
+        return EVENT_TYPE_CONTAINER_DIE.equals(event.getAction())
+                || EVENT_TYPE_CONTAINER_START.equals(event.getAction());
+    }
+
+    public Map<String, Double> getStats() {
+        Map<String, Double> stats = new HashMap<>();
+        stats.put(STAT_NAME_EVENTS_PROCESSED_COUNT, (double) processedCount.get());
+        stats.put(STAT_NAME_EVENTS_COALESCED_COUNT, (double) coalescedCount.get());
+        stats.put(STAT_NAME_EVENTS_PATCH_COUNT, (double) patchCount.get());
+        stats.put(STAT_NAME_EVENTS_LOOKUP_CACHE_HIT_COUNT, (double) cacheHitCount.get());
+        stats.put(STAT_NAME_EVENTS_LOOKUP_CACHE_MISS_COUNT, (double) cacheMissCount.get());
+        return stats;
+    }
+
+    private void flush(String key) {
+        PendingUpdate pending = pendingUpdates.remove(key);
+        if (pending == null) {
+            return;
+        }
+
+        ContainerState cs = new ContainerState();
+        cs.powerState = pending.powerState;
+        cs.started = pending.started;
+
+        OperationContext parentContext = OperationContext.getOperationContext();
+        try {
+            // set system user context
+            OperationContext.setFrom(pending.op);
+
+            String containerLink = HostContainerIdCache.getInstance()
+                    .get(pending.hostLink, pending.containerId);
+            if (containerLink != null) {
+                cacheHitCount.incrementAndGet();
+                cs.documentSelfLink = containerLink;
+                patchContainerState(pending, cs);
+                return;
+            }
+
+            cacheMissCount.incrementAndGet();
+            QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
+                    ContainerState.FIELD_NAME_ID, pending.containerId);
+
+            new ServiceDocumentQuery<ContainerState>(host, ContainerState.class).query(queryTask,
+                    (r) -> {
+                        if (r.hasException()) {
+                            logger.warning(String.format(
+                                    "Failed to query resource container state with id [%s]",
+                                    pending.containerId));
+                        } else if (r.hasResult()) {
+                            HostContainerIdCache.getInstance().put(pending.hostLink,
+                                    pending.containerId, r.getDocumentSelfLink());
+                            cs.documentSelfLink = r.getDocumentSelfLink();
+                            patchContainerState(pending, cs);
+                        }
+                    });
+        } finally {
+            OperationContext.restoreOperationContext(parentContext);
+        }
+    }
+
+    private void patchContainerState(PendingUpdate pending, ContainerState cs) {
+        patchCount.incrementAndGet();
+        host.sendRequest(Operation.createPatch(host, UriUtils.buildUriPath(cs.documentSelfLink))
+                .setBody(cs)
+                .setReferer(host.getUri())
+                .setCompletion((o, ex) -> {
+                    if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
+                        HostContainerIdCache.getInstance().remove(pending.hostLink,
+                                pending.containerId);
+                    } else if (ex != null) {
+                        logger.warning(String.format(
+                                "Error patching container state [%s]. Error: [%s]",
+                                cs.documentSelfLink, ex.getMessage()));
+                    }
+                }));
+    }
+}
@@ -26,33 +26,45 @@ import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_ALIAS_PR
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_CERT_PROP_NAME;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import com.vmware.admiral.adapter.common.ContainerHostOperationType;
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.common.util.ConversionUtil;
 import com.vmware.admiral.common.util.PropertyUtils;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerListCallback;
 import com.vmware.admiral.compute.container.HostNetworkListDataCollection.NetworkListCallback;
 import com.vmware.admiral.compute.container.HostVolumeListDataCollection.VolumeListCallback;
 import com.vmware.admiral.compute.container.ShellContainerExecutorService;
 import com.vmware.admiral.compute.container.ShellContainerExecutorService.ShellContainerExecutorResult;
+import com.vmware.admiral.compute.container.maintenance.ContainerStats;
+import com.vmware.admiral.compute.container.maintenance.ContainerStatsEvaluator;
 import com.vmware.admiral.compute.container.volume.ContainerVolumeService.ContainerVolumeState;
 import com.vmware.photon.controller.model.resources.ComputeService;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Operation.CompletionHandler;
+import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
+import com.vmware.xenon.services.common.QueryTask;
 
 /**
  * Service for fulfilling ContainerHostRequest backed by a docker server
@@ -68,6 +80,9 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
                     + " /{split(a,b,\" \"); print 100*($2+$4-b[1])/($2+$4+$5-b[2])}' /proc/stat";
     private static final String HIDDEN_CUSTOM_PROPERTY_PREFIX = "__";
 
+    private static final int CONTAINER_STATS_BATCH_SIZE = Integer.getInteger(
+            "com.vmware.admiral.adapter.docker.container.stats.batch.size", 10);
+
     // constants to extract VCH usage data
     private static final String SYSTEM_STATUS = "SystemStatus";
     private static final String VCH_MEMORY_USAGE = " VCH memory usage";
@@ -114,6 +129,18 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
         }
     }
 
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        publishEventsStats();
+        super.handlePeriodicMaintenance(post);
+    }
+
+    private void publishEventsStats() {
+        for (Map.Entry<String, Double> stat : getCommandExecutor().getEventsStats().entrySet()) {
+            setStat(stat.getKey(), stat.getValue());
+        }
+    }
+
     private void processOperation(ContainerHostRequest request, Operation op, ComputeState computeState,
             CommandInput commandInput) {
         switch (request.getOperationType()) {
@@ -138,6 +165,9 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
         case STATS:
             doStats(request, computeState);
             break;
+        case CONTAINER_STATS:
+            doContainerStats(request, computeState, commandInput);
+            break;
         case EVENTS_SUBSCRIBE:
             setAuthorizationContext(op, getSystemAuthorizationContext());
             doEventsSubscription(request, op, computeState, commandInput);
@@ -237,6 +267,97 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
         }));
     }
 
+    /**
+     * Collects the stats of all running containers of the host. The containers are processed in
+     * fixed size batches: the stats of a batch are fetched in parallel and the resulting container
+     * stats are patched together before the next batch is started, so the load on the docker host
+     * and on the container services stays bounded regardless of the number of containers.
+     */
+    private void doContainerStats(ContainerHostRequest request, ComputeState computeState,
+            CommandInput commandInput) {
+        if (ContainerHostUtil.isVicHost(computeState) && !Boolean.valueOf(
+                ConfigurationUtil.getProperty(
+                        DockerAdapterService.ALLOW_VCH_STATS_COLLECTION_PROP_NAME))) {
+            patchTaskStage(request, TaskStage.FINISHED, null);
+            return;
+        }
+
+        updateSslTrust(request, commandInput);
+
+        QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
+                ContainerState.FIELD_NAME_PARENT_LINK, computeState.documentSelfLink,
+                ContainerState.FIELD_NAME_POWER_STATE, PowerState.RUNNING.name());
+        QueryUtil.addExpandOption(queryTask);
+
+        List<ContainerState> containers = new ArrayList<>();
+        new ServiceDocumentQuery<>(getHost(), ContainerState.class).query(queryTask, (r) -> {
+            if (r.hasException()) {
+                logWarning("Failed to retrieve running containers of host [%s]: %s",
+                        computeState.documentSelfLink, Utils.toString(r.getException()));
+                fail(request, r.getException());
+            } else if (r.hasResult()) {
+                containers.add(r.getResult());
+            } else {
+                logFine("Collecting stats of %d containers of host [%s] %s", containers.size(),
+                        computeState.documentSelfLink, request.getRequestTrackingLog());
+                fetchContainerStatsBatch(request, commandInput, containers, 0);
+            }
+        });
+    }
+
+    private void fetchContainerStatsBatch(ContainerHostRequest request, CommandInput commandInput,
+            List<ContainerState> containers, int offset) {
+        if (offset >= containers.size()) {
+            patchTaskStage(request, TaskStage.FINISHED, null);
+            return;
+        }
+
+        List<ContainerState> batch = containers.subList(offset,
+                Math.min(offset + CONTAINER_STATS_BATCH_SIZE, containers.size()));
+        int nextOffset = offset + batch.size();
+        Map<String, ContainerStats> statsByContainerLink = new ConcurrentHashMap<>();
+        AtomicInteger remaining = new AtomicInteger(batch.size());
+
+        for (ContainerState container : batch) {
+            CommandInput statsCommandInput = new CommandInput(commandInput)
+                    .withProperty(DOCKER_CONTAINER_ID_PROP_NAME, container.id);
+            getCommandExecutor().fetchContainerStats(statsCommandInput, (o, ex) -> {
+                if (ex != null) {
+                    logFine("Failed to fetch stats of container [%s]: %s",
+                            container.documentSelfLink, Utils.toString(ex));
+                } else {
+                    statsByContainerLink.put(container.documentSelfLink,
+                            ContainerStatsEvaluator.calculateStatsValues(o.getBody(String.class)));
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    patchContainerStatsBatch(request, commandInput, containers, nextOffset,
+                            statsByContainerLink);
+                }
+            });
+        }
+    }
+
+    private void patchContainerStatsBatch(ContainerHostRequest request,
+            CommandInput commandInput, List<ContainerState> containers, int nextOffset,
+            Map<String, ContainerStats> statsByContainerLink) {
+        if (statsByContainerLink.isEmpty()) {
+            fetchContainerStatsBatch(request, commandInput, containers, nextOffset);
+            return;
+        }
+
+        OperationJoin.create(statsByContainerLink.entrySet().stream()
+                .map(e -> Operation.createPatch(this, e.getKey())
+                        .setBodyNoCloning(e.getValue())))
+                .setCompletion((ops, exs) -> {
+                    if (exs != null) {
+                        logWarning("Failed to update the stats of %d containers: %s", exs.size(),
+                                Utils.toString(exs));
+                    }
+                    fetchContainerStatsBatch(request, commandInput, containers, nextOffset);
+                })
+                .sendWith(this);
+    }
+
     private Map<String, Object> parseStatsOutput(String commandOutput, String hostLink) {
         Map<String, Object> properties = new HashMap<>();
 
@@ -14,14 +14,16 @@ package com.vmware.admiral.adapter.docker.service;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_ALIAS_PROP_NAME;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_CERT_PROP_NAME;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -30,11 +32,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -47,8 +46,7 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509TrustManager;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import org.apache.commons.io.IOUtils;
 import org.yaml.snakeyaml.util.UriEncoder;
 
 import com.vmware.admiral.adapter.docker.util.DockerStreamUtil;
@@ -58,14 +56,18 @@ import com.vmware.admiral.common.util.DelegatingX509KeyManager;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServerX509TrustManager;
 import com.vmware.admiral.common.util.ServiceClientFactory;
+import com.vmware.admiral.common.util.TlsSessionStats;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.HostChangeTracker;
+import com.vmware.admiral.compute.container.HostContainerIdCache;
 import com.vmware.photon.controller.model.resources.ComputeService;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.security.util.CertificateUtil;
 import com.vmware.photon.controller.model.security.util.EncryptionUtils;
 import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.NamedThreadFactory;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Operation.CompletionHandler;
 import com.vmware.xenon.common.OperationContext;
@@ -90,13 +92,6 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
             "com.vmware.admiral.adapter.ssltrust.delegate.retries", 5);
     private static final long SSL_TRUST_RETRIES_WAIT = Long.getLong(
             "com.vmware.admiral.adapter.ssltrust.delegate.retries.wait.millis", 500);
-    private static final int URL_CONNECTION_READ_TIMEOUT = Integer.getInteger(
-            "com.vmware.admiral.adapter.url.connection.read.timeout", 20000);
-    private static final String THREAD_POOL_QUEUE_SIZE_PROP_NAME = "com.vmware.admiral.adapter.thread.pool.queue.size";
-    private static final int THREAD_POOL_QUEUE_SIZE = Integer.getInteger(
-            THREAD_POOL_QUEUE_SIZE_PROP_NAME, 1000);
-    private static final int THREAD_POOL_KEEPALIVE_SECONDS = Integer.getInteger(
-            "com.vmware.admiral.adapter.thread.pool.keepalive.seconds", 30);
 
     public static final String MEDIA_TYPE_APPLICATION_TAR = "application/tar";
 
@@ -104,26 +99,22 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
 
     private static final Pattern ERROR_PATTERN = Pattern.compile("\"error\":\"(.*)\"");
 
-    private static final AtomicInteger threadCount = new AtomicInteger(0);
-    private static final ThreadFactory threadFactory =
-            (r) -> new Thread(r, "EventsReader-" + threadCount.incrementAndGet());
-
-    private static ExecutorService executor = new ThreadPoolExecutor(
-            THREAD_POOL_QUEUE_SIZE,
-            THREAD_POOL_QUEUE_SIZE,
-            THREAD_POOL_KEEPALIVE_SECONDS,
-            TimeUnit.SECONDS, new LinkedBlockingQueue<>(THREAD_POOL_QUEUE_SIZE),
-            threadFactory,
-            new ThreadPoolExecutor.AbortPolicy());
-
     private final ServiceHost host;
     private final ServiceClient serviceClient;
     // Used for commands like exec start
     private final ServiceClient attachServiceClient;
     // Used for commands like load image from tar
     private final ServiceClient largeDataClient;
-    // Used for storing the runnning threads which handles opened connections to hosts
-    private volatile Map<String, Thread> runningThreads = new HashMap<>();
+    // Holds the opened events streams to hosts
+    private final DockerEventsMultiplexer eventsMultiplexer = new DockerEventsMultiplexer();
+    // Turns the received events into container state updates
+    private final DockerEventsProcessor eventsProcessor;
+
+    // Handshakes vs. reused connections per docker host
+    private final TlsSessionStats tlsSessionStats;
+
+    // Streams image tarballs to the docker hosts, the uploads block
+    private final ExecutorService imageLoadExecutor;
 
     private final DelegatingX509KeyManager keyManager = new DelegatingX509KeyManager();
     private ServerX509TrustManager trustManager;
@@ -137,6 +128,11 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     private final int DOCKER_IMAGE_REQUEST_TIMEOUT_SECONDS = Integer.getInteger(
             "adapter.docker.api.client.image_request_timeout_seconds", 60 * 10);
 
+    private static final int IMAGE_LOAD_THREADS = Integer.getInteger(
+            "adapter.docker.api.client.image_load_threads", 8);
+
+    private static final int IMAGE_LOAD_CHUNK_SIZE = 64 * 1024;
+
     private enum ClientMode {
         DEFAULT,
         ATTACH,
@@ -146,11 +142,21 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     protected RemoteApiDockerAdapterCommandExecutorImpl(ServiceHost host,
             TrustManager trustManager) {
         this.host = host;
+        this.eventsProcessor = new DockerEventsProcessor(host);
         this.serviceClient = ServiceClientFactory.createServiceClient(trustManager, keyManager);
         this.attachServiceClient = ServiceClientFactory.createServiceClient(trustManager,
                 keyManager);
         this.largeDataClient = ServiceClientFactory.createServiceClient(
                 trustManager, keyManager, DOCKER_REQUEST_PAYLOAD_SIZE_LIMIT);
+        this.tlsSessionStats = new TlsSessionStats(
+                RemoteApiDockerAdapterCommandExecutorImpl.class.getSimpleName(),
+                TlsSessionStats.hostStatsConsumer(host));
+        this.tlsSessionStats.track(this.serviceClient.getSSLContext());
+        this.tlsSessionStats.track(this.attachServiceClient.getSSLContext());
+        this.tlsSessionStats.track(this.largeDataClient.getSSLContext());
+
+        this.imageLoadExecutor = Executors.newFixedThreadPool(IMAGE_LOAD_THREADS,
+                new NamedThreadFactory("ImageLoader"));
 
         if (trustManager instanceof ServerX509TrustManager) {
             this.trustManager = (ServerX509TrustManager) trustManager;
@@ -183,10 +189,16 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         if (largeDataClient != null) {
             largeDataClient.stop();
         }
+        imageLoadExecutor.shutdownNow();
+        eventsMultiplexer.stop();
 
         INSTANCE = null;
     }
 
+    public TlsSessionStats getTlsSessionStats() {
+        return tlsSessionStats;
+    }
+
     @Override
     public void handlePeriodicMaintenance(Operation post) {
         if (attachServiceClient != null) {
@@ -275,13 +287,73 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     @Override
     public void loadImage(CommandInput input, CompletionHandler completionHandler) {
         createOrUpdateTargetSsl(input);
-        Object imageData = input.getProperties().get(DOCKER_IMAGE_DATA_PROP_NAME);
         URI uri = UriUtils.extendUri(input.getDockerUri(), "/images/load");
         logger.info("Loading image: " + uri);
 
+        File imageFile = (File) input.getProperties().get(DOCKER_IMAGE_FILE_PROP_NAME);
+        if (imageFile != null) {
+            OperationContext origContext = OperationContext.getOperationContext();
+            imageLoadExecutor.execute(() -> {
+                Operation op = Operation.createPost(uri);
+                Throwable failure = streamImageFile(input, uri, imageFile, op);
+                OperationContext.setFrom(origContext);
+                completionHandler.handle(op, failure);
+            });
+            return;
+        }
+
+        Object imageData = input.getProperties().get(DOCKER_IMAGE_DATA_PROP_NAME);
         sendPost(uri, imageData, ClientMode.LARGE_DATA, completionHandler);
     }
 
+    /**
+     * Sends the image tarball to the docker host with chunked transfer encoding, straight from the
+     * file, so that the image is never held in memory. Blocks until the host responds, the status
+     * and the response body are set to the given operation.
+     *
+     * @return the failure or <code>null</code> if the image was loaded
+     */
+    private Throwable streamImageFile(CommandInput input, URI uri, File imageFile, Operation op) {
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) openConnection(input, uri.toURL());
+            conn.setRequestMethod(Service.Action.POST.toString());
+            conn.setDoOutput(true);
+            conn.setChunkedStreamingMode(IMAGE_LOAD_CHUNK_SIZE);
+            conn.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(DOCKER_REQUEST_TIMEOUT_SECONDS));
+            conn.setReadTimeout((int) TimeUnit.SECONDS.toMillis(
+                    DOCKER_IMAGE_REQUEST_TIMEOUT_SECONDS));
+            conn.setRequestProperty(Operation.CONTENT_TYPE_HEADER, MEDIA_TYPE_APPLICATION_TAR);
+
+            try (OutputStream out = conn.getOutputStream()) {
+                Files.copy(imageFile.toPath(), out);
+            }
+
+            int statusCode = conn.getResponseCode();
+            op.setStatusCode(statusCode);
+            boolean failed = statusCode >= Operation.STATUS_CODE_FAILURE_THRESHOLD;
+            try (InputStream in = failed ? conn.getErrorStream() : conn.getInputStream()) {
+                if (in != null) {
+                    op.setBodyNoCloning(IOUtils.toString(in, StandardCharsets.UTF_8));
+                }
+            }
+            if (failed) {
+                return new IllegalStateException(String.format(
+                        "Loading image failed with status code %d", statusCode));
+            }
+            return null;
+        } catch (Exception e) {
+            logger.warning(String.format("Failed to load image to [%s]. Error: [%s]",
+                    uri.getAuthority(), e.getMessage()));
+            op.setStatusCode(Operation.STATUS_CODE_SERVER_FAILURE_THRESHOLD);
+            return e;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
     @Override
     public void createImage(CommandInput input, CompletionHandler completionHandler) {
         createOrUpdateTargetSsl(input);
@@ -409,7 +481,7 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         // add the stream=0 query parameter so the request returns immediately (requires docker 1.7)
         URI uri = UriUtils.extendUri(input.getDockerUri(), path);
         uri = UriUtils.extendUriWithQuery(uri, "stream", "0");
-        logger.info("Fetch stats for container: " + uri);
+        logger.fine("Fetch stats for container: " + uri);
 
         sendGet(uri, input.getProperties(), completionHandler);
     }
@@ -538,7 +610,7 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         URI baseUri = UriUtils.extendUri(input.getDockerUri(), "/events");
         logger.info("Subscribing for events: " + baseUri);
 
-        if (runningThreads.get(baseUri.getAuthority()) != null) {
+        if (eventsMultiplexer.isSubscribed(baseUri.getAuthority())) {
             logger.info("Connection is already opened: " + baseUri.getAuthority());
             return;
         }
@@ -566,14 +638,21 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         URI baseUri = UriUtils.extendUri(input.getDockerUri(), "/events");
         logger.info("Unsubscribing for events: " + baseUri);
 
-        Thread runningThread = runningThreads.get(input.getDockerUri().getAuthority());
+        if (computeState != null) {
+            HostContainerIdCache.getInstance().invalidateHost(computeState.documentSelfLink);
+            HostChangeTracker.getInstance().remove(computeState.documentSelfLink);
+        }
 
-        if (runningThread == null) {
+        if (!eventsMultiplexer.unsubscribe(input.getDockerUri().getAuthority())) {
             logger.info("Connection already closed!");
-            return;
         }
+    }
 
-        runningThread.interrupt();
+    @Override
+    public Map<String, Double> getEventsStats() {
+        Map<String, Double> stats = eventsMultiplexer.getStats();
+        stats.putAll(eventsProcessor.getStats());
+        return stats;
     }
 
     // network operations
@@ -732,30 +811,7 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     @Override
     public URLConnection openConnection(CommandInput input, URL url) throws NoSuchAlgorithmException, KeyManagementException, IOException {
         if (isSecure(URI.create(url.toString()))) {
-
-            String clientKey = null;
-            String clientCert = null;
-
-            if (input != null && input.getCredentials() != null) {
-                clientKey = EncryptionUtils.decrypt(input.getCredentials().privateKey);
-                clientCert = input.getCredentials().publicKey;
-            }
-
-            // TODO use an LRU cache to limit the number of stored
-            // KeyManagers while minimizing time wasted repeatedly
-            // recreating them
-            KeyManager[] keytManagers = null;
-            if (clientKey != null && !clientKey.isEmpty()) {
-                X509ExtendedKeyManager delegateKeyManager;
-                delegateKeyManager = (X509ExtendedKeyManager) CertificateUtil
-                        .getKeyManagers("default", clientKey, clientCert)[0];
-                keytManagers = new KeyManager[]{delegateKeyManager};
-            }
-
-            TrustManager[] trustManagers = new TrustManager[]{ServerX509TrustManager.init(null)};
-
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(keytManagers, trustManagers, new SecureRandom());
+            SSLContext sslContext = createSslContext(input);
 
             HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
             conn.setHostnameVerifier((s, sslSession) -> true);
@@ -777,6 +833,34 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         return conn;
     }
 
+    private SSLContext createSslContext(CommandInput input)
+            throws NoSuchAlgorithmException, KeyManagementException {
+        String clientKey = null;
+        String clientCert = null;
+
+        if (input != null && input.getCredentials() != null) {
+            clientKey = EncryptionUtils.decrypt(input.getCredentials().privateKey);
+            clientCert = input.getCredentials().publicKey;
+        }
+
+        // TODO use an LRU cache to limit the number of stored
+        // KeyManagers while minimizing time wasted repeatedly
+        // recreating them
+        KeyManager[] keytManagers = null;
+        if (clientKey != null && !clientKey.isEmpty()) {
+            X509ExtendedKeyManager delegateKeyManager;
+            delegateKeyManager = (X509ExtendedKeyManager) CertificateUtil
+                    .getKeyManagers("default", clientKey, clientCert)[0];
+            keytManagers = new KeyManager[]{delegateKeyManager};
+        }
+
+        TrustManager[] trustManagers = new TrustManager[]{ServerX509TrustManager.init(null)};
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keytManagers, trustManagers, new SecureRandom());
+        return sslContext;
+    }
+
     /**
      * Common settings on all outgoing requests to the docker server
      */
@@ -785,6 +869,8 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
                 .addRequestHeader(Operation.REQUEST_AUTH_TOKEN_HEADER, "")
                 .forceRemote();
 
+        tlsSessionStats.recordRequest(op.getUri());
+
         if (op.getExpirationMicrosUtc() == 0) {
             long timeout = longRunningRequest ?
                     TimeUnit.SECONDS.toMicros(DOCKER_IMAGE_REQUEST_TIMEOUT_SECONDS) :
@@ -1040,115 +1126,95 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         }
     }
 
+    private void makeSubscription(CommandInput input, Operation op, ComputeState computeState, URI uri,
+            Boolean simulateIOExceptionPropertyValue) {
+        if (simulateIOExceptionPropertyValue == null) {
+            ConfigurationUtil.getConfigProperty(host, ConfigurationUtil.THROW_IO_EXCEPTION,
+                    (prop) -> {
+                        Boolean b = Boolean.valueOf(prop);
+                        makeSubscription(input, op, computeState, uri, b);
+                    });
+            return;
+        }
+
+        logger.info(String.format("Simulation of IOException enabled: [%s]",
+                simulateIOExceptionPropertyValue));
+
+        EventsListener listener = new EventsListener(op, computeState);
+        if (simulateIOExceptionPropertyValue) {
+            listener.onFailure(new IOException("Simulated IOException from an IT test."));
+            return;
+        }
+
+        SSLContext sslContext = null;
+        if (isSecure(uri)) {
+            try {
+                sslContext = createSslContext(input);
+            } catch (Exception e) {
+                logger.warning(String.format("Exception in subscription to [%s]. Error: [%s]",
+                        uri.getAuthority(), e.getMessage()));
+                return;
+            }
+        }
+
+        eventsMultiplexer.subscribe(uri.getAuthority(), uri, sslContext, listener);
+    }
+
     /**
-     * Used for creation of a new thread for each host event subscription.
+     * Handles the events stream of a single host. Runs on the events multiplexer threads.
      */
-    private class EventsMonitor implements Runnable {
-
-        public Operation op;
-        public URI hostUri;
-        public CommandInput input;
-        public ComputeState computeState;
-        public boolean simulatedIOException;
-
-        public EventsMonitor(Operation op,
-                URI hostUri,
-                CommandInput input,
-                ComputeState computeState,
-                boolean simulatedIOException) {
+    private class EventsListener implements DockerEventsMultiplexer.EventsStreamListener {
+
+        private final Operation op;
+        private final ComputeState computeState;
+
+        EventsListener(Operation op, ComputeState computeState) {
             this.op = op;
-            this.hostUri = hostUri;
-            this.input = input;
             this.computeState = computeState;
-            this.simulatedIOException = simulatedIOException;
         }
 
         @Override
-        public void run() {
-            logger.info(String.format("Simulation of IOException enabled: [%s]",
-                    simulatedIOException));
-            OperationContext childContext = OperationContext.getOperationContext();
-
-            boolean shouldRestoreContext = true;
+        public void onOpen() {
+            HostChangeTracker.getInstance().markStreamOpen(computeState.documentSelfLink);
+        }
 
+        @Override
+        public void onEvent(String event) {
             try {
-                // set system user context
-                OperationContext.setFrom(op);
-
-                URL url = new URL(hostUri.toString());
-                URLConnection con = openConnection(input, url);
-
-                // setting "read timeout" to reset the blocking stream (reader.readLine()).
-                // Otherwise there is no way to close the connection.
-                con.setReadTimeout(URL_CONNECTION_READ_TIMEOUT);
-
-                final String hostName = url.getAuthority();
-                runningThreads.put(hostName, Thread.currentThread());
-
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(
-                        con.getInputStream()))) {
-                    readData(in, simulatedIOException);
-                } catch (InterruptedException e) {
-                    logger.fine(String.format("[%s] is thrown.", e.getClass().getName()));
-                } catch (IOException e) {
-                    logger.info(String.format("IOException when listening [%s]. Error: [%s]",
-                            hostName, e.getMessage()));
-
-                    shouldRestoreContext = false;
-
-                    ComputeState state = new ComputeState();
-                    state.powerState = ComputeService.PowerState.UNKNOWN;
-
-                    patchComputeState(computeState.documentSelfLink, state)
-                            .thenCompose((ignore) -> {
-                                // changing the power state of containers to UNKNOWN
-                                return queryExistingContainerStates(computeState.documentSelfLink);
-                            })
-                            .whenComplete((o, ex) -> {
-                                OperationContext.restoreOperationContext(childContext);
-                            });
-                } catch (Exception e) {
-                    logger.warning(String.format("Exception in subscription to [%s]. Error: [%s]",
-                            hostName, e.getMessage()));
-                } finally {
-                    runningThreads.remove(hostName);
-                    closeConnection(con);
+                Events parsed = eventsProcessor.process(computeState.documentSelfLink, op, event);
+                if (!DockerEventsProcessor.isAppliedIncrementally(parsed)) {
+                    HostChangeTracker.getInstance().markDirty(computeState.documentSelfLink);
                 }
-            } catch (Throwable t) {
-                logger.warning(Utils.toString(t));
-            } finally {
-                if (shouldRestoreContext) {
-                    OperationContext.restoreOperationContext(childContext);
+                if (parsed.getTimeNano() != null) {
+                    eventsMultiplexer.recordEventLag(System.currentTimeMillis()
+                            - TimeUnit.NANOSECONDS.toMillis(parsed.getTimeNano()));
                 }
+            } catch (Exception e) {
+                logger.warning(String.format("Failed to process event from [%s]. Error: [%s]",
+                        computeState.documentSelfLink, e.getMessage()));
             }
         }
-    }
 
-    private void makeSubscription(CommandInput input, Operation op, ComputeState computeState, URI uri,
-            Boolean simulateIOExceptionPropertyValue) {
-        boolean maxAllowedNumberOfThreadsExceeded = maxAllowedNumberOfThreadsExceeded();
+        @Override
+        public void onFailure(Throwable failure) {
+            HostChangeTracker.getInstance().markStreamBroken(computeState.documentSelfLink);
+            OperationContext parentContext = OperationContext.getOperationContext();
+            try {
+                // set system user context
+                OperationContext.setFrom(op);
 
-        if (maxAllowedNumberOfThreadsExceeded) {
-            return;
-        }
+                ComputeState state = new ComputeState();
+                state.powerState = ComputeService.PowerState.UNKNOWN;
 
-        if (simulateIOExceptionPropertyValue == null) {
-            ConfigurationUtil.getConfigProperty(host, ConfigurationUtil.THROW_IO_EXCEPTION,
-                    (prop) -> {
-                        Boolean b = Boolean.valueOf(prop);
-                        makeSubscription(input, op, computeState, uri, b);
-                    });
-            return;
+                patchComputeState(computeState.documentSelfLink, state)
+                        .thenCompose((ignore) -> {
+                            // changing the power state of containers to UNKNOWN
+                            return queryExistingContainerStates(computeState.documentSelfLink);
+                        });
+            } finally {
+                OperationContext.restoreOperationContext(parentContext);
+            }
         }
-
-        EventsMonitor eventsMonitor = new EventsMonitor(
-                op,
-                uri,
-                input,
-                computeState,
-                simulateIOExceptionPropertyValue);
-
-        executor.submit(eventsMonitor);
     }
 
     private DeferredResult<ComputeState> requestComputeState(String selfLink) {
@@ -1185,70 +1251,6 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         return host.sendWithDeferredResult(op);
     }
 
-    private void readData(BufferedReader in, boolean simulatedIOException) throws IOException, InterruptedException {
-
-        while (true) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new InterruptedException();
-            }
-
-            if (simulatedIOException) {
-                throw new IOException("Simulated IOException from an IT test.");
-            }
-
-            try {
-                String inputLine  = in.readLine();
-
-                ObjectMapper mapper = new ObjectMapper();
-                Events event = mapper.readValue(inputLine, Events.class);
-
-                if (EVENT_TYPE_CONTAINER.equals(event.getType())) {
-                    ContainerState cs = new ContainerState();
-                    if (EVENT_TYPE_CONTAINER_DIE.equals(event.getAction())) {
-                        logger.fine(inputLine);
-
-                        cs.powerState = ContainerState.PowerState.STOPPED;
-                    } else if (EVENT_TYPE_CONTAINER_START.equals(event.getAction())) {
-                        logger.fine(inputLine);
-
-                        cs.powerState = ContainerState.PowerState.RUNNING;
-                        cs.started = TimeUnit.NANOSECONDS.toMillis(event.getTimeNano());
-                    } else {
-                        continue;
-                    }
-
-                    String containerId = event.getId();
-
-                    QueryTask queryTask = QueryUtil
-                            .buildPropertyQuery(ContainerState.class, ContainerState.FIELD_NAME_ID, containerId);
-
-                    new ServiceDocumentQuery<ContainerState>(host, ContainerState.class).query(queryTask, (r) -> {
-                        if (r.hasException()) {
-                            logger.warning(String.format("Failed to query resource container state with id [%s]",
-                                    containerId));
-                        } else if (r.hasResult()) {
-                            cs.documentSelfLink = r.getDocumentSelfLink();
-                            patchContainerState(cs);
-                        }
-                    });
-                }
-            } catch (SocketTimeoutException e) {
-                logger.fine("No events have been received. Unblocking the reader.");
-            }
-        }
-    }
-
-    private boolean maxAllowedNumberOfThreadsExceeded() {
-        ThreadPoolExecutor tpe = (ThreadPoolExecutor) executor;
-        if (tpe.getActiveCount() >= tpe.getMaximumPoolSize()) {
-            logger.warning(String.format("Maximum allowed number of threads exceeded! Use [\"%s\"] property to increase it.",
-                    THREAD_POOL_QUEUE_SIZE_PROP_NAME));
-            return true;
-        }
-
-        return false;
-    }
-
     private DeferredResult<Void> queryExistingContainerStates(String containerHostLink) {
         QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
                 ContainerState.FIELD_NAME_PARENT_LINK, containerHostLink);
@@ -15,8 +15,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,13 +27,10 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 
-import org.apache.commons.io.IOUtils;
-
 import com.vmware.admiral.adapter.common.AdapterRequest;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.FileUtil;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
-import com.vmware.xenon.common.FileUtils;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.UriUtils;
@@ -42,40 +41,49 @@ public class SystemImageRetrievalManager {
     public static final String SERVICE_REFERRER_PATH = "/system-image-retrieval-manager";
     public static final String SYSTEM_IMAGES_PATH = "/system-images";
 
+    private static final String EXTRACTED_IMAGE_TEMPFILE_PREFIX = "admiral-system-image-";
+
     private ServiceHost host;
 
     private final Object RETRIEVE_LOCK = new Object();
 
-    private Map<String, List<Consumer<byte[]>>> pendingCallbacksByImagePath = new HashMap<>();
+    private Map<String, List<Consumer<File>>> pendingCallbacksByImagePath = new HashMap<>();
 
     /**
-     * Map to keep a reference to loaded system images. Once loaded, the data will be added using
-     * the image file path as a key and time of the last usage will be stored. The timestamp is
-     * global for all the images. Once the defined timeout expires all the images will be cleared.
+     * Map to keep a reference to the files of the resolved system images. Once resolved, the file
+     * will be added using the image file path as a key and time of the last usage will be stored.
+     * The timestamp is global for all the images. Once the defined timeout expires all the
+     * references will be cleared, so that images added to the user resources are picked up.
      */
-    private static Map<String, byte[]> cachedImages = new HashMap<>();
+    private static Map<String, File> cachedImages = new HashMap<>();
     private static long lastUsed;
     private static final long CACHED_DATA_MICROS = Integer.getInteger(
             "com.vmware.admiral.system.image.cache.micros",
             (int) TimeUnit.SECONDS.toMicros(60));
 
+    /**
+     * Images bundled in the class path are extracted to a temporary file once and kept on disk
+     * for the lifetime of the process, so that loading them never holds them in memory.
+     */
+    private static final Map<String, File> extractedResourceImages = new HashMap<>();
+
     public SystemImageRetrievalManager(ServiceHost host) {
         this.host = host;
     }
 
     public void retrieveAgentImage(String containerImageFilePath, AdapterRequest adapterRequest,
-            Consumer<byte[]> callback) {
+            Consumer<File> callback) {
 
         synchronized (RETRIEVE_LOCK) {
-            byte[] imageData = cachedImages.get(containerImageFilePath);
-            if (imageData != null) {
+            File imageFile = cachedImages.get(containerImageFilePath);
+            if (imageFile != null && imageFile.exists()) {
                 host.log(Level.INFO, "Cached image found, %s\n", containerImageFilePath);
                 lastUsed = Utils.getSystemNowMicrosUtc();
-                callback.accept(imageData);
+                callback.accept(imageFile);
                 return;
             }
 
-            List<Consumer<byte[]>> pendingCallbacks = pendingCallbacksByImagePath
+            List<Consumer<File>> pendingCallbacks = pendingCallbacksByImagePath
                     .computeIfAbsent(containerImageFilePath, k -> new ArrayList<>());
 
             pendingCallbacks.add(callback);
@@ -104,92 +112,89 @@ public class SystemImageRetrievalManager {
                 }));
     }
 
-    private void notifyCallbacks(String containerImageFilePath, byte[] imageData) {
-        List<Consumer<byte[]>> pendingCallbacks;
+    private void notifyCallbacks(String containerImageFilePath, File imageFile) {
+        List<Consumer<File>> pendingCallbacks;
         synchronized (RETRIEVE_LOCK) {
-            cachedImages.put(containerImageFilePath, imageData);
+            if (imageFile != null) {
+                cachedImages.put(containerImageFilePath, imageFile);
+            }
             lastUsed = Utils.getSystemNowMicrosUtc();
             pendingCallbacks = pendingCallbacksByImagePath.remove(containerImageFilePath);
         }
-        host.log(Level.INFO, "Caching system agent image data for %s", containerImageFilePath);
+        host.log(Level.INFO, "Caching system agent image file for %s", containerImageFilePath);
         host.schedule(this::cleanCache, CACHED_DATA_MICROS, TimeUnit.MICROSECONDS);
 
         if (pendingCallbacks != null) {
-            for (Consumer<byte[]> consumer : pendingCallbacks) {
-                consumer.accept(imageData);
+            for (Consumer<File> consumer : pendingCallbacks) {
+                consumer.accept(imageFile);
             }
         }
     }
 
     private void retrieveAgentImage(String resourcesPath, String containerImageFilePath) {
-        Consumer<byte[]> finalCallback = (fileBytes) -> {
-            if (fileBytes == null) {
-                host.log(Level.WARNING, "System image %s does not exists.", containerImageFilePath);
-            }
-            notifyCallbacks(containerImageFilePath, fileBytes);
-        };
-
+        File imageFile = null;
         if (resourcesPath != null) {
-            getExternalAgentImage(resourcesPath, containerImageFilePath, (fileBytes) -> {
-                if (fileBytes != null) {
-                    notifyCallbacks(containerImageFilePath, fileBytes);
-                } else {
-                    // Fetch the data from resources when the image is not found in user resources
-                    getResourceAgentImage(containerImageFilePath, finalCallback);
-                }
-            });
-        } else {
-            getResourceAgentImage(containerImageFilePath, finalCallback);
+            imageFile = getExternalAgentImage(resourcesPath, containerImageFilePath);
+        }
+        if (imageFile == null) {
+            // Fetch the data from resources when the image is not found in user resources
+            imageFile = getResourceAgentImage(containerImageFilePath);
+        }
+        if (imageFile == null) {
+            host.log(Level.WARNING, "System image %s does not exists.", containerImageFilePath);
         }
+        notifyCallbacks(containerImageFilePath, imageFile);
     }
 
-    private void getExternalAgentImage(String resourcesPath, String containerImage,
-            Consumer<byte[]> callback) {
+    private File getExternalAgentImage(String resourcesPath, String containerImage) {
         Path imageResourcePath = Paths.get(resourcesPath,
                 SYSTEM_IMAGES_PATH, containerImage);
 
         File file = imageResourcePath.toFile();
-        if (!file.exists()) {
-            callback.accept(null);
-            return;
-        }
+        return file.isFile() ? file : null;
+    }
 
-        Operation operation = new Operation();
-        operation.setCompletion((op, ex) -> {
-            if (op.hasBody()) {
-                callback.accept(op.getBody(byte[].class));
-            } else {
-                callback.accept(null);
+    private File getResourceAgentImage(String containerImage) {
+        // a single extraction per image, even with several retrieval managers
+        synchronized (extractedResourceImages) {
+            File extracted = extractedResourceImages.get(containerImage);
+            if (extracted != null && extracted.exists()) {
+                return extracted;
             }
 
-        });
-
-        FileUtils.readFileAndComplete(operation, file);
-    }
-
-    private void getResourceAgentImage(String containerImage, Consumer<byte[]> callback) {
-        try (InputStream resourceAsStream = Thread.currentThread().getContextClassLoader()
-                .getResourceAsStream(containerImage)) {
-            if (resourceAsStream == null) {
-                callback.accept(null);
-            } else {
-                callback.accept(IOUtils.toByteArray(resourceAsStream));
+            try (InputStream resourceAsStream = Thread.currentThread().getContextClassLoader()
+                    .getResourceAsStream(containerImage)) {
+                if (resourceAsStream == null) {
+                    return null;
+                }
+                File tempFile = File.createTempFile(EXTRACTED_IMAGE_TEMPFILE_PREFIX, null);
+                tempFile.deleteOnExit();
+                Files.copy(resourceAsStream, tempFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                host.log(Level.INFO, "Extracted system image %s to %s", containerImage,
+                        tempFile.getAbsolutePath());
+                extractedResourceImages.put(containerImage, tempFile);
+                return tempFile;
+            } catch (IOException e) {
+                host.log(Level.WARNING, "Failed to extract system image %s: %s", containerImage,
+                        e.getMessage());
+                return null;
             }
-        } catch (IOException e) {
-            callback.accept(null);
         }
     }
 
     private void cleanCache() {
-        if (lastUsed + CACHED_DATA_MICROS < Utils.getSystemNowMicrosUtc()) {
-            // expired, clean the reference
-            cachedImages.clear();
-            lastUsed = 0;
-            host.log(Level.INFO, "System image(s) removed from cache");
-        } else {
-            // schedule next check
-            host.schedule(this::cleanCache, CACHED_DATA_MICROS, TimeUnit.MICROSECONDS);
+        synchronized (RETRIEVE_LOCK) {
+            if (lastUsed + CACHED_DATA_MICROS < Utils.getSystemNowMicrosUtc()) {
+                // expired, clean the reference
+                cachedImages.clear();
+                lastUsed = 0;
+                host.log(Level.INFO, "System image(s) removed from cache");
+                return;
+            }
         }
+        // schedule next check
+        host.schedule(this::cleanCache, CACHED_DATA_MICROS, TimeUnit.MICROSECONDS);
     }
 
 }
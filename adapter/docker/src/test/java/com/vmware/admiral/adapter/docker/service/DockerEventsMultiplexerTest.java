@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DockerEventsMultiplexerTest {
+
+    private static final String EVENT_START = "{\"Type\":\"container\",\"Action\":\"start\"}";
+    private static final String EVENT_DIE = "{\"Type\":\"container\",\"Action\":\"die\"}";
+
+    private HttpServer server;
+    private DockerEventsMultiplexer multiplexer;
+    private URI eventsUri;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/events", (exchange) -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            // an event split in two chunks, followed by a complete one
+            out.write(EVENT_START.substring(0, 10).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            out.write((EVENT_START.substring(10) + "\n" + EVENT_DIE + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            exchange.close();
+        });
+        // accepts the stream and closes it right away, without any event
+        server.createContext("/flapping", (exchange) -> {
+            exchange.sendResponseHeaders(200, 0);
+            exchange.close();
+        });
+        server.start();
+
+        eventsUri = URI.create(String.format("http://127.0.0.1:%d/events?since=0",
+                server.getAddress().getPort()));
+        multiplexer = new DockerEventsMultiplexer();
+    }
+
+    @After
+    public void tearDown() {
+        multiplexer.stop();
+        server.stop(0);
+    }
+
+    @Test
+    public void testReceiveEventsAndReportFailureOnce() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        CountDownLatch eventsLatch = new CountDownLatch(2);
+        CountDownLatch failureLatch = new CountDownLatch(1);
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+        boolean subscribed = multiplexer.subscribe(eventsUri.getAuthority(), eventsUri, null,
+                new DockerEventsMultiplexer.EventsStreamListener() {
+                    @Override
+                    public void onEvent(String event) {
+                        events.add(event);
+                        eventsLatch.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable failure) {
+                        failures.add(failure);
+                        failureLatch.countDown();
+                    }
+                });
+        assertTrue(subscribed);
+
+        assertTrue(eventsLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(EVENT_START, events.get(0));
+        assertEquals(EVENT_DIE, events.get(1));
+
+        // the server closes the stream after the events, which is reported as a failure and
+        // the multiplexer keeps reconnecting
+        assertTrue(failureLatch.await(10, TimeUnit.SECONDS));
+        assertTrue(multiplexer.isSubscribed(eventsUri.getAuthority()));
+        assertTrue(multiplexer.getStats()
+                .get(DockerEventsMultiplexer.STAT_NAME_EVENTS_RECEIVED_COUNT) >= 2);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (multiplexer.getStats()
+                .get(DockerEventsMultiplexer.STAT_NAME_EVENTS_RECONNECT_COUNT) < 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(multiplexer.getStats()
+                .get(DockerEventsMultiplexer.STAT_NAME_EVENTS_RECONNECT_COUNT) >= 1);
+
+        assertTrue(multiplexer.unsubscribe(eventsUri.getAuthority()));
+        assertFalse(multiplexer.isSubscribed(eventsUri.getAuthority()));
+        assertFalse(multiplexer.unsubscribe(eventsUri.getAuthority()));
+    }
+
+    @Test
+    public void testStreamClosedRightAwayIsNotReportedAsOpen() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        URI flappingUri = URI.create(String.format("http://127.0.0.1:%d/flapping",
+                server.getAddress().getPort()));
+
+        multiplexer.subscribe("flapping", flappingUri, null,
+                new DockerEventsMultiplexer.EventsStreamListener() {
+                    @Override
+                    public void onOpen() {
+                        opened.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onEvent(String event) {
+                    }
+
+                    @Override
+                    public void onFailure(Throwable failure) {
+                        failed.incrementAndGet();
+                    }
+                });
+
+        // reconnects after 1 and 2 seconds, the backoff is not reset by the 200 responses
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (multiplexer.getStats()
+                .get(DockerEventsMultiplexer.STAT_NAME_EVENTS_RECONNECT_COUNT) < 3
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(multiplexer.getStats()
+                .get(DockerEventsMultiplexer.STAT_NAME_EVENTS_RECONNECT_COUNT) >= 3);
+        assertEquals(0, opened.get());
+        assertEquals(1, failed.get());
+    }
+
+    @Test
+    public void testSubscribeTwice() {
+        DockerEventsMultiplexer.EventsStreamListener listener =
+                new DockerEventsMultiplexer.EventsStreamListener() {
+                    @Override
+                    public void onEvent(String event) {
+                    }
+
+                    @Override
+                    public void onFailure(Throwable failure) {
+                    }
+                };
+
+        assertTrue(multiplexer.subscribe("host", eventsUri, null, listener));
+        assertFalse(multiplexer.subscribe("host", eventsUri, null, listener));
+        assertEquals(1, multiplexer.getStats()
+                .get(DockerEventsMultiplexer.STAT_NAME_EVENTS_SUBSCRIPTIONS), 0);
+    }
+}
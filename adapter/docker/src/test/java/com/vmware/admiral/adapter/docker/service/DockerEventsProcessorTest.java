@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.common.test.HostInitTestDcpServicesConfig;
+import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.HostContainerIdCache;
+import com.vmware.admiral.host.HostInitCommonServiceConfig;
+import com.vmware.admiral.host.HostInitComputeServicesConfig;
+import com.vmware.admiral.host.HostInitPhotonModelServiceConfig;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+
+public class DockerEventsProcessorTest extends BaseTestCase {
+
+    private static final String HOST_LINK = UriUtils.buildUriPath(ComputeService.FACTORY_LINK,
+            "events-host");
+    private static final String EVENT_FORMAT =
+            "{\"Type\":\"container\",\"Action\":\"%s\",\"id\":\"%s\",\"timeNano\":%d}";
+    private static final String EVENT_WITHOUT_TIME_FORMAT =
+            "{\"Type\":\"container\",\"Action\":\"%s\",\"id\":\"%s\"}";
+
+    private DockerEventsProcessor processor;
+
+    @Before
+    public void setUp() throws Throwable {
+        HostInitTestDcpServicesConfig.startServices(host);
+        HostInitPhotonModelServiceConfig.startServices(host);
+        HostInitCommonServiceConfig.startServices(host);
+        HostInitComputeServicesConfig.startServices(host, false);
+        waitForServiceAvailability(ContainerFactoryService.SELF_LINK);
+
+        processor = new DockerEventsProcessor(host);
+    }
+
+    @Test
+    public void testEventsForSameContainerAreCoalesced() throws Throwable {
+        ContainerState container = new ContainerState();
+        container.id = "coalesced-container-id";
+        container.parentLink = HOST_LINK;
+        container.powerState = PowerState.STOPPED;
+        container = doPost(container, ContainerFactoryService.SELF_LINK);
+
+        // the cache is populated on container creation
+        assertEquals(container.documentSelfLink,
+                HostContainerIdCache.getInstance().get(HOST_LINK, container.id));
+
+        Operation op = Operation.createGet(host.getUri());
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        processor.process(HOST_LINK, op, String.format(EVENT_FORMAT, "start", container.id, now));
+        processor.process(HOST_LINK, op,
+                String.format(EVENT_FORMAT, "die", container.id, now + 1));
+        processor.process(HOST_LINK, op,
+                String.format(EVENT_FORMAT, "start", container.id, now + 2));
+        // older event received out of order is ignored
+        processor.process(HOST_LINK, op,
+                String.format(EVENT_FORMAT, "die", container.id, now - 1));
+
+        waitForPropertyValue(container.documentSelfLink, ContainerState.class,
+                ContainerState.FIELD_NAME_POWER_STATE, PowerState.RUNNING);
+
+        Map<String, Double> stats = processor.getStats();
+        assertEquals(4, stats.get(DockerEventsProcessor.STAT_NAME_EVENTS_PROCESSED_COUNT), 0);
+        assertEquals(3, stats.get(DockerEventsProcessor.STAT_NAME_EVENTS_COALESCED_COUNT), 0);
+        assertEquals(1, stats.get(DockerEventsProcessor.STAT_NAME_EVENTS_PATCH_COUNT), 0);
+        assertEquals(1,
+                stats.get(DockerEventsProcessor.STAT_NAME_EVENTS_LOOKUP_CACHE_HIT_COUNT), 0);
+
+        doDelete(UriUtils.buildUri(host, container.documentSelfLink), false);
+        assertEquals(null, HostContainerIdCache.getInstance().get(HOST_LINK, container.id));
+    }
+
+    @Test
+    public void testEventsWithAndWithoutTimeAreOrdered() throws Throwable {
+        ContainerState container = new ContainerState();
+        container.id = "mixed-time-container-id";
+        container.parentLink = HOST_LINK;
+        container.powerState = PowerState.RUNNING;
+        container = doPost(container, ContainerFactoryService.SELF_LINK);
+
+        Operation op = Operation.createGet(host.getUri());
+        long secondAgo = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+                - TimeUnit.SECONDS.toNanos(1);
+        processor.process(HOST_LINK, op,
+                String.format(EVENT_FORMAT, "start", container.id, secondAgo));
+        // received later and without a timestamp, so it is the latest event
+        processor.process(HOST_LINK, op,
+                String.format(EVENT_WITHOUT_TIME_FORMAT, "die", container.id));
+
+        waitForPropertyValue(container.documentSelfLink, ContainerState.class,
+                ContainerState.FIELD_NAME_POWER_STATE, PowerState.STOPPED);
+
+        long before = System.currentTimeMillis();
+        processor.process(HOST_LINK, op,
+                String.format(EVENT_WITHOUT_TIME_FORMAT, "start", container.id));
+        // an older event received after it is ignored
+        processor.process(HOST_LINK, op,
+                String.format(EVENT_FORMAT, "die", container.id, secondAgo));
+        long after = System.currentTimeMillis();
+
+        container = waitForPropertyValue(container.documentSelfLink, ContainerState.class,
+                ContainerState.FIELD_NAME_POWER_STATE, PowerState.RUNNING);
+        assertTrue(container.started >= before && container.started <= after);
+    }
+}
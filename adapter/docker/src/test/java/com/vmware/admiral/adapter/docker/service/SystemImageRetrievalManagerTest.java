@@ -22,7 +22,6 @@ package com.vmware.admiral.adapter.docker.service;
  */
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -99,7 +98,7 @@ public class SystemImageRetrievalManagerTest extends BaseTestCase {
         AdapterRequest req = new AdapterRequest();
         req.resourceReference = host.getUri();
 
-        AtomicReference<byte[]> retrievedImageRef = new AtomicReference<>();
+        AtomicReference<File> retrievedImageRef = new AtomicReference<>();
 
         TestContext ctx = testCreate(1);
         retrievalManager.retrieveAgentImage(TEST_IMAGE_RES, req, (image) -> {
@@ -109,7 +108,7 @@ public class SystemImageRetrievalManagerTest extends BaseTestCase {
 
         ctx.await();
 
-        byte[] image = retrievedImageRef.get();
+        byte[] image = Files.readAllBytes(retrievedImageRef.get().toPath());
         Assert.assertEquals("Unexpected content", new String(content), new String(image));
     }
 
@@ -147,12 +146,12 @@ public class SystemImageRetrievalManagerTest extends BaseTestCase {
 
 
         int numberOfRequests = 8;
-        List<byte[]> retrievedImages = runConcurrent(tmpFileName, numberOfRequests);
+        List<File> retrievedImages = runConcurrent(tmpFileName, numberOfRequests);
 
         // Assert that all callbacks were called
         assertEquals(numberOfRequests, retrievedImages.size());
         for (int i = 0; i < numberOfRequests; i++) {
-            byte[] image = retrievedImages.get(i);
+            byte[] image = Files.readAllBytes(retrievedImages.get(i).toPath());
             assertArrayEquals(content, image);
         }
 
@@ -166,8 +165,9 @@ public class SystemImageRetrievalManagerTest extends BaseTestCase {
         // Assert that configuration service is not called any more (still has 1 call)
         assertEquals(1, mockConfigurationService.getNumberOfRequests());
         assertEquals(numberOfRequests, retrievedImages.size());
-        // Assert caching data -> all the images are reference to the same byte array
-        assertTrue(retrievedImages.get(0) == retrievedImages.get(1));
+        // Assert caching data -> all the images refer to the same file in user resources
+        assertEquals(tmpFile, retrievedImages.get(0));
+        assertEquals(retrievedImages.get(0), retrievedImages.get(1));
     }
 
     @Test
@@ -198,7 +198,7 @@ public class SystemImageRetrievalManagerTest extends BaseTestCase {
         AdapterRequest req = new AdapterRequest();
         req.resourceReference = host.getUri();
 
-        AtomicReference<byte[]> retrievedImageRef = new AtomicReference<>();
+        AtomicReference<File> retrievedImageRef = new AtomicReference<>();
 
         TestContext ctx = testCreate(1);
         retrievalManager.retrieveAgentImage(TEST_IMAGE, req, (image) -> {
@@ -208,15 +208,15 @@ public class SystemImageRetrievalManagerTest extends BaseTestCase {
 
         ctx.await();
 
-        byte[] image = retrievedImageRef.get();
+        byte[] image = Files.readAllBytes(retrievedImageRef.get().toPath());
         Assert.assertEquals("Unexpected content", new String(content), new String(image));
     }
 
-    private List<byte[]> runConcurrent(String imageFileName, int numberOfRequests)
+    private List<File> runConcurrent(String imageFileName, int numberOfRequests)
             throws Exception {
         AdapterRequest req = new AdapterRequest();
         req.resourceReference = host.getUri();
-        List<byte[]> retrievedImages = new ArrayList<>();
+        List<File> retrievedImages = new ArrayList<>();
 
         TestContext ctx = testCreate(numberOfRequests);
 
@@ -35,6 +35,7 @@ import com.vmware.admiral.common.util.AuthUtils;
 import com.vmware.admiral.common.util.DockerImage;
 import com.vmware.admiral.common.util.ServerX509TrustManager;
 import com.vmware.admiral.common.util.ServiceClientFactory;
+import com.vmware.admiral.common.util.TlsSessionStats;
 import com.vmware.admiral.common.util.UriUtilsExtended;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
@@ -88,6 +89,9 @@ public class RegistryAdapterService extends StatelessService {
     private ServiceClient serviceClientProxy;
     private ServiceClient serviceClientNoProxy;
     private Set<String> serviceClientNoProxyList;
+    private final TlsSessionStats tlsSessionStats = new TlsSessionStats(
+            RegistryAdapterService.class.getSimpleName(),
+            (name, value) -> TlsSessionStats.hostStatsConsumer(getHost()).accept(name, value));
 
     private ServerX509TrustManager trustManager;
 
@@ -146,6 +150,7 @@ public class RegistryAdapterService extends StatelessService {
             try {
                 URI registryProxyURI = new URI(registryProxyAddress);
                 serviceClientProxy = ServiceClientFactory.createServiceClient(trustManager, null);
+                tlsSessionStats.track(serviceClientProxy.getSSLContext());
 
                 if (serviceClientProxy instanceof NettyHttpServiceClient) {
                     ((NettyHttpServiceClient) serviceClientProxy).setHttpProxy(registryProxyURI);
@@ -167,6 +172,7 @@ public class RegistryAdapterService extends StatelessService {
     private void initNoProxyClient(Map<String, String> props) {
         // create plain, no proxied client
         serviceClientNoProxy = ServiceClientFactory.createServiceClient(trustManager, null);
+        tlsSessionStats.track(serviceClientNoProxy.getSSLContext());
 
         if (props != null) {
             String registryProxyAddress = props.get(REGISTRY_PROXY_PARAM_NAME);
@@ -752,6 +758,7 @@ public class RegistryAdapterService extends StatelessService {
 
     private void sendOperationWithClient(Operation op, RequestContext context) {
         String registryAddress = getRegistryHostAddress(context);
+        tlsSessionStats.recordRequest(op.getUri());
         if (serviceClientProxy == null ||
                 (registryAddress != null && serviceClientNoProxyList.contains(registryAddress))) {
             serviceClientNoProxy.send(op);
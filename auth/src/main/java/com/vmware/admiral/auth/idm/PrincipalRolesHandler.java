@@ -23,6 +23,7 @@ import java.util.List;
 
 import com.vmware.admiral.auth.idm.Principal.PrincipalType;
 import com.vmware.admiral.auth.util.AuthUtil;
+import com.vmware.admiral.auth.util.PrincipalRolesCache;
 import com.vmware.admiral.auth.util.PrincipalUtil;
 import com.vmware.admiral.auth.util.UserGroupsUpdater;
 import com.vmware.xenon.common.DeferredResult;
@@ -98,10 +99,15 @@ public class PrincipalRolesHandler {
 
         return PrincipalUtil.getPrincipal(service, encode(principalId))
                 .thenCompose(principal -> {
+                    PrincipalRolesCache cache = PrincipalRolesCache.getInstance(
+                            service.getHost());
                     if (principal.type == PrincipalType.GROUP) {
-                        return handleUserGroup();
+                        // the roles of every member of the group change
+                        return handleUserGroup()
+                                .whenComplete((ignore, ex) -> cache.invalidateAll());
                     }
-                    return handleUser();
+                    return handleUser()
+                            .whenComplete((ignore, ex) -> cache.invalidate(principalId));
                 });
     }
 
@@ -32,6 +32,7 @@ import com.vmware.admiral.auth.idm.AuthRole;
 import com.vmware.admiral.auth.idm.Principal;
 import com.vmware.admiral.auth.project.ProjectRolesHandler.ProjectRoles;
 import com.vmware.admiral.auth.util.AuthUtil;
+import com.vmware.admiral.auth.util.PrincipalRolesCache;
 import com.vmware.admiral.auth.util.ProjectUtil;
 import com.vmware.admiral.auth.util.SecurityContextUtil;
 import com.vmware.admiral.auth.util.UserGroupsUpdater;
@@ -368,6 +369,7 @@ public class ProjectService extends StatefulService {
                             put.fail(ex);
                             return;
                         }
+                        invalidateSecurityContexts(getState(put));
                         put.complete();
                     });
         } else {
@@ -465,6 +467,7 @@ public class ProjectService extends StatefulService {
                         patch.fail(ex);
                         return;
                     }
+                    invalidateSecurityContexts(getState(patch));
                     patch.complete();
                 });
     }
@@ -515,6 +518,8 @@ public class ProjectService extends StatefulService {
             handleProjectIndex(index, putState);
             setState(put, putState);
             put.setBody(putState);
+            invalidateSecurityContexts(currentState);
+            invalidateSecurityContexts(putState);
             put.complete();
         });
     }
@@ -621,10 +626,17 @@ public class ProjectService extends StatefulService {
                         delete.fail(error);
                         return;
                     }
+                    invalidateSecurityContexts(state);
                     super.handleDelete(delete);
                 });
     }
 
+    private void invalidateSecurityContexts(ProjectState state) {
+        if (state != null && state.documentSelfLink != null) {
+            PrincipalRolesCache.getInstance(getHost()).onProjectChange(state);
+        }
+    }
+
     private DeferredResult<Void> deleteDefaultProjectGroups(String projectId,
             Operation delete) {
 
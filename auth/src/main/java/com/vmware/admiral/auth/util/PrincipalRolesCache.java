@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.auth.util;
+
+import static com.vmware.admiral.auth.util.PrincipalUtil.encode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Predicate;
+
+import com.vmware.admiral.auth.idm.PrincipalRoles;
+import com.vmware.admiral.auth.idm.SecurityContext.ProjectEntry;
+import com.vmware.admiral.auth.project.ProjectService.ProjectState;
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.HostStopHooks;
+import com.vmware.admiral.common.util.TlsSessionStats;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.RoleService.RoleState;
+import com.vmware.xenon.services.common.UserGroupService;
+import com.vmware.xenon.services.common.UserGroupService.UserGroupState;
+import com.vmware.xenon.services.common.UserService.UserState;
+
+/**
+ * Node local cache of the {@link PrincipalRoles} of principals, so that resolving the security
+ * context of a session does not query the users, groups, roles and projects on every request.
+ *
+ * Entries are invalidated on changes reported by a continuous query over the documents the roles
+ * are computed from:
+ * <ul>
+ * <li>a {@link UserState} change drops the entry of that user</li>
+ * <li>a {@link ProjectState} change drops the entries of principals in the project before or
+ * after the change</li>
+ * <li>{@link UserGroupState} and {@link RoleState} changes drop all entries, since group
+ * membership is defined by queries that cannot be evaluated locally</li>
+ * </ul>
+ * Entries also expire after a short time, to pick up group membership changes of external
+ * principal providers.
+ *
+ * The hit, miss and invalidation counts and the number of entries are published as stats of the
+ * management service of the host, at most once per {@link #STATS_INTERVAL_MILLIS}. The cache of a
+ * host is dropped when the host stops.
+ */
+public class PrincipalRolesCache {
+
+    private static final long EXPIRATION_MICROS = Long.getLong(
+            "com.vmware.admiral.auth.principal.roles.cache.expiration.micros",
+            TimeUnit.SECONDS.toMicros(60));
+
+    private static final int MAX_ENTRIES = Integer.getInteger(
+            "com.vmware.admiral.auth.principal.roles.cache.max.entries", 10000);
+
+    static final long STATS_INTERVAL_MILLIS = Long.getLong(
+            "com.vmware.admiral.auth.principal.roles.cache.stats.interval.millis",
+            TimeUnit.MINUTES.toMillis(1));
+
+    public static final String STAT_NAME_HITS = "principalRolesCacheHits";
+    public static final String STAT_NAME_MISSES = "principalRolesCacheMisses";
+    public static final String STAT_NAME_INVALIDATIONS = "principalRolesCacheInvalidations";
+    public static final String STAT_NAME_ENTRIES = "principalRolesCacheEntries";
+
+    private static final String CONTINUOUS_QUERY_NAME = "principal-roles";
+
+    private static final String USER_STATE_KIND = Utils.buildKind(UserState.class);
+    private static final String PROJECT_STATE_KIND = Utils.buildKind(ProjectState.class);
+
+    private static final ConcurrentMap<String, PrincipalRolesCache> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final ObjDoubleConsumer<String> statsConsumer;
+    private final AtomicLong lastStatsMillis = new AtomicLong(System.currentTimeMillis());
+
+    private static class Entry {
+        final PrincipalRoles principalRoles;
+        final String userLink;
+        final Set<String> userGroupLinks;
+        final Set<String> projectLinks;
+        final long expirationMicros;
+
+        Entry(PrincipalRoles principalRoles) {
+            this.principalRoles = principalRoles;
+            this.userLink = AuthUtil.buildUserServicePathFromPrincipalId(
+                    encode(principalRoles.id));
+            this.userGroupLinks = new HashSet<>();
+            this.userGroupLinks.add(buildUserGroupLink(principalRoles.id));
+            if (principalRoles.groups != null) {
+                for (String group : principalRoles.groups) {
+                    this.userGroupLinks.add(buildUserGroupLink(group));
+                }
+            }
+            this.projectLinks = new HashSet<>();
+            if (principalRoles.projects != null) {
+                for (ProjectEntry project : principalRoles.projects) {
+                    this.projectLinks.add(project.documentSelfLink);
+                }
+            }
+            this.expirationMicros = Utils.getSystemNowMicrosUtc() + EXPIRATION_MICROS;
+        }
+    }
+
+    public static PrincipalRolesCache getInstance(ServiceHost host) {
+        PrincipalRolesCache cache = INSTANCES.get(host.getId());
+        if (cache != null) {
+            return cache;
+        }
+
+        cache = new PrincipalRolesCache(TlsSessionStats.hostStatsConsumer(host));
+        if (host.isStopping()) {
+            // not kept, there would be nothing to remove it
+            return cache;
+        }
+
+        PrincipalRolesCache existing = INSTANCES.putIfAbsent(host.getId(), cache);
+        if (existing != null) {
+            return existing;
+        }
+        PrincipalRolesCache created = cache;
+        HostStopHooks.register(host, () -> INSTANCES.remove(host.getId(), created));
+        CommonContinuousQueries.subscribeTo(host, CONTINUOUS_QUERY_NAME,
+                buildContinuousQueryTask(), cache::onDocumentChange);
+        return cache;
+    }
+
+    PrincipalRolesCache() {
+        this((name, value) -> {
+        });
+    }
+
+    PrincipalRolesCache(ObjDoubleConsumer<String> statsConsumer) {
+        this.statsConsumer = statsConsumer;
+    }
+
+    /**
+     * Returns the current generation of the cache, to be passed to {@link #put} for roles
+     * computed after it.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns a copy of the cached roles of the principal, or <code>null</code> if there are no
+     * valid roles cached for it.
+     */
+    public PrincipalRoles get(String principalId) {
+        Entry entry = entries.get(principalId);
+        boolean hit = entry != null && entry.expirationMicros >= Utils.getSystemNowMicrosUtc();
+        if (hit) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+
+        long last = lastStatsMillis.get();
+        long now = System.currentTimeMillis();
+        if (now - last >= STATS_INTERVAL_MILLIS && lastStatsMillis.compareAndSet(last, now)) {
+            publishStats();
+        }
+        return hit ? Utils.clone(entry.principalRoles) : null;
+    }
+
+    /**
+     * Caches the roles computed for the principal, unless the cache has been invalidated since
+     * the given generation.
+     */
+    public void put(String principalId, PrincipalRoles principalRoles, long computedGeneration) {
+        if (principalRoles == null || principalRoles.id == null) {
+            return;
+        }
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.values().removeIf(
+                    (e) -> e.expirationMicros < Utils.getSystemNowMicrosUtc());
+            if (entries.size() >= MAX_ENTRIES) {
+                return;
+            }
+        }
+        entries.put(principalId, new Entry(Utils.clone(principalRoles)));
+        if (generation.get() != computedGeneration) {
+            entries.remove(principalId);
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * Publishes the counts of the cache to the stats consumer.
+     */
+    void publishStats() {
+        statsConsumer.accept(STAT_NAME_HITS, hits.get());
+        statsConsumer.accept(STAT_NAME_MISSES, misses.get());
+        statsConsumer.accept(STAT_NAME_INVALIDATIONS, invalidations.get());
+        statsConsumer.accept(STAT_NAME_ENTRIES, entries.size());
+    }
+
+    /**
+     * Drops the cached roles of the given principal.
+     */
+    public void invalidate(String principalId) {
+        invalidateIf((e) -> e.principalRoles.id.equals(principalId));
+        if (entries.remove(principalId) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops the cached roles of the user with the given state.
+     */
+    public void onUserChange(UserState userState) {
+        invalidateIf((e) -> e.userLink.equals(userState.documentSelfLink));
+    }
+
+    /**
+     * Drops the cached roles of the principals in the given project.
+     */
+    public void onProjectChange(ProjectState projectState) {
+        Set<String> groupLinks = new HashSet<>();
+        addAll(groupLinks, projectState.administratorsUserGroupLinks);
+        addAll(groupLinks, projectState.membersUserGroupLinks);
+        addAll(groupLinks, projectState.viewersUserGroupLinks);
+
+        invalidateIf((e) -> e.projectLinks.contains(projectState.documentSelfLink)
+                || containsAny(e.userGroupLinks, groupLinks));
+    }
+
+    private void onDocumentChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+
+        for (Object document : queryTask.results.documents.values()) {
+            ServiceDocument serviceDocument = Utils.fromJson(document, ServiceDocument.class);
+            if (USER_STATE_KIND.equals(serviceDocument.documentKind)) {
+                onUserChange(Utils.fromJson(document, UserState.class));
+            } else if (PROJECT_STATE_KIND.equals(serviceDocument.documentKind)) {
+                onProjectChange(Utils.fromJson(document, ProjectState.class));
+            } else {
+                invalidateAll();
+                return;
+            }
+        }
+    }
+
+    private void invalidateIf(Predicate<Entry> predicate) {
+        generation.incrementAndGet();
+        entries.values().removeIf((e) -> {
+            if (predicate.test(e)) {
+                invalidations.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static QueryTask buildContinuousQueryTask() {
+        Query query = Query.Builder.create()
+                .addInClause(ServiceDocument.FIELD_NAME_KIND, Arrays.asList(
+                        USER_STATE_KIND,
+                        Utils.buildKind(UserGroupState.class),
+                        Utils.buildKind(RoleState.class),
+                        PROJECT_STATE_KIND))
+                .build();
+        return QueryTask.Builder.create()
+                .addOption(QueryOption.CONTINUOUS)
+                .addOption(QueryOption.EXPAND_CONTENT)
+                .setQuery(query)
+                .build();
+    }
+
+    private static String buildUserGroupLink(String groupId) {
+        return UriUtils.buildUriPath(UserGroupService.FACTORY_LINK, encode(groupId));
+    }
+
+    private static void addAll(Set<String> target, Collection<String> source) {
+        if (source != null) {
+            target.addAll(source);
+        }
+    }
+
+    private static boolean containsAny(Set<String> set, Set<String> values) {
+        for (String value : values) {
+            if (set.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[entries: %d, hits: %d, misses: %d, invalidations: %d]",
+                getClass().getSimpleName(), entries.size(), hits.get(), misses.get(),
+                invalidations.get());
+    }
+}
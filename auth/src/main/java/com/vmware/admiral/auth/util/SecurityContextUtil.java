@@ -43,16 +43,26 @@ public class SecurityContextUtil {
     }
 
     /**
-     * Gets the {@link SecurityContext} for the denoted user
+     * Gets the {@link SecurityContext} for the denoted user. The roles of the user are served
+     * from the {@link PrincipalRolesCache} of the node when possible.
      */
     public static DeferredResult<SecurityContext> getSecurityContext(Service requestorService,
             Operation requestorOperation, String userId) {
 
+        PrincipalRolesCache cache = PrincipalRolesCache.getInstance(requestorService.getHost());
+        PrincipalRoles cachedRoles = cache.get(userId);
+        if (cachedRoles != null) {
+            return DeferredResult.completed(fromPrincipalRolesToSecurityContext(cachedRoles));
+        }
 
+        long generation = cache.getGeneration();
         return PrincipalUtil.getPrincipal(requestorService, requestorOperation, encode(userId))
                 .thenCompose(principal -> PrincipalRolesUtil.getAllRolesForPrincipal(
                         requestorService, requestorOperation, principal))
-                .thenApply(SecurityContextUtil::fromPrincipalRolesToSecurityContext);
+                .thenApply(principalRoles -> {
+                    cache.put(userId, principalRoles, generation);
+                    return fromPrincipalRolesToSecurityContext(principalRoles);
+                });
     }
 
     public static DeferredResult<SecurityContext> getSecurityContext(Service requestorService,
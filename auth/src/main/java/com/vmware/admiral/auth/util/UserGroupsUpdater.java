@@ -124,7 +124,17 @@ public class UserGroupsUpdater {
         }
 
         return DeferredResult.allOf(usersResults).thenAccept((ignore) -> {
-        });
+        }).whenComplete((ignore, ex) -> invalidateSecurityContexts());
+    }
+
+    private void invalidateSecurityContexts() {
+        PrincipalRolesCache cache = PrincipalRolesCache.getInstance(service.getHost());
+        if (usersToAdd != null) {
+            usersToAdd.forEach(cache::invalidate);
+        }
+        if (usersToRemove != null) {
+            usersToRemove.forEach(cache::invalidate);
+        }
     }
 
     // TODO: Create the user if not exist.
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.auth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import static com.vmware.admiral.auth.util.PrincipalUtil.encode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.auth.idm.AuthRole;
+import com.vmware.admiral.auth.idm.PrincipalRoles;
+import com.vmware.admiral.auth.idm.SecurityContext.ProjectEntry;
+import com.vmware.admiral.auth.project.ProjectService.ProjectState;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.services.common.UserGroupService;
+import com.vmware.xenon.services.common.UserService.UserState;
+
+public class PrincipalRolesCacheTest {
+    private static final String USER_ID = "fritz@admiral.com";
+    private static final String GROUP_ID = "developers@admiral.com";
+    private static final String PROJECT_LINK = "/projects/test-project";
+
+    private PrincipalRolesCache cache;
+
+    @Before
+    public void setup() {
+        cache = new PrincipalRolesCache();
+    }
+
+    @Test
+    public void testGetReturnsCopyOfCachedRoles() {
+        cache.put(USER_ID, createPrincipalRoles(), cache.getGeneration());
+
+        PrincipalRoles roles = cache.get(USER_ID);
+        assertNotNull(roles);
+        roles.roles.clear();
+
+        assertEquals(1, cache.get(USER_ID).roles.size());
+        assertNull(cache.get("other@admiral.com"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testStatsArePublished() {
+        Map<String, Double> published = new HashMap<>();
+        cache = new PrincipalRolesCache(published::put);
+        cache.put(USER_ID, createPrincipalRoles(), cache.getGeneration());
+        cache.get(USER_ID);
+        cache.get("other@admiral.com");
+        cache.invalidate(USER_ID);
+
+        cache.publishStats();
+        assertEquals(1, published.get(PrincipalRolesCache.STAT_NAME_HITS), 0);
+        assertEquals(1, published.get(PrincipalRolesCache.STAT_NAME_MISSES), 0);
+        assertEquals(1, published.get(PrincipalRolesCache.STAT_NAME_INVALIDATIONS), 0);
+        assertEquals(0, published.get(PrincipalRolesCache.STAT_NAME_ENTRIES), 0);
+    }
+
+    @Test
+    public void testRolesComputedBeforeInvalidationAreNotCached() {
+        long generation = cache.getGeneration();
+        cache.invalidate("other@admiral.com");
+
+        cache.put(USER_ID, createPrincipalRoles(), generation);
+
+        assertNull(cache.get(USER_ID));
+    }
+
+    @Test
+    public void testUserChangeInvalidatesOnlyThatUser() {
+        cache.put(USER_ID, createPrincipalRoles(), cache.getGeneration());
+
+        UserState otherUser = new UserState();
+        otherUser.documentSelfLink = AuthUtil.buildUserServicePathFromPrincipalId(
+                encode("other@admiral.com"));
+        cache.onUserChange(otherUser);
+        assertNotNull(cache.get(USER_ID));
+
+        UserState user = new UserState();
+        user.documentSelfLink = AuthUtil.buildUserServicePathFromPrincipalId(encode(USER_ID));
+        cache.onUserChange(user);
+        assertNull(cache.get(USER_ID));
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testProjectChangeInvalidatesItsPrincipals() {
+        cache.put(USER_ID, createPrincipalRoles(), cache.getGeneration());
+
+        ProjectState unrelatedProject = new ProjectState();
+        unrelatedProject.documentSelfLink = "/projects/unrelated";
+        cache.onProjectChange(unrelatedProject);
+        assertNotNull(cache.get(USER_ID));
+
+        // the group of the user has been added to a project
+        ProjectState project = new ProjectState();
+        project.documentSelfLink = "/projects/new-project";
+        project.viewersUserGroupLinks = Collections.singleton(
+                UriUtils.buildUriPath(UserGroupService.FACTORY_LINK, encode(GROUP_ID)));
+        cache.onProjectChange(project);
+        assertNull(cache.get(USER_ID));
+
+        // the user has been removed from a project
+        cache.put(USER_ID, createPrincipalRoles(), cache.getGeneration());
+        project.documentSelfLink = PROJECT_LINK;
+        project.viewersUserGroupLinks = null;
+        cache.onProjectChange(project);
+        assertNull(cache.get(USER_ID));
+    }
+
+    private static PrincipalRoles createPrincipalRoles() {
+        PrincipalRoles principalRoles = new PrincipalRoles();
+        principalRoles.id = USER_ID;
+        principalRoles.groups = new HashSet<>(Collections.singleton(GROUP_ID));
+        principalRoles.roles = new HashSet<>(Collections.singleton(AuthRole.BASIC_USER));
+        ProjectEntry projectEntry = new ProjectEntry();
+        projectEntry.documentSelfLink = PROJECT_LINK;
+        projectEntry.roles = new HashSet<>(Collections.singleton(AuthRole.PROJECT_MEMBER));
+        principalRoles.projects = new ArrayList<>(Collections.singleton(projectEntry));
+        return principalRoles;
+    }
+}
@@ -83,7 +83,23 @@ public class CommonContinuousQueries {
      */
     public static void subscribeTo(ServiceHost host, ContinuousQueryId queryId,
             Consumer<Operation> consumer) {
-        QueryTask task = getQueryTask(host, queryId);
+        subscribeTo(host, getQueryTask(host, queryId), consumer);
+    }
+
+    /**
+     * Subscribes a consumer to a continuous query not shared through {@link ContinuousQueryId},
+     * identified by the given name.
+     */
+    public static void subscribeTo(ServiceHost host, String queryName, QueryTask task,
+            Consumer<Operation> consumer) {
+        task.documentSelfLink = getTaskSelfLink(queryName);
+        task.documentExpirationTimeMicros = Utils.fromNowMicrosUtc(
+                TimeUnit.DAYS.toMicros(QUERY_TASK_EXPIRATION_DAYS));
+        subscribeTo(host, task, consumer);
+    }
+
+    private static void subscribeTo(ServiceHost host, QueryTask task,
+            Consumer<Operation> consumer) {
         Operation.createPost(host, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS)
                 .setBody(task)
                 .setReferer(host.getUri())
@@ -159,6 +175,10 @@ public class CommonContinuousQueries {
     }
 
     private static String getTaskSelfLink(ContinuousQueryId queryId) {
-        return QUERY_TASK_SELF_LINK_PREFIX + "-" + queryId.name().toLowerCase();
+        return getTaskSelfLink(queryId.name().toLowerCase());
+    }
+
+    private static String getTaskSelfLink(String queryName) {
+        return QUERY_TASK_SELF_LINK_PREFIX + "-" + queryName;
     }
 }
@@ -37,6 +37,7 @@ public class ConfigurationUtil {
     public static final String VCA_MODE_PROPERTY = "vca";
     public static final String ALLOW_SSH_CONSOLE_PROPERTY = "allow.browser.ssh.console";
     public static final String ALLOW_HOST_EVENTS_SUBSCRIPTIONS = "allow.host.events.subscription";
+    public static final String ALLOW_CONTAINER_STATS_COLLECTION = "allow.container.stats.collection";
 
     public static final String VCH_MIN_VERSION_INCLUSIVE_PROPERTY = "embedded.mode.vch.min.version.inclusive";
     public static final String VCH_MAX_VERSION_EXCLUSIVE_PROPERTY = "embedded.mode.vch.max.version.exclusive";
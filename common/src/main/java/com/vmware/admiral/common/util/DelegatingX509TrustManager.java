@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2016 VMware, Inc. All Rights Reserved.
+ * Copyright (c) 2016-2018 VMware, Inc. All Rights Reserved.
  *
  * This product is licensed to you under the Apache License, Version 2.0 (the "License").
  * You may not use this product except in compliance with the License.
@@ -13,19 +13,44 @@ package com.vmware.admiral.common.util;
 
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+
+import com.vmware.photon.controller.model.security.util.CertificateUtil;
 
 /**
  * A TrustManager implementation that delegates to a dynamic list of other TrustManagers.
  *
  * The list can be changed in runtime without reloading or replacing the main TrustManager.
+ *
+ * The trusted certificates of the delegates are indexed by fingerprint and subject, so a chain is
+ * only checked against the delegates that hold a possible trust anchor for it instead of against
+ * every delegate. Delegates that do not expose their trusted certificates are always checked.
+ * Chains that have been accepted are remembered until they expire or a delegate is replaced or
+ * removed.
  */
 public class DelegatingX509TrustManager implements X509TrustManager {
+    private static final int MAX_TRUSTED_CHAINS = Integer.getInteger(
+            "com.vmware.admiral.trust.manager.cache.max.chains", 10000);
+
     private final Map<Object, X509TrustManager> delegates = new ConcurrentHashMap<Object, X509TrustManager>();
 
+    private final Map<Object, X509Certificate[]> indexedCertificates = new ConcurrentHashMap<>();
+    private final Map<String, Set<Object>> keysByFingerprint = new ConcurrentHashMap<>();
+    private final Map<X500Principal, Set<Object>> keysBySubject = new ConcurrentHashMap<>();
+    private final Set<Object> unindexedKeys = ConcurrentHashMap.newKeySet();
+
+    /* Accepted chains and the time in millis when the first of their certificates expires */
+    private final Map<String, Long> trustedChains = new ConcurrentHashMap<>();
+    /* Incremented when trust is withdrawn, so that checks in flight do not cache stale results */
+    private volatile long trustGeneration;
+
     @Override
     public void checkClientTrusted(X509Certificate[] chain, String authType)
             throws CertificateException {
@@ -41,24 +66,47 @@ public class DelegatingX509TrustManager implements X509TrustManager {
         if (delegates.isEmpty()) {
             throw new CertificateException("Can't work without any delegates");
         }
+        if (chain == null || chain.length == 0) {
+            throw new CertificateException("Empty certificate chain");
+        }
+
+        String[] fingerprints = new String[chain.length];
+        for (int i = 0; i < chain.length; i++) {
+            fingerprints[i] = CertificateUtil.computeCertificateThumbprint(chain[i]);
+        }
+
+        long generation = trustGeneration;
+        String chainKey = authType + "|" + String.join("|", fingerprints);
+        Long expirationMillis = trustedChains.get(chainKey);
+        if (expirationMillis != null && expirationMillis > System.currentTimeMillis()) {
+            return;
+        }
 
         CertificateException lastException = null;
-        for (X509TrustManager delegate : delegates.values()) {
+        for (Object key : findCandidateKeys(chain, fingerprints)) {
+            X509TrustManager delegate = delegates.get(key);
+            if (delegate == null) {
+                continue;
+            }
             try {
                 delegate.checkServerTrusted(chain, authType);
 
                 // found a delegate that accepts the certificate, so break out
                 // without checking the rest
+                cacheTrustedChain(chainKey, chain, generation);
                 return;
 
             } catch (CertificateException x) {
                 lastException = x;
-                continue;
             }
         }
 
         // if we reached here then none of the delegates accepted the
         // certificate, so throw the last exception
+        if (lastException == null) {
+            lastException = new CertificateException(String.format(
+                    "No trusted certificate found for %s", chain[0].getSubjectX500Principal()));
+        }
         throw lastException;
     }
 
@@ -74,8 +122,18 @@ public class DelegatingX509TrustManager implements X509TrustManager {
      * @param key
      * @param newDelegate
      */
-    public void putDelegate(Object key, X509TrustManager newDelegate) {
-        delegates.put(key, newDelegate);
+    public synchronized void putDelegate(Object key, X509TrustManager newDelegate) {
+        // index first, so that the delegate is found as soon as it is visible
+        X509Certificate[] previousCertificates = indexedCertificates.remove(key);
+        index(key, newDelegate);
+
+        X509TrustManager previous = delegates.put(key, newDelegate);
+        if (previousCertificates != null) {
+            unindex(key, previousCertificates, newDelegate);
+        }
+        if (previous != null) {
+            withdrawTrust();
+        }
     }
 
     /**
@@ -94,8 +152,103 @@ public class DelegatingX509TrustManager implements X509TrustManager {
      * @param key
      * @return
      */
-    public X509TrustManager removeDelegate(Object key) {
-        return delegates.remove(key);
+    public synchronized X509TrustManager removeDelegate(Object key) {
+        X509TrustManager removed = delegates.remove(key);
+        X509Certificate[] certificates = indexedCertificates.remove(key);
+        if (certificates != null) {
+            unindex(key, certificates, null);
+        }
+        unindexedKeys.remove(key);
+        if (removed != null) {
+            withdrawTrust();
+        }
+        return removed;
+    }
+
+    private Set<Object> findCandidateKeys(X509Certificate[] chain, String[] fingerprints) {
+        Set<Object> keys = new LinkedHashSet<>();
+        for (int i = 0; i < chain.length; i++) {
+            // the certificate itself is trusted
+            keys.addAll(keysByFingerprint.getOrDefault(fingerprints[i], Collections.emptySet()));
+            // the certificate is issued by a trusted certificate
+            keys.addAll(keysBySubject.getOrDefault(chain[i].getIssuerX500Principal(),
+                    Collections.emptySet()));
+            keys.addAll(keysBySubject.getOrDefault(chain[i].getSubjectX500Principal(),
+                    Collections.emptySet()));
+        }
+        keys.addAll(unindexedKeys);
+        return keys;
+    }
+
+    private void index(Object key, X509TrustManager delegate) {
+        X509Certificate[] certificates = delegate.getAcceptedIssuers();
+        if (certificates == null || certificates.length == 0) {
+            unindexedKeys.add(key);
+            return;
+        }
+        unindexedKeys.remove(key);
+        for (X509Certificate certificate : certificates) {
+            keysByFingerprint.computeIfAbsent(
+                    CertificateUtil.computeCertificateThumbprint(certificate),
+                    k -> ConcurrentHashMap.newKeySet()).add(key);
+            keysBySubject.computeIfAbsent(certificate.getSubjectX500Principal(),
+                    k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        indexedCertificates.put(key, certificates);
+    }
+
+    /**
+     * Removes the key from the index entries of the given certificates, except for the ones of
+     * the certificates still trusted by the current delegate of the key.
+     */
+    private void unindex(Object key, X509Certificate[] certificates,
+            X509TrustManager currentDelegate) {
+        X509Certificate[] current = currentDelegate != null
+                ? indexedCertificates.get(key) : null;
+        Set<String> currentFingerprints = new LinkedHashSet<>();
+        Set<X500Principal> currentSubjects = new LinkedHashSet<>();
+        if (current != null) {
+            for (X509Certificate certificate : current) {
+                currentFingerprints.add(CertificateUtil.computeCertificateThumbprint(certificate));
+                currentSubjects.add(certificate.getSubjectX500Principal());
+            }
+        }
+
+        for (X509Certificate certificate : certificates) {
+            String fingerprint = CertificateUtil.computeCertificateThumbprint(certificate);
+            if (!currentFingerprints.contains(fingerprint)) {
+                removeIndexEntry(keysByFingerprint, fingerprint, key);
+            }
+            X500Principal subject = certificate.getSubjectX500Principal();
+            if (!currentSubjects.contains(subject)) {
+                removeIndexEntry(keysBySubject, subject, key);
+            }
+        }
+    }
+
+    private static <T> void removeIndexEntry(Map<T, Set<Object>> index, T indexKey, Object key) {
+        index.computeIfPresent(indexKey, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private void withdrawTrust() {
+        trustGeneration++;
+        trustedChains.clear();
+    }
+
+    private void cacheTrustedChain(String chainKey, X509Certificate[] chain, long generation) {
+        long expirationMillis = Long.MAX_VALUE;
+        for (X509Certificate certificate : chain) {
+            expirationMillis = Math.min(expirationMillis, certificate.getNotAfter().getTime());
+        }
+        if (trustedChains.size() >= MAX_TRUSTED_CHAINS) {
+            trustedChains.clear();
+        }
+        if (generation == trustGeneration) {
+            trustedChains.put(chainKey, expirationMillis);
+        }
     }
 
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Hooks run when a host stops, used to drop the node local helpers kept per host, e.g. in static
+ * maps keyed by the host id, which would otherwise outlive the host.
+ *
+ * The host has no stop listeners, so the hooks of a host are run by a single service started on
+ * the first registration and stopped with the host. The service is an implementation detail, it
+ * is not externally reachable and rejects all remote requests.
+ */
+public final class HostStopHooks {
+
+    static final String SELF_LINK = UriUtils.buildUriPath(ManagementUriParts.UTIL,
+            "host-stop-hooks");
+
+    private static final ConcurrentMap<String, HookService> SERVICES = new ConcurrentHashMap<>();
+
+    private HostStopHooks() {
+    }
+
+    /**
+     * Registers a hook to run when the given host stops.
+     *
+     * @return <code>false</code> if the host is stopping and the hook has not been registered
+     */
+    public static boolean register(ServiceHost host, Runnable hook) {
+        if (host.isStopping()) {
+            return false;
+        }
+        SERVICES.computeIfAbsent(host.getId(), (id) -> start(host)).hooks.add(hook);
+        return true;
+    }
+
+    private static HookService start(ServiceHost host) {
+        HookService service = new HookService(host.getId());
+        host.startService(Operation.createPost(UriUtils.buildUri(host, SELF_LINK))
+                .setReferer(host.getUri())
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        host.log(Level.WARNING, "Failed to start %s: %s", SELF_LINK,
+                                Utils.toString(ex));
+                        SERVICES.remove(host.getId(), service);
+                    }
+                }), service);
+        return service;
+    }
+
+    /**
+     * Runs the hooks of its host when stopped with the host.
+     */
+    private static class HookService extends StatelessService {
+        private final String hostId;
+        private final List<Runnable> hooks = new CopyOnWriteArrayList<>();
+
+        HookService(String hostId) {
+            this.hostId = hostId;
+        }
+
+        @Override
+        public void handleRequest(Operation op) {
+            if (op.isRemote()) {
+                op.fail(Operation.STATUS_CODE_FORBIDDEN);
+                return;
+            }
+            super.handleRequest(op);
+        }
+
+        @Override
+        public void handleStop(Operation delete) {
+            SERVICES.remove(hostId, this);
+            for (Runnable hook : hooks) {
+                try {
+                    hook.run();
+                } catch (Exception e) {
+                    logWarning("Host stop hook failed: %s", Utils.toString(e));
+                }
+            }
+            super.handleStop(delete);
+        }
+    }
+}
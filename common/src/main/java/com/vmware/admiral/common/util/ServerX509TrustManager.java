@@ -21,7 +21,9 @@ import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -59,6 +61,17 @@ public class ServerX509TrustManager implements X509TrustManager, Closeable {
             "dcp.management.config.certificates.reload.period.micros",
             TimeUnit.MINUTES.toMicros(5));
 
+    /**
+     * Period of the reloads of all certificates. The reloads in between only load the
+     * certificates updated since the previous load.
+     */
+    protected long fullReloadInterval = Long.getLong(
+            "dcp.management.config.certificates.full.reload.period.micros",
+            TimeUnit.HOURS.toMicros(1));
+
+    /* Overlap of the incremental reloads, tolerating clock differences between the nodes */
+    private static final long RELOAD_OVERLAP_MICROS = TimeUnit.MINUTES.toMicros(1);
+
     protected volatile int reloadCounterThreshold = 10;
     private volatile AtomicInteger reloadCounter = new AtomicInteger(0);
 
@@ -79,6 +92,11 @@ public class ServerX509TrustManager implements X509TrustManager, Closeable {
     /* Last time the document was update in microseconds since UNIX epoch */
     private volatile long documentUpdateTimeMicros;
 
+    private volatile long lastFullReloadMicros;
+
+    /* PEM encoded certificates of the loaded delegates, to skip reloading unchanged ones */
+    private final Map<String, String> loadedCertificates = new ConcurrentHashMap<>();
+
     private AtomicBoolean started = new AtomicBoolean();
 
     public static ServerX509TrustManager create(ServiceHost host) {
@@ -184,6 +202,7 @@ public class ServerX509TrustManager implements X509TrustManager, Closeable {
         }
 
         this.documentUpdateTimeMicros = 0;
+        this.lastFullReloadMicros = Utils.getNowMicrosUtc();
         try {
             verifySubscriptionTargetExists(() -> {
                 try {
@@ -201,8 +220,8 @@ public class ServerX509TrustManager implements X509TrustManager, Closeable {
     }
 
     /**
-     * Periodically reload all certificates in case we missed something.. e.g. replicated
-     * certificates from other xenon nodes
+     * Periodically reload the updated certificates in case we missed something.. e.g. replicated
+     * certificates from other xenon nodes. All certificates are reloaded once in a while.
      */
     private void schedulePeriodicCertificatesReload() {
         long nextDelay = (reloadCounter.get() > reloadCounterThreshold) ?
@@ -215,8 +234,18 @@ public class ServerX509TrustManager implements X509TrustManager, Closeable {
 
         Runnable task = () -> {
             try {
-                host.log(Level.FINE, "Host %s reloading all certificates", host.getPublicUri());
-                documentUpdateTimeMicros = 0;
+                long now = Utils.getNowMicrosUtc();
+                if (now - lastFullReloadMicros >= fullReloadInterval) {
+                    host.log(Level.FINE, "Host %s reloading all certificates",
+                            host.getPublicUri());
+                    documentUpdateTimeMicros = 0;
+                    lastFullReloadMicros = now;
+                } else {
+                    host.log(Level.FINE, "Host %s reloading updated certificates",
+                            host.getPublicUri());
+                    documentUpdateTimeMicros = Math.max(0,
+                            documentUpdateTimeMicros - RELOAD_OVERLAP_MICROS);
+                }
                 loadSslTrustCertServices();
 
                 reloadCounter.updateAndGet((r) -> (r > reloadCounterThreshold) ? r : r + 1);
@@ -310,10 +339,17 @@ public class ServerX509TrustManager implements X509TrustManager, Closeable {
     }
 
     public void putDelegate(String alias, String certificate) {
+        if (certificate != null && certificate.equals(loadedCertificates.get(alias))
+                && this.delegatingTrustManager.getDelegate(alias) != null) {
+            // already trusted, do not rebuild the delegate and its index entries
+            return;
+        }
+
         X509TrustManager delegateTrustManager = (X509TrustManager) CertificateUtil
                 .getTrustManagers(alias, certificate)[0];
 
         this.delegatingTrustManager.putDelegate(alias, delegateTrustManager);
+        loadedCertificates.put(alias, certificate);
     }
 
     public X509TrustManager getDelegate(Object key) {
@@ -361,6 +397,7 @@ public class ServerX509TrustManager implements X509TrustManager, Closeable {
 
         private void deleteCertificate(String alias) {
             self.delegatingTrustManager.removeDelegate(alias);
+            self.loadedCertificates.remove(alias);
             Utils.log(getClass(), "Self Signed Trust Store", Level.FINE,
                     "Certificate with alias %s removed", alias);
 
@@ -13,9 +13,11 @@ package com.vmware.admiral.common.util;
 
 import java.net.URISyntaxException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 
 import com.vmware.photon.controller.model.security.util.CertificateUtil;
@@ -26,10 +28,31 @@ import com.vmware.xenon.common.http.netty.NettyHttpServiceClient;
 /**
  * Factory for ServiceClient instances with support for providing custom SSLContext
  *
+ * The client session cache of the SSLContext is sized for the number of remote endpoints, and the
+ * SSL engines of the connections are created for the remote endpoint, see
+ * {@link TlsSessionResumption}, so that connections to an endpoint seen before resume the TLS
+ * session instead of doing a full handshake.
+ *
  * TODO cache SSLContext/client for a given sslTrust instead of recreating for every request
  */
 public class ServiceClientFactory {
 
+    /** Number of TLS sessions kept for resumption, roughly one per remote endpoint. */
+    static final int SSL_SESSION_CACHE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.service.client.ssl.session.cache.size", 10000);
+
+    /**
+     * Time after which a TLS session can no longer be resumed and the peer certificate is
+     * validated again with a full handshake.
+     */
+    static final int SSL_SESSION_TIMEOUT_SECONDS = Integer.getInteger(
+            "com.vmware.admiral.service.client.ssl.session.timeout.seconds",
+            (int) TimeUnit.HOURS.toSeconds(1));
+
+    /** Number of pooled connections per remote endpoint, 0 for the client default. */
+    private static final int CONNECTION_LIMIT_PER_HOST = Integer.getInteger(
+            "com.vmware.admiral.service.client.connection.limit.per.host", 0);
+
     /**
      * Create a ServiceClient instance using the given TrustManager and KeyManager
      *
@@ -91,8 +114,14 @@ public class ServiceClientFactory {
             if (requestPayloadSizeLimit > 0) {
                 serviceClient.setRequestPayloadSizeLimit(requestPayloadSizeLimit);
             }
+            if (CONNECTION_LIMIT_PER_HOST > 0) {
+                serviceClient.setConnectionLimitPerTag(ServiceClient.CONNECTION_TAG_DEFAULT,
+                        CONNECTION_LIMIT_PER_HOST);
+            }
+            configureSessionCache(sslContext);
             serviceClient.setSSLContext(sslContext);
             serviceClient.start();
+            TlsSessionResumption.install(serviceClient, sslContext);
 
             return serviceClient;
 
@@ -100,4 +129,15 @@ public class ServiceClientFactory {
             throw new RuntimeException("Failed to create ServiceClient", e);
         }
     }
+
+    private static void configureSessionCache(SSLContext sslContext) {
+        if (sslContext == null) {
+            return;
+        }
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SSL_SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SSL_SESSION_TIMEOUT_SECONDS);
+        }
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.ssl.SslHandler;
+
+import com.vmware.xenon.common.ServiceClient;
+
+/**
+ * Enables the resumption of TLS sessions for the connections of a Netty based service client.
+ *
+ * The client creates the SSL engine of a connection without the peer host and port, so JSSE
+ * can not look up a cached session for the peer and every connection does a full handshake.
+ * The channel pipeline hook installed here replaces the SSL handler of a connection, right
+ * before the connection is established, with one whose engine is created for the address
+ * being connected to. The sessions are then cached per peer in the client session context of
+ * the SSL context, and are resumed by later connections to the same peer, including the ones
+ * of other clients sharing the SSL context.
+ */
+final class TlsSessionResumption {
+    private static final Logger logger = Logger.getLogger(TlsSessionResumption.class.getName());
+
+    private static final String XENON_PACKAGE_PREFIX = "com.vmware.xenon.";
+
+    private TlsSessionResumption() {
+    }
+
+    /**
+     * Installs the pipeline hook on the channel pools of the given started client. Returns
+     * whether the client exposes channel pools the hook could be installed on.
+     */
+    static boolean install(ServiceClient serviceClient, SSLContext sslContext) {
+        if (serviceClient == null || sslContext == null) {
+            return false;
+        }
+        // the client doesn't expose its channel pools, they are found by the type of their
+        // bootstrap, which is read when a channel is created
+        List<Bootstrap> bootstraps = new ArrayList<>();
+        for (Object pool : getFieldValues(serviceClient)) {
+            if (pool instanceof Bootstrap) {
+                bootstraps.add((Bootstrap) pool);
+                continue;
+            }
+            if (!pool.getClass().getName().startsWith(XENON_PACKAGE_PREFIX)) {
+                continue;
+            }
+            for (Object value : getFieldValues(pool)) {
+                if (value instanceof Bootstrap) {
+                    bootstraps.add((Bootstrap) value);
+                }
+            }
+        }
+
+        for (Bootstrap bootstrap : bootstraps) {
+            ChannelHandler handler = bootstrap.config().handler();
+            if (handler != null && !(handler instanceof PeerInitializer)) {
+                bootstrap.handler(new PeerInitializer(handler, sslContext));
+            }
+        }
+        if (bootstraps.isEmpty()) {
+            logger.warning(String.format("TLS session resumption is not supported by %s",
+                    serviceClient.getClass().getName()));
+        }
+        return !bootstraps.isEmpty();
+    }
+
+    private static List<Object> getFieldValues(Object target) {
+        List<Object> values = new ArrayList<>();
+        for (Class<?> c = target.getClass(); c != null
+                && c.getName().startsWith(XENON_PACKAGE_PREFIX); c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    Object value = field.get(target);
+                    if (value != null) {
+                        values.add(value);
+                    }
+                } catch (Exception e) {
+                    logger.log(Level.FINE, "Failed to read field " + field.getName(), e);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Initializes a channel with the original handler of the pool, followed by the handler
+     * binding the SSL engine to the peer.
+     */
+    @Sharable
+    private static class PeerInitializer extends ChannelInitializer<Channel> {
+        private final ChannelHandler handler;
+        private final SSLContext sslContext;
+
+        PeerInitializer(ChannelHandler handler, SSLContext sslContext) {
+            this.handler = handler;
+            this.sslContext = sslContext;
+        }
+
+        @Override
+        protected void initChannel(Channel ch) {
+            ch.pipeline().addLast(this.handler);
+            ch.pipeline().addLast(new PeerHandler(this.sslContext));
+        }
+    }
+
+    /**
+     * Replaces the SSL handler of the channel with one for the address being connected to, and
+     * removes itself.
+     */
+    private static class PeerHandler extends ChannelOutboundHandlerAdapter {
+        private final SSLContext sslContext;
+
+        PeerHandler(SSLContext sslContext) {
+            this.sslContext = sslContext;
+        }
+
+        @Override
+        public void connect(ChannelHandlerContext ctx, SocketAddress remoteAddress,
+                SocketAddress localAddress, ChannelPromise promise) throws Exception {
+            ChannelPipeline pipeline = ctx.pipeline();
+            SslHandler sslHandler = pipeline.get(SslHandler.class);
+            if (sslHandler != null && remoteAddress instanceof InetSocketAddress) {
+                InetSocketAddress address = (InetSocketAddress) remoteAddress;
+                SSLEngine unbound = sslHandler.engine();
+                SSLEngine engine = this.sslContext.createSSLEngine(address.getHostString(),
+                        address.getPort());
+                engine.setUseClientMode(unbound.getUseClientMode());
+                engine.setSSLParameters(unbound.getSSLParameters());
+
+                SslHandler peerSslHandler = new SslHandler(engine);
+                peerSslHandler.setHandshakeTimeoutMillis(
+                        sslHandler.getHandshakeTimeoutMillis());
+                pipeline.replace(sslHandler, pipeline.context(sslHandler).name(),
+                        peerSslHandler);
+            }
+            pipeline.remove(this);
+            ctx.connect(remoteAddress, localAddress, promise);
+        }
+    }
+}
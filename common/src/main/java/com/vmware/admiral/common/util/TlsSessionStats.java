@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjDoubleConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+
+/**
+ * Statistics of the TLS connections opened by a set of service clients.
+ *
+ * Requests are counted as they are sent. Handshakes are derived from the client session caches
+ * of the tracked SSL contexts: a session created since the previous sample is a full handshake,
+ * an older session accessed since then is a resumed one. Requests not accounted for by a
+ * handshake were sent over a pooled, already established connection.
+ *
+ * The totals of the counters are reported to the given stats consumer after every sample,
+ * usually the one returned by {@link #hostStatsConsumer(ServiceHost)}, so that the number of the
+ * published stats does not grow with the number of endpoints. The counters of the most recently
+ * used endpoints are kept as well, up to a limit, and logged at FINE level.
+ */
+public class TlsSessionStats {
+    private static final Logger logger = Logger.getLogger(TlsSessionStats.class.getName());
+
+    private static final long SAMPLE_INTERVAL_MILLIS = Long.getLong(
+            "com.vmware.admiral.service.client.tls.stats.sample.interval.millis",
+            TimeUnit.MINUTES.toMillis(1));
+
+    /** Number of endpoints the counters are kept for, the least recently used are dropped. */
+    static final int MAX_ENDPOINTS = Integer.getInteger(
+            "com.vmware.admiral.service.client.tls.stats.max.endpoints", 1000);
+
+    private static final int HTTPS_DEFAULT_PORT = 443;
+
+    private static final String UNKNOWN_ENDPOINT = "unknown";
+
+    // the stats names are formatted with the name of the stats
+    public static final String STAT_NAME_FORMAT_REQUESTS = "tlsRequests-%s";
+    public static final String STAT_NAME_FORMAT_FULL_HANDSHAKES = "tlsFullHandshakes-%s";
+    public static final String STAT_NAME_FORMAT_RESUMED_HANDSHAKES = "tlsResumedHandshakes-%s";
+    public static final String STAT_NAME_FORMAT_REUSED_CONNECTIONS = "tlsReusedConnections-%s";
+
+    /**
+     * Counters of a single endpoint, in the form host:port, or of all endpoints.
+     */
+    public static class EndpointStats {
+        public long requests;
+        public long fullHandshakes;
+        public long resumedHandshakes;
+
+        public long getReusedConnections() {
+            return Math.max(0, requests - fullHandshakes - resumedHandshakes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests: %d, full handshakes: %d, resumed handshakes: %d,"
+                    + " reused connections: %d", requests, fullHandshakes, resumedHandshakes,
+                    getReusedConnections());
+        }
+    }
+
+    private final String name;
+    private final ObjDoubleConsumer<String> statsConsumer;
+    private final List<SSLSessionContext> sessionContexts = new CopyOnWriteArrayList<>();
+    private final EndpointStats totals = new EndpointStats();
+    private final Map<String, EndpointStats> stats;
+    private final ConcurrentMap<String, Long> pendingRequests = new ConcurrentHashMap<>();
+    private final AtomicLong lastSampleMillis = new AtomicLong(System.currentTimeMillis());
+
+    public TlsSessionStats(String name, ObjDoubleConsumer<String> statsConsumer) {
+        this(name, statsConsumer, MAX_ENDPOINTS);
+    }
+
+    TlsSessionStats(String name, ObjDoubleConsumer<String> statsConsumer, int maxEndpoints) {
+        this.name = name;
+        this.statsConsumer = statsConsumer;
+        this.stats = new LinkedHashMap<String, EndpointStats>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Entry<String, EndpointStats> eldest) {
+                return size() > maxEndpoints;
+            }
+        };
+    }
+
+    /**
+     * Returns a stats consumer setting the stats on the management service of the host, since the
+     * clients are not owned by a single service.
+     */
+    public static ObjDoubleConsumer<String> hostStatsConsumer(ServiceHost host) {
+        return (name, value) -> {
+            Service managementService = host.getManagementService();
+            if (managementService != null) {
+                managementService.setStat(name, value);
+            }
+        };
+    }
+
+    /**
+     * Tracks the sessions of the given SSL context, usually the one of a service client.
+     */
+    public void track(SSLContext sslContext) {
+        if (sslContext != null && sslContext.getClientSessionContext() != null) {
+            sessionContexts.add(sslContext.getClientSessionContext());
+        }
+    }
+
+    /**
+     * Counts a request sent to the given URI. Only secure endpoints are counted.
+     */
+    public void recordRequest(URI uri) {
+        if (uri == null || !UriUtils.HTTPS_SCHEME.equalsIgnoreCase(uri.getScheme())) {
+            return;
+        }
+        int port = uri.getPort() != -1 ? uri.getPort() : HTTPS_DEFAULT_PORT;
+        pendingRequests.merge(uri.getHost() + ":" + port, 1L, Long::sum);
+
+        long last = lastSampleMillis.get();
+        long now = System.currentTimeMillis();
+        if (now - last >= SAMPLE_INTERVAL_MILLIS && lastSampleMillis.compareAndSet(last, now)) {
+            sample(last);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the counters of the most recently used endpoints, up to the last
+     * sample.
+     */
+    public synchronized Map<String, EndpointStats> getStats() {
+        Map<String, EndpointStats> snapshot = new LinkedHashMap<>();
+        stats.forEach((endpoint, s) -> snapshot.put(endpoint, copy(s)));
+        return snapshot;
+    }
+
+    /**
+     * Returns a snapshot of the counters of all endpoints, up to the last sample.
+     */
+    public synchronized EndpointStats getTotals() {
+        return copy(totals);
+    }
+
+    synchronized void sample(long sinceMillis) {
+        for (String endpoint : pendingRequests.keySet()) {
+            Long requests = pendingRequests.remove(endpoint);
+            if (requests != null) {
+                getEndpointStats(endpoint).requests += requests;
+                totals.requests += requests;
+            }
+        }
+
+        for (SSLSessionContext sessionContext : sessionContexts) {
+            for (byte[] id : Collections.list(getIds(sessionContext))) {
+                SSLSession session = sessionContext.getSession(id);
+                if (session == null || session.getLastAccessedTime() < sinceMillis) {
+                    continue;
+                }
+                EndpointStats s = getEndpointStats(session.getPeerHost() != null
+                        ? session.getPeerHost() + ":" + session.getPeerPort()
+                        : UNKNOWN_ENDPOINT);
+                if (session.getCreationTime() >= sinceMillis) {
+                    s.fullHandshakes++;
+                    totals.fullHandshakes++;
+                } else {
+                    s.resumedHandshakes++;
+                    totals.resumedHandshakes++;
+                }
+            }
+        }
+
+        publish();
+    }
+
+    private void publish() {
+        statsConsumer.accept(String.format(STAT_NAME_FORMAT_REQUESTS, name), totals.requests);
+        statsConsumer.accept(String.format(STAT_NAME_FORMAT_FULL_HANDSHAKES, name),
+                totals.fullHandshakes);
+        statsConsumer.accept(String.format(STAT_NAME_FORMAT_RESUMED_HANDSHAKES, name),
+                totals.resumedHandshakes);
+        statsConsumer.accept(String.format(STAT_NAME_FORMAT_REUSED_CONNECTIONS, name),
+                totals.getReusedConnections());
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(toString());
+        }
+    }
+
+    private static Enumeration<byte[]> getIds(SSLSessionContext sessionContext) {
+        Enumeration<byte[]> ids = sessionContext.getIds();
+        return ids != null ? ids : Collections.emptyEnumeration();
+    }
+
+    private EndpointStats getEndpointStats(String endpoint) {
+        return stats.computeIfAbsent(endpoint, k -> new EndpointStats());
+    }
+
+    private static EndpointStats copy(EndpointStats s) {
+        EndpointStats copy = new EndpointStats();
+        copy.requests = s.requests;
+        copy.fullHandshakes = s.fullHandshakes;
+        copy.resumedHandshakes = s.resumedHandshakes;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TLS connection stats of ").append(name)
+                .append(" - ").append(getTotals());
+        getStats().forEach((endpoint, s) -> sb.append("\n  ").append(endpoint).append(" - ")
+                .append(s));
+        return sb.toString();
+    }
+}
@@ -456,7 +456,19 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
     }
 
     protected void updateRequestTracker(T state) {
-        updateRequestTracker(state, RETRIES_COUNT);
+        if (state == null || state.requestTrackerLink == null) {
+            updateRequestTracker(state, RETRIES_COUNT);
+            return;
+        }
+        // intermediate updates are coalesced with the updates of the other tasks of the request,
+        // the final one is sent once the coalesced updates sent before it have completed
+        RequestTrackerAggregator.getInstance(getHost())
+                .offer(state.requestTrackerLink, getSelfLink(), fromTask(state))
+                .thenAccept((buffered) -> {
+                    if (!buffered) {
+                        updateRequestTracker(state, RETRIES_COUNT);
+                    }
+                });
     }
 
     protected void updateRequestTracker(T state, int retryCount) {
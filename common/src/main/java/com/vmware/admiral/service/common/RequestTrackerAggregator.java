@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.ObjDoubleConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.admiral.common.util.HostStopHooks;
+import com.vmware.admiral.common.util.TlsSessionStats;
+import com.vmware.admiral.service.common.AbstractTaskStatefulService.TaskStatusState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationContext;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Node local aggregation of the progress updates of the tasks of a request, so that a request
+ * with many tasks does not PATCH its request tracker on every stage change of every task.
+ *
+ * Only the latest update of each task is kept and the pending updates of a request tracker are
+ * sent together, at most once per flush interval. Updates of tasks reaching a final stage are not
+ * buffered: the pending updates of the other tasks are sent first and the caller is expected to
+ * send the final update, with its usual retries, once they have completed, so that the final
+ * update is not overwritten by an earlier one.
+ *
+ * The number of updates and of the actual writes of every request tracker are kept while the
+ * request is active, see {@link #getUpdateCount(String)} and {@link #getWriteCount(String)}, and
+ * logged at FINE level when it is dropped. Their totals over all requests, along with the number
+ * of requests, are published as stats of the management service of the host, so that the writes
+ * per request can be followed without a stat per request.
+ *
+ * There is one aggregator per host, which is dropped when the host stops.
+ */
+public class RequestTrackerAggregator {
+    private static final Logger logger = Logger.getLogger(RequestTrackerAggregator.class.getName());
+
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong(
+            "com.vmware.admiral.service.tasks.request.tracker.flush.interval.millis", 500);
+
+    private static final long IDLE_TRACKER_RETENTION_MILLIS = Long.getLong(
+            "com.vmware.admiral.service.tasks.request.tracker.retention.millis",
+            TimeUnit.MINUTES.toMillis(10));
+
+    public static final String STAT_NAME_REQUESTS = "requestTrackerRequests";
+    public static final String STAT_NAME_UPDATES = "requestTrackerUpdates";
+    public static final String STAT_NAME_WRITES = "requestTrackerWrites";
+
+    private static final ConcurrentMap<String, RequestTrackerAggregator> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final BiFunction<String, TaskStatusState, DeferredResult<Void>> sender;
+    private final BiConsumer<Runnable, Long> scheduler;
+    private final long flushIntervalMillis;
+    private final ObjDoubleConsumer<String> statsConsumer;
+
+    private final ConcurrentMap<String, Tracker> trackers = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    private static class PendingUpdate {
+        final TaskStatusState status;
+        final OperationContext operationContext = OperationContext.getOperationContext();
+
+        PendingUpdate(TaskStatusState status) {
+            this.status = status;
+        }
+    }
+
+    private static class Tracker {
+        // latest pending update per task, in the order the tasks were first updated
+        final Map<String, PendingUpdate> pending = new LinkedHashMap<>();
+        boolean flushScheduled;
+        long lastFlushMillis;
+        long lastActivityMillis = System.currentTimeMillis();
+        long updates;
+        long writes;
+        // updates handed to the sender and not completed yet
+        int sending;
+        // run once there are no updates being sent
+        List<Runnable> waiters = new ArrayList<>();
+    }
+
+    public static RequestTrackerAggregator getInstance(ServiceHost host) {
+        RequestTrackerAggregator aggregator = INSTANCES.get(host.getId());
+        if (aggregator != null) {
+            return aggregator;
+        }
+
+        aggregator = new RequestTrackerAggregator(
+                (trackerLink, status) -> sendUpdate(host, trackerLink, status),
+                (task, delayMillis) -> host.schedule(task, delayMillis, TimeUnit.MILLISECONDS),
+                FLUSH_INTERVAL_MILLIS, TlsSessionStats.hostStatsConsumer(host));
+        if (host.isStopping()) {
+            // not kept, there would be nothing to remove it
+            return aggregator;
+        }
+
+        RequestTrackerAggregator existing = INSTANCES.putIfAbsent(host.getId(), aggregator);
+        if (existing != null) {
+            return existing;
+        }
+        RequestTrackerAggregator created = aggregator;
+        HostStopHooks.register(host, () -> INSTANCES.remove(host.getId(), created));
+        return aggregator;
+    }
+
+    RequestTrackerAggregator(BiFunction<String, TaskStatusState, DeferredResult<Void>> sender,
+            BiConsumer<Runnable, Long> scheduler, long flushIntervalMillis) {
+        this(sender, scheduler, flushIntervalMillis, (name, value) -> {
+        });
+    }
+
+    RequestTrackerAggregator(BiFunction<String, TaskStatusState, DeferredResult<Void>> sender,
+            BiConsumer<Runnable, Long> scheduler, long flushIntervalMillis,
+            ObjDoubleConsumer<String> statsConsumer) {
+        this.sender = sender;
+        this.scheduler = scheduler;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.statsConsumer = statsConsumer;
+    }
+
+    /**
+     * Buffers the update of the given task to the request tracker.
+     *
+     * @return a result completed with <code>false</code> if the update is for a final stage of the
+     *         task and has not been buffered, in which case the caller must send it to the request
+     *         tracker itself. The result is completed once the updates sent before have completed.
+     */
+    public DeferredResult<Boolean> offer(String trackerLink, String taskLink,
+            TaskStatusState status) {
+        boolean terminal = isFinalStage(status);
+        List<PendingUpdate> toSend = null;
+        DeferredResult<Boolean> result = null;
+
+        Tracker tracker = getTracker(trackerLink);
+        synchronized (tracker) {
+            long now = System.currentTimeMillis();
+            tracker.updates++;
+            updates.incrementAndGet();
+            tracker.lastActivityMillis = now;
+
+            if (terminal) {
+                // the final update supersedes the pending one of the same task
+                tracker.pending.remove(taskLink);
+                toSend = drain(tracker, now);
+                tracker.writes++;
+                writes.incrementAndGet();
+                if (tracker.sending > 0) {
+                    result = new DeferredResult<>();
+                    tracker.waiters.add(completeLater(result));
+                }
+            } else {
+                tracker.pending.put(taskLink, new PendingUpdate(status));
+                if (!tracker.flushScheduled) {
+                    long delayMillis = tracker.lastFlushMillis + flushIntervalMillis - now;
+                    if (delayMillis <= 0) {
+                        toSend = drain(tracker, now);
+                    } else {
+                        tracker.flushScheduled = true;
+                        scheduler.accept(() -> flush(trackerLink, tracker), delayMillis);
+                    }
+                }
+            }
+        }
+
+        send(trackerLink, tracker, toSend);
+        publishStats();
+        return result != null ? result : DeferredResult.completed(!terminal);
+    }
+
+    private static Runnable completeLater(DeferredResult<Boolean> result) {
+        // the caller continues in the context it has offered the update in
+        OperationContext operationContext = OperationContext.getOperationContext();
+        return () -> {
+            OperationContext origContext = OperationContext.getOperationContext();
+            try {
+                OperationContext.setFrom(operationContext);
+                result.complete(false);
+            } finally {
+                OperationContext.setFrom(origContext);
+            }
+        };
+    }
+
+    /**
+     * Sends the pending updates of the given request tracker.
+     */
+    public void flush(String trackerLink) {
+        Tracker tracker = trackers.get(trackerLink);
+        if (tracker != null) {
+            flush(trackerLink, tracker);
+        }
+    }
+
+    private void flush(String trackerLink, Tracker tracker) {
+        List<PendingUpdate> toSend;
+        synchronized (tracker) {
+            tracker.flushScheduled = false;
+            toSend = drain(tracker, System.currentTimeMillis());
+        }
+        send(trackerLink, tracker, toSend);
+        publishStats();
+    }
+
+    /**
+     * Publishes the number of requests and the totals of the updates and writes of their request
+     * trackers to the stats consumer.
+     */
+    private void publishStats() {
+        statsConsumer.accept(STAT_NAME_REQUESTS, requests.get());
+        statsConsumer.accept(STAT_NAME_UPDATES, updates.get());
+        statsConsumer.accept(STAT_NAME_WRITES, writes.get());
+    }
+
+    /**
+     * Returns the number of updates of the tasks of the given request tracker.
+     */
+    public long getUpdateCount(String trackerLink) {
+        Tracker tracker = trackers.get(trackerLink);
+        if (tracker == null) {
+            return 0;
+        }
+        synchronized (tracker) {
+            return tracker.updates;
+        }
+    }
+
+    /**
+     * Returns the number of writes to the given request tracker the updates of its tasks have
+     * been coalesced to.
+     */
+    public long getWriteCount(String trackerLink) {
+        Tracker tracker = trackers.get(trackerLink);
+        if (tracker == null) {
+            return 0;
+        }
+        synchronized (tracker) {
+            return tracker.writes;
+        }
+    }
+
+    private Tracker getTracker(String trackerLink) {
+        Tracker tracker = trackers.get(trackerLink);
+        if (tracker != null) {
+            return tracker;
+        }
+        removeIdleTrackers();
+        return trackers.computeIfAbsent(trackerLink, (link) -> {
+            requests.incrementAndGet();
+            return new Tracker();
+        });
+    }
+
+    private void removeIdleTrackers() {
+        long now = System.currentTimeMillis();
+        trackers.entrySet().removeIf((e) -> {
+            Tracker tracker = e.getValue();
+            synchronized (tracker) {
+                boolean idle = tracker.pending.isEmpty() && !tracker.flushScheduled
+                        && tracker.sending == 0
+                        && now - tracker.lastActivityMillis > IDLE_TRACKER_RETENTION_MILLIS;
+                if (idle && logger.isLoggable(Level.FINE)) {
+                    logger.fine(String.format("Request tracker %s: %d updates, %d writes",
+                            e.getKey(), tracker.updates, tracker.writes));
+                }
+                return idle;
+            }
+        });
+    }
+
+    private List<PendingUpdate> drain(Tracker tracker, long now) {
+        if (tracker.pending.isEmpty()) {
+            return null;
+        }
+        List<PendingUpdate> drained = new ArrayList<>(tracker.pending.values());
+        tracker.pending.clear();
+        tracker.lastFlushMillis = now;
+        tracker.writes += drained.size();
+        writes.addAndGet(drained.size());
+        tracker.sending += drained.size();
+        return drained;
+    }
+
+    private void send(String trackerLink, Tracker tracker, List<PendingUpdate> updates) {
+        if (updates == null) {
+            return;
+        }
+        OperationContext origContext = OperationContext.getOperationContext();
+        try {
+            for (PendingUpdate update : updates) {
+                OperationContext.setFrom(update.operationContext);
+                sender.apply(trackerLink, update.status)
+                        .whenComplete((ignore, ex) -> onSent(tracker));
+            }
+        } finally {
+            OperationContext.setFrom(origContext);
+        }
+    }
+
+    private static void onSent(Tracker tracker) {
+        List<Runnable> waiters;
+        synchronized (tracker) {
+            if (--tracker.sending > 0 || tracker.waiters.isEmpty()) {
+                return;
+            }
+            waiters = tracker.waiters;
+            tracker.waiters = new ArrayList<>();
+        }
+        waiters.forEach(Runnable::run);
+    }
+
+    private static boolean isFinalStage(TaskStatusState status) {
+        if (status.taskInfo == null || status.taskInfo.stage == null) {
+            return false;
+        }
+        return status.taskInfo.stage == TaskStage.FINISHED
+                || status.taskInfo.stage == TaskStage.FAILED
+                || status.taskInfo.stage == TaskStage.CANCELLED;
+    }
+
+    private static DeferredResult<Void> sendUpdate(ServiceHost host, String trackerLink,
+            TaskStatusState status) {
+        DeferredResult<Void> result = new DeferredResult<>();
+        host.sendRequest(Operation.createPatch(host, trackerLink)
+                .setBody(status)
+                .setReferer(host.getUri())
+                .setCompletion((o, ex) -> {
+                    // intermediate progress, superseded by the next update of the task, so it
+                    // is not retried
+                    if (ex instanceof CancellationException) {
+                        host.log(Level.FINE, "CancellationException: Failed to update request"
+                                + " tracker: %s", trackerLink);
+                    } else if (ex != null) {
+                        host.log(Level.WARNING, "Failed to update request tracker: %s. Error: %s",
+                                trackerLink, Utils.toString(ex));
+                    }
+                    result.complete(null);
+                }));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[trackers: %d]", getClass().getSimpleName(), trackers.size());
+    }
+}
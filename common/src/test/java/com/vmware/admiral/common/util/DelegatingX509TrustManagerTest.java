@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.Test;
+
+public class DelegatingX509TrustManagerTest {
+
+    @Test
+    public void testOnlyCandidateDelegatesAreChecked() throws Exception {
+        X509Certificate[] untrusted = getCertificates("/certs/untrusted-server.crt");
+        X509Certificate[] trusted = getCertificates("/certs/trusted_server.crt");
+
+        DelegatingX509TrustManager trustManager = new DelegatingX509TrustManager();
+        CountingTrustManager unrelated = new CountingTrustManager(trusted);
+        CountingTrustManager matching = new CountingTrustManager(untrusted);
+        trustManager.putDelegate("unrelated", unrelated);
+        trustManager.putDelegate("matching", matching);
+
+        trustManager.checkServerTrusted(untrusted, "RSA");
+
+        assertEquals(0, unrelated.checks.get());
+        assertEquals(1, matching.checks.get());
+    }
+
+    @Test
+    public void testUnindexedDelegatesAreAlwaysChecked() throws Exception {
+        X509Certificate[] untrusted = getCertificates("/certs/untrusted-server.crt");
+
+        DelegatingX509TrustManager trustManager = new DelegatingX509TrustManager();
+        CountingTrustManager unindexed = new CountingTrustManager(new X509Certificate[0]);
+        trustManager.putDelegate("unindexed", unindexed);
+
+        trustManager.checkServerTrusted(untrusted, "RSA");
+
+        assertEquals(1, unindexed.checks.get());
+    }
+
+    @Test
+    public void testTrustedChainIsCachedUntilDelegateIsRemoved() throws Exception {
+        X509Certificate[] untrusted = getCertificates("/certs/untrusted-server.crt");
+        X509Certificate[] trusted = getCertificates("/certs/trusted_server.crt");
+
+        DelegatingX509TrustManager trustManager = new DelegatingX509TrustManager();
+        CountingTrustManager matching = new CountingTrustManager(untrusted);
+        trustManager.putDelegate("matching", matching);
+        trustManager.putDelegate("other", new CountingTrustManager(trusted));
+
+        trustManager.checkServerTrusted(untrusted, "RSA");
+        trustManager.checkServerTrusted(untrusted, "RSA");
+        assertEquals(1, matching.checks.get());
+
+        trustManager.removeDelegate("matching");
+        try {
+            trustManager.checkServerTrusted(untrusted, "RSA");
+            fail("Should not trust the certificate of a removed delegate");
+        } catch (CertificateException ignored) {
+        }
+    }
+
+    private static X509Certificate[] getCertificates(String filename) throws Exception {
+        URI customCertificate = DelegatingX509TrustManagerTest.class.getResource(filename).toURI();
+        try (InputStream is = new FileInputStream(customCertificate.getPath())) {
+            CertificateFactory factory = CertificateFactory.getInstance("X.509");
+            Collection<? extends Certificate> certificate = factory.generateCertificates(is);
+            return certificate.toArray(new X509Certificate[] {});
+        }
+    }
+
+    /**
+     * Trust manager accepting any chain and counting the checks.
+     */
+    private static class CountingTrustManager implements X509TrustManager {
+        private final X509Certificate[] acceptedIssuers;
+        private final AtomicInteger checks = new AtomicInteger();
+
+        CountingTrustManager(X509Certificate[] acceptedIssuers) {
+            this.acceptedIssuers = acceptedIssuers;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            checks.incrementAndGet();
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return acceptedIssuers;
+        }
+    }
+}
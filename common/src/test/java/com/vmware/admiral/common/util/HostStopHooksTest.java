@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestRequestSender.FailureResponse;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class HostStopHooksTest {
+
+    private VerificationHost host;
+
+    @Before
+    public void setUp() throws Throwable {
+        host = VerificationHost.create(0);
+        host.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (host != null) {
+            host.tearDown();
+        }
+    }
+
+    @Test
+    public void testHooksRunWhenHostStops() throws Throwable {
+        AtomicInteger runs = new AtomicInteger();
+        assertTrue(HostStopHooks.register(host, runs::incrementAndGet));
+        assertTrue(HostStopHooks.register(host, runs::incrementAndGet));
+        host.waitForServiceAvailable(HostStopHooks.SELF_LINK);
+
+        VerificationHost stopped = host;
+        host = null;
+        stopped.tearDown();
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testRemoteRequestsAreRejected() throws Throwable {
+        HostStopHooks.register(host, () -> {
+        });
+        host.waitForServiceAvailable(HostStopHooks.SELF_LINK);
+
+        FailureResponse failure = host.getTestRequestSender().sendAndWaitFailure(
+                Operation.createGet(UriUtils.buildUri(host, HostStopHooks.SELF_LINK))
+                        .forceRemote());
+        assertEquals(Operation.STATUS_CODE_FORBIDDEN, failure.op.getStatusCode());
+    }
+}
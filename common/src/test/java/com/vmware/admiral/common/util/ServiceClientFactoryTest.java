@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsExchange;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.security.util.CertificateUtil;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceClient;
+
+public class ServiceClientFactoryTest {
+
+    @Test
+    public void testSessionCacheIsSized() throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, null, null);
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        sessionContext.setSessionCacheSize(1);
+        sessionContext.setSessionTimeout(1);
+
+        ServiceClient serviceClient = ServiceClientFactory.createServiceClient(sslContext);
+        try {
+            assertEquals(ServiceClientFactory.SSL_SESSION_CACHE_SIZE,
+                    sessionContext.getSessionCacheSize());
+            assertEquals(ServiceClientFactory.SSL_SESSION_TIMEOUT_SECONDS,
+                    sessionContext.getSessionTimeout());
+        } finally {
+            serviceClient.stop();
+        }
+    }
+
+    @Test
+    public void testSessionIsResumedByNewConnection() throws Exception {
+        SSLContext serverContext = SSLContext.getInstance("TLSv1.2");
+        serverContext.init(CertificateUtil.getKeyManagers("server",
+                FileUtil.getResourceAsString("/certs/ca-key.pem", true),
+                FileUtil.getResourceAsString("/certs/ca.pem", true)), null, null);
+
+        List<byte[]> sessionIds = new CopyOnWriteArrayList<>();
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        server.createContext("/", exchange -> {
+            sessionIds.add(((HttpsExchange) exchange).getSSLSession().getId());
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        SSLContext clientContext = SSLContext.getInstance("TLSv1.2");
+        clientContext.init(null, new TrustManager[] { new TrustAllManager() }, null);
+        ServiceClient serviceClient = ServiceClientFactory.createServiceClient(clientContext);
+        try {
+            URI uri = URI.create("https://localhost:" + server.getAddress().getPort() + "/");
+            send(serviceClient, Operation.createGet(uri));
+            // a different connection tag forces a new connection to the same endpoint
+            send(serviceClient, Operation.createGet(uri).setConnectionTag("resumption"));
+
+            assertEquals(2, sessionIds.size());
+            assertArrayEquals(sessionIds.get(0), sessionIds.get(1));
+        } finally {
+            serviceClient.stop();
+            server.stop(0);
+        }
+    }
+
+    private static void send(ServiceClient serviceClient, Operation op) throws Exception {
+        CompletableFuture<Operation> result = new CompletableFuture<>();
+        serviceClient.send(op.setReferer(URI.create("http://localhost/test"))
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        result.complete(o);
+                    }
+                }));
+        result.get(30, TimeUnit.SECONDS);
+    }
+
+    private static class TrustAllManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
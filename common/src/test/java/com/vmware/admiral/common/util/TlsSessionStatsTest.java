@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TlsSessionStatsTest {
+    private static final String NAME = "test";
+
+    @Test
+    public void testTotalsArePublishedForSecureEndpoints() {
+        Map<String, Double> published = new HashMap<>();
+        TlsSessionStats stats = new TlsSessionStats(NAME, published::put);
+
+        stats.recordRequest(URI.create("https://registry.local:5000/v2/"));
+        stats.recordRequest(URI.create("https://registry.local:5000/v2/_catalog"));
+        stats.recordRequest(URI.create("https://docker.local/info"));
+        stats.recordRequest(URI.create("http://docker.local:2375/info"));
+        stats.sample(0);
+
+        // four counters for all https endpoints
+        assertEquals(4, published.size());
+        assertEquals(3, published.get(String.format(TlsSessionStats.STAT_NAME_FORMAT_REQUESTS,
+                NAME)), 0);
+        assertEquals(3, published.get(String.format(
+                TlsSessionStats.STAT_NAME_FORMAT_REUSED_CONNECTIONS, NAME)), 0);
+        assertEquals(0, published.get(String.format(
+                TlsSessionStats.STAT_NAME_FORMAT_FULL_HANDSHAKES, NAME)), 0);
+        assertEquals(2, stats.getStats().get("registry.local:5000").requests);
+        assertEquals(1, stats.getStats().get("docker.local:443").requests);
+
+        // the counters are cumulative
+        stats.recordRequest(URI.create("https://docker.local/info"));
+        stats.sample(0);
+        assertEquals(4, published.get(String.format(TlsSessionStats.STAT_NAME_FORMAT_REQUESTS,
+                NAME)), 0);
+        assertEquals(2, stats.getStats().get("docker.local:443").requests);
+    }
+
+    @Test
+    public void testEndpointsAreBounded() {
+        TlsSessionStats stats = new TlsSessionStats(NAME, (name, value) -> { }, 2);
+
+        stats.recordRequest(URI.create("https://a.local/"));
+        stats.recordRequest(URI.create("https://b.local/"));
+        stats.sample(0);
+        stats.recordRequest(URI.create("https://a.local/"));
+        stats.recordRequest(URI.create("https://c.local/"));
+        stats.sample(0);
+
+        // the least recently used endpoint is dropped, but still counted in the totals
+        assertEquals(new HashSet<>(Arrays.asList("a.local:443", "c.local:443")),
+                stats.getStats().keySet());
+        assertEquals(4, stats.getTotals().requests);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.AbstractTaskStatefulService.TaskStatusState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.TaskState.TaskStage;
+
+public class RequestTrackerAggregatorTest {
+    private static final String TRACKER_LINK = "/request-status/test-request";
+    private static final String TASK_LINK = "/tasks/test-task";
+    private static final String OTHER_TASK_LINK = "/tasks/other-task";
+
+    private List<TaskStatusState> sent;
+    private List<DeferredResult<Void>> inFlight;
+    private List<Runnable> scheduled;
+    private RequestTrackerAggregator aggregator;
+
+    @Before
+    public void setup() {
+        sent = new ArrayList<>();
+        inFlight = new ArrayList<>();
+        scheduled = new ArrayList<>();
+        aggregator = new RequestTrackerAggregator((trackerLink, status) -> {
+            sent.add(status);
+            DeferredResult<Void> result = new DeferredResult<>();
+            inFlight.add(result);
+            return result;
+        }, (task, delayMillis) -> scheduled.add(task), TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Test
+    public void testUpdatesAreCoalescedPerTask() {
+        assertTrue(offer(TASK_LINK, TaskStage.STARTED, 10));
+        assertEquals(1, sent.size());
+
+        assertTrue(offer(TASK_LINK, TaskStage.STARTED, 20));
+        assertTrue(offer(TASK_LINK, TaskStage.STARTED, 30));
+        assertTrue(offer(OTHER_TASK_LINK, TaskStage.STARTED, 10));
+        assertEquals(1, sent.size());
+        assertEquals(1, scheduled.size());
+
+        scheduled.get(0).run();
+        assertEquals(3, sent.size());
+        assertEquals(Integer.valueOf(30), sent.get(1).progress);
+        assertEquals(Integer.valueOf(10), sent.get(2).progress);
+
+        assertEquals(4, aggregator.getUpdateCount(TRACKER_LINK));
+        assertEquals(3, aggregator.getWriteCount(TRACKER_LINK));
+    }
+
+    @Test
+    public void testStatsArePublished() {
+        Map<String, Double> published = new HashMap<>();
+        aggregator = new RequestTrackerAggregator(
+                (trackerLink, status) -> DeferredResult.completed(null),
+                (task, delayMillis) -> scheduled.add(task), TimeUnit.HOURS.toMillis(1),
+                published::put);
+
+        offer(TASK_LINK, TaskStage.STARTED, 10);
+        offer(TASK_LINK, TaskStage.STARTED, 20);
+        offer(TASK_LINK, TaskStage.FINISHED, 100);
+        aggregator.offer("/request-status/other-request", TASK_LINK,
+                createStatus(TaskStage.STARTED, 10));
+
+        assertEquals(2, published.get(RequestTrackerAggregator.STAT_NAME_REQUESTS), 0);
+        assertEquals(4, published.get(RequestTrackerAggregator.STAT_NAME_UPDATES), 0);
+        // the first update of each request and the final update are written
+        assertEquals(3, published.get(RequestTrackerAggregator.STAT_NAME_WRITES), 0);
+    }
+
+    @Test
+    public void testFinalUpdateIsNotBuffered() {
+        offer(TASK_LINK, TaskStage.STARTED, 10);
+        offer(TASK_LINK, TaskStage.STARTED, 50);
+        offer(OTHER_TASK_LINK, TaskStage.STARTED, 20);
+        assertEquals(1, sent.size());
+        completeInFlight();
+
+        // the pending update of the other task is sent, the one of the finished task is dropped
+        DeferredResult<Boolean> finished = aggregator.offer(TRACKER_LINK, TASK_LINK,
+                createStatus(TaskStage.FINISHED, 100));
+        assertEquals(2, sent.size());
+        assertEquals(Integer.valueOf(20), sent.get(1).progress);
+        completeInFlight();
+        assertFalse(getNow(finished));
+
+        assertFalse(offer(OTHER_TASK_LINK, TaskStage.FAILED, 100));
+        assertEquals(2, sent.size());
+
+        // nothing left for the scheduled flush
+        scheduled.get(0).run();
+        assertEquals(2, sent.size());
+        assertEquals(5, aggregator.getUpdateCount(TRACKER_LINK));
+        assertEquals(4, aggregator.getWriteCount(TRACKER_LINK));
+    }
+
+    @Test
+    public void testFinalUpdateWaitsForTheSentUpdates() {
+        offer(TASK_LINK, TaskStage.STARTED, 10);
+        offer(TASK_LINK, TaskStage.STARTED, 50);
+        offer(OTHER_TASK_LINK, TaskStage.STARTED, 20);
+        assertEquals(1, sent.size());
+
+        // neither the first update nor the drained one of the other task have completed
+        DeferredResult<Boolean> finished = aggregator.offer(TRACKER_LINK, TASK_LINK,
+                createStatus(TaskStage.FINISHED, 100));
+        assertEquals(2, sent.size());
+        assertEquals(2, inFlight.size());
+        assertFalse(isDone(finished));
+
+        inFlight.get(1).complete(null);
+        assertFalse(isDone(finished));
+
+        // a failed update does not hold back the final one
+        inFlight.get(0).fail(new IllegalStateException("expected"));
+        assertTrue(isDone(finished));
+        assertFalse(getNow(finished));
+    }
+
+    private boolean offer(String taskLink, TaskStage stage, int progress) {
+        return getNow(aggregator.offer(TRACKER_LINK, taskLink, createStatus(stage, progress)));
+    }
+
+    private void completeInFlight() {
+        inFlight.forEach((result) -> result.complete(null));
+        inFlight.clear();
+    }
+
+    private static boolean isDone(DeferredResult<Boolean> result) {
+        return result.toCompletionStage().toCompletableFuture().isDone();
+    }
+
+    private static boolean getNow(DeferredResult<Boolean> result) {
+        assertTrue(isDone(result));
+        return result.toCompletionStage().toCompletableFuture().join();
+    }
+
+    private static TaskStatusState createStatus(TaskStage stage, int progress) {
+        TaskStatusState status = new TaskStatusState();
+        status.taskInfo = new TaskState();
+        status.taskInfo.stage = stage;
+        status.progress = progress;
+        return status;
+    }
+}
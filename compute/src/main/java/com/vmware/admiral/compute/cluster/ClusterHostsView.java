@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.ComputeConstants;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState.ResourcePoolProperty;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+
+/**
+ * Node local view of the container hosts of the placement zones, from which the clusters are
+ * built instead of querying the hosts of every placement zone separately.
+ *
+ * The view is validated on every read with a single query selecting only the fields of the hosts
+ * of the requested zones the clusters are built from, so it reflects host additions and removals
+ * right away. Only the hosts that are new or have changed any of these fields since they were
+ * last seen, see {@link ClusterUtils#getClusterDtoFields(ComputeState)}, are then retrieved in
+ * full, with one more query. Changes of the rest of the fields, e.g. the version bumped by data
+ * collection, do not cause a retrieval, so the rest of the fields of a returned host may be
+ * stale. The queries run in the context of the caller, so the hosts the caller is not authorized
+ * to see are not returned.
+ *
+ * The hosts of the requested zones that are no longer returned are dropped from the view, and
+ * the view is bounded by {@link #MAX_HOSTS} beyond that.
+ *
+ * Elastic placement zones select their hosts with arbitrary queries and are not supported, see
+ * {@link #isSupported(ResourcePoolState)}. Returned host states are shared and must not be
+ * modified.
+ */
+public class ClusterHostsView {
+
+    /** Number of hosts kept by the view, beyond which the hosts not just read are dropped. */
+    static final int MAX_HOSTS = Integer.getInteger(
+            "com.vmware.admiral.compute.cluster.hosts.view.max.hosts", 10000);
+
+    private static final ConcurrentMap<String, ClusterHostsView> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final ServiceHost host;
+    private final ConcurrentMap<String, ComputeState> hostsByLink = new ConcurrentHashMap<>();
+
+    public static ClusterHostsView getInstance(ServiceHost host) {
+        return INSTANCES.computeIfAbsent(host.getId(), (id) -> new ClusterHostsView(host));
+    }
+
+    ClusterHostsView(ServiceHost host) {
+        this.host = host;
+    }
+
+    /**
+     * Whether the hosts of the given placement zone can be retrieved from the view.
+     */
+    public static boolean isSupported(ResourcePoolState resourcePoolState) {
+        return resourcePoolState != null && resourcePoolState.documentSelfLink != null
+                && (resourcePoolState.properties == null
+                        || !resourcePoolState.properties.contains(ResourcePoolProperty.ELASTIC));
+    }
+
+    /**
+     * Retrieves the container hosts of the given placement zones, optionally restricted to the
+     * hosts of a project, in the order of the index. Every requested placement zone is present in
+     * the result.
+     */
+    public DeferredResult<Map<String, List<ComputeState>>> getHostsWithinPlacementZones(
+            Collection<String> resourcePoolLinks, String projectLink) {
+        Map<String, List<ComputeState>> result = new LinkedHashMap<>();
+        resourcePoolLinks.forEach((link) -> result.put(link, new ArrayList<>()));
+        if (resourcePoolLinks.isEmpty()) {
+            return DeferredResult.completed(result);
+        }
+
+        List<ComputeState> current = new ArrayList<>();
+        return queryClusterDtoFields(resourcePoolLinks, projectLink, current)
+                .thenCompose((ignore) -> {
+                    List<String> staleLinks = new ArrayList<>();
+                    for (ComputeState selected : current) {
+                        ComputeState cached = hostsByLink.get(selected.documentSelfLink);
+                        if (cached == null || !ClusterUtils.getClusterDtoFields(cached)
+                                .equals(ClusterUtils.getClusterDtoFields(selected))) {
+                            staleLinks.add(selected.documentSelfLink);
+                        }
+                    }
+                    return retrieveHosts(staleLinks);
+                })
+                .thenApply((ignore) -> {
+                    Set<String> currentLinks = new HashSet<>();
+                    for (ComputeState selected : current) {
+                        currentLinks.add(selected.documentSelfLink);
+                        ComputeState computeState = hostsByLink.get(selected.documentSelfLink);
+                        List<ComputeState> hosts = computeState != null
+                                ? result.get(computeState.resourcePoolLink) : null;
+                        if (hosts != null) {
+                            hosts.add(computeState);
+                        }
+                    }
+                    // hosts removed from the zones, from the project or deleted
+                    hostsByLink.values().removeIf((cs) -> !currentLinks.contains(
+                            cs.documentSelfLink) && result.containsKey(cs.resourcePoolLink)
+                            && isInProject(cs, projectLink));
+                    if (hostsByLink.size() > MAX_HOSTS) {
+                        hostsByLink.keySet().retainAll(currentLinks);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Returns the number of the hosts kept by the view.
+     */
+    int size() {
+        return hostsByLink.size();
+    }
+
+    private static boolean isInProject(ComputeState computeState, String projectLink) {
+        return projectLink == null || projectLink.isEmpty()
+                || (computeState.tenantLinks != null
+                        && computeState.tenantLinks.contains(projectLink));
+    }
+
+    private DeferredResult<Void> queryClusterDtoFields(Collection<String> resourcePoolLinks,
+            String projectLink, List<ComputeState> selected) {
+        Query.Builder queryBuilder = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class)
+                .addInClause(ComputeState.FIELD_NAME_RESOURCE_POOL_LINK, resourcePoolLinks)
+                .addCompositeFieldClause(ComputeState.FIELD_NAME_CUSTOM_PROPERTIES,
+                        ComputeConstants.COMPUTE_CONTAINER_HOST_PROP_NAME, "true");
+        if (projectLink != null && !projectLink.isEmpty()) {
+            queryBuilder.addInCollectionItemClause(ComputeState.FIELD_NAME_TENANT_LINKS,
+                    Collections.singletonList(projectLink), Occurance.MUST_OCCUR);
+        }
+
+        QueryTask q = QueryTask.Builder.create()
+                .setQuery(queryBuilder.build())
+                .addOption(QueryOption.EXPAND_SELECTED_FIELDS)
+                .addSelectTerm(ServiceDocument.FIELD_NAME_SELF_LINK)
+                .addSelectTerm(ComputeState.FIELD_NAME_RESOURCE_POOL_LINK)
+                .addSelectTerm(ComputeState.FIELD_NAME_NAME)
+                .addSelectTerm(ComputeState.FIELD_NAME_ADDRESS)
+                .addSelectTerm(ComputeState.FIELD_NAME_POWER_STATE)
+                .addSelectTerm(ComputeState.FIELD_NAME_CUSTOM_PROPERTIES)
+                .build();
+        q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
+
+        return query(q, selected);
+    }
+
+    private DeferredResult<Void> retrieveHosts(List<String> hostLinks) {
+        if (hostLinks.isEmpty()) {
+            return DeferredResult.completed(null);
+        }
+
+        QueryTask q = QueryUtil.buildQuery(ComputeState.class, true, Query.Builder.create()
+                .addInClause(ServiceDocument.FIELD_NAME_SELF_LINK, hostLinks)
+                .build());
+        QueryUtil.addExpandOption(q);
+        q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
+
+        List<ComputeState> hosts = new ArrayList<>();
+        return query(q, hosts).thenAccept((ignore) -> {
+            for (ComputeState computeState : hosts) {
+                hostsByLink.put(computeState.documentSelfLink, computeState);
+            }
+        });
+    }
+
+    private DeferredResult<Void> query(QueryTask q, List<ComputeState> results) {
+        DeferredResult<Void> deferredResult = new DeferredResult<>();
+        new ServiceDocumentQuery<>(host, ComputeState.class).query(q, (r) -> {
+            if (r.hasException()) {
+                deferredResult.fail(r.getException());
+            } else if (r.hasResult()) {
+                results.add(r.getResult());
+            } else {
+                deferredResult.complete(null);
+            }
+        });
+        return deferredResult;
+    }
+}
@@ -524,17 +524,45 @@ public class ClusterService extends StatelessService {
         Map<String, ElasticPlacementZoneConfigurationState> ePZstates = QueryUtil
                 .extractQueryResult(
                         queryResult, ElasticPlacementZoneConfigurationState.class);
-        List<DeferredResult<ClusterDto>> clusterDtoList = ePZstates.keySet().stream()
-                .map(key -> ClusterUtils.getHostsWithinPlacementZone(ePZstates.get(key)
-                                .resourcePoolState.documentSelfLink, projectLink, get, getHost())
-                        .thenApply(computeStates -> {
-                            return ClusterUtils.placementZoneAndItsHostsToClusterDto(
-                                    ePZstates.get(key).resourcePoolState, computeStates);
-                        }))
+
+        // the hosts of the zones supported by the view are retrieved together, the hosts of the
+        // rest of the zones are queried one zone at a time
+        boolean hostsFilter = hasHostsFilter(get);
+        List<String> viewZoneLinks = ePZstates.values().stream()
+                .map(ePZState -> ePZState.resourcePoolState)
+                .filter(rpState -> !hostsFilter && ClusterHostsView.isSupported(rpState))
+                .map(rpState -> rpState.documentSelfLink)
+                .collect(Collectors.toList());
+        DeferredResult<Map<String, List<ComputeState>>> viewHosts = ClusterHostsView
+                .getInstance(getHost())
+                .getHostsWithinPlacementZones(viewZoneLinks, projectLink);
+
+        List<DeferredResult<ClusterDto>> clusterDtoList = ePZstates.values().stream()
+                .map(ePZState -> ePZState.resourcePoolState)
+                .map(rpState -> {
+                    DeferredResult<List<ComputeState>> hosts = viewZoneLinks
+                            .contains(rpState.documentSelfLink)
+                                    ? viewHosts.thenApply(
+                                            hostsByZone -> hostsByZone.get(
+                                                    rpState.documentSelfLink))
+                                    : ClusterUtils.getHostsWithinPlacementZone(
+                                            rpState.documentSelfLink, projectLink, get,
+                                            getHost());
+                    return hosts.thenApply(computeStates -> {
+                        return ClusterUtils.placementZoneAndItsHostsToClusterDto(
+                                rpState, computeStates);
+                    });
+                })
                 .collect(Collectors.toList());
         return DeferredResult.allOf(clusterDtoList);
     }
 
+    private static boolean hasHostsFilter(Operation get) {
+        Map<String, String> query = UriUtils.parseUriQueryParams(get.getUri());
+        return query.containsKey(HOSTS_FILTER_QUERY_PARAM)
+                || query.containsKey(CUSTOM_OPTIONS_QUERY_PARAM);
+    }
+
     private DeferredResult<ClusterDto> getInfoFromHostsWithinOnePlacementZone(
             String projectLink, ElasticPlacementZoneConfigurationState queryResult) {
 
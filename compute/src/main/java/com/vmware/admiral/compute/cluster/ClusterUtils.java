@@ -18,6 +18,7 @@ import static com.vmware.admiral.compute.ContainerHostUtil.isVicHost;
 import static com.vmware.admiral.compute.cluster.ClusterService.ENFORCED_CLUSTER_STATUS_PROP;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -65,6 +66,15 @@ import com.vmware.xenon.services.common.ServiceUriPaths;
 
 public class ClusterUtils {
 
+    /** The custom properties of a docker host the cluster is built from. */
+    private static final List<String> CLUSTER_DTO_HOST_PROPS = Arrays.asList(
+            ContainerHostService.DOCKER_HOST_NUM_CORES_PROP_NAME,
+            ContainerHostService.HOST_PUBLIC_ADDRESS_PROP_NAME,
+            ContainerHostService.NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME,
+            ContainerHostService.NUMBER_OF_SYSTEM_CONTAINERS_PROP_NAME,
+            PKS_CLUSTER_STATUS_RESIZING_PROP_NAME,
+            PKS_CLUSTER_STATUS_REMOVING_PROP_NAME);
+
     public static ClusterStatus computeToClusterStatus(ComputeState computeState) {
         switch (computeState.powerState) {
         case ON:
@@ -363,6 +373,30 @@ public class ClusterUtils {
         return ePZClusterDto;
     }
 
+    /**
+     * Returns the fields of a host {@link #placementZoneAndItsHostsToClusterDto} builds the
+     * cluster from, to detect the changes of a host affecting its cluster. The fields of the
+     * document, e.g. its version, which data collection bumps, are not included. VCH and
+     * Kubernetes hosts are returned in full in the cluster, so all their custom properties are
+     * included.
+     */
+    static List<Object> getClusterDtoFields(ComputeState computeState) {
+        List<Object> fields = new ArrayList<>();
+        fields.add(computeState.resourcePoolLink);
+        fields.add(computeState.name);
+        fields.add(computeState.address);
+        fields.add(computeState.powerState);
+        if (isVicHost(computeState) || isKubernetesHost(computeState)) {
+            fields.add(computeState.customProperties);
+        } else {
+            for (String key : CLUSTER_DTO_HOST_PROPS) {
+                fields.add(computeState.customProperties != null
+                        ? computeState.customProperties.get(key) : null);
+            }
+        }
+        return fields;
+    }
+
     public static boolean hasPlacementZone(ComputeState hostState) {
         return hostState != null
                 && hostState.resourcePoolLink != null
@@ -610,7 +610,7 @@ public class ContainerDescriptionService extends StatefulService {
 
         logFine("Performing maintenance for: %s", getUri());
 
-        HealthChecker.getInstance().doHealthCheck(getHost(), getSelfLink());
+        HealthChecker.getInstance().scheduleHealthCheck(getHost(), getSelfLink());
 
         post.complete();
     }
@@ -626,6 +626,7 @@ public class ContainerDescriptionService extends StatefulService {
         try {
             validateState(putBody);
             this.setState(put, putBody);
+            HealthConfigCache.getInstance(getHost()).invalidate(getSelfLink());
             put.setBody(putBody).complete();
         } catch (Throwable e) {
             put.fail(e);
@@ -665,6 +666,8 @@ public class ContainerDescriptionService extends StatefulService {
         if (currentSignature.equals(newSignature)) {
             currentState = null;
             patch.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
+        } else if (patchBody.healthConfig != null) {
+            HealthConfigCache.getInstance(getHost()).invalidate(getSelfLink());
         }
 
         patch.setBody(currentState).complete();
@@ -672,6 +675,7 @@ public class ContainerDescriptionService extends StatefulService {
 
     @Override
     public void handleDelete(Operation delete) {
+        HealthConfigCache.getInstance(getHost()).invalidate(getSelfLink());
 
         if (delete.getBodyRaw() == null) {
             super.handleDelete(delete);
@@ -36,7 +36,6 @@ import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 import com.esotericsoftware.kryo.serializers.VersionFieldSerializer.Since;
-import com.google.common.collect.Iterables;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
 import com.vmware.admiral.adapter.common.ContainerHostOperationType;
@@ -96,10 +95,6 @@ public class ContainerHostDataCollectionService extends StatefulService {
             TimeUnit.MINUTES.toMicros(5));
     private static final int MAX_RETRIES_COUNT = Integer.getInteger(
             "com.vmware.admiral.compute.container.host.maintenance.max.retries", 3);
-    private static final int DC_DELAY_SECONDS = Integer.parseInt(System.getProperty(
-            "com.vmware.admiral.compute.container.host.dc.delay", "5"));
-    private static final int DC_BATCH_SIZE = Integer.parseInt(System.getProperty(
-            "com.vmware.admiral.compute.container.host.dc.batch.size", "10"));
 
     private static final String LOAD_SKIP_DC_PARAMETER =
             "com.vmware.admiral.compute.container.load.average.dc.skip";
@@ -110,12 +105,18 @@ public class ContainerHostDataCollectionService extends StatefulService {
             "com.vmware.admiral.compute.container.host.frequency.interval.micros",
             TimeUnit.SECONDS.toMicros(20));
 
+    public static final String STAT_NAME_FULL_LIST_COLLECTIONS_COUNT = "fullListCollectionsCount";
+    public static final String STAT_NAME_SKIPPED_LIST_COLLECTIONS_COUNT =
+            "skippedListCollectionsCount";
+
     public static final String RESOURCE_POOL_CPU_USAGE_CUSTOM_PROP = "__cpuUsage";
     public static final String RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP = "__availableMemory";
 
     protected volatile AtomicBoolean scheduled = new AtomicBoolean(false);
     protected long maintenanceIntervalInitial = TimeUnit.SECONDS.toMicros(90);
 
+    private HostDataCollectionScheduler dataCollectionScheduler;
+
     public static ServiceDocument buildDefaultStateInstance() {
         ContainerHostDataCollectionState state = new ContainerHostDataCollectionState();
         state.documentSelfLink = HOST_INFO_DATA_COLLECTION_LINK;
@@ -166,6 +167,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
         super.toggleOption(ServiceOption.REPLICATION, true);
         super.toggleOption(ServiceOption.OWNER_SELECTION, true);
         super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
         super.setMaintenanceIntervalMicros(MAINTENANCE_INTERVAL_MICROS);
     }
 
@@ -178,6 +180,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
 
     @Override
     public void handleStart(Operation post) {
+        dataCollectionScheduler = new HostDataCollectionScheduler(getHost(),
+                MAINTENANCE_INTERVAL_MICROS);
+
         super.handleStart(post);
 
         // perform maintenance on startup to refresh the container attributes
@@ -274,6 +279,16 @@ public class ContainerHostDataCollectionService extends StatefulService {
                                 }
                                 updateHostStats(computeState);
 
+                                if (!ContainerHostUtil.isKubernetesHost(computeState)) {
+                                    ConfigurationUtil.getConfigProperty(this,
+                                            ConfigurationUtil.ALLOW_CONTAINER_STATS_COLLECTION,
+                                            (allow) -> {
+                                                if (Boolean.valueOf(allow)) {
+                                                    updateContainerStats(computeState);
+                                                }
+                                            });
+                                }
+
                                 ConfigurationUtil
                                         .getConfigProperty(this, ConfigurationUtil.ALLOW_HOST_EVENTS_SUBSCRIPTIONS, (allow) -> {
                                             if (Boolean.valueOf(allow)) {
@@ -304,6 +319,12 @@ public class ContainerHostDataCollectionService extends StatefulService {
             return false;
         }
 
+        if (dataCollectionScheduler.isSaturated()) {
+            logWarning("Skipped on demand data collection because the periodic data collection"
+                    + " is backing off.");
+            return true;
+        }
+
         OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
         Double systemLoadAverage = osBean.getSystemLoadAverage();
 
@@ -683,6 +704,23 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 }));
     }
 
+    private void updateContainerStats(ComputeState computeHost) {
+        AdapterRequest request = new AdapterRequest();
+        request.operationTypeId = ContainerHostOperationType.CONTAINER_STATS.id;
+        request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
+        request.resourceReference = UriUtils.buildUri(getHost(), computeHost.documentSelfLink);
+        URI adapterManagementReference = computeHost.endpointLink == null
+                ? computeHost.adapterManagementReference : getDefaultHostAdapter(getHost());
+        sendRequest(Operation.createPatch(adapterManagementReference)
+                .setAuthorizationContext(getSystemAuthorizationContext())
+                .setBodyNoCloning(request)
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        logWarning("Failed request container stats: %s", Utils.toString(ex));
+                    }
+                }));
+    }
+
     @Override
     public void handlePeriodicMaintenance(Operation post) {
         if (getProcessingStage() != ProcessingStage.AVAILABLE) {
@@ -696,6 +734,8 @@ public class ContainerHostDataCollectionService extends StatefulService {
             return;
         }
 
+        dataCollectionScheduler.getStats().forEach(this::setStat);
+
         logFine("Performing maintenance for: %s", getUri());
         updateHostInfoDataCollection(post);
     }
@@ -775,13 +815,8 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 return;
             }
             maintOp.complete();
-            List<ComputeState> computeList = new ArrayList<ComputeState>(
-                    qr.computesByLink.values());
-            final AtomicInteger counter = new AtomicInteger();
-            Iterables.partition(computeList, DC_BATCH_SIZE)
-                    .forEach(list -> getHost().schedule(() -> {
-                        updateContainerHosts(list);
-                    }, counter.getAndIncrement() * DC_DELAY_SECONDS, TimeUnit.SECONDS));
+            dataCollectionScheduler.schedule(qr.computesByLink.values(),
+                    this::updateContainerHost);
 
             for (ResourcePoolData rpData : qr.resourcesPools.values()) {
                 updateResourcePool(rpData.resourcePoolState, rpData.computeStateLinks.stream()
@@ -791,32 +826,51 @@ public class ContainerHostDataCollectionService extends StatefulService {
         });
     }
 
-    private void updateContainerHosts(List<ComputeState> hosts) {
-        for (ComputeState compute : hosts) {
-            if (LifecycleState.SUSPEND == compute.lifecycleState) {
-                logInfo("Skipping data collection for host %s as it is marked for removal.",
-                        compute.documentSelfLink);
-                continue;
-            }
+    private void updateContainerHost(ComputeState compute, Runnable onComplete) {
+        if (LifecycleState.SUSPEND == compute.lifecycleState) {
+            logInfo("Skipping data collection for host %s as it is marked for removal.",
+                    compute.documentSelfLink);
+            onComplete.run();
+            return;
+        }
 
-            updateContainerHostInfo(compute, (o, error) -> {
-                if (error != null) {
-                    handleHostNotAvailable(compute, error);
-                } else {
-                    handleHostAvailable(compute);
-                }
-            }, null);
+        // the host stays in flight until the host info and all list requests are completed, the
+        // extra count is for sending the requests
+        AtomicInteger remaining = new AtomicInteger(2);
+        Runnable requestCompleted = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                onComplete.run();
+            }
+        };
 
-            if (PowerState.ON == compute.powerState) {
-                if (ContainerHostUtil.isKubernetesHost(compute)) {
-                    updateKubernetesEntities(compute.documentSelfLink);
-                } else {
-                    updateContainerHostContainers(compute);
-                    updateContainerHostNetworks(compute);
-                    updateContainerHostVolumes(compute.documentSelfLink);
-                }
+        updateContainerHostInfo(compute, (o, error) -> {
+            dataCollectionScheduler.recordResult(compute.documentSelfLink, error == null);
+            requestCompleted.run();
+            if (error != null) {
+                handleHostNotAvailable(compute, error);
+            } else {
+                handleHostAvailable(compute);
+            }
+        }, null);
+
+        if (PowerState.ON == compute.powerState) {
+            if (ContainerHostUtil.isKubernetesHost(compute)) {
+                remaining.incrementAndGet();
+                updateKubernetesEntities(compute.documentSelfLink, requestCompleted);
+            } else if (HostChangeTracker.getInstance()
+                    .startFullCollection(compute.documentSelfLink)) {
+                adjustStat(STAT_NAME_FULL_LIST_COLLECTIONS_COUNT, 1);
+                remaining.addAndGet(3);
+                updateContainerHostContainers(compute, requestCompleted);
+                updateContainerHostNetworks(compute, requestCompleted);
+                updateContainerHostVolumes(compute.documentSelfLink, requestCompleted);
+            } else {
+                // the events stream of the host is healthy and reported no changes
+                // since the last full collection
+                adjustStat(STAT_NAME_SKIPPED_LIST_COLLECTIONS_COUNT, 1);
             }
         }
+        requestCompleted.run();
     }
 
     private QueryTask createDockerComputeDescriptionQuery() {
@@ -936,6 +990,10 @@ public class ContainerHostDataCollectionService extends StatefulService {
     }
 
     private void updateKubernetesEntities(String documentSelfLink) {
+        updateKubernetesEntities(documentSelfLink, null);
+    }
+
+    private void updateKubernetesEntities(String documentSelfLink, Runnable onComplete) {
         EntityListCallback body = new EntityListCallback();
         body.computeHostLink = documentSelfLink;
         sendRequest(Operation
@@ -944,6 +1002,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 .setBodyNoCloning(body)
                 .setAuthorizationContext(getSystemAuthorizationContext())
                 .setCompletion((o, ex) -> {
+                    if (onComplete != null) {
+                        onComplete.run();
+                    }
                     if (ex != null) {
                         logWarning("Failed request kubernetes dc: %s", Utils.toString(ex));
                         return;
@@ -952,6 +1013,10 @@ public class ContainerHostDataCollectionService extends StatefulService {
     }
 
     private void updateContainerHostContainers(ComputeState cs) {
+        updateContainerHostContainers(cs, null);
+    }
+
+    private void updateContainerHostContainers(ComputeState cs, Runnable onComplete) {
         ContainerListCallback body = new ContainerListCallback();
         body.containerHostLink = cs.documentSelfLink;
         body.hostAdapterReference = cs.endpointLink == null ? cs.adapterManagementReference
@@ -962,6 +1027,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 .setBodyNoCloning(body)
                 .setAuthorizationContext(getSystemAuthorizationContext())
                 .setCompletion((o, ex) -> {
+                    if (onComplete != null) {
+                        onComplete.run();
+                    }
                     if (ex != null) {
                         logWarning("Failed request host container list dc: %s", Utils.toString(ex));
                         return;
@@ -970,6 +1038,10 @@ public class ContainerHostDataCollectionService extends StatefulService {
     }
 
     private void updateContainerHostNetworks(ComputeState cs) {
+        updateContainerHostNetworks(cs, null);
+    }
+
+    private void updateContainerHostNetworks(ComputeState cs, Runnable onComplete) {
         NetworkListCallback body = new NetworkListCallback();
         body.containerHostLink = cs.documentSelfLink;
         body.hostAdapterReference = cs.endpointLink == null ? cs.adapterManagementReference
@@ -980,6 +1052,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 .setAuthorizationContext(getSystemAuthorizationContext())
                 .setBodyNoCloning(body)
                 .setCompletion((o, ex) -> {
+                    if (onComplete != null) {
+                        onComplete.run();
+                    }
                     if (ex != null) {
                         logWarning("Failed request host networks dc: %s", Utils.toString(ex));
                         return;
@@ -988,6 +1063,10 @@ public class ContainerHostDataCollectionService extends StatefulService {
     }
 
     private void updateContainerHostVolumes(String documentSelfLink) {
+        updateContainerHostVolumes(documentSelfLink, null);
+    }
+
+    private void updateContainerHostVolumes(String documentSelfLink, Runnable onComplete) {
         VolumeListCallback body = new VolumeListCallback();
         body.containerHostLink = documentSelfLink;
         sendRequest(Operation
@@ -997,6 +1076,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 .setAuthorizationContext(getSystemAuthorizationContext())
                 .setBodyNoCloning(body)
                 .setCompletion((o, ex) -> {
+                    if (onComplete != null) {
+                        onComplete.run();
+                    }
                     if (ex != null) {
                         logWarning("Failed request host volumes dc: %s", Utils.toString(ex));
                         return;
@@ -38,7 +38,12 @@ import com.vmware.admiral.compute.container.maintenance.ContainerStats;
 import com.vmware.admiral.compute.container.util.ContainerUtil;
 import com.vmware.admiral.compute.content.EnvDeserializer;
 import com.vmware.admiral.compute.content.EnvSerializer;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
 import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsUtil;
+import com.vmware.photon.controller.model.util.ClusterUtil;
+import com.vmware.photon.controller.model.util.ClusterUtil.ServiceTypeCluster;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceDocument;
@@ -61,6 +66,15 @@ public class ContainerService extends StatefulService {
     private static final int DELETE_DESCRIPTION_RETRY_COUNT = Integer.getInteger(
             "com.vmware.admiral.service.delete.container.description.retries", 1);
 
+    /**
+     * When enabled, every container stats sample is also stored as raw resource metrics, so the
+     * container history outlives the hourly and daily bins kept in the service stats.
+     */
+    private static final boolean STATS_METRICS_ENABLED = Boolean.getBoolean(
+            "com.vmware.admiral.container.stats.metrics.enabled");
+    private static final long STATS_METRICS_RETENTION_DAYS = Long.getLong(
+            "com.vmware.admiral.container.stats.metrics.retention.days", 7);
+
     public static class ContainerState
             extends com.vmware.photon.controller.model.resources.ResourceState
             implements Composable {
@@ -71,6 +85,8 @@ public class ContainerService extends StatefulService {
         public static final String FIELD_NAME_DESCRIPTION_LINK = "descriptionLink";
         public static final String FIELD_NAME_COMPOSITE_COMPONENT_LINK = "compositeComponentLink";
         public static final String FIELD_NAME_PARENT_LINK = "parentLink";
+        public static final String FIELD_NAME_MEMORY_LIMIT = "memoryLimit";
+        public static final String FIELD_NAME_CPU_SHARES = "cpuShares";
         public static final String FIELD_NAME_RESOURCE_POOL_LINK = "resourcePoolLink";
         public static final String FIELD_NAME_ENV = "env";
         public static final String FIELD_NAME_POWER_STATE = "powerState";
@@ -309,6 +325,7 @@ public class ContainerService extends StatefulService {
             if (body.powerState == null) {
                 body.powerState = PowerState.UNKNOWN;
             }
+            HostContainerIdCache.getInstance().put(body.parentLink, body.id, getSelfLink());
         }
 
         startPost.complete();
@@ -342,6 +359,11 @@ public class ContainerService extends StatefulService {
 
         PropertyUtils.mergeServiceDocuments(currentState, patchBody);
 
+        if (patchBody.id != null) {
+            HostContainerIdCache.getInstance().put(currentState.parentLink, currentState.id,
+                    currentState.documentSelfLink);
+        }
+
         String newSignature = Utils.computeSignature(currentState, docDesc);
 
         // if the signature hasn't change we shouldn't modify the state
@@ -363,6 +385,8 @@ public class ContainerService extends StatefulService {
     @Override
     public void handleDelete(Operation delete) {
         ContainerState currentState = getState(delete);
+        HostContainerIdCache.getInstance().remove(currentState.parentLink, currentState.id);
+
         super.handleDelete(delete);
 
         deleteContainerDescription(currentState, DELETE_DESCRIPTION_RETRY_COUNT);
@@ -451,10 +475,41 @@ public class ContainerService extends StatefulService {
                 .calculateHealthStatus(containerStats, patchStatsBody);
         patchStatsBody.setStats(this);
 
+        if (STATS_METRICS_ENABLED && patchStatsBody.hasUsageStats()) {
+            publishStatsMetrics(patchStatsBody);
+        }
+
         patch.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
         patch.complete();
     }
 
+    private void publishStatsMetrics(ContainerStats stats) {
+        long now = Utils.getNowMicrosUtc();
+        ResourceMetrics metrics = new ResourceMetrics();
+        metrics.documentSelfLink = StatsUtil.getMetricKey(getSelfLink(), now);
+        metrics.timestampMicrosUtc = now;
+        metrics.documentExpirationTimeMicros = now
+                + TimeUnit.DAYS.toMicros(STATS_METRICS_RETENTION_DAYS);
+        metrics.entries = new HashMap<>();
+        metrics.entries.put(ContainerStats.FIELD_NAME_CPU_USAGE, stats.cpuUsage);
+        metrics.entries.put(ContainerStats.FIELD_NAME_MEM_USAGE, (double) stats.memUsage);
+        metrics.entries.put(ContainerStats.FIELD_NAME_NETWORK_IN, (double) stats.networkIn);
+        metrics.entries.put(ContainerStats.FIELD_NAME_NETWORK_OUT, (double) stats.networkOut);
+        metrics.customProperties = new HashMap<>();
+        metrics.customProperties.put(ResourceMetrics.PROPERTY_RESOURCE_LINK, getSelfLink());
+
+        sendRequest(Operation
+                .createPost(UriUtils.buildUri(ClusterUtil.getClusterUri(getHost(),
+                        ServiceTypeCluster.METRIC_SERVICE), ResourceMetricsService.FACTORY_LINK))
+                .setBodyNoCloning(metrics)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Failed to store stats metrics of container %s: %s",
+                                getSelfLink(), Utils.toString(e));
+                    }
+                }));
+    }
+
     @Override
     public ServiceDocument getDocumentTemplate() {
         ContainerState template = (ContainerState) super.getDocumentTemplate();
@@ -23,9 +23,11 @@ import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.maintenance.ContainerStats;
+import com.vmware.admiral.compute.container.maintenance.ContainerStatsHistory;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceStats;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
@@ -37,6 +39,18 @@ public class ContainerStatsService extends StatelessService {
 
     public static final String CONTAINER_ID_QUERY_PARAM = "id";
 
+    /**
+     * When set to true, the downsampled stats history kept by the container is returned instead
+     * of collecting the current stats from the container host.
+     */
+    public static final String HISTORY_QUERY_PARAM = "history";
+
+    /** Start of the history time range in milliseconds since the epoch, inclusive */
+    public static final String HISTORY_FROM_QUERY_PARAM = "from";
+
+    /** End of the history time range in milliseconds since the epoch, exclusive */
+    public static final String HISTORY_TO_QUERY_PARAM = "to";
+
     private static final long INSPECT_INTERVAL = TimeUnit.SECONDS.toMicros(70);
     private static final int MAX_SIZE = 10;
 
@@ -58,9 +72,60 @@ public class ContainerStatsService extends StatelessService {
             return;
         }
 
+        if (Boolean.parseBoolean(params.get(HISTORY_QUERY_PARAM))) {
+            Long from;
+            Long to;
+            try {
+                from = parseTimeParam(params, HISTORY_FROM_QUERY_PARAM);
+                to = parseTimeParam(params, HISTORY_TO_QUERY_PARAM);
+            } catch (IllegalArgumentException e) {
+                get.fail(e);
+                return;
+            }
+            getStatsHistory(get, containerId, from, to);
+            return;
+        }
+
         getContainerStateAndProcess(get, containerId);
     }
 
+    private static Long parseTimeParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format(
+                    "URL parameter '%s' expected with time in milliseconds as value.", name));
+        }
+    }
+
+    /**
+     * Returns the stats history kept by the container service, without contacting the container
+     * host.
+     */
+    private void getStatsHistory(Operation op, String id, Long from, Long to) {
+        final String containerLink = UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK, id);
+
+        sendRequest(Operation
+                .createGet(UriUtils.buildStatsUri(getHost(), containerLink))
+                .setExpiration(op.getExpirationMicrosUtc())
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        logWarning("Container '%s' not found", containerLink);
+                        op.fail(Operation.STATUS_CODE_NOT_FOUND);
+                        return;
+                    }
+                    ServiceUtils.handleExceptions(op, () -> {
+                        ServiceStats stats = o.getBody(ServiceStats.class);
+                        op.setBodyNoCloning(ContainerStatsHistory.transform(stats, from, to))
+                                .complete();
+                    });
+                }));
+    }
+
     /**
      * start processing the request - first fetch the ContainerState
      */
@@ -161,6 +226,13 @@ public class ContainerStatsService extends StatelessService {
                 String.format("Get container stats. Provide the ContainerState id in URI query "
                         + "parameter with key \"%s\".", CONTAINER_ID_QUERY_PARAM),
                 ContainerStats.class);
+        addServiceRequestRoute(template, Action.GET,
+                String.format("Get the min/avg/max history of the container stats. Provide the "
+                        + "ContainerState id in URI query parameter with key \"%s\", \"%s=true\" "
+                        + "and optionally the time range in milliseconds with keys \"%s\" and "
+                        + "\"%s\".", CONTAINER_ID_QUERY_PARAM, HISTORY_QUERY_PARAM,
+                        HISTORY_FROM_QUERY_PARAM, HISTORY_TO_QUERY_PARAM),
+                ContainerStatsHistory.class);
         return template;
     }
 
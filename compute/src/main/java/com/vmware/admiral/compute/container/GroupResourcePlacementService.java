@@ -210,6 +210,17 @@ public class GroupResourcePlacementService extends StatefulService {
         @Deprecated
         public Map<String, Long> memoryQuotaPerResourceDesc;
 
+        /**
+         * Set by Task. Instances reserved in advance by the nodes and not used yet, keyed by
+         * lease, see {@link ResourcePlacementReservationRequest#leaseKey}. They are part of the
+         * allocated instances and memory.
+         */
+        @Documentation(description = "Instances reserved in advance by the nodes and not used"
+                + " yet, keyed by lease.")
+        @UsageOption(option = PropertyUsageOption.SERVICE_USE)
+        @PropertyOptions(indexing = { PropertyIndexingOption.STORE_ONLY })
+        public Map<String, Long> leasedInstances;
+
     }
 
     /**
@@ -219,6 +230,21 @@ public class GroupResourcePlacementService extends StatefulService {
         public long resourceCount;
         public String resourceDescriptionLink;
         public String referer;
+        /**
+         * The memory limit of a single resource of the description, 0 if not limited. If not set
+         * the memory limit is retrieved from the resource description.
+         */
+        public Long memoryLimit;
+        /**
+         * The lease of instances reserved in advance by a node which is updated by the request,
+         * if any. Requests updating a lease must provide the memory limit and don't need a
+         * resource description.
+         */
+        public String leaseKey;
+        /**
+         * The instances of the lease after the request, the lease is removed if 0.
+         */
+        public Long leasedInstances;
     }
 
     /**
@@ -415,8 +441,9 @@ public class GroupResourcePlacementService extends StatefulService {
                     request.resourceCount, state.maxNumberInstances, state.availableInstancesCount);
             patch.complete();
             return;
-        } else if (request.resourceDescriptionLink == null
-                || request.resourceDescriptionLink.isEmpty()) {
+        } else if ((request.resourceDescriptionLink == null
+                || request.resourceDescriptionLink.isEmpty())
+                && (request.leaseKey == null || request.memoryLimit == null)) {
             patch.fail(new LocalizableValidationException("'resourceDescriptionLink' is required.",
                     "compute.placements.resource-desc.required"));
             return;
@@ -424,7 +451,16 @@ public class GroupResourcePlacementService extends StatefulService {
 
         state.availableInstancesCount = currentCount;
         state.allocatedInstancesCount += request.resourceCount;
+        updateLease(state, request);
 
+        if (request.memoryLimit != null) {
+            if (reserveMemory(patch, request, state, request.memoryLimit)) {
+                patch.setBody(state).complete();
+            }
+            return;
+        }
+
+        // requests of older versions don't provide the memory limit
         sendRequest(Operation
                 .createGet(this, request.resourceDescriptionLink)
                 .setCompletion(
@@ -461,6 +497,23 @@ public class GroupResourcePlacementService extends StatefulService {
                         }));
     }
 
+    private static void updateLease(GroupResourcePlacementState state,
+            ResourcePlacementReservationRequest request) {
+        if (request.leaseKey == null) {
+            return;
+        }
+        if (request.leasedInstances == null || request.leasedInstances <= 0) {
+            if (state.leasedInstances != null) {
+                state.leasedInstances.remove(request.leaseKey);
+            }
+            return;
+        }
+        if (state.leasedInstances == null) {
+            state.leasedInstances = new HashMap<>();
+        }
+        state.leasedInstances.put(request.leaseKey, request.leasedInstances);
+    }
+
     private boolean reserveMemory(Operation patch,
             ResourcePlacementReservationRequest request,
             GroupResourcePlacementState state, Long memoryBytes) {
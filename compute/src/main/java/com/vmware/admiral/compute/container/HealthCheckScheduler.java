@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
+import com.vmware.admiral.compute.container.maintenance.ContainerStats;
+import com.vmware.xenon.common.OperationContext;
+import com.vmware.xenon.common.ServiceHost;
+
+/**
+ * Schedules the periodic health checks of containers per container host.
+ *
+ * Every host has a timing wheel: a check is placed in a slot derived from the container link,
+ * which spreads the checks of a description over the wheel and keeps the phase of a container
+ * stable between maintenance runs, and a single timer per host advances the wheel. Due checks
+ * are run with a bounded number of checks in flight per host. A container with a check still
+ * waiting or running is not scheduled again.
+ */
+class HealthCheckScheduler {
+
+    static final int MAX_CONCURRENT_CHECKS_PER_HOST = Integer.getInteger(
+            "com.vmware.admiral.compute.container.health.check.host.concurrency", 10);
+
+    static final long WHEEL_TICK_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.health.check.tick.millis",
+            TimeUnit.SECONDS.toMillis(1));
+
+    /** Time span over which the checks of a maintenance run are spread. */
+    private static final long SPREAD_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.health.check.spread.millis",
+            TimeUnit.MICROSECONDS.toMillis(
+                    ContainerDescriptionService.MAINTENANCE_INTERVAL_MICROS / 2));
+
+    /**
+     * Time after which the slot of a check that never reported back is released, on top of the
+     * check timeout.
+     */
+    private static final long CHECK_SLOT_TIMEOUT_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.health.check.slot.timeout.millis",
+            TimeUnit.SECONDS.toMillis(30));
+
+    static final int WHEEL_SLOTS = (int) Math.max(1, SPREAD_MILLIS / WHEEL_TICK_MILLIS);
+
+    private final ConcurrentMap<String, HostWheel> wheels = new ConcurrentHashMap<>();
+
+    private final Timer timer;
+    private final CheckRunner checkRunner;
+
+    /**
+     * Schedules a task on the given host.
+     */
+    interface Timer {
+        void schedule(ServiceHost host, Runnable task, long delayMillis);
+    }
+
+    /**
+     * Runs a health check, calling back with its result when done.
+     */
+    interface CheckRunner {
+        void run(ServiceHost host, ContainerState containerState, HealthConfig healthConfig,
+                Consumer<ContainerStats> callback);
+    }
+
+    HealthCheckScheduler(HealthChecker healthChecker) {
+        this((host, task, delayMillis) -> host.schedule(task, delayMillis,
+                TimeUnit.MILLISECONDS), healthChecker::doHealthCheckRequest);
+    }
+
+    HealthCheckScheduler(Timer timer, CheckRunner checkRunner) {
+        this.timer = timer;
+        this.checkRunner = checkRunner;
+    }
+
+    /**
+     * Schedules a health check of the given container.
+     *
+     * @param jitter
+     *            whether to delay the check to its slot on the wheel or to run it as soon as the
+     *            host has a free check slot
+     */
+    void schedule(ServiceHost host, ContainerState containerState, HealthConfig healthConfig,
+            boolean jitter) {
+        String hostLink = containerState.parentLink != null ? containerState.parentLink : "";
+        Check check = new Check(containerState, healthConfig);
+
+        boolean[] scheduled = new boolean[1];
+        HostWheel wheel = this.wheels.compute(hostLink, (k, w) -> {
+            if (w == null) {
+                w = new HostWheel(host, k);
+            }
+            scheduled[0] = w.add(check, jitter);
+            return w;
+        });
+
+        if (!scheduled[0]) {
+            host.log(Level.FINE, "Health check of %s is already pending",
+                    containerState.documentSelfLink);
+            return;
+        }
+        wheel.drain();
+    }
+
+    private static class Check {
+        final ContainerState containerState;
+        final HealthConfig healthConfig;
+        final OperationContext operationContext = OperationContext.getOperationContext();
+
+        Check(ContainerState containerState, HealthConfig healthConfig) {
+            this.containerState = containerState;
+            this.healthConfig = healthConfig;
+        }
+    }
+
+    private class HostWheel {
+        private final ServiceHost host;
+        private final String hostLink;
+
+        private final List<Deque<Check>> slots = new ArrayList<>(WHEEL_SLOTS);
+        private final Deque<Check> due = new ArrayDeque<>();
+        private final Set<String> pendingLinks = new HashSet<>();
+
+        private int cursor;
+        private int waiting;
+        private int inFlight;
+        private boolean ticking;
+
+        HostWheel(ServiceHost host, String hostLink) {
+            this.host = host;
+            this.hostLink = hostLink;
+            for (int i = 0; i < WHEEL_SLOTS; i++) {
+                this.slots.add(new ArrayDeque<>());
+            }
+        }
+
+        synchronized boolean add(Check check, boolean jitter) {
+            if (!this.pendingLinks.add(check.containerState.documentSelfLink)) {
+                return false;
+            }
+            if (!jitter || WHEEL_SLOTS == 1) {
+                this.due.add(check);
+                return true;
+            }
+            int offset = 1 + Math.floorMod(check.containerState.documentSelfLink.hashCode(),
+                    WHEEL_SLOTS - 1);
+            this.slots.get((this.cursor + offset) % WHEEL_SLOTS).add(check);
+            this.waiting++;
+            if (!this.ticking) {
+                this.ticking = true;
+                timer.schedule(this.host, this::tick, WHEEL_TICK_MILLIS);
+            }
+            return true;
+        }
+
+        private void tick() {
+            synchronized (this) {
+                this.cursor = (this.cursor + 1) % WHEEL_SLOTS;
+                Deque<Check> slot = this.slots.get(this.cursor);
+                this.waiting -= slot.size();
+                this.due.addAll(slot);
+                slot.clear();
+                if (this.waiting > 0) {
+                    timer.schedule(this.host, this::tick, WHEEL_TICK_MILLIS);
+                } else {
+                    this.ticking = false;
+                }
+            }
+            drain();
+        }
+
+        void drain() {
+            List<Check> started = new ArrayList<>();
+            synchronized (this) {
+                while (this.inFlight < MAX_CONCURRENT_CHECKS_PER_HOST && !this.due.isEmpty()) {
+                    started.add(this.due.poll());
+                    this.inFlight++;
+                }
+            }
+            for (Check check : started) {
+                start(check);
+            }
+        }
+
+        private void start(Check check) {
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    complete(check);
+                }
+            };
+
+            // not every failure path of a check reports back, do not hold its slot forever
+            timer.schedule(this.host, release, HealthChecker.getTimeoutMillis(check.healthConfig)
+                    + CHECK_SLOT_TIMEOUT_MILLIS);
+
+            OperationContext.setFrom(check.operationContext);
+            try {
+                checkRunner.run(this.host, check.containerState, check.healthConfig,
+                        (stats) -> release.run());
+            } catch (Throwable e) {
+                this.host.log(Level.WARNING, "Health check of %s failed to start: %s",
+                        check.containerState.documentSelfLink, e.getMessage());
+                release.run();
+            }
+        }
+
+        private void complete(Check check) {
+            synchronized (this) {
+                this.inFlight--;
+                this.pendingLinks.remove(check.containerState.documentSelfLink);
+            }
+            drain();
+            wheels.computeIfPresent(this.hostLink, (k, w) -> w.isIdle() ? null : w);
+        }
+
+        private synchronized boolean isIdle() {
+            return this.pendingLinks.isEmpty() && !this.ticking;
+        }
+    }
+}
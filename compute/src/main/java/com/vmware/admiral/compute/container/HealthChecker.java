@@ -128,6 +128,8 @@ public class HealthChecker {
 
     private Bootstrap bootstrap;
 
+    private final HealthCheckScheduler scheduler = new HealthCheckScheduler(this);
+
     public static HealthChecker getInstance() {
         if (instance == null) {
             synchronized (HealthChecker.class) {
@@ -160,6 +162,19 @@ public class HealthChecker {
     }
 
     void doHealthCheck(ServiceHost host, String containerDescriptionLink) {
+        doHealthCheck(host, containerDescriptionLink, false);
+    }
+
+    /**
+     * Schedules the health checks of all containers of the given description, spread over the
+     * maintenance interval instead of all at once.
+     */
+    void scheduleHealthCheck(ServiceHost host, String containerDescriptionLink) {
+        doHealthCheck(host, containerDescriptionLink, true);
+    }
+
+    private void doHealthCheck(ServiceHost host, String containerDescriptionLink,
+            boolean jitter) {
         host.sendRequest(Operation
                 .createGet(host, containerDescriptionLink)
                 .setReferer(UriUtils.buildUri(host, SERVICE_REFERRER_PATH))
@@ -168,7 +183,8 @@ public class HealthChecker {
                         host.log(Level.SEVERE, "Failed to fetch %s : %s",
                                 containerDescriptionLink, Utils.toJson(ex));
                     } else {
-                        processContainerHealth(host, o.getBody(ContainerDescription.class));
+                        processContainerHealth(host, o.getBody(ContainerDescription.class),
+                                jitter);
                     }
                 }));
     }
@@ -212,7 +228,11 @@ public class HealthChecker {
     }
 
     private void processContainerHealth(ServiceHost host,
-            ContainerDescription containerDescription) {
+            ContainerDescription containerDescription, boolean jitter) {
+
+        HealthConfig healthConfig = HealthConfigCache.getInstance(host).put(
+                containerDescription.documentSelfLink,
+                containerDescription.healthConfig);
 
         if (containerDescription.healthConfig == null
                 || containerDescription.healthConfig.protocol == null) {
@@ -239,8 +259,9 @@ public class HealthChecker {
                                 "Failed to retrieve child containers for: %s - %s",
                                 containerDescriptionLink, Utils.toString(r.getException()));
                     } else if (r.hasResult()) {
-                        doHealthCheckRequest(host, r.getResult(), containerDescription.healthConfig,
-                                null);
+                        // every check gets its own copy, probes resolve the port into it
+                        scheduler.schedule(host, r.getResult(), Utils.clone(healthConfig),
+                                jitter);
                     }
                 });
     }
@@ -355,7 +376,7 @@ public class HealthChecker {
         host.sendRequest(op);
     }
 
-    private int getTimeoutMillis(HealthConfig healthConfig) {
+    static int getTimeoutMillis(HealthConfig healthConfig) {
         return healthConfig.timeoutMillis == null || healthConfig.timeoutMillis < 0
                 ? DEFAULT_TIMEOUT : healthConfig.timeoutMillis;
     }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+
+/**
+ * Node-local cache of the {@link HealthConfig} of container descriptions, so that evaluating the
+ * result of every health check does not fetch the container description again.
+ *
+ * Entries are refreshed whenever the health checker reads a description and dropped when the
+ * description is updated or deleted, on every node through a continuous query over the
+ * descriptions, and expire after a short time otherwise. Cached configs are copies and must not
+ * be modified by callers.
+ */
+public class HealthConfigCache {
+
+    private static final long CACHE_ENTRY_TTL_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.health.config.cache.ttl.micros",
+            TimeUnit.SECONDS.toMicros(60));
+
+    private static final String CONTINUOUS_QUERY_NAME = "health-config-cache";
+
+    private static final ConcurrentMap<String, HealthConfigCache> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        final HealthConfig healthConfig;
+        final long expirationMicros;
+
+        Entry(HealthConfig healthConfig) {
+            this.healthConfig = healthConfig;
+            this.expirationMicros = Utils.getNowMicrosUtc() + CACHE_ENTRY_TTL_MICROS;
+        }
+    }
+
+    public static HealthConfigCache getInstance(ServiceHost host) {
+        return INSTANCES.computeIfAbsent(host.getId(), (id) -> {
+            HealthConfigCache cache = new HealthConfigCache();
+            CommonContinuousQueries.subscribeTo(host, CONTINUOUS_QUERY_NAME,
+                    buildContinuousQueryTask(), cache::onDescriptionChange);
+            return cache;
+        });
+    }
+
+    HealthConfigCache() {
+    }
+
+    /**
+     * Retrieves the health config of the given container description, from the cache when
+     * possible. The callback receives {@code null} when the description has no health config
+     * or does not exist.
+     */
+    public void getHealthConfig(ServiceHost host, String containerDescriptionLink,
+            BiConsumer<HealthConfig, Throwable> callback) {
+        Entry entry = entries.get(containerDescriptionLink);
+        if (entry != null && entry.expirationMicros > Utils.getNowMicrosUtc()) {
+            callback.accept(entry.healthConfig, null);
+            return;
+        }
+
+        new ServiceDocumentQuery<>(host, ContainerDescription.class)
+                .queryDocument(containerDescriptionLink, (r) -> {
+                    if (r.hasException()) {
+                        callback.accept(null, r.getException());
+                    } else if (r.hasResult()) {
+                        callback.accept(put(containerDescriptionLink, r.getResult().healthConfig),
+                                null);
+                    } else {
+                        callback.accept(null, null);
+                    }
+                });
+    }
+
+    /**
+     * Caches the health config of a freshly retrieved container description and returns the
+     * cached copy.
+     */
+    public HealthConfig put(String containerDescriptionLink, HealthConfig healthConfig) {
+        HealthConfig copy = healthConfig == null ? null : Utils.clone(healthConfig);
+        entries.put(containerDescriptionLink, new Entry(copy));
+        return copy;
+    }
+
+    public void invalidate(String containerDescriptionLink) {
+        entries.remove(containerDescriptionLink);
+    }
+
+    private void onDescriptionChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+
+        for (Object document : queryTask.results.documents.values()) {
+            invalidate(Utils.fromJson(document, ContainerDescription.class).documentSelfLink);
+        }
+    }
+
+    private static QueryTask buildContinuousQueryTask() {
+        return QueryTask.Builder.create()
+                .addOption(QueryOption.CONTINUOUS)
+                .addOption(QueryOption.EXPAND_CONTENT)
+                .setQuery(Query.Builder.create()
+                        .addKindFieldClause(ContainerDescription.class)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Node local tracker of the changes on container hosts, fed by the host events subscriptions.
+ * Every event which can not be applied incrementally bumps the generation of the host, so the
+ * data collection can skip the full container, network and volume list reconciliation for hosts
+ * whose events stream is healthy and which have not changed since the last full collection.
+ */
+public class HostChangeTracker {
+
+    public static final String INCREMENTAL_DATA_COLLECTION_PROP_NAME =
+            "com.vmware.admiral.compute.container.incremental.data.collection";
+
+    private static final boolean INCREMENTAL_DATA_COLLECTION = Boolean.getBoolean(
+            INCREMENTAL_DATA_COLLECTION_PROP_NAME);
+
+    private static final long FULL_COLLECTION_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.incremental.data.collection.full.interval.micros",
+            TimeUnit.MINUTES.toMicros(30));
+
+    private static final HostChangeTracker INSTANCE = new HostChangeTracker(
+            INCREMENTAL_DATA_COLLECTION, FULL_COLLECTION_INTERVAL_MICROS);
+
+    private final boolean incremental;
+    private final long fullCollectionIntervalMicros;
+    private final ConcurrentMap<String, HostGeneration> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Change marker of a single host.
+     */
+    private static class HostGeneration {
+        long generation;
+        long collectedGeneration = -1;
+        long lastFullCollectionMicros;
+        boolean streamHealthy;
+    }
+
+    public static HostChangeTracker getInstance() {
+        return INSTANCE;
+    }
+
+    HostChangeTracker(boolean incremental, long fullCollectionIntervalMicros) {
+        this.incremental = incremental;
+        this.fullCollectionIntervalMicros = fullCollectionIntervalMicros;
+    }
+
+    public boolean isIncrementalDataCollectionEnabled() {
+        return incremental;
+    }
+
+    /**
+     * Marks the events stream of the host as open. Changes that happened while the stream was
+     * down are unknown, so the host stays dirty until the next full collection.
+     */
+    public void markStreamOpen(String hostLink) {
+        update(hostLink, (g) -> {
+            g.streamHealthy = true;
+            g.generation++;
+        });
+    }
+
+    public void markStreamBroken(String hostLink) {
+        update(hostLink, (g) -> {
+            g.streamHealthy = false;
+            g.generation++;
+        });
+    }
+
+    /**
+     * Marks the host as changed in a way that requires a full list reconciliation.
+     */
+    public void markDirty(String hostLink) {
+        update(hostLink, (g) -> g.generation++);
+    }
+
+    public void remove(String hostLink) {
+        if (hostLink != null) {
+            generations.remove(hostLink);
+        }
+    }
+
+    /**
+     * Decides whether a full list reconciliation is needed for the host and, if so, records the
+     * generation it is going to collect.
+     *
+     * @return <code>true</code> if the full list data collection should run for the host
+     */
+    public boolean startFullCollection(String hostLink) {
+        if (!incremental || hostLink == null) {
+            return true;
+        }
+
+        long now = Utils.getSystemNowMicrosUtc();
+        boolean[] full = new boolean[] { true };
+        generations.compute(hostLink, (k, g) -> {
+            if (g == null) {
+                g = new HostGeneration();
+            }
+            full[0] = !g.streamHealthy
+                    || g.generation != g.collectedGeneration
+                    || now - g.lastFullCollectionMicros >= fullCollectionIntervalMicros;
+            if (full[0]) {
+                g.collectedGeneration = g.generation;
+                g.lastFullCollectionMicros = now;
+            }
+            return g;
+        });
+        return full[0];
+    }
+
+    private void update(String hostLink, Consumer<HostGeneration> updater) {
+        if (hostLink == null) {
+            return;
+        }
+        generations.compute(hostLink, (k, g) -> {
+            if (g == null) {
+                g = new HostGeneration();
+            }
+            updater.accept(g);
+            return g;
+        });
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+
+/**
+ * Node local per container host aggregates of the ContainerStates (container count, the sum of
+ * the memory limits and the sum of the CPU shares), used by the placement filters instead of
+ * expanding every container of the candidate hosts.
+ *
+ * Missing and expired entries are loaded with a single query selecting only the fields the
+ * aggregates are computed from. The index has no aggregation support, so the query still returns
+ * one row per container, but only for the hosts that are not loaded yet. Loaded entries are kept
+ * up to date on every node by a continuous query over the ContainerStates, so changes of
+ * containers owned by other nodes are reflected too.
+ *
+ * The last known state of every container is kept, together with its document version, so that
+ * repeated and out of order notifications, and the results of a load running concurrently with
+ * the notifications, are merged instead of overwriting each other.
+ */
+public class HostContainerAggregates {
+
+    private static final long EXPIRATION_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.aggregates.expiration.micros",
+            TimeUnit.SECONDS.toMicros(60));
+
+    private static final String CONTINUOUS_QUERY_NAME = "host-container-aggregates";
+
+    private static final ConcurrentMap<String, HostContainerAggregates> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final Map<String, ContainerSnapshot> containers = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * The aggregates of the containers of a single host.
+     */
+    public static class HostAggregate {
+        public final long containerCount;
+        public final long memoryLimit;
+        public final long cpuShares;
+
+        public HostAggregate(long containerCount, long memoryLimit, long cpuShares) {
+            this.containerCount = containerCount;
+            this.memoryLimit = memoryLimit;
+            this.cpuShares = cpuShares;
+        }
+    }
+
+    private static class ContainerSnapshot {
+        final String hostLink;
+        final long memoryLimit;
+        final long cpuShares;
+        final long version;
+        final boolean deleted;
+        // local time the snapshot was recorded at, not the update time of the document
+        final long recordedMicros = Utils.getSystemNowMicrosUtc();
+
+        ContainerSnapshot(ContainerState container, boolean deleted) {
+            this.hostLink = container.parentLink;
+            this.memoryLimit = container.memoryLimit == null ? 0 : container.memoryLimit;
+            this.cpuShares = container.cpuShares == null ? 0 : container.cpuShares;
+            this.version = container.documentVersion;
+            this.deleted = deleted;
+        }
+    }
+
+    private static class Entry {
+        long containerCount;
+        long memoryLimit;
+        long cpuShares;
+        final long expirationMicros;
+
+        Entry(long expirationMicros) {
+            this.expirationMicros = expirationMicros;
+        }
+
+        void add(ContainerSnapshot container, int sign) {
+            containerCount = Math.max(0, containerCount + sign);
+            memoryLimit = Math.max(0, memoryLimit + sign * container.memoryLimit);
+            cpuShares = Math.max(0, cpuShares + sign * container.cpuShares);
+        }
+
+        HostAggregate toAggregate() {
+            return new HostAggregate(containerCount, memoryLimit, cpuShares);
+        }
+    }
+
+    public static HostContainerAggregates getInstance(ServiceHost host) {
+        return INSTANCES.computeIfAbsent(host.getId(), (id) -> {
+            HostContainerAggregates aggregates = new HostContainerAggregates();
+            CommonContinuousQueries.subscribeTo(host, CONTINUOUS_QUERY_NAME,
+                    buildContinuousQueryTask(), aggregates::onContainerChange);
+            return aggregates;
+        });
+    }
+
+    /**
+     * Creates aggregates which are not subscribed for container changes, see
+     * {@link #getInstance(ServiceHost)} for the ones of a host.
+     */
+    public HostContainerAggregates() {
+    }
+
+    /**
+     * Returns the cached aggregate of the given host or <code>null</code> if it is not loaded or
+     * has expired.
+     */
+    public synchronized HostAggregate getCached(String hostLink) {
+        if (hostLink == null) {
+            return null;
+        }
+        Entry entry = entries.get(hostLink);
+        if (entry == null || entry.expirationMicros < Utils.getSystemNowMicrosUtc()) {
+            return null;
+        }
+        return entry.toAggregate();
+    }
+
+    /**
+     * Retrieves the aggregates of the given hosts, loading the missing ones from the index.
+     */
+    public void retrieve(ServiceHost host, Collection<String> hostLinks,
+            BiConsumer<Map<String, HostAggregate>, Throwable> completion) {
+        Map<String, HostAggregate> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String hostLink : hostLinks) {
+            HostAggregate aggregate = getCached(hostLink);
+            if (aggregate != null) {
+                result.put(hostLink, aggregate);
+            } else {
+                missing.add(hostLink);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            completion.accept(result, null);
+            return;
+        }
+
+        QueryTask q = QueryTask.Builder.create()
+                .setQuery(Query.Builder.create()
+                        .addKindFieldClause(ContainerState.class)
+                        .addInClause(ContainerState.FIELD_NAME_PARENT_LINK, missing)
+                        .build())
+                .addOption(QueryOption.EXPAND_SELECTED_FIELDS)
+                .addSelectTerm(ServiceDocument.FIELD_NAME_VERSION)
+                .addSelectTerm(ContainerState.FIELD_NAME_PARENT_LINK)
+                .addSelectTerm(ContainerState.FIELD_NAME_MEMORY_LIMIT)
+                .addSelectTerm(ContainerState.FIELD_NAME_CPU_SHARES)
+                .build();
+        q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
+
+        long loadStartMicros = Utils.getSystemNowMicrosUtc();
+        List<ContainerState> loaded = new ArrayList<>();
+        new ServiceDocumentQuery<>(host, ContainerState.class).query(q, (r) -> {
+            if (r.hasException()) {
+                completion.accept(null, r.getException());
+            } else if (r.hasResult()) {
+                loaded.add(r.getResult());
+            } else {
+                result.putAll(applyLoaded(missing, loaded, loadStartMicros));
+                completion.accept(result, null);
+            }
+        });
+    }
+
+    public synchronized void invalidate(String hostLink) {
+        if (hostLink != null) {
+            entries.remove(hostLink);
+        }
+    }
+
+    /**
+     * Applies a change of a container, ignoring it if a newer version of the container is
+     * already known.
+     */
+    synchronized void onContainerChange(ContainerState container, boolean deleted) {
+        ContainerSnapshot current = containers.get(container.documentSelfLink);
+        if (current != null && current.version > container.documentVersion) {
+            return;
+        }
+        replace(container.documentSelfLink, current, new ContainerSnapshot(container, deleted));
+    }
+
+    /**
+     * Merges the containers loaded for the given hosts with the changes received since the load
+     * started and (re)creates the entries of the hosts.
+     */
+    synchronized Map<String, HostAggregate> applyLoaded(Collection<String> hostLinks,
+            Collection<ContainerState> loaded, long loadStartMicros) {
+        Set<String> loadedLinks = new HashSet<>();
+        for (ContainerState container : loaded) {
+            loadedLinks.add(container.documentSelfLink);
+            ContainerSnapshot current = containers.get(container.documentSelfLink);
+            if (current == null || current.version < container.documentVersion) {
+                replace(container.documentSelfLink, current,
+                        new ContainerSnapshot(container, false));
+            }
+        }
+
+        long now = Utils.getSystemNowMicrosUtc();
+        Map<String, Entry> refreshed = new HashMap<>();
+        hostLinks.forEach((hostLink) -> refreshed.put(hostLink,
+                new Entry(now + EXPIRATION_MICROS)));
+
+        Iterator<Map.Entry<String, ContainerSnapshot>> it = containers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ContainerSnapshot> e = it.next();
+            ContainerSnapshot container = e.getValue();
+            if (container.deleted) {
+                // deletions are only needed to discard older versions returned by loads
+                if (container.recordedMicros + EXPIRATION_MICROS < now) {
+                    it.remove();
+                }
+                continue;
+            }
+            Entry entry = refreshed.get(container.hostLink);
+            if (entry == null) {
+                continue;
+            }
+            if (!loadedLinks.contains(e.getKey()) && container.recordedMicros < loadStartMicros) {
+                // known before the load started but not found by it, so a missed change
+                it.remove();
+                continue;
+            }
+            entry.add(container, 1);
+        }
+
+        Map<String, HostAggregate> result = new HashMap<>();
+        refreshed.forEach((hostLink, entry) -> {
+            entries.put(hostLink, entry);
+            result.put(hostLink, entry.toAggregate());
+        });
+        return result;
+    }
+
+    private void replace(String containerLink, ContainerSnapshot current,
+            ContainerSnapshot updated) {
+        if (current != null && !current.deleted) {
+            adjust(current, -1);
+        }
+        if (!updated.deleted) {
+            adjust(updated, 1);
+        }
+        containers.put(containerLink, updated);
+    }
+
+    private void adjust(ContainerSnapshot container, int sign) {
+        if (container.hostLink == null) {
+            return;
+        }
+        Entry entry = entries.get(container.hostLink);
+        if (entry != null) {
+            entry.add(container, sign);
+        }
+    }
+
+    private void onContainerChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+
+        for (Object document : queryTask.results.documents.values()) {
+            ContainerState container = Utils.fromJson(document, ContainerState.class);
+            onContainerChange(container,
+                    Action.DELETE.name().equals(container.documentUpdateAction));
+        }
+    }
+
+    private static QueryTask buildContinuousQueryTask() {
+        return QueryTask.Builder.create()
+                .addOption(QueryOption.CONTINUOUS)
+                .addOption(QueryOption.EXPAND_CONTENT)
+                .setQuery(Query.Builder.create()
+                        .addKindFieldClause(ContainerState.class)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node local cache of the docker container id to ContainerState self link mapping, grouped by
+ * container host. Populated by the host container list data collection and kept up to date on
+ * container creation and deletion, so the host events processing can resolve the container
+ * state without querying the index.
+ */
+public class HostContainerIdCache {
+
+    private static final HostContainerIdCache INSTANCE = new HostContainerIdCache();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> linksByHost =
+            new ConcurrentHashMap<>();
+
+    public static HostContainerIdCache getInstance() {
+        return INSTANCE;
+    }
+
+    HostContainerIdCache() {
+    }
+
+    public String get(String hostLink, String containerId) {
+        if (hostLink == null || containerId == null) {
+            return null;
+        }
+        Map<String, String> links = linksByHost.get(hostLink);
+        return links == null ? null : links.get(containerId);
+    }
+
+    public void put(String hostLink, String containerId, String containerLink) {
+        if (hostLink == null || containerId == null || containerLink == null) {
+            return;
+        }
+        linksByHost.computeIfAbsent(hostLink, (k) -> new ConcurrentHashMap<>())
+                .put(containerId, containerLink);
+    }
+
+    public void remove(String hostLink, String containerId) {
+        if (hostLink == null || containerId == null) {
+            return;
+        }
+        Map<String, String> links = linksByHost.get(hostLink);
+        if (links != null) {
+            links.remove(containerId);
+        }
+    }
+
+    /**
+     * Replaces all cached entries of the given host with the result of a full container list
+     * reconciliation.
+     */
+    public void replaceHost(String hostLink, Map<String, String> linksByContainerId) {
+        if (hostLink == null) {
+            return;
+        }
+        linksByHost.put(hostLink, new ConcurrentHashMap<>(linksByContainerId));
+    }
+
+    public void invalidateHost(String hostLink) {
+        if (hostLink != null) {
+            linksByHost.remove(hostLink);
+        }
+    }
+
+    public int size() {
+        return linksByHost.values().stream().mapToInt(Map::size).sum();
+    }
+}
@@ -411,6 +411,7 @@ public class HostContainerListDataCollection extends StatefulService {
             List<ContainerState> containerStates, String containerHostLink) {
         final List<String> systemContainersToInstall = SystemContainerDescriptions
                 .getSystemContainerNames();
+        Map<String, String> containerLinksById = new HashMap<>();
         for (ContainerState existingContainerState : containerStates) {
             boolean exists = false;
             if (existingContainerState.id != null) {
@@ -435,6 +436,10 @@ public class HostContainerListDataCollection extends StatefulService {
                 }
             } else {
                 callback.containerIdsAndNames.remove(existingContainerState.id);
+                if (existingContainerState.id != null) {
+                    containerLinksById.put(existingContainerState.id,
+                            existingContainerState.documentSelfLink);
+                }
 
                 updateExistingContainer(existingContainerState, callback);
 
@@ -443,6 +448,8 @@ public class HostContainerListDataCollection extends StatefulService {
             }
         }
 
+        HostContainerIdCache.getInstance().replaceHost(containerHostLink, containerLinksById);
+
         // finished removing existing ContainerState, now deal with remaining IDs
         List<ContainerState> containersLeft = new ArrayList<>();
         Set<ContainerState> systemContainersToStart = new HashSet<>();
@@ -1110,6 +1117,8 @@ public class HostContainerListDataCollection extends StatefulService {
                             containerState.names);
 
                     ContainerState body = o.getBody(ContainerState.class);
+                    HostContainerIdCache.getInstance().put(body.parentLink, body.id,
+                            body.documentSelfLink);
                     if (systemContainerName == null) {
                         createDiscoveredContainerDescription(body);
                     }
@@ -1150,6 +1159,8 @@ public class HostContainerListDataCollection extends StatefulService {
             return;
         }
 
+        HostContainerIdCache.getInstance().remove(containerState.parentLink, containerState.id);
+
         if (containerState.isDeleted) {
             // delete container state
             sendRequest(Operation
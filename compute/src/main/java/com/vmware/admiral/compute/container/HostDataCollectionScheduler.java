@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ComputeService.PowerState;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Dispatches the periodic data collection of the container hosts. The hosts are spread evenly
+ * over the maintenance interval instead of being sent in fixed batches, the number of hosts with
+ * in-flight data collection requests is bounded, hosts that failed or have not been collected
+ * for the longest time go first and the dispatching slows down while the collections take too
+ * long or time out.
+ */
+public class HostDataCollectionScheduler {
+
+    public static final String STAT_NAME_IN_FLIGHT_COUNT = "dcInFlightCount";
+    public static final String STAT_NAME_PENDING_COUNT = "dcPendingCount";
+    public static final String STAT_NAME_DISPATCHED_COUNT = "dcDispatchedCount";
+    public static final String STAT_NAME_DEFERRED_COUNT = "dcDeferredCount";
+    public static final String STAT_NAME_TIMED_OUT_COUNT = "dcTimedOutCount";
+    public static final String STAT_NAME_BACKOFF_FACTOR = "dcBackoffFactor";
+    public static final String STAT_NAME_LATENCY_MILLIS = "dcLatencyMillis";
+
+    private static final Logger logger = Logger.getLogger(
+            HostDataCollectionScheduler.class.getName());
+
+    private static final int MAX_IN_FLIGHT = Integer.getInteger(
+            "com.vmware.admiral.compute.container.host.dc.max.in.flight", 20);
+    private static final double WINDOW_RATIO = Double.parseDouble(System.getProperty(
+            "com.vmware.admiral.compute.container.host.dc.window.ratio", "0.8"));
+    private static final long MIN_SPACING_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.min.spacing.millis", 20);
+    private static final long MAX_SPACING_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.max.spacing.millis", 500);
+    private static final long IN_FLIGHT_TIMEOUT_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.in.flight.timeout.millis",
+            TimeUnit.MINUTES.toMillis(1));
+    private static final long LATENCY_THRESHOLD_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.latency.threshold.millis",
+            TimeUnit.SECONDS.toMillis(15));
+    private static final long PROBE_INTERVAL_MILLIS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.probe.interval.millis",
+            TimeUnit.SECONDS.toMillis(10));
+    private static final int MAX_BACKOFF_FACTOR = Integer.getInteger(
+            "com.vmware.admiral.compute.container.host.dc.max.backoff.factor", 16);
+
+    /**
+     * Collects the data of a single host and runs the given callback once all data collection
+     * requests for the host are completed.
+     */
+    @FunctionalInterface
+    public interface HostCollector {
+        void collect(ComputeState host, Runnable onComplete);
+    }
+
+    private final ServiceHost host;
+    private final long windowMillis;
+
+    private final Deque<ComputeState> pending = new ArrayDeque<>();
+    private final ConcurrentMap<String, Long> lastCollectedMicros = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> failedHosts = new ConcurrentHashMap<>();
+
+    private HostCollector collector;
+    private long spacingMillis;
+    private boolean dispatching;
+    private long lastProbeMillis;
+    private long latencySumMillis;
+    private int latencyCount;
+    private int timeoutCount;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger backoffFactor = new AtomicInteger(1);
+    private final AtomicLong latencyMillis = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong deferredCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+
+    /**
+     * @param host the service host used to schedule the dispatching
+     * @param intervalMicros the interval over which all hosts should be collected
+     */
+    public HostDataCollectionScheduler(ServiceHost host, long intervalMicros) {
+        this.host = host;
+        this.windowMillis = (long) (TimeUnit.MICROSECONDS.toMillis(intervalMicros) * WINDOW_RATIO);
+    }
+
+    /**
+     * Starts a new data collection cycle for the given hosts. Hosts left over from the previous
+     * cycle are replaced, the ones that have not been collected keep their priority since they
+     * are the most stale.
+     */
+    public void schedule(Collection<ComputeState> hosts, HostCollector collector) {
+        List<ComputeState> ordered = new ArrayList<>(hosts);
+        ordered.sort(Comparator
+                .comparing((ComputeState cs) -> !isFailed(cs))
+                .thenComparing((ComputeState cs) -> lastCollectedMicros
+                        .getOrDefault(cs.documentSelfLink, 0L)));
+
+        boolean start;
+        synchronized (this) {
+            this.collector = collector;
+            this.pending.clear();
+            this.pending.addAll(ordered);
+            this.spacingMillis = ordered.isEmpty() ? MAX_SPACING_MILLIS
+                    : Math.max(MIN_SPACING_MILLIS,
+                            Math.min(MAX_SPACING_MILLIS, windowMillis / ordered.size()));
+            start = !dispatching && !pending.isEmpty();
+            dispatching |= start;
+        }
+
+        if (start) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Records the outcome of the data collection of a host, used to prioritize the next cycles.
+     */
+    public void recordResult(String hostLink, boolean success) {
+        if (success) {
+            failedHosts.remove(hostLink);
+        } else {
+            failedHosts.put(hostLink, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Returns whether the data collection is backing off because the collections take too long
+     * or time out, in which case additional data collection should be avoided.
+     */
+    public boolean isSaturated() {
+        return backoffFactor.get() > 1;
+    }
+
+    public Map<String, Double> getStats() {
+        Map<String, Double> stats = new HashMap<>();
+        stats.put(STAT_NAME_IN_FLIGHT_COUNT, (double) inFlight.get());
+        synchronized (this) {
+            stats.put(STAT_NAME_PENDING_COUNT, (double) pending.size());
+        }
+        stats.put(STAT_NAME_DISPATCHED_COUNT, (double) dispatchedCount.get());
+        stats.put(STAT_NAME_DEFERRED_COUNT, (double) deferredCount.get());
+        stats.put(STAT_NAME_TIMED_OUT_COUNT, (double) timedOutCount.get());
+        stats.put(STAT_NAME_BACKOFF_FACTOR, (double) backoffFactor.get());
+        stats.put(STAT_NAME_LATENCY_MILLIS, (double) latencyMillis.get());
+        return stats;
+    }
+
+    /**
+     * Adjusts the backoff to the average latency of the collections completed and the number of
+     * collections timed out since the previous update.
+     */
+    void updateBackoff(long averageLatencyMillis, int timeouts) {
+        latencyMillis.set(averageLatencyMillis);
+        if (averageLatencyMillis > LATENCY_THRESHOLD_MILLIS || timeouts > 0) {
+            int factor = backoffFactor.updateAndGet((f) -> Math.min(MAX_BACKOFF_FACTOR, f * 2));
+            logger.fine(String.format("Data collection latency %d ms, %d timeouts, backing off"
+                    + " by factor %d", averageLatencyMillis, timeouts, factor));
+        } else {
+            backoffFactor.updateAndGet((f) -> Math.max(1, f / 2));
+        }
+    }
+
+    private boolean isFailed(ComputeState cs) {
+        return PowerState.ON != cs.powerState || failedHosts.containsKey(cs.documentSelfLink);
+    }
+
+    private void dispatch() {
+        if (host.isStopping()) {
+            synchronized (this) {
+                dispatching = false;
+                pending.clear();
+            }
+            return;
+        }
+
+        probeLatency();
+
+        ComputeState next = null;
+        HostCollector currentCollector;
+        long delay;
+        synchronized (this) {
+            currentCollector = collector;
+            delay = spacingMillis * backoffFactor.get();
+            if (inFlight.get() >= MAX_IN_FLIGHT) {
+                deferredCount.incrementAndGet();
+            } else {
+                next = pending.poll();
+            }
+            if (next == null && pending.isEmpty()) {
+                dispatching = false;
+            }
+        }
+
+        if (next != null) {
+            collect(next, currentCollector);
+        }
+
+        synchronized (this) {
+            if (!dispatching) {
+                return;
+            }
+        }
+        host.schedule(this::dispatch, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void collect(ComputeState cs, HostCollector currentCollector) {
+        inFlight.incrementAndGet();
+        dispatchedCount.incrementAndGet();
+        lastCollectedMicros.put(cs.documentSelfLink, Utils.getSystemNowMicrosUtc());
+
+        long startMillis = System.currentTimeMillis();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                recordLatency(System.currentTimeMillis() - startMillis);
+            }
+        };
+        host.schedule(() -> {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                timedOutCount.incrementAndGet();
+                synchronized (this) {
+                    timeoutCount++;
+                }
+            }
+        }, IN_FLIGHT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        try {
+            currentCollector.collect(cs, release);
+        } catch (Exception e) {
+            logger.warning(String.format("Failed to collect data of host %s: %s",
+                    cs.documentSelfLink, Utils.toString(e)));
+            release.run();
+        }
+    }
+
+    private synchronized void recordLatency(long millis) {
+        latencySumMillis += millis;
+        latencyCount++;
+    }
+
+    private void probeLatency() {
+        long now = System.currentTimeMillis();
+        long averageLatencyMillis;
+        int timeouts;
+        synchronized (this) {
+            if (now - lastProbeMillis < PROBE_INTERVAL_MILLIS) {
+                return;
+            }
+            lastProbeMillis = now;
+            averageLatencyMillis = latencyCount == 0 ? 0 : latencySumMillis / latencyCount;
+            timeouts = timeoutCount;
+            latencySumMillis = 0;
+            latencyCount = 0;
+            timeoutCount = 0;
+        }
+        updateBackoff(averageLatencyMillis, timeouts);
+    }
+}
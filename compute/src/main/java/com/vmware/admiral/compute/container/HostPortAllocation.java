@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.vmware.admiral.compute.container.HostPortProfileService.HostPortProfileState;
+import com.vmware.xenon.common.LocalizableValidationException;
+
+/**
+ * Compact index of the reserved ports of a {@link HostPortProfileState}. The ports in the range
+ * of the profile are tracked in a bit set with a cursor to the lowest free port, and the ports of
+ * each container in a reverse index, so that allocations and releases don't scan the reserved
+ * ports of the whole host. All changes are applied to the reserved ports of the profile state as
+ * well, which stays the persisted representation of the allocation.
+ */
+class HostPortAllocation {
+
+    private HostPortProfileState state;
+    private final BitSet allocated;
+    private final int rangeSize;
+    private final Map<String, Set<Long>> containerPorts = new HashMap<>();
+    private int allocatedCount;
+    private int nextFreeIndex;
+
+    HostPortAllocation(HostPortProfileState state) {
+        this.state = state;
+        this.rangeSize = (int) Math.min(Math.max(state.endPort - state.startPort, 0),
+                Integer.MAX_VALUE);
+        this.allocated = new BitSet(rangeSize);
+
+        if (state.reservedPorts != null) {
+            for (Map.Entry<Long, String> entry : state.reservedPorts.entrySet()) {
+                index(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Rebinds the allocation to the given state if it is the next version of the indexed state,
+     * i.e. the copy of the state with the changes applied through this allocation by the last
+     * update. Returns <code>false</code> if the state has changed in any other way and has to be
+     * indexed again.
+     */
+    boolean rebind(HostPortProfileState profileState) {
+        if (profileState == state) {
+            return true;
+        }
+        if (profileState.documentVersion != state.documentVersion + 1
+                || profileState.startPort != state.startPort
+                || profileState.endPort != state.endPort
+                || profileState.reservedPorts == null
+                || profileState.reservedPorts.size() != state.reservedPorts.size()) {
+            return false;
+        }
+        state = profileState;
+        return true;
+    }
+
+    /**
+     * Returns the ports allocated for the given container.
+     */
+    Set<Long> getPorts(String containerLink) {
+        Set<Long> ports = containerPorts.get(containerLink);
+        return ports != null ? Collections.unmodifiableSet(ports) : Collections.emptySet();
+    }
+
+    /**
+     * Returns the number of free ports in the range of the profile.
+     */
+    long getFreeCount() {
+        return rangeSize - allocatedCount;
+    }
+
+    /**
+     * Whether the given port is in the range of the profile and not allocated.
+     */
+    boolean isFree(Long port) {
+        int index = toIndex(port);
+        return index >= 0 && !allocated.get(index);
+    }
+
+    /**
+     * Allocates the given ports for the container, taking them over from other containers if
+     * already allocated.
+     */
+    void allocateSpecific(String containerLink, Set<Long> ports) {
+        if (ports == null) {
+            return;
+        }
+        for (Long port : ports) {
+            String previous = state.reservedPorts.put(port, containerLink);
+            if (previous != null) {
+                unindex(port, previous);
+            }
+            index(port, containerLink);
+        }
+    }
+
+    /**
+     * Allocates the given number of any free ports in the range of the profile for the container.
+     * No port is allocated if there are not enough free ports.
+     */
+    void allocateAdditional(String containerLink, long count) {
+        if (count <= 0) {
+            return;
+        }
+        if (count > getFreeCount()) {
+            throw new LocalizableValidationException(
+                    "Unable to allocate hostPort. There are no available ports left.",
+                    "compute.host.port.unavailable");
+        }
+
+        for (long i = 0; i < count; i++) {
+            int index = allocated.nextClearBit(nextFreeIndex);
+            long port = state.startPort + index;
+            state.reservedPorts.put(port, containerLink);
+            index(port, containerLink);
+        }
+    }
+
+    /**
+     * Releases all ports of the container.
+     */
+    void release(String containerLink) {
+        Set<Long> ports = containerPorts.remove(containerLink);
+        if (ports == null) {
+            return;
+        }
+        for (Long port : ports) {
+            state.reservedPorts.remove(port);
+            clear(port);
+        }
+    }
+
+    private void index(Long port, String containerLink) {
+        containerPorts.computeIfAbsent(containerLink, (k) -> new LinkedHashSet<>()).add(port);
+
+        int index = toIndex(port);
+        if (index >= 0 && !allocated.get(index)) {
+            allocated.set(index);
+            allocatedCount++;
+            if (index == nextFreeIndex) {
+                nextFreeIndex = allocated.nextClearBit(index);
+            }
+        }
+    }
+
+    private void unindex(Long port, String containerLink) {
+        Set<Long> ports = containerPorts.get(containerLink);
+        if (ports != null) {
+            ports.remove(port);
+            if (ports.isEmpty()) {
+                containerPorts.remove(containerLink);
+            }
+        }
+        clear(port);
+    }
+
+    private void clear(Long port) {
+        int index = toIndex(port);
+        if (index >= 0 && allocated.get(index)) {
+            allocated.clear(index);
+            allocatedCount--;
+            nextFreeIndex = Math.min(nextFreeIndex, index);
+        }
+    }
+
+    private int toIndex(Long port) {
+        long index = port - state.startPort;
+        return index >= 0 && index < rangeSize ? (int) index : -1;
+    }
+}
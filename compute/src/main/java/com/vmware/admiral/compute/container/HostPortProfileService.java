@@ -14,8 +14,12 @@ package com.vmware.admiral.compute.container;
 import static com.vmware.admiral.common.util.AssertUtil.assertNotEmpty;
 import static com.vmware.admiral.common.util.AssertUtil.assertNotNull;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -37,6 +41,8 @@ import com.vmware.xenon.common.Utils;
  *
  * It tracks reserved port in the port to container map.
  * When port is released, it is removed from the map.
+ * Allocations are served from a compact {@link HostPortAllocation} index of the map, which is
+ * kept for the current state of the service.
  */
 public class HostPortProfileService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.HOST_PORT_PROFILES;
@@ -67,6 +73,7 @@ public class HostPortProfileService extends StatefulService {
 
         /** Host port to container link map. */
         @ServiceDocument.Documentation(description = "Host port to container link map.")
+        @ServiceDocument.PropertyOptions(indexing = ServiceDocumentDescription.PropertyIndexingOption.STORE_ONLY)
         public Map<Long, String> reservedPorts;
     }
 
@@ -92,8 +99,17 @@ public class HostPortProfileService extends StatefulService {
         /** Specific host ports to allocate. */
         public Set<Long> specificHostPorts;
 
+        /**
+         * Allocation requests of multiple containers, applied together with a single update of
+         * the profile. Only supported with {@link HostPortProfileReservationRequestMode#ALLOCATE}
+         * mode, in which case the container link of the batch request is not required.
+         */
+        public List<HostPortProfileReservationRequest> containerRequests;
+
     }
 
+    private HostPortAllocation allocation;
+
     public HostPortProfileService() {
         super(HostPortProfileState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -112,24 +128,26 @@ public class HostPortProfileService extends StatefulService {
             HostPortProfileState hostPortProfileState = patch.getBody(HostPortProfileState.class);
             validate(hostPortProfileState);
             setState(patch, hostPortProfileState);
+            allocation = null;
             patch.setBody(null).complete();
             return;
         }
 
         HostPortProfileReservationRequest request = patch.getBody(HostPortProfileReservationRequest.class);
 
-        assertNotEmpty(request.containerLink, "containerLink");
         assertNotNull(request.mode, "mode");
+        List<HostPortProfileReservationRequest> requests = getContainerRequests(request);
         HostPortProfileState hostPortProfileState = getState(patch);
+        HostPortAllocation portAllocation = getAllocation(hostPortProfileState);
         switch (request.mode) {
         case ALLOCATE:
-            allocatePorts(hostPortProfileState, request);
+            allocatePorts(hostPortProfileState, portAllocation, requests);
             break;
         case RELEASE:
-            releasePorts(hostPortProfileState, request);
+            releasePorts(hostPortProfileState, portAllocation, request);
             break;
         case UPDATE_ALLOCATION:
-            updatePortAllocationForContainer(hostPortProfileState, request);
+            updatePortAllocationForContainer(hostPortProfileState, portAllocation, request);
             break;
         default:
             throw new UnsupportedOperationException("This operation is not supported: " + request.mode);
@@ -155,76 +173,96 @@ public class HostPortProfileService extends StatefulService {
      * Update container port allocation.
      * Mark container ports as allocated and release ports that are not used anymore
      */
-    private void updatePortAllocationForContainer(HostPortProfileState state, HostPortProfileReservationRequest request) {
-        Set<Long> previousPorts = getAllocatedPorts(state, request.containerLink);
+    private void updatePortAllocationForContainer(HostPortProfileState state,
+            HostPortAllocation portAllocation, HostPortProfileReservationRequest request) {
+        Set<Long> previousPorts = new LinkedHashSet<>(
+                portAllocation.getPorts(request.containerLink));
         // First remove all ports, this will remove ports that are not allocated anymore
-        releasePorts(state, request);
+        releasePorts(state, portAllocation, request);
         // Second mark ports allocated
-        allocateSpecificPorts(state, request);
+        portAllocation.allocateSpecific(request.containerLink, request.specificHostPorts);
         logInfo("Updating port allocation from [%s] to [%s] for container [%s] and profile [%s]",
                 previousPorts,
-                getAllocatedPorts(state, request.containerLink),
+                portAllocation.getPorts(request.containerLink),
                 request.containerLink,
                 state.documentSelfLink);
     }
 
     /** Release all ports for HostPortProfileReservationRequest. */
-    private void releasePorts(HostPortProfileState state, HostPortProfileReservationRequest request) {
+    private void releasePorts(HostPortProfileState state, HostPortAllocation portAllocation,
+            HostPortProfileReservationRequest request) {
         logInfo("Releasing ports [%s] for container [%s] and profile [%s].",
-                getAllocatedPorts(state, request.containerLink),
+                portAllocation.getPorts(request.containerLink),
                 request.containerLink,
                 state.documentSelfLink);
         // remove container host ports from reserved ports
-        state.reservedPorts.entrySet()
-                .removeIf(p -> request.containerLink.equals(p.getValue()));
+        portAllocation.release(request.containerLink);
     }
 
-    /** Allocate all ports for HostPortProfileReservationRequest. */
-    private void allocatePorts(HostPortProfileState state,
-                               HostPortProfileReservationRequest request) {
-        allocateSpecificPorts(state, request);
-        allocateAdditionalPorts(state, request);
+    /** Allocate all ports for the HostPortProfileReservationRequests of the containers. */
+    private void allocatePorts(HostPortProfileState state, HostPortAllocation portAllocation,
+            List<HostPortProfileReservationRequest> requests) {
+        // check that there are enough ports left for all containers upfront, so that nothing is
+        // allocated if the request can't be satisfied
+        Set<Long> specificHostPorts = new HashSet<>();
+        long additionalHostPortCount = 0;
+        for (HostPortProfileReservationRequest request : requests) {
+            if (request.specificHostPorts != null) {
+                specificHostPorts.addAll(request.specificHostPorts);
+            }
+            additionalHostPortCount += Math.max(request.additionalHostPortCount, 0);
+        }
+        long freeCount = portAllocation.getFreeCount()
+                - specificHostPorts.stream().filter(portAllocation::isFree).count();
+        if (additionalHostPortCount > freeCount) {
+            throw new LocalizableValidationException(
+                    "Unable to allocate hostPort. There are no available ports left.",
+                    "compute.host.port.unavailable");
+        }
 
-        logInfo("Allocating ports [%s] for container [%s] and profile [%s].",
-                getAllocatedPorts(state, request.containerLink),
-                request.containerLink,
-                state.documentSelfLink);
+        for (HostPortProfileReservationRequest request : requests) {
+            portAllocation.allocateSpecific(request.containerLink, request.specificHostPorts);
+        }
+        for (HostPortProfileReservationRequest request : requests) {
+            portAllocation.allocateAdditional(request.containerLink,
+                    request.additionalHostPortCount);
+
+            logInfo("Allocating ports [%s] for container [%s] and profile [%s].",
+                    portAllocation.getPorts(request.containerLink),
+                    request.containerLink,
+                    state.documentSelfLink);
+        }
     }
 
-    /** Allocate a number of any available ports. */
-    private void allocateAdditionalPorts(HostPortProfileState state,
-                                         HostPortProfileReservationRequest request) {
-        long statIndex = state.startPort;
-
-        for (long i = 0; i < request.additionalHostPortCount; i++) {
-            Long allocatedPort = null;
-            for (long k = statIndex; k < state.endPort; k++) {
-                if (!state.reservedPorts.containsKey(k)) {
-                    allocatedPort = k;
-                    state.reservedPorts.put(allocatedPort, request.containerLink);
-                    // start from the next index for the next allocation
-                    statIndex = k + 1;
-                    break;
-                }
-            }
-            if (allocatedPort == null) {
-                LocalizableValidationException exception =
-                        new LocalizableValidationException(
-                                "Unable to allocate hostPort. There are no available ports left.",
-                                "compute.host.port.unavailable");
-                throw exception;
-            }
+    private List<HostPortProfileReservationRequest> getContainerRequests(
+            HostPortProfileReservationRequest request) {
+        if (request.containerRequests == null || request.containerRequests.isEmpty()) {
+            assertNotEmpty(request.containerLink, "containerLink");
+            return Collections.singletonList(request);
         }
-    }
 
-    /** Allocate specific ports. */
-    private void allocateSpecificPorts(HostPortProfileState state,
-                                       HostPortProfileReservationRequest request) {
-        if (request.specificHostPorts == null) {
-            return;
+        if (request.mode != HostPortProfileReservationRequestMode.ALLOCATE) {
+            throw new IllegalArgumentException(
+                    "'containerRequests' are supported only in ALLOCATE mode.");
+        }
+        for (HostPortProfileReservationRequest containerRequest : request.containerRequests) {
+            assertNotEmpty(containerRequest.containerLink, "containerLink");
         }
+        return request.containerRequests;
+    }
 
-        request.specificHostPorts.forEach(p -> state.reservedPorts.put(p, request.containerLink));
+    /**
+     * Returns the port allocation of the given state, indexing the reserved ports only if the
+     * state has been changed other than by the last request (e.g. on start, PUT or owner change).
+     */
+    private HostPortAllocation getAllocation(HostPortProfileState state) {
+        if (state.reservedPorts == null) {
+            state.reservedPorts = new LinkedHashMap<>();
+        }
+        if (allocation == null || !allocation.rebind(state)) {
+            allocation = new HostPortAllocation(state);
+        }
+        return allocation;
     }
 
     @Override
@@ -269,6 +307,7 @@ public class HostPortProfileService extends StatefulService {
         validate(hostPortProfileState);
 
         this.setState(op, hostPortProfileState);
+        allocation = null;
         op.setBody(null).complete();
     }
 
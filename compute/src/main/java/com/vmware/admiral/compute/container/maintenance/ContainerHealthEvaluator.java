@@ -14,12 +14,11 @@ package com.vmware.admiral.compute.container.maintenance;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 
-import com.vmware.admiral.common.util.ServiceDocumentQuery;
-import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerFactoryService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
+import com.vmware.admiral.compute.container.HealthConfigCache;
 import com.vmware.admiral.log.EventLogService;
 import com.vmware.admiral.log.EventLogService.EventLogState;
 import com.vmware.admiral.log.EventLogService.EventLogState.EventLogType;
@@ -77,23 +76,23 @@ public class ContainerHealthEvaluator {
             return;
         }
 
+        // the health config may be shared through the cache, do not modify it
+        int healthyThreshold = healthConfig.healthyThreshold != null
+                ? healthConfig.healthyThreshold : DEFAULT_HEALTHY_THRESHOLD;
+        int unhealthyThreshold = healthConfig.unhealthyThreshold != null
+                ? healthConfig.unhealthyThreshold : DEFAULT_UNHEALTHY_THRESHOLD;
+
         String status = null;
         PowerState powerState = null;
-        if (healthConfig.healthyThreshold == null) {
-            healthConfig.healthyThreshold = DEFAULT_HEALTHY_THRESHOLD;
-        }
-        if (healthConfig.unhealthyThreshold == null) {
-            healthConfig.unhealthyThreshold = DEFAULT_UNHEALTHY_THRESHOLD;
-        }
-        if (patchHealth.healthFailureCount == healthConfig.unhealthyThreshold) {
+        if (patchHealth.healthFailureCount == unhealthyThreshold) {
             status = ContainerState.CONTAINER_UNHEALTHY_STATUS;
             powerState = PowerState.ERROR;
             publishEventLog(patchHealth);
         } else if (!skipDegraded
-                && patchHealth.healthFailureCount < healthConfig.unhealthyThreshold
-                && patchHealth.healthSuccessCount < healthConfig.healthyThreshold) {
+                && patchHealth.healthFailureCount < unhealthyThreshold
+                && patchHealth.healthSuccessCount < healthyThreshold) {
             status = ContainerState.CONTAINER_DEGRADED_STATUS;
-        } else if (patchHealth.healthSuccessCount >= healthConfig.healthyThreshold) {
+        } else if (patchHealth.healthSuccessCount >= healthyThreshold) {
             status = ContainerState.CONTAINER_RUNNING_STATUS;
             // do not set container to RUNNING if we know it is stopped
             if (patchHealth.containerStopped == null || !patchHealth.containerStopped) {
@@ -101,27 +100,31 @@ public class ContainerHealthEvaluator {
             }
         }
 
-        if (status != null) {
-            ContainerState state = new ContainerState();
-            state.status = status;
-            if (powerState != null) {
-                state.powerState = powerState;
-            }
+        // only patch the container on transitions, most checks do not change its status
+        if (status == null || (status.equals(containerState.status)
+                && (powerState == null || powerState == containerState.powerState))) {
+            return;
+        }
 
-            host.sendRequest(Operation
-                    .createPatch(host, containerState.documentSelfLink)
-                    .setBodyNoCloning(state)
-                    .setReferer(host.getUri())
-                    .setCompletion((o, ex) -> {
-                        if (ex != null) {
-                            host.log(Level.WARNING, "Failed to update container health state after"
-                                    + " periodic maintenance: %s", o.getUri());
-                        } else {
-                            host.log(Level.FINE, "Container health updated successfully after"
-                                    + " periodic maintenance: %s", o.getUri());
-                        }
-                    }));
+        ContainerState state = new ContainerState();
+        state.status = status;
+        if (powerState != null) {
+            state.powerState = powerState;
         }
+
+        host.sendRequest(Operation
+                .createPatch(host, containerState.documentSelfLink)
+                .setBodyNoCloning(state)
+                .setReferer(host.getUri())
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        host.log(Level.WARNING, "Failed to update container health state after"
+                                + " periodic maintenance: %s", o.getUri());
+                    } else {
+                        host.log(Level.FINE, "Container health updated successfully after"
+                                + " periodic maintenance: %s", o.getUri());
+                    }
+                }));
     }
 
     private void publishEventLog(ContainerStats patchHealth) {
@@ -149,20 +152,14 @@ public class ContainerHealthEvaluator {
 
     private void getHealthConfig(String containerDescriptionLink,
             Consumer<HealthConfig> callback) {
-
-        ServiceDocumentQuery<ContainerDescription> query =
-                new ServiceDocumentQuery<ContainerDescription>(
-                        host,
-                        ContainerDescription.class);
-        String healthConfigUriPath = UriUtils.buildUriPath(containerDescriptionLink);
-        query.queryDocument(healthConfigUriPath,
-                (r) -> {
-                    if (r.hasException()) {
+        HealthConfigCache.getInstance(host).getHealthConfig(host,
+                UriUtils.buildUriPath(containerDescriptionLink), (healthConfig, e) -> {
+                    if (e != null) {
                         host.log(Level.FINE,
                                 "Failed to retrieve container's health config: %s - %s",
-                                containerState.documentSelfLink, r.getException());
-                    } else if (r.hasResult() && r.getResult().healthConfig != null) {
-                        callback.accept(r.getResult().healthConfig);
+                                containerState.documentSelfLink, e);
+                    } else if (healthConfig != null) {
+                        callback.accept(healthConfig);
                     } else {
                         host.log(Level.FINE,
                                 "Container's health config: %s not found.",
@@ -11,9 +11,16 @@
 
 package com.vmware.admiral.compute.container.maintenance;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
 import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceStatUtils;
 import com.vmware.xenon.common.ServiceStats;
 import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
 import com.vmware.xenon.common.Utils;
 
 /**
@@ -32,6 +39,18 @@ public class ContainerStats {
     public static final String FIELD_NAME_HEALTH_CHECK_SUCCESS = "healthCheckSuccess";
     public static final String FIELD_NAME_CONTAINER_STOPPED = "containerStopped";
 
+    /**
+     * Metrics for which an hourly and a daily history of min/avg/max values is kept next to the
+     * latest value. The history is part of the in-memory stats of the container service, so it is
+     * not persisted and starts over when the owner node restarts or the ownership changes.
+     */
+    public static final List<String> HISTORY_FIELD_NAMES = Collections.unmodifiableList(
+            Arrays.asList(FIELD_NAME_CPU_USAGE, FIELD_NAME_MEM_USAGE, FIELD_NAME_NETWORK_IN,
+                    FIELD_NAME_NETWORK_OUT));
+
+    private static final EnumSet<AggregationType> HISTORY_AGGREGATION_TYPES = EnumSet.of(
+            AggregationType.AVG, AggregationType.MIN, AggregationType.MAX);
+
     /**
      * A structured string identifier for the document type
      *
@@ -82,6 +101,13 @@ public class ContainerStats {
         if (networkOut != 0) {
             service.setStat(ContainerStats.FIELD_NAME_NETWORK_OUT, networkOut);
         }
+        if (hasUsageStats()) {
+            // zero usage is a sample too, otherwise idle periods would not lower the history
+            setHistoryStat(service, FIELD_NAME_CPU_USAGE, cpuUsage);
+            setHistoryStat(service, ContainerStats.FIELD_NAME_MEM_USAGE, memUsage);
+            setHistoryStat(service, ContainerStats.FIELD_NAME_NETWORK_IN, networkIn);
+            setHistoryStat(service, ContainerStats.FIELD_NAME_NETWORK_OUT, networkOut);
+        }
 
         if (healthCheckSuccess != null) {
             service.setStat(ContainerStats.FIELD_NAME_HEALTH_SUCCESS_COUNT, healthSuccessCount);
@@ -94,6 +120,30 @@ public class ContainerStats {
         }
     }
 
+    /**
+     * Returns whether the stats carry resource usage figures, as opposed to health check results
+     * only. The memory limit is reported with every stats sample of a running container, even
+     * when all of the usage figures are zero.
+     */
+    public boolean hasUsageStats() {
+        return memLimit != 0 || cpuUsage != 0 || memUsage != 0 || networkIn != 0
+                || networkOut != 0;
+    }
+
+    /**
+     * Records the value in the bounded hourly (per minute bins) and daily (per hour bins)
+     * time series of the service stats.
+     */
+    private static void setHistoryStat(Service service, String name, double value) {
+        ServiceStat hourStat = ServiceStatUtils.getOrCreateHourlyTimeSeriesStat(service, name,
+                HISTORY_AGGREGATION_TYPES);
+        service.setStat(hourStat, value);
+
+        ServiceStat dayStat = ServiceStatUtils.getOrCreateDailyTimeSeriesStat(service, name,
+                HISTORY_AGGREGATION_TYPES);
+        service.setStat(dayStat, value);
+    }
+
     public static ContainerStats transform(Service service) {
         ContainerStats containerStats = new ContainerStats();
         containerStats.cpuUsage = getValue(service, ContainerStats.FIELD_NAME_CPU_USAGE);
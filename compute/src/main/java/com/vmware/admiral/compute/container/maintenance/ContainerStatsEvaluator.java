@@ -11,19 +11,21 @@
 
 package com.vmware.admiral.compute.container.maintenance;
 
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import com.vmware.xenon.common.Utils;
 
 /**
  * Calculate the container stats based on the json data coming from the Docker hosts.
+ *
+ * The stats json is read with a streaming tokenizer: only the handful of values needed for the
+ * calculations are kept, everything else (per device block io, memory breakdown, etc.) is
+ * skipped without being materialized.
  */
 public class ContainerStatsEvaluator {
 
@@ -36,12 +38,28 @@ public class ContainerStatsEvaluator {
      * @return ContainerStats with parsed and calculated stats value.
      */
     public static ContainerStats calculateStatsValues(String statsJson) {
-        ContainerStats state = new ContainerStats();
         if (statsJson == null || statsJson.isEmpty()) {
-            return state;
+            return new ContainerStats();
         }
+        return calculateStatsValues(new StringReader(statsJson));
+    }
 
-        Map<String, JsonElement> stats = parseStats(statsJson);
+    /**
+     * Parse the json stats read from the given reader and return ContainerStats state with the
+     * calculated values from the json field. The reader is consumed and closed.
+     *
+     * @return ContainerStats with parsed and calculated stats value.
+     */
+    public static ContainerStats calculateStatsValues(Reader statsReader) {
+        ContainerStats state = new ContainerStats();
+
+        RawStats stats = new RawStats();
+        try (JsonReader reader = new JsonReader(statsReader)) {
+            readStats(reader, stats);
+        } catch (Exception e) {
+            Utils.logWarning("Error parsing container stats. Error: %s", Utils.toString(e));
+            return state;
+        }
 
         calculateCpuUsage(state, stats);
 
@@ -54,202 +72,249 @@ public class ContainerStatsEvaluator {
         return state;
     }
 
-    private static Map<String, JsonElement> parseStats(String statsJson) {
-        Map<String, JsonElement> stats = null;
-        try {
-            stats = Utils.fromJson(statsJson, new TypeToken<Map<String, JsonElement>>() {
-            }.getType());
-        } catch (Exception e) {
-            Utils.logWarning("Error parsing container stats: [%s]. Error: %s", statsJson,
-                    Utils.toString(e));
+    private static void readStats(JsonReader reader, RawStats stats) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "read":
+                stats.read = nextStringOrNull(reader);
+                break;
+            case "cpu_stats":
+                stats.cpu = readCpuStats(reader);
+                break;
+            case "precpu_stats":
+                stats.precpu = readCpuStats(reader);
+                break;
+            case "memory_stats":
+                readMemoryStats(reader, stats);
+                break;
+            case "networks":
+                readNetworks(reader, stats);
+                break;
+            default:
+                reader.skipValue();
+            }
         }
-        return stats;
+        reader.endObject();
     }
 
-    private static void setNetworkUsage(ContainerStats state, Map<String, JsonElement> stats) {
-        try {
-            JsonElement jsonElement = stats.get("networks");
-            if (jsonElement == null) {
-                return;
-            }
-            JsonObject networks = jsonElement.getAsJsonObject();
-            if (networks == null) {
-                return;
-            }
-            Set<Entry<String, JsonElement>> entrySet = networks.entrySet();
-            if (entrySet == null) {
-                return;
+    private static CpuStats readCpuStats(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        CpuStats cpu = new CpuStats();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "system_cpu_usage":
+                cpu.systemCpuUsage = nextLongOrNull(reader);
+                break;
+            case "cpu_usage":
+                if (skipNull(reader)) {
+                    break;
+                }
+                cpu.hasCpuUsage = true;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                    case "total_usage":
+                        cpu.totalUsage = nextLongOrNull(reader);
+                        break;
+                    case "percpu_usage":
+                        cpu.perCpuCount = countArrayElements(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                break;
+            default:
+                reader.skipValue();
             }
-
-            NetworkTraffic summedTraffic = entrySet.stream()
-                    .map(entry -> {
-
-                        JsonObject network = entry.getValue().getAsJsonObject();
-                        NetworkTraffic result = new NetworkTraffic();
-
-                        if (network != null) {
-                            JsonElement netInValue = network.get("rx_bytes");
-                            if (netInValue != null) {
-                                result.networkIn = netInValue.getAsLong();
-                            }
-
-                            JsonElement netOutValue = network.get("tx_bytes");
-                            if (netOutValue != null) {
-                                result.networkOut += netOutValue.getAsLong();
-                            }
-                        }
-
-                        return result;
-
-                    }).reduce(new NetworkTraffic(), (t1, t2) -> {
-
-                        return new NetworkTraffic(t1.networkIn + t2.networkIn,
-                                t1.networkOut + t2.networkOut);
-                    });
-
-            state.networkIn = summedTraffic.networkIn;
-            state.networkOut = summedTraffic.networkOut;
-
-        } catch (Exception e) {
-            Utils.logWarning("Error during container stats network usage parsing: %s",
-                    Utils.toString(e));
         }
+        reader.endObject();
+        return cpu;
     }
 
-    private static void setMemoryUsage(ContainerStats state, Map<String, JsonElement> stats) {
-        try {
-            JsonElement jsonElement = stats.get("memory_stats");
-            if (jsonElement == null) {
-                return;
-            }
-            JsonObject memory_stats = jsonElement.getAsJsonObject();
-            JsonElement limitValue = memory_stats.get("limit");
-            if (limitValue != null) {
-                state.memLimit = limitValue.getAsLong();
-            }
-            JsonElement usage = memory_stats.get("usage");
-            if (usage != null) {
-                state.memUsage = usage.getAsLong();
+    private static void readMemoryStats(JsonReader reader, RawStats stats) throws IOException {
+        if (skipNull(reader)) {
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "limit":
+                stats.memLimit = nextLongOrNull(reader);
+                break;
+            case "usage":
+                stats.memUsage = nextLongOrNull(reader);
+                break;
+            default:
+                reader.skipValue();
             }
-        } catch (Exception e) {
-            Utils.logWarning("Error during container stats memory usage parsing: %s",
-                    Utils.toString(e));
         }
+        reader.endObject();
     }
 
-    // Calculate Docker container CPU percentage usage as implemented by the command line tool -
-    // https://github.com/docker/docker/blob/master/api/client/stats.go#L195
-    private static void calculateCpuUsage(ContainerStats state, Map<String, JsonElement> stats) {
-        try {
-            JsonElement cpu_stats_json = stats.get("cpu_stats");
-            if (cpu_stats_json == null || cpu_stats_json.isJsonNull()) {
-                Utils.logWarning("cpu_stats is null.");
-                return;
-            }
-            JsonObject cpu_stats = cpu_stats_json.getAsJsonObject();
-
-            JsonElement systemCpuUsageValue = cpu_stats.get("system_cpu_usage");
-            if (systemCpuUsageValue == null || systemCpuUsageValue.isJsonNull()) {
-                Utils.logWarning("system_cpu_usage is null.");
-                return;
-            }
-            long system_cpu_usage = systemCpuUsageValue.getAsLong();
-
-            JsonElement cpu_usage_json = cpu_stats.get("cpu_usage");
-            if (cpu_usage_json == null || cpu_usage_json.isJsonNull()) {
-                Utils.logWarning("cpu_usage is null.");
-                return;
-            }
-            JsonObject cpu_usage = cpu_usage_json.getAsJsonObject();
-
-            JsonElement totalUsageValue = cpu_usage.get("total_usage");
-            if (totalUsageValue == null || totalUsageValue.isJsonNull()) {
-                Utils.logWarning("totalUsageValue is null.");
-                return;
-            }
-            long total_usage = totalUsageValue.getAsLong();
-
-            JsonElement percpu_usage_json = cpu_usage.get("percpu_usage");
-            if (percpu_usage_json == null || percpu_usage_json.isJsonNull()) {
-                Utils.logWarning("percpu_usage is null.");
-                return;
-            }
-            JsonArray percpu_usage = percpu_usage_json.getAsJsonArray();
-
-            JsonElement precpu_stats_json = stats.get("precpu_stats");
-            if (precpu_stats_json == null || precpu_stats_json.isJsonNull()) {
-                Utils.logWarning("precpu_stats is null.");
-                return;
+    private static void readNetworks(JsonReader reader, RawStats stats) throws IOException {
+        if (skipNull(reader)) {
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            reader.nextName();
+            if (skipNull(reader)) {
+                continue;
             }
-            JsonObject precpu_stats = precpu_stats_json.getAsJsonObject();
-
-            JsonElement system_cpu_usage_json = precpu_stats.get("system_cpu_usage");
-            if (system_cpu_usage_json == null || system_cpu_usage_json.isJsonNull()) {
-                Utils.logWarning("system_cpu_usage is null.");
-                return;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                case "rx_bytes":
+                    Long rx = nextLongOrNull(reader);
+                    stats.networkIn += rx == null ? 0 : rx;
+                    break;
+                case "tx_bytes":
+                    Long tx = nextLongOrNull(reader);
+                    stats.networkOut += tx == null ? 0 : tx;
+                    break;
+                default:
+                    reader.skipValue();
+                }
             }
-            long presystem_cpu_usage = system_cpu_usage_json.getAsLong();
+            reader.endObject();
+        }
+        reader.endObject();
+    }
 
-            JsonElement precpu_usage_json = precpu_stats.get("cpu_usage");
-            if (precpu_usage_json == null || precpu_usage_json.isJsonNull()) {
-                Utils.logWarning("precpu_usage is null.");
-                return;
-            }
-            JsonObject precpu_usage = precpu_usage_json.getAsJsonObject();
+    private static boolean skipNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
 
-            JsonElement pretotal_usage_json = precpu_usage.get("total_usage");
-            if (pretotal_usage_json == null || pretotal_usage_json.isJsonNull()) {
-                Utils.logWarning("total_usage is null.");
-                return;
-            }
+    private static Long nextLongOrNull(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        return reader.nextLong();
+    }
 
-            long pretotal_usage = pretotal_usage_json.getAsLong();
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        return reader.nextString();
+    }
 
-            long cpuDelta = total_usage - pretotal_usage;
-            long systemDelta = system_cpu_usage - presystem_cpu_usage;
+    private static Integer countArrayElements(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.skipValue();
+            count++;
+        }
+        reader.endArray();
+        return count;
+    }
 
-            if (systemDelta > 0 && cpuDelta > 0) {
-                double cpuUsage = (((double) cpuDelta / systemDelta) * percpu_usage.size()) * 100.0;
-                state.cpuUsage = Math.round(cpuUsage * 100d) / 100d;
-            }
+    private static void setNetworkUsage(ContainerStats state, RawStats stats) {
+        state.networkIn = stats.networkIn;
+        state.networkOut = stats.networkOut;
+    }
 
-        } catch (Exception e) {
-            Utils.logWarning("Error during container stats CPU usage calculations: %s",
-                    Utils.toString(e));
+    private static void setMemoryUsage(ContainerStats state, RawStats stats) {
+        if (stats.memLimit != null) {
+            state.memLimit = stats.memLimit;
+        }
+        if (stats.memUsage != null) {
+            state.memUsage = stats.memUsage;
         }
     }
 
-    private static void setContainerStopped(ContainerStats state, Map<String, JsonElement> stats) {
-        try {
-            JsonElement read_json = stats.get("read");
-            if (read_json == null || read_json.isJsonNull()) {
-                Utils.logWarning("read is null.");
-                return;
-            }
-            String read = read_json.getAsString();
-            state.containerStopped = Boolean.FALSE;
-            if (CONTAINER_STOPPED_TIME.equals(read)) {
-                state.containerStopped = Boolean.TRUE;
-            }
-        } catch (Exception e) {
-            Utils.logWarning("Error during container stats status calculations: %s",
-                    Utils.toString(e));
+    // Calculate Docker container CPU percentage usage as implemented by the command line tool -
+    // https://github.com/docker/docker/blob/master/api/client/stats.go#L195
+    private static void calculateCpuUsage(ContainerStats state, RawStats stats) {
+        CpuStats cpu = stats.cpu;
+        if (cpu == null) {
+            Utils.logWarning("cpu_stats is null.");
+            return;
+        }
+        if (cpu.systemCpuUsage == null) {
+            Utils.logWarning("system_cpu_usage is null.");
+            return;
+        }
+        if (!cpu.hasCpuUsage) {
+            Utils.logWarning("cpu_usage is null.");
+            return;
+        }
+        if (cpu.totalUsage == null) {
+            Utils.logWarning("totalUsageValue is null.");
+            return;
+        }
+        if (cpu.perCpuCount == null) {
+            Utils.logWarning("percpu_usage is null.");
+            return;
         }
-    }
 
-    private static class NetworkTraffic {
+        CpuStats precpu = stats.precpu;
+        if (precpu == null) {
+            Utils.logWarning("precpu_stats is null.");
+            return;
+        }
+        if (precpu.systemCpuUsage == null) {
+            Utils.logWarning("system_cpu_usage is null.");
+            return;
+        }
+        if (!precpu.hasCpuUsage) {
+            Utils.logWarning("precpu_usage is null.");
+            return;
+        }
+        if (precpu.totalUsage == null) {
+            Utils.logWarning("total_usage is null.");
+            return;
+        }
 
-        public long networkIn;
-        public long networkOut;
+        long cpuDelta = cpu.totalUsage - precpu.totalUsage;
+        long systemDelta = cpu.systemCpuUsage - precpu.systemCpuUsage;
 
-        public NetworkTraffic() {
-            this(0, 0);
+        if (systemDelta > 0 && cpuDelta > 0) {
+            double cpuUsage = (((double) cpuDelta / systemDelta) * cpu.perCpuCount) * 100.0;
+            state.cpuUsage = Math.round(cpuUsage * 100d) / 100d;
         }
+    }
 
-        public NetworkTraffic(long networkIn, long networkOut) {
-            this.networkIn = networkIn;
-            this.networkOut = networkOut;
+    private static void setContainerStopped(ContainerStats state, RawStats stats) {
+        if (stats.read == null) {
+            Utils.logWarning("read is null.");
+            return;
         }
+        state.containerStopped = CONTAINER_STOPPED_TIME.equals(stats.read)
+                ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * Values picked out of the stats json, {@code null} when not present.
+     */
+    private static class RawStats {
+        String read;
+        CpuStats cpu;
+        CpuStats precpu;
+        Long memLimit;
+        Long memUsage;
+        long networkIn;
+        long networkOut;
+    }
 
+    private static class CpuStats {
+        Long systemCpuUsage;
+        boolean hasCpuUsage;
+        Long totalUsage;
+        Integer perCpuCount;
     }
 }
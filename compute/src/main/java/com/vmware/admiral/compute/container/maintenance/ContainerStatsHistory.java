@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container.maintenance;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.TimeBin;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * History of the operational metrics of a given Container, downsampled to min/avg/max bins.
+ */
+public class ContainerStatsHistory {
+    public static final String KIND = Utils.buildKind(ContainerStatsHistory.class);
+
+    /**
+     * A structured string identifier for the document type
+     *
+     * Infrastructure use only
+     */
+    public String documentKind = KIND;
+
+    /**
+     * Time series per stat name (metric name with an hourly or daily suffix). Bins are keyed by
+     * their start time in milliseconds since the epoch.
+     */
+    public Map<String, SortedMap<Long, TimeBin>> entries = new HashMap<>();
+
+    /** Width of the bins of each time series in milliseconds, keyed by stat name */
+    public Map<String, Long> binDurationMillis = new HashMap<>();
+
+    /**
+     * Extracts the history of the container metrics from the container service stats, keeping
+     * only the bins overlapping the given time range.
+     *
+     * @param fromMillis
+     *            inclusive range start in milliseconds since the epoch, {@code null} for no bound
+     * @param toMillis
+     *            exclusive range end in milliseconds since the epoch, {@code null} for no bound
+     */
+    public static ContainerStatsHistory transform(ServiceStats serviceStats, Long fromMillis,
+            Long toMillis) {
+        ContainerStatsHistory history = new ContainerStatsHistory();
+        if (serviceStats == null || serviceStats.entries == null) {
+            return history;
+        }
+        for (Entry<String, ServiceStat> entry : serviceStats.entries.entrySet()) {
+            TimeSeriesStats timeSeries = entry.getValue().timeSeriesStats;
+            if (timeSeries == null || timeSeries.bins == null || !isHistoryStat(entry.getKey())) {
+                continue;
+            }
+            SortedMap<Long, TimeBin> bins = new TreeMap<>();
+            for (Entry<Long, TimeBin> bin : timeSeries.bins.entrySet()) {
+                long binStart = bin.getKey();
+                if (fromMillis != null && binStart + timeSeries.binDurationMillis <= fromMillis) {
+                    continue;
+                }
+                if (toMillis != null && binStart >= toMillis) {
+                    continue;
+                }
+                bins.put(binStart, bin.getValue());
+            }
+            history.entries.put(entry.getKey(), bins);
+            history.binDurationMillis.put(entry.getKey(), (long) timeSeries.binDurationMillis);
+        }
+        return history;
+    }
+
+    private static boolean isHistoryStat(String statName) {
+        for (String fieldName : ContainerStats.HISTORY_FIELD_NAMES) {
+            if (statName.startsWith(fieldName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.ComputeConstants;
+import com.vmware.admiral.compute.container.ComputeBaseTest;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.UriUtils;
+
+public class ClusterHostsViewTest extends ComputeBaseTest {
+    private static final String PROJECT_LINK = "/projects/test";
+
+    private ClusterHostsView view;
+    private ResourcePoolState zone1;
+    private ResourcePoolState zone2;
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(ComputeService.FACTORY_LINK);
+        view = new ClusterHostsView(host);
+        zone1 = createResourcePool();
+        zone2 = createResourcePool();
+    }
+
+    @Test
+    public void testNoPlacementZonesNeedNoQuery() throws Throwable {
+        // a view without a host fails any query, so the result is completed without one
+        CompletableFuture<Map<String, List<ComputeState>>> result = new ClusterHostsView(null)
+                .getHostsWithinPlacementZones(Collections.emptyList(), null)
+                .toCompletionStage().toCompletableFuture();
+
+        assertTrue(result.isDone());
+        assertTrue(result.get().isEmpty());
+    }
+
+    @Test
+    public void testEmptyPlacementZonesAreReturned() throws Throwable {
+        Map<String, List<ComputeState>> hosts = getHosts(zone1, zone2);
+
+        assertEquals(2, hosts.size());
+        assertTrue(hosts.get(zone1.documentSelfLink).isEmpty());
+        assertTrue(hosts.get(zone2.documentSelfLink).isEmpty());
+    }
+
+    @Test
+    public void testChangedHostIsRetrievedAgain() throws Throwable {
+        ComputeState computeState = createContainerHost(zone1);
+        assertEquals(computeState.name,
+                getHosts(zone1).get(zone1.documentSelfLink).get(0).name);
+
+        ComputeState patch = new ComputeState();
+        patch.name = "renamed";
+        doPatch(patch, computeState.documentSelfLink);
+
+        List<ComputeState> hosts = getHosts(zone1).get(zone1.documentSelfLink);
+        assertEquals(1, hosts.size());
+        assertEquals("renamed", hosts.get(0).name);
+    }
+
+    @Test
+    public void testHostIsNotRetrievedForChangesNotInCluster() throws Throwable {
+        ComputeState computeState = createContainerHost(zone1);
+        ComputeState cached = getHosts(zone1).get(zone1.documentSelfLink).get(0);
+
+        ComputeState patch = new ComputeState();
+        patch.descriptionLink = "other-description";
+        doPatch(patch, computeState.documentSelfLink);
+
+        assertSame(cached, getHosts(zone1).get(zone1.documentSelfLink).get(0));
+    }
+
+    @Test
+    public void testDeletedHostIsRemoved() throws Throwable {
+        ComputeState deleted = createContainerHost(zone1);
+        ComputeState kept = createContainerHost(zone1);
+        assertEquals(2, getHosts(zone1).get(zone1.documentSelfLink).size());
+
+        doDelete(UriUtils.buildUri(host, deleted.documentSelfLink), false);
+
+        List<ComputeState> hosts = getHosts(zone1).get(zone1.documentSelfLink);
+        assertEquals(1, hosts.size());
+        assertEquals(kept.documentSelfLink, hosts.get(0).documentSelfLink);
+    }
+
+    @Test
+    public void testHostMovedBetweenPlacementZones() throws Throwable {
+        ComputeState computeState = createContainerHost(zone1);
+        Map<String, List<ComputeState>> hosts = getHosts(zone1, zone2);
+        assertEquals(1, hosts.get(zone1.documentSelfLink).size());
+        assertTrue(hosts.get(zone2.documentSelfLink).isEmpty());
+
+        ComputeState patch = new ComputeState();
+        patch.resourcePoolLink = zone2.documentSelfLink;
+        doPatch(patch, computeState.documentSelfLink);
+
+        hosts = getHosts(zone1, zone2);
+        assertTrue(hosts.get(zone1.documentSelfLink).isEmpty());
+        assertEquals(1, hosts.get(zone2.documentSelfLink).size());
+        assertEquals(zone2.documentSelfLink,
+                hosts.get(zone2.documentSelfLink).get(0).resourcePoolLink);
+
+        // the zone the host has left is still empty when read alone
+        assertTrue(getHosts(zone1).get(zone1.documentSelfLink).isEmpty());
+    }
+
+    @Test
+    public void testDeletedHostOfProjectIsRemoved() throws Throwable {
+        ComputeState computeState = createContainerHost(zone1, PROJECT_LINK);
+        assertEquals(1, getHosts(PROJECT_LINK, zone1).get(zone1.documentSelfLink).size());
+        assertEquals(1, view.size());
+
+        doDelete(UriUtils.buildUri(host, computeState.documentSelfLink), false);
+
+        assertTrue(getHosts(PROJECT_LINK, zone1).get(zone1.documentSelfLink).isEmpty());
+        assertEquals(0, view.size());
+    }
+
+    private Map<String, List<ComputeState>> getHosts(ResourcePoolState... zones)
+            throws Throwable {
+        return getHosts(null, zones);
+    }
+
+    private Map<String, List<ComputeState>> getHosts(String projectLink,
+            ResourcePoolState... zones) throws Throwable {
+        List<String> zoneLinks = Arrays.stream(zones).map((rp) -> rp.documentSelfLink)
+                .collect(Collectors.toList());
+        return view.getHostsWithinPlacementZones(zoneLinks, projectLink)
+                .toCompletionStage().toCompletableFuture().get();
+    }
+
+    private ComputeState createContainerHost(ResourcePoolState zone) throws Throwable {
+        return createContainerHost(zone, null);
+    }
+
+    private ComputeState createContainerHost(ResourcePoolState zone, String projectLink)
+            throws Throwable {
+        ComputeState cs = new ComputeState();
+        if (projectLink != null) {
+            cs.tenantLinks = Collections.singletonList(projectLink);
+        }
+        cs.name = UUID.randomUUID().toString();
+        cs.descriptionLink = "test-description";
+        cs.resourcePoolLink = zone.documentSelfLink;
+        cs.customProperties = new HashMap<>();
+        cs.customProperties.put(ComputeConstants.COMPUTE_CONTAINER_HOST_PROP_NAME, "true");
+        return doPost(cs, ComputeService.FACTORY_LINK);
+    }
+
+    private ResourcePoolState createResourcePool() throws Throwable {
+        ResourcePoolState rp = new ResourcePoolState();
+        rp.name = UUID.randomUUID().toString();
+        return doPost(rp, ResourcePoolService.FACTORY_LINK);
+    }
+}
@@ -17,8 +17,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.URI;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -38,10 +41,12 @@ import com.vmware.admiral.compute.container.HealthChecker.HealthConfig.HttpVersi
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig.RequestProtocol;
 import com.vmware.admiral.compute.container.maintenance.ContainerStats;
 import com.vmware.admiral.compute.container.maintenance.ContainerStatsEvaluator;
+import com.vmware.admiral.compute.container.maintenance.ContainerStatsHistory;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service.Action;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.TimeBin;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
@@ -251,6 +256,61 @@ public class ContainerStatsServiceTest extends ComputeBaseTest {
         }
     }
 
+    @Test
+    public void testContainerStatsHistory() throws Throwable {
+        patchStats(ContainerStatsEvaluator.calculateStatsValues(buildContainerStatsJson()));
+        // an idle sample, recorded in the history although the usage figures are zero
+        ContainerStats idleStats = new ContainerStats();
+        idleStats.memLimit = 1024;
+        patchStats(idleStats);
+
+        String containerId = UriUtils.getLastPathSegment(containerState.documentSelfLink);
+        String query = String.format("%s=%s&%s=true",
+                ContainerStatsService.CONTAINER_ID_QUERY_PARAM, containerId,
+                ContainerStatsService.HISTORY_QUERY_PARAM);
+        URI uri = UriUtils.buildUri(host, ContainerStatsService.SELF_LINK, query);
+        TestRequestSender sender = host.getTestRequestSender();
+        ContainerStatsHistory history = sender.sendAndWait(Operation.createGet(uri))
+                .getBody(ContainerStatsHistory.class);
+
+        assertEquals(ContainerStatsHistory.KIND, history.documentKind);
+        boolean cpuHistoryFound = false;
+        for (Entry<String, SortedMap<Long, TimeBin>> entry : history.entries.entrySet()) {
+            assertFalse(entry.getKey().startsWith(ContainerStats.FIELD_NAME_MEM_LIMIT));
+            if (entry.getKey().startsWith(ContainerStats.FIELD_NAME_CPU_USAGE)) {
+                // both samples normally fall into the same bin, but may be split over two
+                double min = Double.MAX_VALUE;
+                double max = 0;
+                double count = 0;
+                for (TimeBin bin : entry.getValue().values()) {
+                    min = Math.min(min, bin.min);
+                    max = Math.max(max, bin.max);
+                    count += bin.count;
+                }
+                assertEquals(0d, min, 0);
+                assertEquals(29.92d, max, 0);
+                assertEquals(2d, count, 0);
+                cpuHistoryFound = true;
+            }
+        }
+        assertTrue(cpuHistoryFound);
+
+        // a time range in the future does not contain any bins
+        long from = TimeUnit.MICROSECONDS.toMillis(Utils.getNowMicrosUtc())
+                + TimeUnit.DAYS.toMillis(2);
+        uri = UriUtils.buildUri(host, ContainerStatsService.SELF_LINK, String.format("%s&%s=%d",
+                query, ContainerStatsService.HISTORY_FROM_QUERY_PARAM, from));
+        history = sender.sendAndWait(Operation.createGet(uri))
+                .getBody(ContainerStatsHistory.class);
+        assertFalse(history.entries.isEmpty());
+        history.entries.values().forEach(bins -> assertTrue(bins.isEmpty()));
+
+        uri = UriUtils.buildUri(host, ContainerStatsService.SELF_LINK, String.format("%s&%s=abc",
+                query, ContainerStatsService.HISTORY_FROM_QUERY_PARAM));
+        FailureResponse failureResponse = sender.sendAndWaitFailure(Operation.createGet(uri));
+        assertTrue(failureResponse.failure instanceof IllegalArgumentException);
+    }
+
     private ContainerState createContainerState(String containerDescriptionLink) {
         ContainerState container = new ContainerState();
         container.descriptionLink = containerDescriptionLink;
@@ -459,6 +459,44 @@ public class GroupResourcePlacementServiceTest extends ComputeBaseTest {
         doDelete(UriUtils.buildUri(host, noLimitsContainerDescription.documentSelfLink), false);
     }
 
+    @Test
+    public void testMemoryLimitInReservationRequest() throws Throwable {
+        GroupResourcePlacementState placementState = createAndStoreGroupResourcePlacement();
+        // the memory limit of the request is used without retrieving the description
+        String descLink = UriUtils.buildUriPath(ContainerDescriptionService.FACTORY_LINK,
+                "missing-description");
+
+        ResourcePlacementReservationRequest rsrvRequest = new ResourcePlacementReservationRequest();
+        rsrvRequest.resourceCount = 2;
+        rsrvRequest.resourceDescriptionLink = descLink;
+        rsrvRequest.referer = requestReservationTaskURI.getPath();
+        rsrvRequest.memoryLimit = CONTAINER_MEMORY;
+        host.testStart(1);
+        host.send(Operation
+                .createPatch(UriUtils.buildUri(host, placementState.documentSelfLink))
+                .setBody(rsrvRequest)
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+
+        placementState = getDocument(GroupResourcePlacementState.class,
+                placementState.documentSelfLink);
+        assertEquals(8, placementState.availableInstancesCount);
+        assertEquals(6 * CONTAINER_MEMORY + CONTAINER_MEMORY / 2, placementState.availableMemory);
+
+        rsrvRequest.resourceCount = -2;
+        host.testStart(1);
+        host.send(Operation
+                .createPatch(UriUtils.buildUri(host, placementState.documentSelfLink))
+                .setBody(rsrvRequest)
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+
+        placementState = getDocument(GroupResourcePlacementState.class,
+                placementState.documentSelfLink);
+        assertEquals(10, placementState.availableInstancesCount);
+        assertEquals(placementState.memoryLimit, placementState.availableMemory);
+    }
+
     private void releasePlacement(
             com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState placementState,
             String descLink, int count)
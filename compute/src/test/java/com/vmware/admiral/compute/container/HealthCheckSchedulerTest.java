@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
+import com.vmware.admiral.compute.container.maintenance.ContainerStats;
+
+public class HealthCheckSchedulerTest extends BaseTestCase {
+    private static final String HOST_LINK = "/resources/compute/test-host";
+    private static final String OTHER_HOST_LINK = "/resources/compute/other-host";
+
+    private List<Runnable> ticks;
+    private List<Runnable> timeouts;
+    private List<String> started;
+    private List<Consumer<ContainerStats>> callbacks;
+    private HealthCheckScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        ticks = new ArrayList<>();
+        timeouts = new ArrayList<>();
+        started = new ArrayList<>();
+        callbacks = new ArrayList<>();
+        scheduler = new HealthCheckScheduler((h, task, delayMillis) -> {
+            if (delayMillis == HealthCheckScheduler.WHEEL_TICK_MILLIS) {
+                ticks.add(task);
+            } else {
+                timeouts.add(task);
+            }
+        }, (h, containerState, healthConfig, callback) -> {
+            started.add(containerState.documentSelfLink);
+            callbacks.add(callback);
+        });
+    }
+
+    @Test
+    public void testChecksArePlacedInTheSlotOfTheContainer() {
+        ContainerState container = createContainerState("container-1", HOST_LINK);
+        int expectedTicks = getSlotOffset(container);
+
+        scheduler.schedule(host, container, new HealthConfig(), true);
+        advance(expectedTicks - 1);
+        assertEquals(0, started.size());
+        advance(1);
+        assertEquals(1, started.size());
+        assertEquals(container.documentSelfLink, started.get(0));
+
+        // the wheel stops once there are no waiting checks
+        assertEquals(0, ticks.size());
+
+        // the container keeps its phase when scheduled again by the next maintenance
+        callbacks.get(0).accept(new ContainerStats());
+        scheduler.schedule(host, container, new HealthConfig(), true);
+        advance(expectedTicks - 1);
+        assertEquals(1, started.size());
+        advance(1);
+        assertEquals(2, started.size());
+    }
+
+    @Test
+    public void testPendingChecksAreNotRescheduled() {
+        ContainerState container = createContainerState("container-1", HOST_LINK);
+
+        scheduler.schedule(host, container, new HealthConfig(), true);
+        scheduler.schedule(host, container, new HealthConfig(), true);
+        scheduler.schedule(host, container, new HealthConfig(), false);
+        advance(HealthCheckScheduler.WHEEL_SLOTS);
+        assertEquals(1, started.size());
+
+        // still running
+        scheduler.schedule(host, container, new HealthConfig(), false);
+        assertEquals(1, started.size());
+
+        // completed, so it can be scheduled again, right away when not jittered
+        callbacks.get(0).accept(new ContainerStats());
+        scheduler.schedule(host, container, new HealthConfig(), false);
+        assertEquals(2, started.size());
+    }
+
+    @Test
+    public void testTimedOutChecksReleaseTheirSlot() {
+        ContainerState container = createContainerState("container-1", HOST_LINK);
+
+        scheduler.schedule(host, container, new HealthConfig(), false);
+        assertEquals(1, started.size());
+        assertEquals(1, timeouts.size());
+
+        // the check never reported back
+        timeouts.get(0).run();
+        scheduler.schedule(host, container, new HealthConfig(), false);
+        assertEquals(2, started.size());
+
+        // a late result of the first check does not release the slot of the second one
+        callbacks.get(0).accept(new ContainerStats());
+        scheduler.schedule(host, container, new HealthConfig(), false);
+        assertEquals(2, started.size());
+    }
+
+    @Test
+    public void testConcurrentChecksPerHostAreLimited() {
+        int max = HealthCheckScheduler.MAX_CONCURRENT_CHECKS_PER_HOST;
+        for (int i = 0; i < max + 2; i++) {
+            scheduler.schedule(host, createContainerState("container-" + i, HOST_LINK),
+                    new HealthConfig(), false);
+        }
+        assertEquals(max, started.size());
+
+        // other hosts have their own limit
+        scheduler.schedule(host, createContainerState("container-other", OTHER_HOST_LINK),
+                new HealthConfig(), false);
+        assertEquals(max + 1, started.size());
+
+        // every completed check lets a waiting one start
+        callbacks.get(0).accept(new ContainerStats());
+        assertEquals(max + 2, started.size());
+        callbacks.get(1).accept(new ContainerStats());
+        assertEquals(max + 3, started.size());
+        assertTrue(started.contains(HOST_LINK + "/containers/container-" + (max + 1)));
+
+        // nothing left to start
+        callbacks.get(2).accept(new ContainerStats());
+        assertEquals(max + 3, started.size());
+    }
+
+    private void advance(int count) {
+        for (int i = 0; i < count; i++) {
+            List<Runnable> due = new ArrayList<>(ticks);
+            ticks.clear();
+            due.forEach(Runnable::run);
+        }
+    }
+
+    private static int getSlotOffset(ContainerState container) {
+        if (HealthCheckScheduler.WHEEL_SLOTS == 1) {
+            return 0;
+        }
+        return 1 + Math.floorMod(container.documentSelfLink.hashCode(),
+                HealthCheckScheduler.WHEEL_SLOTS - 1);
+    }
+
+    private static ContainerState createContainerState(String name, String hostLink) {
+        ContainerState container = new ContainerState();
+        container.documentSelfLink = hostLink + "/containers/" + name;
+        container.parentLink = hostLink;
+        return container;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HostChangeTrackerTest {
+
+    private static final String HOST_LINK = "/resources/compute/tracked-host";
+
+    @Test
+    public void testFullCollectionOnlyForDirtyHosts() {
+        HostChangeTracker tracker = new HostChangeTracker(true, TimeUnit.HOURS.toMicros(1));
+
+        // unknown host and host without an open events stream are always collected
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+
+        tracker.markStreamOpen(HOST_LINK);
+        // changes while the stream was down are unknown
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+        assertFalse(tracker.startFullCollection(HOST_LINK));
+
+        tracker.markDirty(HOST_LINK);
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+        assertFalse(tracker.startFullCollection(HOST_LINK));
+
+        tracker.markStreamBroken(HOST_LINK);
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+
+        tracker.markStreamOpen(HOST_LINK);
+        tracker.remove(HOST_LINK);
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+    }
+
+    @Test
+    public void testSafetyNetFullCollection() {
+        HostChangeTracker tracker = new HostChangeTracker(true, 0);
+
+        tracker.markStreamOpen(HOST_LINK);
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+    }
+
+    @Test
+    public void testDisabled() {
+        HostChangeTracker tracker = new HostChangeTracker(false, TimeUnit.HOURS.toMicros(1));
+
+        tracker.markStreamOpen(HOST_LINK);
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+        assertTrue(tracker.startFullCollection(HOST_LINK));
+        assertFalse(tracker.isIncrementalDataCollectionEnabled());
+    }
+}
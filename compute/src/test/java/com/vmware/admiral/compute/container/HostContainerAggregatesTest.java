@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.HostContainerAggregates.HostAggregate;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+public class HostContainerAggregatesTest extends ComputeBaseTest {
+
+    private static final String HOST_LINK_1 = "/resources/compute/aggregates-host-1";
+    private static final String HOST_LINK_2 = "/resources/compute/aggregates-host-2";
+
+    private HostContainerAggregates aggregates;
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(ContainerFactoryService.SELF_LINK);
+        aggregates = HostContainerAggregates.getInstance(host);
+        aggregates.invalidate(HOST_LINK_1);
+        aggregates.invalidate(HOST_LINK_2);
+    }
+
+    @Test
+    public void testRetrieveAndUpdateAggregates() throws Throwable {
+        createContainer(HOST_LINK_1, 100L, 2);
+        createContainer(HOST_LINK_1, 200L, null);
+        ContainerState container = createContainer(HOST_LINK_2, null, 3);
+        assertNull(aggregates.getCached(HOST_LINK_1));
+
+        Map<String, HostAggregate> result = retrieve();
+        assertEquals(2, result.get(HOST_LINK_1).containerCount);
+        assertEquals(300, result.get(HOST_LINK_1).memoryLimit);
+        assertEquals(2, result.get(HOST_LINK_1).cpuShares);
+        assertEquals(1, result.get(HOST_LINK_2).containerCount);
+        assertEquals(0, result.get(HOST_LINK_2).memoryLimit);
+        assertEquals(3, result.get(HOST_LINK_2).cpuShares);
+
+        // cached aggregates are updated on container creation, host change and deletion
+        createContainer(HOST_LINK_1, 50L, null);
+        ContainerState patch = new ContainerState();
+        patch.parentLink = HOST_LINK_1;
+        patch.memoryLimit = 10L;
+        doPatch(patch, container.documentSelfLink);
+
+        waitFor(() -> {
+            HostAggregate aggregate = aggregates.getCached(HOST_LINK_1);
+            return aggregate != null && aggregate.containerCount == 4
+                    && aggregate.memoryLimit == 360 && aggregate.cpuShares == 5;
+        });
+        assertEquals(0, aggregates.getCached(HOST_LINK_2).containerCount);
+
+        doDelete(UriUtils.buildUri(host, container.documentSelfLink), false);
+        waitFor(() -> aggregates.getCached(HOST_LINK_1).containerCount == 3);
+        HostAggregate aggregate = aggregates.getCached(HOST_LINK_1);
+        assertEquals(350, aggregate.memoryLimit);
+        assertEquals(2, aggregate.cpuShares);
+    }
+
+    @Test
+    public void testChangesDuringLoadAreMerged() {
+        HostContainerAggregates local = new HostContainerAggregates();
+        long loadStartMicros = Utils.getSystemNowMicrosUtc();
+
+        // created and deleted while the load is running
+        local.onContainerChange(createState("c3", HOST_LINK_1, 0, 30L), false);
+        local.onContainerChange(createState("c2", HOST_LINK_1, 1, 20L), true);
+
+        HostAggregate aggregate = local.applyLoaded(Collections.singleton(HOST_LINK_1),
+                Arrays.asList(createState("c1", HOST_LINK_1, 0, 10L),
+                        createState("c2", HOST_LINK_1, 0, 20L)),
+                loadStartMicros).get(HOST_LINK_1);
+        assertEquals(2, aggregate.containerCount);
+        assertEquals(40, aggregate.memoryLimit);
+
+        // repeated and out of order notifications are ignored
+        local.onContainerChange(createState("c3", HOST_LINK_1, 0, 30L), false);
+        local.onContainerChange(createState("c2", HOST_LINK_1, 0, 20L), false);
+        assertEquals(2, local.getCached(HOST_LINK_1).containerCount);
+
+        // host change
+        local.onContainerChange(createState("c1", HOST_LINK_2, 1, 10L), false);
+        aggregate = local.getCached(HOST_LINK_1);
+        assertEquals(1, aggregate.containerCount);
+        assertEquals(30, aggregate.memoryLimit);
+        assertNull(local.getCached(HOST_LINK_2));
+    }
+
+    @Test
+    public void testContainersMissingFromReloadAreDropped() {
+        HostContainerAggregates local = new HostContainerAggregates();
+        local.applyLoaded(Collections.singleton(HOST_LINK_1),
+                Arrays.asList(createState("c1", HOST_LINK_1, 0, 10L),
+                        createState("c2", HOST_LINK_1, 0, 20L)),
+                Utils.getSystemNowMicrosUtc());
+        assertEquals(2, local.getCached(HOST_LINK_1).containerCount);
+
+        // the deletion of c2 was missed, the next load does not find it anymore
+        local.invalidate(HOST_LINK_1);
+        HostAggregate aggregate = local.applyLoaded(Collections.singleton(HOST_LINK_1),
+                Collections.singletonList(createState("c1", HOST_LINK_1, 0, 10L)),
+                Utils.getSystemNowMicrosUtc() + 1).get(HOST_LINK_1);
+        assertEquals(1, aggregate.containerCount);
+        assertEquals(10, aggregate.memoryLimit);
+    }
+
+    private Map<String, HostAggregate> retrieve() throws Throwable {
+        AtomicReference<Map<String, HostAggregate>> result = new AtomicReference<>();
+        host.testStart(1);
+        aggregates.retrieve(host, Arrays.asList(HOST_LINK_1, HOST_LINK_2), (r, ex) -> {
+            if (ex != null) {
+                host.failIteration(ex);
+                return;
+            }
+            result.set(r);
+            host.completeIteration();
+        });
+        host.testWait();
+        return result.get();
+    }
+
+    private ContainerState createContainer(String hostLink, Long memoryLimit,
+            Integer cpuShares) throws Throwable {
+        ContainerState container = new ContainerState();
+        container.parentLink = hostLink;
+        container.memoryLimit = memoryLimit;
+        container.cpuShares = cpuShares;
+        return doPost(container, ContainerFactoryService.SELF_LINK);
+    }
+
+    private static ContainerState createState(String id, String hostLink, long version,
+            Long memoryLimit) {
+        ContainerState container = new ContainerState();
+        container.documentSelfLink = UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK, id);
+        container.documentVersion = version;
+        container.parentLink = hostLink;
+        container.memoryLimit = memoryLimit;
+        return container;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ComputeService.PowerState;
+
+public class HostDataCollectionSchedulerTest extends BaseTestCase {
+
+    @Test
+    public void testFailedAndStaleHostsAreCollectedFirst() throws Throwable {
+        HostDataCollectionScheduler scheduler = new HostDataCollectionScheduler(host,
+                TimeUnit.SECONDS.toMicros(1));
+
+        ComputeState healthy = createComputeState("healthy", PowerState.ON);
+        ComputeState failed = createComputeState("failed", PowerState.ON);
+        ComputeState unknown = createComputeState("unknown", PowerState.UNKNOWN);
+        scheduler.recordResult(failed.documentSelfLink, false);
+
+        List<String> collected = new CopyOnWriteArrayList<>();
+        List<Runnable> completions = new CopyOnWriteArrayList<>();
+        scheduler.schedule(Arrays.asList(healthy, failed, unknown), (cs, onComplete) -> {
+            collected.add(cs.documentSelfLink);
+            completions.add(onComplete);
+        });
+
+        waitFor(() -> collected.size() == 3);
+        assertEquals(healthy.documentSelfLink, collected.get(2));
+        assertEquals(3, scheduler.getStats()
+                .get(HostDataCollectionScheduler.STAT_NAME_IN_FLIGHT_COUNT), 0);
+
+        completions.forEach(Runnable::run);
+        // completing twice does not release more than once
+        completions.forEach(Runnable::run);
+        assertEquals(0, scheduler.getStats()
+                .get(HostDataCollectionScheduler.STAT_NAME_IN_FLIGHT_COUNT), 0);
+        assertEquals(3, scheduler.getStats()
+                .get(HostDataCollectionScheduler.STAT_NAME_DISPATCHED_COUNT), 0);
+
+        // the least recently collected hosts go first in the next cycle
+        scheduler.recordResult(failed.documentSelfLink, true);
+        ComputeState added = createComputeState("added", PowerState.ON);
+        List<String> nextCycle = new CopyOnWriteArrayList<>();
+        scheduler.schedule(new ArrayList<>(Arrays.asList(healthy, failed, added)),
+                (cs, onComplete) -> {
+                    nextCycle.add(cs.documentSelfLink);
+                    onComplete.run();
+                });
+
+        waitFor(() -> nextCycle.size() == 3);
+        assertEquals(added.documentSelfLink, nextCycle.get(0));
+    }
+
+    @Test
+    public void testBackOffOnSlowCollections() {
+        HostDataCollectionScheduler scheduler = new HostDataCollectionScheduler(host,
+                TimeUnit.MINUTES.toMicros(5));
+        assertFalse(scheduler.isSaturated());
+
+        scheduler.updateBackoff(TimeUnit.MINUTES.toMillis(1), 0);
+        scheduler.updateBackoff(100, 1);
+        assertTrue(scheduler.isSaturated());
+        assertEquals(4, scheduler.getStats()
+                .get(HostDataCollectionScheduler.STAT_NAME_BACKOFF_FACTOR), 0);
+
+        scheduler.updateBackoff(100, 0);
+        assertTrue(scheduler.isSaturated());
+        scheduler.updateBackoff(0, 0);
+        assertFalse(scheduler.isSaturated());
+        assertEquals(0, scheduler.getStats()
+                .get(HostDataCollectionScheduler.STAT_NAME_LATENCY_MILLIS), 0);
+    }
+
+    private static ComputeState createComputeState(String id, PowerState powerState) {
+        ComputeState cs = new ComputeState();
+        cs.documentSelfLink = "/resources/compute/" + id;
+        cs.powerState = powerState;
+        return cs;
+    }
+}
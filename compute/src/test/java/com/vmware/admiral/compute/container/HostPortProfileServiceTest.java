@@ -15,6 +15,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.UUID;
 import java.util.logging.Level;
@@ -225,6 +226,86 @@ public class HostPortProfileServiceTest extends ComputeBaseTest {
         assertTrue(result.reservedPorts.containsValue(allocateRequest.containerLink));
     }
 
+    @Test
+    public void testPatchAllocateMultipleContainers() throws Throwable {
+        HostPortProfileService.HostPortProfileState profile = createHostPortProfile();
+        profile.startPort = 20000;
+        profile.endPort = 20010;
+        profile = doPost(profile, HostPortProfileService.FACTORY_LINK);
+
+        HostPortProfileService.HostPortProfileReservationRequest first =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        first.containerLink = UUID.randomUUID().toString();
+        first.additionalHostPortCount = 2;
+        first.specificHostPorts = new HashSet<>();
+        first.specificHostPorts.add(new Long(20000));
+
+        HostPortProfileService.HostPortProfileReservationRequest second =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        second.containerLink = UUID.randomUUID().toString();
+        second.additionalHostPortCount = 3;
+
+        HostPortProfileService.HostPortProfileReservationRequest request =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        request.mode = HostPortProfileService.HostPortProfileReservationRequestMode.ALLOCATE;
+        request.containerRequests = Arrays.asList(first, second);
+
+        HostPortProfileService.HostPortProfileState result = patch(profile, request, false);
+        assertEquals(6, result.reservedPorts.size());
+        assertEquals(new HashSet<>(Arrays.asList(20000L, 20001L, 20002L)),
+                HostPortProfileService.getAllocatedPorts(result, first.containerLink));
+        assertEquals(new HashSet<>(Arrays.asList(20003L, 20004L, 20005L)),
+                HostPortProfileService.getAllocatedPorts(result, second.containerLink));
+
+        // released ports are allocated again
+        HostPortProfileService.HostPortProfileReservationRequest releaseRequest =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        releaseRequest.containerLink = first.containerLink;
+        releaseRequest.mode = HostPortProfileService.HostPortProfileReservationRequestMode.RELEASE;
+        patch(profile, releaseRequest, false);
+
+        second.mode = HostPortProfileService.HostPortProfileReservationRequestMode.ALLOCATE;
+        second.additionalHostPortCount = 1;
+        result = patch(profile, second, false);
+        assertEquals(new HashSet<>(Arrays.asList(20000L, 20003L, 20004L, 20005L)),
+                HostPortProfileService.getAllocatedPorts(result, second.containerLink));
+    }
+
+    @Test
+    public void testPatchAllocateMultipleContainersNoAvailablePorts() throws Throwable {
+        HostPortProfileService.HostPortProfileState profile = createHostPortProfile();
+        profile.startPort = 20000;
+        profile.endPort = 20003;
+        HostPortProfileService.HostPortProfileState created =
+                doPost(profile, HostPortProfileService.FACTORY_LINK);
+
+        HostPortProfileService.HostPortProfileReservationRequest first =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        first.containerLink = UUID.randomUUID().toString();
+        first.additionalHostPortCount = 2;
+
+        HostPortProfileService.HostPortProfileReservationRequest second =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        second.containerLink = UUID.randomUUID().toString();
+        second.additionalHostPortCount = 1;
+        second.specificHostPorts = new HashSet<>();
+        second.specificHostPorts.add(new Long(20002));
+
+        HostPortProfileService.HostPortProfileReservationRequest request =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        request.mode = HostPortProfileService.HostPortProfileReservationRequestMode.ALLOCATE;
+        request.containerRequests = Arrays.asList(first, second);
+
+        validateLocalizableException(() -> {
+            patch(created, request, true);
+        }, "There are no available ports left");
+
+        // nothing is allocated if the ports of all containers can't be allocated
+        HostPortProfileService.HostPortProfileState result = getDocument(
+                HostPortProfileService.HostPortProfileState.class, created.documentSelfLink);
+        assertTrue(result.reservedPorts.isEmpty());
+    }
+
     private HostPortProfileService.HostPortProfileState createHostPortProfile() {
         HostPortProfileService.HostPortProfileState profile =
                 new HostPortProfileService.HostPortProfileState();
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container.maintenance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ContainerStatsEvaluatorTest {
+
+    @Test
+    public void testCalculateStatsValuesSkipsUnusedFields() {
+        String statsJson = "{"
+                + "\"read\": \"2018-03-01T10:00:00.000000000Z\","
+                + "\"blkio_stats\": {\"io_service_bytes_recursive\": [{\"major\": 8}]},"
+                + "\"cpu_stats\": {\"system_cpu_usage\": 2000, \"throttling_data\": {},"
+                + "  \"cpu_usage\": {\"total_usage\": 600, \"percpu_usage\": [400, 200]}},"
+                + "\"precpu_stats\": {\"system_cpu_usage\": 1000,"
+                + "  \"cpu_usage\": {\"total_usage\": 500, \"percpu_usage\": [300, 200]}},"
+                + "\"memory_stats\": {\"usage\": 1024, \"limit\": 4096, \"stats\": {\"cache\": 1}},"
+                + "\"networks\": {"
+                + "  \"eth0\": {\"rx_bytes\": 10, \"tx_bytes\": 20, \"rx_errors\": 0},"
+                + "  \"eth1\": {\"rx_bytes\": 1, \"tx_bytes\": 2}}"
+                + "}";
+
+        ContainerStats stats = ContainerStatsEvaluator.calculateStatsValues(statsJson);
+
+        // (100 / 1000) * 2 cpus * 100
+        assertEquals(20.0d, stats.cpuUsage, 0);
+        assertEquals(1024, stats.memUsage);
+        assertEquals(4096, stats.memLimit);
+        assertEquals(11, stats.networkIn);
+        assertEquals(22, stats.networkOut);
+        assertEquals(Boolean.FALSE, stats.containerStopped);
+    }
+
+    @Test
+    public void testCalculateStatsValuesOfStoppedContainer() {
+        String statsJson = "{\"read\": \"0001-01-01T00:00:00Z\", \"cpu_stats\": null,"
+                + " \"precpu_stats\": null, \"memory_stats\": {}, \"networks\": null}";
+
+        ContainerStats stats = ContainerStatsEvaluator.calculateStatsValues(statsJson);
+
+        assertEquals(0d, stats.cpuUsage, 0);
+        assertEquals(0, stats.memUsage);
+        assertEquals(0, stats.networkIn);
+        assertEquals(Boolean.TRUE, stats.containerStopped);
+    }
+
+    @Test
+    public void testCalculateStatsValuesOfInvalidJson() {
+        ContainerStats stats = ContainerStatsEvaluator.calculateStatsValues("{\"read\": [");
+
+        assertEquals(0d, stats.cpuUsage, 0);
+        assertEquals(0, stats.memUsage);
+        assertNull(stats.containerStopped);
+
+        stats = ContainerStatsEvaluator.calculateStatsValues((String) null);
+        assertNull(stats.containerStopped);
+    }
+}
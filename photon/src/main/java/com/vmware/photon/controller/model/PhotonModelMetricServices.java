@@ -14,6 +14,7 @@ package com.vmware.photon.controller.model;
 import static com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata.factoryService;
 
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService;
 import com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
@@ -31,11 +32,13 @@ public class PhotonModelMetricServices {
     };
 
     public static final String[] LINKS = {
-            ResourceMetricsService.FACTORY_LINK};
+            ResourceMetricsService.FACTORY_LINK,
+            ResourceMetricsStoreService.SELF_LINK};
 
     public static void startServices(ServiceHost host) throws Throwable {
         host.startFactory(ResourceMetricsService.class, ResourceMetricsService::createFactory);
         setFactoryToAvailable(host, ResourceMetricsService.FACTORY_LINK);
+        host.startService(new ResourceMetricsStoreService());
     }
 
     /** @see #setFactoryToAvailable(ServiceHost, String, Operation.CompletionHandler) */
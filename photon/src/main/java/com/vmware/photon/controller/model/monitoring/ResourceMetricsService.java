@@ -18,6 +18,7 @@ import com.esotericsoftware.kryo.serializers.VersionFieldSerializer.Since;
 import com.vmware.photon.controller.model.UriPaths;
 import com.vmware.photon.controller.model.constants.ReleaseConstants;
 import com.vmware.photon.controller.model.resources.util.PhotonModelUtils;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsUtil;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
@@ -66,6 +67,22 @@ public class ResourceMetricsService extends StatefulService {
         public Map<String, String> customProperties;
     }
 
+    @Override
+    public void handleCreate(Operation create) {
+        try {
+            ResourceMetrics state = processInput(create);
+            // only samples created on this node are recorded, restarts and on-demand loads of
+            // existing documents do not go through handleCreate
+            if (ResourceMetricsStore.isEnabled()) {
+                ResourceMetricsStore.getInstance(getHost())
+                        .append(getResourceId(getSelfLink()), state);
+            }
+            create.complete();
+        } catch (Throwable t) {
+            create.fail(t);
+        }
+    }
+
     @Override
     public void handleStart(Operation start) {
         try {
@@ -89,4 +106,12 @@ public class ResourceMetricsService extends StatefulService {
         Utils.validateState(getStateDescription(), state);
         return state;
     }
+
+    private static String getResourceId(String metricLink) {
+        try {
+            return StatsUtil.getResourceId(metricLink);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.photon.controller.model.monitoring.TimeSeriesBlock.SampleConsumer;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsUtil;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Node-local columnar store of the most recent raw resource metrics.
+ *
+ * When enabled, every raw {@link ResourceMetrics} sample created on this node, i.e. owned by
+ * it, is appended to a per resource, per metric series of compressed {@link TimeSeriesBlock}s.
+ * The stats aggregation task reads its rollup input from the stores of all nodes, through
+ * {@link ResourceMetricsStoreService}, instead of paging thousands of {@code ResourceMetrics}
+ * documents out of the index. The documents remain the durable copy: the store is rebuilt from
+ * new samples after a restart and only answers range reads that begin after it started
+ * observing and within its retention window.
+ *
+ * The store is disabled by default, in which case it is neither fed nor read.
+ */
+public class ResourceMetricsStore {
+
+    public static final String ENABLED_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "ResourceMetricsStore.enabled";
+    private static final boolean ENABLED = Boolean.parseBoolean(
+            System.getProperty(ENABLED_PROPERTY, Boolean.FALSE.toString()));
+
+    public static final String RETENTION_HOURS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "ResourceMetricsStore.retentionHours";
+    private static final long DEFAULT_RETENTION_HOURS = 48;
+    private static final long RETENTION_MICROS = TimeUnit.HOURS.toMicros(
+            Long.getLong(RETENTION_HOURS_PROPERTY, DEFAULT_RETENTION_HOURS));
+
+    /**
+     * Maximum time span of the samples held by a single block. Retention drops whole blocks,
+     * so this is also the granularity at which memory is released.
+     */
+    private static final long BLOCK_SPAN_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private static final ConcurrentMap<String, ResourceMetricsStore> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Series>> seriesByResource =
+            new ConcurrentHashMap<>();
+
+    private final long startTimeMicros = Utils.getNowMicrosUtc();
+
+    private final AtomicLong lastExpirationMicros = new AtomicLong(this.startTimeMicros);
+
+    public static ResourceMetricsStore getInstance(ServiceHost host) {
+        return INSTANCES.computeIfAbsent(host.getId(), k -> new ResourceMetricsStore());
+    }
+
+    /**
+     * Drops the store of the given host, called when the host stops.
+     */
+    public static void removeInstance(ServiceHost host) {
+        INSTANCES.remove(host.getId());
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Appends all entries of a raw metrics sample.
+     */
+    public void append(String resourceId, ResourceMetrics metrics) {
+        if (!ENABLED || resourceId == null || metrics.entries == null
+                || metrics.timestampMicrosUtc == null) {
+            return;
+        }
+        long now = Utils.getNowMicrosUtc();
+        if (metrics.timestampMicrosUtc < now - RETENTION_MICROS) {
+            return;
+        }
+        // series are created and expired under the lock of the resource entry
+        this.seriesByResource.compute(resourceId, (k, seriesByMetric) -> {
+            if (seriesByMetric == null) {
+                seriesByMetric = new ConcurrentHashMap<>();
+            }
+            for (Entry<String, Double> entry : metrics.entries.entrySet()) {
+                if (entry.getValue() != null) {
+                    seriesByMetric.computeIfAbsent(entry.getKey(), m -> new Series())
+                            .append(metrics.timestampMicrosUtc, entry.getValue());
+                }
+            }
+            return seriesByMetric;
+        });
+
+        long lastExpiration = this.lastExpirationMicros.get();
+        if (now - lastExpiration > BLOCK_SPAN_MICROS
+                && this.lastExpirationMicros.compareAndSet(lastExpiration, now)) {
+            expire();
+        }
+    }
+
+    /**
+     * Returns whether the store holds every sample with a timestamp at or after the given
+     * begin time, i.e. whether a range read starting there is complete.
+     */
+    public boolean covers(Long beginMicros) {
+        if (!ENABLED || beginMicros == null) {
+            return false;
+        }
+        long retainedSince = Utils.getNowMicrosUtc() - RETENTION_MICROS;
+        return beginMicros >= this.startTimeMicros && beginMicros >= retainedSince;
+    }
+
+    /**
+     * Rebuilds the raw metrics of the given resources, one per resource and timestamp as they
+     * were posted, from the samples of the given metrics with a timestamp at or after the begin
+     * time of the metric. Samples outside of the value range of the index query of the stats
+     * aggregation, i.e. negative or not a number, are skipped.
+     */
+    public List<ResourceMetrics> read(Map<String, Set<String>> metricKeysByResource,
+            Map<String, Long> beginMicrosByMetric) {
+        List<ResourceMetrics> rawMetrics = new ArrayList<>();
+        for (Entry<String, Set<String>> entry : metricKeysByResource.entrySet()) {
+            String resourceId = entry.getKey();
+            Map<Long, ResourceMetrics> metricsByTimestamp = new HashMap<>();
+            for (String metricKey : entry.getValue()) {
+                Long beginMicros = beginMicrosByMetric.get(metricKey);
+                read(resourceId, metricKey, beginMicros != null ? beginMicros : 0,
+                        (timestampMicros, value) -> {
+                            if (!(value >= 0.0 && value <= Double.MAX_VALUE)) {
+                                return;
+                            }
+                            metricsByTimestamp.computeIfAbsent(timestampMicros,
+                                    t -> createRawMetrics(resourceId, t))
+                                    .entries.put(metricKey, value);
+                        });
+            }
+            rawMetrics.addAll(metricsByTimestamp.values());
+        }
+        return rawMetrics;
+    }
+
+    private static ResourceMetrics createRawMetrics(String resourceId, long timestampMicros) {
+        ResourceMetrics metrics = new ResourceMetrics();
+        metrics.documentSelfLink = UriUtils.buildUriPath(ResourceMetricsService.FACTORY_LINK,
+                StatsUtil.getMetricKey(resourceId, timestampMicros));
+        metrics.timestampMicrosUtc = timestampMicros;
+        metrics.entries = new HashMap<>();
+        return metrics;
+    }
+
+    /**
+     * Reads the samples of a resource metric with a timestamp at or after the given begin time.
+     * Samples are returned in ingestion order, which is not necessarily timestamp order.
+     */
+    public void read(String resourceId, String metricKey, long beginMicros,
+            SampleConsumer consumer) {
+        Map<String, Series> seriesByMetric = this.seriesByResource.get(resourceId);
+        if (seriesByMetric == null) {
+            return;
+        }
+        Series series = seriesByMetric.get(metricKey);
+        if (series != null) {
+            series.read(beginMicros, consumer);
+        }
+    }
+
+    /**
+     * Drops blocks that fall entirely outside of the retention window and forgets resources
+     * that have no samples left.
+     */
+    public void expire() {
+        long retainedSince = Utils.getNowMicrosUtc() - RETENTION_MICROS;
+        for (String resourceId : this.seriesByResource.keySet()) {
+            this.seriesByResource.computeIfPresent(resourceId, (k, seriesByMetric) -> {
+                seriesByMetric.values().removeIf(series -> series.expire(retainedSince));
+                return seriesByMetric.isEmpty() ? null : seriesByMetric;
+            });
+        }
+    }
+
+    /**
+     * Blocks of a single resource metric; the last block is the one being appended to.
+     */
+    private static class Series {
+        private final Deque<TimeSeriesBlock> blocks = new ArrayDeque<>();
+
+        synchronized void append(long timestampMicros, double value) {
+            TimeSeriesBlock open = this.blocks.peekLast();
+            if (open == null || (open.getCount() > 0 && Math.abs(
+                    timestampMicros - open.getMinTimestampMicros()) > BLOCK_SPAN_MICROS)) {
+                if (open != null) {
+                    open.seal();
+                }
+                open = new TimeSeriesBlock();
+                this.blocks.addLast(open);
+            }
+            open.append(timestampMicros, value);
+        }
+
+        synchronized void read(long beginMicros, SampleConsumer consumer) {
+            for (TimeSeriesBlock block : this.blocks) {
+                block.forEach(beginMicros, consumer);
+            }
+        }
+
+        /**
+         * Returns {@code true} when the series has become empty.
+         */
+        synchronized boolean expire(long retainedSinceMicros) {
+            this.blocks.removeIf(b -> b.getMaxTimestampMicros() < retainedSinceMicros);
+            return this.blocks.isEmpty();
+        }
+    }
+}
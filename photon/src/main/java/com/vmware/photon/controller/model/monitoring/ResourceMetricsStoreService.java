@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+
+/**
+ * Serves range reads of the raw metrics held by the {@link ResourceMetricsStore} of this node.
+ *
+ * The samples of a resource are posted to links owned by different nodes, so a complete read
+ * has to be broadcast to all nodes of the node group and the responses merged. A node responds
+ * with {@link RawMetricsResponse#complete} {@code false} when its store can not prove it holds
+ * every sample of the requested ranges, in which case the index has to be queried instead.
+ *
+ * The store of the node is dropped when the service stops with the host.
+ */
+public class ResourceMetricsStoreService extends StatelessService {
+
+    public static final String SELF_LINK = UriPaths.MONITORING + "/resource-metrics-store";
+
+    /**
+     * Range read of the raw metrics of resources.
+     */
+    public static class RawMetricsRequest {
+        /**
+         * The keys of the metrics to read, per resource id.
+         */
+        public Map<String, Set<String>> metricKeysByResource;
+
+        /**
+         * The earliest timestamp of the samples to read, per metric key.
+         */
+        public Map<String, Long> beginMicrosByMetric;
+    }
+
+    public static class RawMetricsResponse {
+        /**
+         * Whether the store of the node holds every sample of the requested ranges.
+         */
+        public boolean complete;
+
+        /**
+         * The raw metrics rebuilt from the samples of the node, {@code null} unless complete.
+         */
+        public List<ResourceMetrics> metrics;
+    }
+
+    @Override
+    public void handlePost(Operation post) {
+        if (!post.hasBody()) {
+            post.fail(new IllegalArgumentException("body is required"));
+            return;
+        }
+        RawMetricsRequest request = post.getBody(RawMetricsRequest.class);
+        if (request.metricKeysByResource == null || request.beginMicrosByMetric == null) {
+            post.fail(new IllegalArgumentException(
+                    "metricKeysByResource and beginMicrosByMetric are required"));
+            return;
+        }
+
+        RawMetricsResponse response = new RawMetricsResponse();
+        if (ResourceMetricsStore.isEnabled()) {
+            ResourceMetricsStore store = ResourceMetricsStore.getInstance(getHost());
+            response.complete = request.beginMicrosByMetric.values().stream()
+                    .allMatch(store::covers);
+            if (response.complete) {
+                response.metrics = store.read(request.metricKeysByResource,
+                        request.beginMicrosByMetric);
+            }
+        }
+        post.setBody(response).complete();
+    }
+
+    @Override
+    public void handleStop(Operation stop) {
+        ResourceMetricsStore.removeInstance(getHost());
+        super.handleStop(stop);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import java.util.Arrays;
+
+/**
+ * Append-only compressed block of (timestamp, value) samples for a single metric series.
+ *
+ * Timestamps are stored as delta-of-deltas and values as the XOR against the previous value,
+ * both variable-length encoded into a packed bit buffer. Regularly sampled series with slowly
+ * changing values compress to a few bits per sample instead of one document per sample.
+ * Samples may be appended out of timestamp order; readers filter on the block bounds.
+ *
+ * Not thread-safe, callers synchronize on the owning series.
+ */
+class TimeSeriesBlock {
+
+    /**
+     * Callback receiving the decoded samples of a block.
+     */
+    interface SampleConsumer {
+        void accept(long timestampMicros, double value);
+    }
+
+    private static final int INITIAL_CAPACITY_WORDS = 16;
+
+    private long[] words = new long[INITIAL_CAPACITY_WORDS];
+    private int bitCount;
+    private int count;
+
+    private long minTimestampMicros = Long.MAX_VALUE;
+    private long maxTimestampMicros = Long.MIN_VALUE;
+
+    private long lastTimestampMicros;
+    private long lastDeltaMicros;
+    private long lastValueBits;
+    private int lastLeadingZeros = -1;
+    private int lastTrailingZeros;
+
+    int getCount() {
+        return this.count;
+    }
+
+    long getMinTimestampMicros() {
+        return this.minTimestampMicros;
+    }
+
+    long getMaxTimestampMicros() {
+        return this.maxTimestampMicros;
+    }
+
+    /**
+     * Approximate heap footprint of the encoded samples.
+     */
+    int getSizeInBytes() {
+        return this.words.length * Long.BYTES;
+    }
+
+    void append(long timestampMicros, double value) {
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (this.count == 0) {
+            writeBits(timestampMicros, 64);
+            writeBits(valueBits, 64);
+            this.lastDeltaMicros = 0;
+        } else {
+            long delta = timestampMicros - this.lastTimestampMicros;
+            writeDeltaOfDelta(delta - this.lastDeltaMicros);
+            writeValue(valueBits);
+            this.lastDeltaMicros = delta;
+        }
+        this.lastTimestampMicros = timestampMicros;
+        this.lastValueBits = valueBits;
+        this.minTimestampMicros = Math.min(this.minTimestampMicros, timestampMicros);
+        this.maxTimestampMicros = Math.max(this.maxTimestampMicros, timestampMicros);
+        this.count++;
+    }
+
+    /**
+     * Decodes the block and passes every sample with a timestamp at or after the given begin
+     * time to the consumer, in append order.
+     */
+    void forEach(long beginMicros, SampleConsumer consumer) {
+        if (this.count == 0 || this.maxTimestampMicros < beginMicros) {
+            return;
+        }
+        Reader reader = new Reader();
+        long timestamp = reader.readBits(64);
+        long valueBits = reader.readBits(64);
+        long delta = 0;
+        int leadingZeros = -1;
+        int trailingZeros = 0;
+        if (timestamp >= beginMicros) {
+            consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+        }
+        for (int i = 1; i < this.count; i++) {
+            delta += reader.readDeltaOfDelta();
+            timestamp += delta;
+
+            if (reader.readBit() != 0) {
+                if (reader.readBit() != 0) {
+                    leadingZeros = (int) reader.readBits(6);
+                    int significantBits = (int) reader.readBits(6) + 1;
+                    trailingZeros = 64 - leadingZeros - significantBits;
+                }
+                int significantBits = 64 - leadingZeros - trailingZeros;
+                valueBits ^= reader.readBits(significantBits) << trailingZeros;
+            }
+
+            if (timestamp >= beginMicros) {
+                consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+            }
+        }
+    }
+
+    /**
+     * Releases the unused tail of the bit buffer once no more samples will be appended.
+     */
+    void seal() {
+        int usedWords = (this.bitCount + 63) >>> 6;
+        if (usedWords < this.words.length) {
+            this.words = Arrays.copyOf(this.words, Math.max(usedWords, 1));
+        }
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBits(0b0, 1);
+        } else if (fitsSigned(deltaOfDelta, 16)) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta, 16);
+        } else if (fitsSigned(deltaOfDelta, 32)) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta, 32);
+        } else {
+            writeBits(0b111, 3);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private void writeValue(long valueBits) {
+        long xor = valueBits ^ this.lastValueBits;
+        if (xor == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+        int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), 63);
+        int trailingZeros = Long.numberOfTrailingZeros(xor);
+        if (this.lastLeadingZeros >= 0 && leadingZeros >= this.lastLeadingZeros
+                && trailingZeros >= this.lastTrailingZeros) {
+            // meaningful bits fit into the window of the previous value
+            writeBits(0b10, 2);
+            int significantBits = 64 - this.lastLeadingZeros - this.lastTrailingZeros;
+            writeBits(xor >>> this.lastTrailingZeros, significantBits);
+        } else {
+            int significantBits = 64 - leadingZeros - trailingZeros;
+            writeBits(0b11, 2);
+            writeBits(leadingZeros, 6);
+            writeBits(significantBits - 1, 6);
+            writeBits(xor >>> trailingZeros, significantBits);
+            this.lastLeadingZeros = leadingZeros;
+            this.lastTrailingZeros = trailingZeros;
+        }
+    }
+
+    private void writeBits(long value, int length) {
+        ensureCapacity(this.bitCount + length);
+        int remaining = length;
+        while (remaining > 0) {
+            int wordIndex = this.bitCount >>> 6;
+            int bitOffset = this.bitCount & 63;
+            int chunk = Math.min(remaining, 64 - bitOffset);
+            long bits = (value >>> (remaining - chunk)) & mask(chunk);
+            this.words[wordIndex] |= bits << (64 - bitOffset - chunk);
+            this.bitCount += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    private void ensureCapacity(int bits) {
+        int requiredWords = (bits + 63) >>> 6;
+        if (requiredWords > this.words.length) {
+            this.words = Arrays.copyOf(this.words,
+                    Math.max(requiredWords, this.words.length * 2));
+        }
+    }
+
+    private static boolean fitsSigned(long value, int bits) {
+        long bound = 1L << (bits - 1);
+        return value >= -bound && value < bound;
+    }
+
+    private static long mask(int bits) {
+        return bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    private static long signExtend(long value, int bits) {
+        int shift = 64 - bits;
+        return (value << shift) >> shift;
+    }
+
+    /**
+     * Sequential reader over the bit buffer.
+     */
+    private class Reader {
+        private int position;
+
+        long readBit() {
+            return readBits(1);
+        }
+
+        long readBits(int length) {
+            long result = 0;
+            int remaining = length;
+            while (remaining > 0) {
+                int wordIndex = this.position >>> 6;
+                int bitOffset = this.position & 63;
+                int chunk = Math.min(remaining, 64 - bitOffset);
+                long bits = (TimeSeriesBlock.this.words[wordIndex] >>> (64 - bitOffset - chunk))
+                        & mask(chunk);
+                result = chunk == 64 ? bits : (result << chunk) | bits;
+                this.position += chunk;
+                remaining -= chunk;
+            }
+            return result;
+        }
+
+        long readDeltaOfDelta() {
+            if (readBit() == 0) {
+                return 0;
+            }
+            if (readBit() == 0) {
+                return signExtend(readBits(16), 16);
+            }
+            if (readBit() == 0) {
+                return signExtend(readBits(32), 32);
+            }
+            return readBits(64);
+        }
+    }
+}
@@ -32,11 +32,16 @@ import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricServi
 import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService.InMemoryResourceMetric;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStore;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService.RawMetricsRequest;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService.RawMetricsResponse;
 import com.vmware.photon.controller.model.query.QueryUtils;
 import com.vmware.photon.controller.model.resources.util.PhotonModelUtils;
 import com.vmware.photon.controller.model.tasks.TaskUtils;
 import com.vmware.photon.controller.model.util.ClusterUtil;
 import com.vmware.photon.controller.model.util.ClusterUtil.ServiceTypeCluster;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationJoin;
@@ -54,6 +59,8 @@ import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.NodeGroupBroadcastResponse;
+import com.vmware.xenon.services.common.NodeGroupService.NodeGroupState;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.Builder;
 import com.vmware.xenon.services.common.QueryTask.NumericRange;
@@ -689,22 +696,42 @@ public class SingleResourceStatsAggregationTaskService extends
             return;
         }
 
+        // create a set of rollup metric keys we are interested in and the timestamp
+        // to rollup from for each
+        Set<RollupMetricHolder> rollupMetricHolder = new HashSet<>();
+        for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
+                .entrySet()) {
+            RollupMetricHolder metric = new RollupMetricHolder();
+            metric.rollupKey = metricEntry.getKey();
+            if (metricEntry.getValue() != null && metricEntry.getValue() != 0) {
+                metric.beginTimestampMicros = StatsUtil.computeIntervalBeginMicros(
+                        metricEntry.getValue() - 1,
+                        lookupBinSize(metricEntry.getKey()));
+            }
+            rollupMetricHolder.add(metric);
+        }
+
+        getRawMetricsFromStore(currentState, metricsToBeQueried)
+                .whenComplete((storedMetrics, e) -> {
+                    if (storedMetrics == null) {
+                        queryRawMetrics(currentState, resourceQueryTask, metricsToBeQueried,
+                                inMemoryStats, rollupMetricHolder);
+                        return;
+                    }
+                    aggregateMetrics(currentState, resourceQueryTask,
+                            groupRawMetrics(storedMetrics, rollupMetricHolder), inMemoryStats);
+                });
+    }
+
+    private void queryRawMetrics(SingleResourceStatsAggregationTaskState currentState,
+            QueryTask resourceQueryTask, Map<String, Set<String>> metricsToBeQueried,
+            Map<String, SortedMap<Long, List<TimeBin>>> inMemoryStats,
+            Set<RollupMetricHolder> rollupMetricHolder) {
         Query.Builder overallQueryBuilder = Query.Builder.create();
         for (Entry<String, Set<String>> entry : metricsToBeQueried.entrySet()) {
             String resourceId = entry.getKey();
             for (String metricKey : entry.getValue()) {
                 logFine(() -> String.format("Querying raw metrics from disk for %s", metricKey));
-                Long range = null;
-                int binSize = 0;
-                for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
-                        .entrySet()) {
-                    if (metricEntry.getKey().startsWith(metricKey)) {
-                        if (range == null || range > metricEntry.getValue()) {
-                            binSize = lookupBinSize(metricEntry.getKey());
-                            range = metricEntry.getValue();
-                        }
-                    }
-                }
                 Query.Builder builder = Query.Builder.create(Occurance.SHOULD_OCCUR);
                 builder.addKindFieldClause(ResourceMetrics.class);
                 builder.addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
@@ -713,30 +740,15 @@ public class SingleResourceStatsAggregationTaskService extends
                 builder.addRangeClause(QuerySpecification
                         .buildCompositeFieldName(ResourceMetrics.FIELD_NAME_ENTRIES, metricKey),
                         NumericRange.createDoubleRange(0.0, Double.MAX_VALUE, true, true));
-                if (range != null && range != 0) {
+                Long beginMicros = getRawMetricsBeginMicros(currentState, metricKey);
+                if (beginMicros != null) {
                     builder.addRangeClause(ResourceMetrics.FIELD_NAME_TIMESTAMP,
-                            NumericRange.createGreaterThanOrEqualRange(
-                                    StatsUtil.computeIntervalBeginMicros(range - 1, binSize)));
+                            NumericRange.createGreaterThanOrEqualRange(beginMicros));
                 }
                 overallQueryBuilder.addClause(builder.build());
             }
         }
 
-        // create a set of rollup metric keys we are interested in and the timestamp
-        // to rollup from for each
-        Set<RollupMetricHolder> rollupMetricHolder = new HashSet<>();
-        for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
-                .entrySet()) {
-            RollupMetricHolder metric = new RollupMetricHolder();
-            metric.rollupKey = metricEntry.getKey();
-            if (metricEntry.getValue() != null && metricEntry.getValue() != 0) {
-                metric.beginTimestampMicros = StatsUtil.computeIntervalBeginMicros(
-                        metricEntry.getValue() - 1,
-                        lookupBinSize(metricEntry.getKey()));
-            }
-            rollupMetricHolder.add(metric);
-        }
-
         QueryTask task = QueryTask.Builder.createDirectTask()
                 .addOption(QueryOption.EXPAND_CONTENT)
                 .addOption(QueryOption.TOP_RESULTS)
@@ -753,33 +765,153 @@ public class SingleResourceStatsAggregationTaskService extends
                         sendSelfFailurePatch(currentState, queryEx.getMessage());
                         return;
                     }
-                    Map<String, List<ResourceMetrics>> rawMetricsForKey = new HashMap<>();
+                    List<ResourceMetrics> rawMetrics = new ArrayList<>();
                     for (Object obj : response.results.documents.values()) {
-                        ResourceMetrics rawMetric = Utils.fromJson(obj, ResourceMetrics.class);
-                        for (RollupMetricHolder metric : rollupMetricHolder) {
-                            for (String rawMetricKey : rawMetric.entries.keySet()) {
-                                if (!rawMetricKey.contains(stripRollupKey(metric.rollupKey))) {
-                                    continue;
-                                }
-                                // we want to consider raw metrics with the specified key and the appropriate timestamp
-                                if ((metric.beginTimestampMicros == null ||
-                                        rawMetric.timestampMicrosUtc >= metric.beginTimestampMicros)) {
-                                    List<ResourceMetrics> rawMetricResultSet = rawMetricsForKey
-                                            .get(metric.rollupKey);
-                                    if (rawMetricResultSet == null) {
-                                        rawMetricResultSet = new ArrayList<>();
-                                        rawMetricsForKey.put(metric.rollupKey, rawMetricResultSet);
-                                    }
-                                    rawMetricResultSet.add(rawMetric);
-                                }
-                            }
-                        }
+                        rawMetrics.add(Utils.fromJson(obj, ResourceMetrics.class));
                     }
-                    aggregateMetrics(currentState, resourceQueryTask, rawMetricsForKey,
-                            inMemoryStats);
+                    aggregateMetrics(currentState, resourceQueryTask,
+                            groupRawMetrics(rawMetrics, rollupMetricHolder), inMemoryStats);
                 });
     }
 
+    /**
+     * Returns the earliest raw metric timestamp needed to roll up the given metric, or
+     * {@code null} if the metric has never been rolled up.
+     */
+    private Long getRawMetricsBeginMicros(SingleResourceStatsAggregationTaskState currentState,
+            String metricKey) {
+        Long range = null;
+        int binSize = 0;
+        for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
+                .entrySet()) {
+            if (metricEntry.getKey().startsWith(metricKey)) {
+                if (range == null || range > metricEntry.getValue()) {
+                    binSize = lookupBinSize(metricEntry.getKey());
+                    range = metricEntry.getValue();
+                }
+            }
+        }
+        if (range == null || range == 0) {
+            return null;
+        }
+        return StatsUtil.computeIntervalBeginMicros(range - 1, binSize);
+    }
+
+    /**
+     * Reads the raw metrics from the {@link ResourceMetricsStore}s of the nodes. Completes with
+     * {@code null} when the stores can not prove they hold every sample of the range, in which
+     * case the index has to be queried.
+     *
+     * The samples of a resource are posted to links owned by different nodes and the store of a
+     * node only receives the ones it owns, so the read is broadcast to all nodes and is complete
+     * only if the membership of the node group hasn't changed since the beginning of the range,
+     * every node responds, and the store of every node has been running, and retaining, since
+     * then as well.
+     */
+    private DeferredResult<List<ResourceMetrics>> getRawMetricsFromStore(
+            SingleResourceStatsAggregationTaskState currentState,
+            Map<String, Set<String>> metricsToBeQueried) {
+        if (!ResourceMetricsStore.isEnabled() || !ClusterUtil.getClusterUri(getHost(),
+                ServiceTypeCluster.METRIC_SERVICE).equals(getHost().getUri())) {
+            return DeferredResult.completed(null);
+        }
+        RawMetricsRequest request = new RawMetricsRequest();
+        request.metricKeysByResource = metricsToBeQueried;
+        request.beginMicrosByMetric = new HashMap<>();
+        long earliestBeginMicros = Long.MAX_VALUE;
+        for (Set<String> metricKeys : metricsToBeQueried.values()) {
+            for (String metricKey : metricKeys) {
+                Long beginMicros = getRawMetricsBeginMicros(currentState, metricKey);
+                if (beginMicros == null) {
+                    return DeferredResult.completed(null);
+                }
+                request.beginMicrosByMetric.put(metricKey, beginMicros);
+                earliestBeginMicros = Math.min(earliestBeginMicros, beginMicros);
+            }
+        }
+
+        long rangeBeginMicros = earliestBeginMicros;
+        return sendWithDeferredResult(Operation.createGet(this,
+                ServiceUriPaths.DEFAULT_NODE_GROUP), NodeGroupState.class)
+                .thenCompose(nodeGroup -> {
+                    if (nodeGroup.nodes == null || nodeGroup.nodes.isEmpty()
+                            || nodeGroup.membershipUpdateTimeMicros > rangeBeginMicros) {
+                        return DeferredResult.completed(null);
+                    }
+                    Operation read = Operation.createPost(UriUtils.buildBroadcastRequestUri(
+                            UriUtils.buildUri(getHost(), ResourceMetricsStoreService.SELF_LINK),
+                            ServiceUriPaths.DEFAULT_NODE_SELECTOR))
+                            .setBody(request);
+                    return sendWithDeferredResult(read, NodeGroupBroadcastResponse.class)
+                            .thenApply(response -> mergeRawMetrics(nodeGroup, response));
+                })
+                .exceptionally(e -> {
+                    logFine(() -> String.format("Reading raw metrics from the index: %s",
+                            Utils.toString(e)));
+                    return null;
+                });
+    }
+
+    /**
+     * Merges the raw metrics read from the stores of the nodes, or returns {@code null} if a
+     * node of the group didn't respond or its store is not complete.
+     */
+    private List<ResourceMetrics> mergeRawMetrics(NodeGroupState nodeGroup,
+            NodeGroupBroadcastResponse response) {
+        if ((response.failures != null && !response.failures.isEmpty())
+                || response.jsonResponses == null
+                || response.jsonResponses.size() != nodeGroup.nodes.size()) {
+            return null;
+        }
+        // a sample replicated to several nodes is rebuilt with the same link on each of them
+        Map<String, ResourceMetrics> rawMetricsByLink = new HashMap<>();
+        for (String json : response.jsonResponses.values()) {
+            RawMetricsResponse nodeResponse = Utils.fromJson(json, RawMetricsResponse.class);
+            if (!nodeResponse.complete || nodeResponse.metrics == null) {
+                return null;
+            }
+            for (ResourceMetrics metrics : nodeResponse.metrics) {
+                ResourceMetrics merged = rawMetricsByLink.putIfAbsent(metrics.documentSelfLink,
+                        metrics);
+                if (merged != null) {
+                    merged.entries.putAll(metrics.entries);
+                }
+            }
+        }
+        logFine(() -> String.format("Read %d raw metrics from the metrics stores of %d nodes",
+                rawMetricsByLink.size(), nodeGroup.nodes.size()));
+        return new ArrayList<>(rawMetricsByLink.values());
+    }
+
+    /**
+     * Groups the raw metrics by the rollup metric keys they contribute to.
+     */
+    private Map<String, List<ResourceMetrics>> groupRawMetrics(List<ResourceMetrics> rawMetrics,
+            Set<RollupMetricHolder> rollupMetricHolder) {
+        Map<String, List<ResourceMetrics>> rawMetricsForKey = new HashMap<>();
+        for (ResourceMetrics rawMetric : rawMetrics) {
+            for (RollupMetricHolder metric : rollupMetricHolder) {
+                for (String rawMetricKey : rawMetric.entries.keySet()) {
+                    if (!rawMetricKey.contains(stripRollupKey(metric.rollupKey))) {
+                        continue;
+                    }
+                    // we want to consider raw metrics with the specified key and the appropriate timestamp
+                    if ((metric.beginTimestampMicros == null ||
+                            rawMetric.timestampMicrosUtc >= metric.beginTimestampMicros)) {
+                        List<ResourceMetrics> rawMetricResultSet = rawMetricsForKey
+                                .get(metric.rollupKey);
+                        if (rawMetricResultSet == null) {
+                            rawMetricResultSet = new ArrayList<>();
+                            rawMetricsForKey.put(metric.rollupKey, rawMetricResultSet);
+                        }
+                        rawMetricResultSet.add(rawMetric);
+                    }
+                }
+            }
+        }
+        return rawMetricsForKey;
+    }
+
     private void aggregateMetrics(SingleResourceStatsAggregationTaskState currentState,
             QueryTask resourceQueryTask, Map<String, List<ResourceMetrics>> rawMetricsForKey,
             Map<String, SortedMap<Long, List<TimeBin>>> inMemoryStats) {
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimeSeriesBlockTest {
+
+    @Test
+    public void testRegularSamples() {
+        long[] timestamps = new long[100];
+        double[] values = new double[100];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = 1_500_000_000_000_000L + i * 60_000_000L;
+            values[i] = 10.0 + (i % 5) * 0.25;
+        }
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    public void testEqualTimestamps() {
+        long t = 1_500_000_000_000_000L;
+        assertRoundTrip(new long[] { t, t, t, t + 1, t + 1, t },
+                new double[] { 1.0, 2.0, 2.0, 3.0, 3.0, 4.0 });
+    }
+
+    @Test
+    public void testOutOfOrderTimestamps() {
+        long t = 1_500_000_000_000_000L;
+        assertRoundTrip(new long[] { t, t + 10, t - 5_000_000_000L, t + Integer.MAX_VALUE,
+                t - Integer.MAX_VALUE, 0, Long.MAX_VALUE / 2 },
+                new double[] { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0 });
+    }
+
+    @Test
+    public void testNaNAndSpecialValues() {
+        long t = 1_500_000_000_000_000L;
+        assertRoundTrip(new long[] { t, t + 1, t + 2, t + 3, t + 4, t + 5, t + 6, t + 7 },
+                new double[] { Double.NaN, 1.0, Double.NaN, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY, 0.0, -0.0, Double.MIN_VALUE });
+    }
+
+    @Test
+    public void testNegativeValues() {
+        long t = 1_500_000_000_000_000L;
+        assertRoundTrip(new long[] { t, t + 1, t + 2, t + 3, t + 4 },
+                new double[] { -1.0, -1.0, -123456.789, 42.0, -Double.MAX_VALUE });
+    }
+
+    @Test
+    public void testRandomSamples() {
+        Random random = new Random(42);
+        long[] timestamps = new long[1000];
+        double[] values = new double[1000];
+        long t = 1_500_000_000_000_000L;
+        for (int i = 0; i < timestamps.length; i++) {
+            t += random.nextInt(3) == 0 ? 0 : random.nextInt(120_000_000) - 1_000_000;
+            timestamps[i] = t;
+            values[i] = random.nextInt(4) == 0 ? values[Math.max(0, i - 1)]
+                    : (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+        }
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    public void testBeginTimeFilter() {
+        TimeSeriesBlock block = new TimeSeriesBlock();
+        block.append(300, 3.0);
+        block.append(100, 1.0);
+        block.append(200, 2.0);
+        block.seal();
+
+        List<Long> timestamps = new ArrayList<>();
+        block.forEach(200, (timestampMicros, value) -> timestamps.add(timestampMicros));
+        assertEquals(2, timestamps.size());
+        assertEquals(Long.valueOf(300), timestamps.get(0));
+        assertEquals(Long.valueOf(200), timestamps.get(1));
+
+        timestamps.clear();
+        block.forEach(301, (timestampMicros, value) -> timestamps.add(timestampMicros));
+        assertEquals(0, timestamps.size());
+        assertEquals(100, block.getMinTimestampMicros());
+        assertEquals(300, block.getMaxTimestampMicros());
+    }
+
+    private static void assertRoundTrip(long[] timestamps, double[] values) {
+        TimeSeriesBlock block = new TimeSeriesBlock();
+        for (int i = 0; i < timestamps.length; i++) {
+            block.append(timestamps[i], values[i]);
+        }
+        assertEquals(timestamps.length, block.getCount());
+
+        // decodes the same before and after the block is sealed
+        assertSamples(block, timestamps, values);
+        block.seal();
+        assertSamples(block, timestamps, values);
+    }
+
+    private static void assertSamples(TimeSeriesBlock block, long[] timestamps,
+            double[] values) {
+        List<Long> decodedTimestamps = new ArrayList<>();
+        List<Double> decodedValues = new ArrayList<>();
+        block.forEach(Long.MIN_VALUE, (timestampMicros, value) -> {
+            decodedTimestamps.add(timestampMicros);
+            decodedValues.add(value);
+        });
+
+        assertEquals(timestamps.length, decodedTimestamps.size());
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals("timestamp " + i, timestamps[i], (long) decodedTimestamps.get(i));
+            // compares the bits, so that NaN and negative zero are distinguished
+            assertEquals("value " + i, Double.doubleToRawLongBits(values[i]),
+                    Double.doubleToRawLongBits(decodedValues.get(i)));
+        }
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.postgresql.ds.common.BaseDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import com.vmware.xenon.common.NamedThreadFactory;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
+
+/**
+ * Change feed of the document tables, built on Postgres triggers and LISTEN/NOTIFY, so that the
+ * continuous queries of a node are notified about the documents updated through any node sharing
+ * the database, not only about its own updates.
+ *
+ * The trigger is installed on every document table when the table is created and notifies the
+ * self link, kind and version of the inserted or updated documents of the kinds some node has
+ * subscribed to. Each node subscribes to the kinds of its active continuous queries in a shared
+ * subscription table, so that the writes don't notify when no node has continuous queries for
+ * them. The subscriptions of a node expire unless refreshed, see {@link #refreshSubscriptions()},
+ * so that a failed node doesn't keep the notifications enabled.
+ *
+ * The notifications are received on a dedicated connection, not taken from the connection pool,
+ * and filtered by the kinds of the active continuous queries of the node. The updates already
+ * applied by this node are skipped, and the remaining ones are coalesced per document in a
+ * bounded buffer, which is drained by the given handler. When the buffer is full, the oldest
+ * notifications are dropped. Hard deletes, i.e. with soft delete disabled, are not notified.
+ */
+final class PostgresChangeFeed {
+    private static final Logger logger = Logger.getLogger(PostgresChangeFeed.class.getName());
+
+    static final String CHANNEL = "xenon_document_changes";
+
+    private static final String TRIGGER_NAME = "xenon_notify_document_change";
+
+    private static final String SUBSCRIPTIONS_TABLE = "xenon_change_feed_subscriptions";
+
+    /**
+     * The subscribed document kind matching the documents of all kinds.
+     */
+    static final String ALL_KINDS = "*";
+
+    private static final String SQL_NOW_MICROS = "(extract(epoch FROM now()) * 1000000)::bigint";
+
+    private static final String SQL_CREATE_SUBSCRIPTIONS_TABLE = "CREATE TABLE IF NOT EXISTS "
+            + SUBSCRIPTIONS_TABLE + " (nodeid text NOT NULL, documentkind text NOT NULL,"
+            + " expirationtimemicros bigint NOT NULL, PRIMARY KEY (documentkind, nodeid))";
+
+    private static final String SQL_CREATE_NOTIFY_FUNCTION = "CREATE OR REPLACE FUNCTION "
+            + TRIGGER_NAME + "() RETURNS trigger AS $$\n"
+            + "BEGIN\n"
+            + "  IF EXISTS (SELECT 1 FROM " + SUBSCRIPTIONS_TABLE
+            + " WHERE documentkind IN (NEW.documentkind, '" + ALL_KINDS + "')"
+            + " AND expirationtimemicros > " + SQL_NOW_MICROS + ") THEN\n"
+            + "    PERFORM pg_notify('" + CHANNEL + "', json_build_object("
+            + "'documentSelfLink', NEW.documentselflink, "
+            + "'documentKind', NEW.documentkind, "
+            + "'documentVersion', NEW.documentversion)::text);\n"
+            + "  END IF;\n"
+            + "  RETURN NULL;\n"
+            + "END;\n"
+            + "$$ LANGUAGE plpgsql";
+
+    private static final String SQL_DELETE_SUBSCRIPTIONS = "DELETE FROM " + SUBSCRIPTIONS_TABLE
+            + " WHERE nodeid = ? OR expirationtimemicros < " + SQL_NOW_MICROS;
+
+    private static final String SQL_INSERT_SUBSCRIPTION = "INSERT INTO " + SUBSCRIPTIONS_TABLE
+            + " (nodeid, documentkind, expirationtimemicros) VALUES (?, ?, " + SQL_NOW_MICROS
+            + " + ?)";
+
+    private static final String SQL_CREATE_TRIGGER = "CREATE TRIGGER " + TRIGGER_NAME
+            + " AFTER INSERT OR UPDATE ON %s FOR EACH ROW EXECUTE PROCEDURE " + TRIGGER_NAME
+            + "()";
+
+    private static final String SQL_SELECT_TRIGGER_TABLES = "SELECT c.relname FROM pg_trigger t"
+            + " JOIN pg_class c ON t.tgrelid = c.oid WHERE t.tgname = ?";
+
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+
+    private static final long RECONNECT_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final long SUBSCRIPTION_EXPIRATION_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final Service service;
+    private final DataSource ds;
+    private final int bufferSize;
+    private final int batchSize;
+
+    private final Map<String, ServiceDocument> buffer = new LinkedHashMap<>();
+    private final Map<String, Long> localVersions;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Executor drainExecutor;
+    private final Consumer<List<ServiceDocument>> handler;
+
+    /**
+     * The kinds of the documents notified to the handler, or <code>null</code> for all kinds.
+     */
+    private volatile Set<String> documentKinds = Collections.emptySet();
+
+    private volatile boolean running;
+    private ExecutorService listenerExecutor;
+    private volatile Connection listenConnection;
+    // the time of the last update of the subscriptions of the node, 0 if none
+    private volatile long subscriptionsUpdateMicros;
+
+    /**
+     * Creates the change feed, which passes the notifications in batches to the given handler on
+     * the given executor.
+     */
+    PostgresChangeFeed(Service service, DataSource ds, int bufferSize, int batchSize,
+            Executor drainExecutor, Consumer<List<ServiceDocument>> handler) {
+        this.service = service;
+        this.ds = ds;
+        this.bufferSize = bufferSize;
+        this.batchSize = batchSize;
+        this.drainExecutor = drainExecutor;
+        this.handler = handler;
+        this.localVersions = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > bufferSize;
+            }
+        };
+    }
+
+    /**
+     * Installs the triggers on the existing document tables and starts listening to the
+     * notifications.
+     */
+    void start() {
+        this.running = true;
+
+        installNotifyFunction(this.ds);
+        installTriggers(this.ds, PostgresHostUtils.getDocumentTableNames(this.ds));
+
+        this.listenerExecutor = Executors.newSingleThreadExecutor(
+                new NamedThreadFactory(this.service.getUri() + "/change-feed"));
+        this.listenerExecutor.execute(this::listen);
+    }
+
+    void stop() {
+        this.running = false;
+        if (this.listenerExecutor != null) {
+            this.listenerExecutor.shutdownNow();
+        }
+        Connection conn = this.listenConnection;
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.fine(() -> String.format("Failed to close change feed connection: %s", e));
+            }
+        }
+
+        this.documentKinds = Collections.emptySet();
+        updateSubscriptions();
+    }
+
+    /**
+     * Creates the subscription table and the function of the trigger, or replaces the function
+     * with the current version.
+     */
+    private static void installNotifyFunction(DataSource ds) {
+        try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(SQL_CREATE_SUBSCRIPTIONS_TABLE);
+            stmt.execute(SQL_CREATE_NOTIFY_FUNCTION);
+        } catch (SQLException e) {
+            // might be replaced concurrently by another node
+            logger.warning(String.format("Failed to install change feed function: %s",
+                    Utils.toString(e)));
+        }
+    }
+
+    /**
+     * Installs the notification trigger on the given document tables which don't have it yet,
+     * called when a table is created.
+     */
+    static void installTriggers(DataSource ds, Collection<String> tableNames) {
+        List<String> tables = new ArrayList<>(tableNames);
+        try (Connection conn = ds.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_TRIGGER_TABLES)) {
+                stmt.setString(1, TRIGGER_NAME);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        tables.remove(rs.getString(1));
+                    }
+                }
+            }
+            if (tables.isEmpty()) {
+                return;
+            }
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(SQL_CREATE_SUBSCRIPTIONS_TABLE);
+                stmt.execute(SQL_CREATE_NOTIFY_FUNCTION);
+                for (String tableName : tables) {
+                    try {
+                        stmt.execute(String.format(SQL_CREATE_TRIGGER, tableName));
+                    } catch (SQLException e) {
+                        // the trigger might have been created by another node
+                        logger.warning(String.format(
+                                "Failed to create change feed trigger on %s: %s", tableName, e));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.severe(String.format("Failed to install change feed triggers: %s",
+                    Utils.toString(e)));
+        }
+    }
+
+    /**
+     * Sets the kinds of the documents notified to the handler, <code>null</code> for all kinds.
+     * The subscriptions of the node have to be updated afterwards, see
+     * {@link #updateSubscriptions()}.
+     */
+    void setDocumentKinds(Set<String> documentKinds) {
+        this.documentKinds = documentKinds;
+    }
+
+    /**
+     * Replaces the subscriptions of the node with the current document kinds, and removes the
+     * expired subscriptions of the other nodes.
+     */
+    synchronized void updateSubscriptions() {
+        Set<String> kinds = this.documentKinds;
+        String nodeId = this.service.getHost().getId();
+        try (Connection conn = this.ds.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_SUBSCRIPTIONS)) {
+                    stmt.setString(1, nodeId);
+                    stmt.executeUpdate();
+                }
+                Collection<String> subscribedKinds = kinds != null ? kinds
+                        : Collections.singleton(ALL_KINDS);
+                if (!subscribedKinds.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            SQL_INSERT_SUBSCRIPTION)) {
+                        for (String kind : subscribedKinds) {
+                            stmt.setString(1, nodeId);
+                            stmt.setString(2, kind);
+                            stmt.setLong(3, SUBSCRIPTION_EXPIRATION_MICROS);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            this.subscriptionsUpdateMicros = subscribed(kinds) ? Utils.getSystemNowMicrosUtc()
+                    : 0;
+        } catch (SQLException e) {
+            logger.warning(String.format("Failed to update change feed subscriptions: %s",
+                    Utils.toString(e)));
+        }
+    }
+
+    /**
+     * Renews the subscriptions of the node before they expire.
+     */
+    void refreshSubscriptions() {
+        long updateMicros = this.subscriptionsUpdateMicros;
+        if (updateMicros != 0 && Utils.getSystemNowMicrosUtc() - updateMicros
+                > SUBSCRIPTION_EXPIRATION_MICROS / 3) {
+            updateSubscriptions();
+        }
+    }
+
+    private static boolean subscribed(Set<String> kinds) {
+        return kinds == null || !kinds.isEmpty();
+    }
+
+    /**
+     * Records an update of the document saved by this node, which is applied to the continuous
+     * queries in-process, so that its notification is skipped.
+     */
+    void recordLocalUpdate(ServiceDocument document) {
+        synchronized (this.localVersions) {
+            Long version = this.localVersions.get(document.documentSelfLink);
+            if (version == null || version < document.documentVersion) {
+                this.localVersions.put(document.documentSelfLink, document.documentVersion);
+            }
+        }
+    }
+
+    boolean isLocalUpdate(ServiceDocument change) {
+        synchronized (this.localVersions) {
+            Long version = this.localVersions.get(change.documentSelfLink);
+            return version != null && version >= change.documentVersion;
+        }
+    }
+
+    private void listen() {
+        while (this.running) {
+            try (Connection conn = openListenConnection()) {
+                this.listenConnection = conn;
+                conn.setAutoCommit(true);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                logger.info(String.format("Listening to %s", CHANNEL));
+
+                PGConnection pgConnection = conn.unwrap(PGConnection.class);
+                while (this.running) {
+                    PGNotification[] notifications = pgConnection
+                            .getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        offer(Utils.fromJson(notification.getParameter(),
+                                ServiceDocument.class));
+                    }
+                }
+            } catch (Exception e) {
+                if (!this.running) {
+                    break;
+                }
+                // the notifications sent until the connection is listening again are lost
+                logger.warning(String.format("Change feed connection failed, reconnecting: %s",
+                        e));
+                this.service.adjustStat(
+                        PostgresDocumentIndexService.STAT_NAME_CHANGE_FEED_RECONNECT_COUNT, 1);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a connection for listening to the notifications outside of the connection pool,
+     * since it is held as long as the change feed is running.
+     */
+    private Connection openListenConnection() throws SQLException {
+        if (this.ds instanceof HikariDataSource) {
+            HikariDataSource hikariDataSource = (HikariDataSource) this.ds;
+            if (hikariDataSource.getJdbcUrl() != null) {
+                return DriverManager.getConnection(hikariDataSource.getJdbcUrl(),
+                        hikariDataSource.getUsername(), hikariDataSource.getPassword());
+            }
+        }
+        if (this.ds.isWrapperFor(BaseDataSource.class)) {
+            return this.ds.unwrap(BaseDataSource.class).getConnection();
+        }
+        // not a pool
+        return this.ds.getConnection();
+    }
+
+    void offer(ServiceDocument change) {
+        this.service.adjustStat(
+                PostgresDocumentIndexService.STAT_NAME_CHANGE_FEED_NOTIFICATION_COUNT, 1);
+
+        Set<String> kinds = this.documentKinds;
+        if ((kinds != null && !kinds.contains(change.documentKind)) || isLocalUpdate(change)) {
+            this.service.adjustStat(
+                    PostgresDocumentIndexService.STAT_NAME_CHANGE_FEED_FILTERED_COUNT, 1);
+            return;
+        }
+
+        synchronized (this.buffer) {
+            // coalesce the notifications of the same document, keeping the latest version
+            ServiceDocument previous = this.buffer.remove(change.documentSelfLink);
+            if (previous != null && previous.documentVersion > change.documentVersion) {
+                change = previous;
+            }
+            if (this.buffer.size() >= this.bufferSize) {
+                Iterator<ServiceDocument> it = this.buffer.values().iterator();
+                it.next();
+                it.remove();
+                this.service.adjustStat(
+                        PostgresDocumentIndexService.STAT_NAME_CHANGE_FEED_DROPPED_COUNT, 1);
+            }
+            this.buffer.put(change.documentSelfLink, change);
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (!this.drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.drainExecutor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // retried with the next notification
+            this.drainScheduled.set(false);
+            logger.warning(String.format("Failed to schedule change feed processing: %s", e));
+        }
+    }
+
+    private void drain() {
+        List<ServiceDocument> changes;
+        synchronized (this.buffer) {
+            changes = new ArrayList<>(Math.min(this.batchSize, this.buffer.size()));
+            Iterator<ServiceDocument> it = this.buffer.values().iterator();
+            while (it.hasNext() && changes.size() < this.batchSize) {
+                changes.add(it.next());
+                it.remove();
+            }
+        }
+
+        try {
+            this.handler.accept(changes);
+        } catch (Throwable e) {
+            logger.severe(String.format("Failed to process change feed notifications: %s",
+                    Utils.toString(e)));
+        } finally {
+            this.drainScheduled.set(false);
+            boolean hasMore;
+            synchronized (this.buffer) {
+                hasMore = !this.buffer.isEmpty();
+            }
+            if (hasMore) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    /**
+     * Returns the kinds of the documents matched by the given query, or <code>null</code> if the
+     * query isn't restricted to specific kinds.
+     */
+    static Set<String> getDocumentKinds(Query query) {
+        Set<String> kinds = new HashSet<>();
+        return collectDocumentKinds(query, kinds) ? kinds : null;
+    }
+
+    private static boolean collectDocumentKinds(Query query, Set<String> kinds) {
+        if (query.occurance == Occurance.MUST_NOT_OCCUR) {
+            return false;
+        }
+        if (query.term != null) {
+            if (!ServiceDocument.FIELD_NAME_KIND.equals(query.term.propertyName)
+                    || query.term.matchValue == null
+                    || (query.term.matchType != null && query.term.matchType != MatchType.TERM)) {
+                return false;
+            }
+            kinds.add(query.term.matchValue);
+            return true;
+        }
+        if (query.booleanClauses == null || query.booleanClauses.isEmpty()) {
+            return false;
+        }
+
+        // a required clause restricted to specific kinds restricts the whole query
+        boolean hasRequiredClause = false;
+        for (Query clause : query.booleanClauses) {
+            if (clause.occurance == null || clause.occurance == Occurance.MUST_OCCUR) {
+                hasRequiredClause = true;
+                Set<String> clauseKinds = new HashSet<>();
+                if (collectDocumentKinds(clause, clauseKinds)) {
+                    kinds.addAll(clauseKinds);
+                    return true;
+                }
+            }
+        }
+        if (hasRequiredClause) {
+            return false;
+        }
+
+        // otherwise every optional clause has to be restricted to specific kinds
+        Set<String> optionalKinds = new HashSet<>();
+        for (Query clause : query.booleanClauses) {
+            if (clause.occurance == Occurance.SHOULD_OCCUR
+                    && !collectDocumentKinds(clause, optionalKinds)) {
+                return false;
+            }
+        }
+        if (optionalKinds.isEmpty()) {
+            return false;
+        }
+        kinds.addAll(optionalKinds);
+        return true;
+    }
+}
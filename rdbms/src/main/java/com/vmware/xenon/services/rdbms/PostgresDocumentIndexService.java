@@ -15,12 +15,16 @@ import java.net.URI;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
@@ -30,9 +34,12 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.sql.DataSource;
 
+import com.zaxxer.hikari.HikariDataSource;
+
 import com.vmware.xenon.common.NamedThreadFactory;
 import com.vmware.xenon.common.NodeSelectorService;
 import com.vmware.xenon.common.Operation;
@@ -66,6 +73,7 @@ import com.vmware.xenon.services.common.ServiceUriPaths;
 import com.vmware.xenon.services.common.SystemUserService;
 import com.vmware.xenon.services.common.UpdateIndexRequest;
 import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
+import com.vmware.xenon.services.rdbms.PostgresServiceDocumentDao.DocumentUpdate;
 
 public class PostgresDocumentIndexService extends StatelessService {
 
@@ -96,6 +104,98 @@ public class PostgresDocumentIndexService extends StatelessService {
             10 * Service.OPERATION_QUEUE_DEFAULT_LIMIT
     );
 
+    /**
+     * Maximum number of document updates saved with a single transaction.
+     */
+    public static final int UPDATE_BATCH_SIZE = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "updateBatchSize",
+            100
+    );
+
+    /**
+     * Maximum time to wait for more document updates to fill a batch. By default only the
+     * updates which are already queued are batched.
+     */
+    public static final long UPDATE_BATCH_LATENCY_MICROS = XenonConfiguration.number(
+            PostgresDocumentIndexService.class,
+            "updateBatchLatencyMicros",
+            0
+    );
+
+    /**
+     * Whether the continuous queries are notified about the documents updated through the other
+     * nodes sharing the database, see {@link PostgresChangeFeed}.
+     */
+    public static final boolean CHANGE_FEED_ENABLED = XenonConfiguration.bool(
+            PostgresDocumentIndexService.class,
+            "changeFeedEnabled",
+            false
+    );
+
+    /**
+     * Maximum number of change feed notifications buffered for processing.
+     */
+    public static final int CHANGE_FEED_BUFFER_SIZE = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "changeFeedBufferSize",
+            10000
+    );
+
+    /**
+     * Maximum number of concurrently executed queries per workload class, see
+     * {@link QueryWorkloadClass}. By default, the connections of the pool which are not reserved
+     * for the updates are shared between the classes.
+     */
+    public static final int INTERACTIVE_QUERY_CONCURRENCY = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "interactiveQueryConcurrency",
+            0
+    );
+
+    public static final int TASK_QUERY_CONCURRENCY = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "taskQueryConcurrency",
+            0
+    );
+
+    public static final int BACKGROUND_QUERY_CONCURRENCY = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "backgroundQueryConcurrency",
+            0
+    );
+
+    /**
+     * Minimum of the concurrency limits of the workload classes derived from the size of the
+     * connection pool.
+     */
+    public static final int MIN_QUERY_CONCURRENCY = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "minQueryConcurrency",
+            2
+    );
+
+    /**
+     * Comma separated kinds of the documents whose queries are
+     * {@link QueryWorkloadClass#BACKGROUND} queries, by default the kinds of the collected
+     * metrics, which are queried by the stats aggregation.
+     */
+    public static final String BACKGROUND_QUERY_KINDS = XenonConfiguration.string(
+            PostgresDocumentIndexService.class,
+            "backgroundQueryKinds",
+            "com:vmware:photon:controller:model:monitoring:ResourceMetricsService:"
+                    + "ResourceMetrics,"
+                    + "com:vmware:photon:controller:model:monitoring:InMemoryResourceMetricService:"
+                    + "InMemoryResourceMetric");
+
+    /**
+     * Request header of the queries sent to the index with the name of their
+     * {@link QueryWorkloadClass}, overriding the class derived from the query. Only the queries
+     * sent to the index directly carry the header, not the ones forwarded by the query task
+     * service, which are classified by their query.
+     */
+    public static final String QUERY_WORKLOAD_CLASS_HEADER = "x-xenon-query-workload-class";
+
     public static final int MIN_QUERY_RESULT_LIMIT = 1000;
 
     public static final int DEFAULT_QUERY_RESULT_LIMIT = 10000;
@@ -114,6 +214,14 @@ public class PostgresDocumentIndexService extends StatelessService {
             UPDATE_QUEUE_DEPTH
     );
 
+    /**
+     * The SQL state of a statement cancelled by the query timeout.
+     */
+    private static final String SQL_STATE_QUERY_CANCELED = "57014";
+
+    private static final long UPDATE_BATCH_POLL_INTERVAL_NANOS = TimeUnit.MICROSECONDS
+            .toNanos(100);
+
     private static int expiredDocumentSearchThreshold = 1000;
 
     static int queryResultLimit = DEFAULT_QUERY_RESULT_LIMIT;
@@ -154,6 +262,8 @@ public class PostgresDocumentIndexService extends StatelessService {
 
     public static final String STAT_NAME_COMMIT_DURATION_MICROS = "commitDurationMicros";
 
+    public static final String STAT_NAME_COMMIT_BATCH_SIZE = "commitBatchSize";
+
     public static final String STAT_NAME_GROUP_QUERY_COUNT = "groupQueryCount";
 
     public static final String STAT_NAME_QUERY_DURATION_MICROS = "queryDurationMicros";
@@ -162,6 +272,12 @@ public class PostgresDocumentIndexService extends StatelessService {
 
     public static final String STAT_NAME_QUERY_SINGLE_DURATION_MICROS = "querySingleDurationMicros";
 
+    public static final String STAT_NAME_QUERY_COMPILATION_DURATION_MICROS = "queryCompilationDurationMicros";
+
+    public static final String STAT_NAME_QUERY_SHAPE_CACHE_HIT_COUNT = "queryShapeCacheHitCount";
+
+    public static final String STAT_NAME_QUERY_SHAPE_CACHE_MISS_COUNT = "queryShapeCacheMissCount";
+
     public static final String STAT_NAME_FORCED_UPDATE_DOCUMENT_DELETE_COUNT = "singleVersionDocumentDeleteCount";
 
     public static final String STAT_NAME_PAGINATED_SEARCHER_FORCE_DELETION_COUNT = "paginatedIndexSearcherForceDeletionCount";
@@ -184,6 +300,14 @@ public class PostgresDocumentIndexService extends StatelessService {
 
     public static final String STAT_NAME_SINGLE_QUERY_BY_FACTORY_COUNT_FORMAT = "singleQueryByFactoryCount-%s";
 
+    public static final String STAT_NAME_CHANGE_FEED_NOTIFICATION_COUNT = "changeFeedNotificationCount";
+
+    public static final String STAT_NAME_CHANGE_FEED_FILTERED_COUNT = "changeFeedFilteredNotificationCount";
+
+    public static final String STAT_NAME_CHANGE_FEED_DROPPED_COUNT = "changeFeedDroppedNotificationCount";
+
+    public static final String STAT_NAME_CHANGE_FEED_RECONNECT_COUNT = "changeFeedReconnectCount";
+
     public static final String STAT_NAME_PREFIX_UPDATE_QUEUE_DEPTH = "updateQueueDepth";
 
     public static final String STAT_NAME_FORMAT_UPDATE_QUEUE_DEPTH =
@@ -191,9 +315,18 @@ public class PostgresDocumentIndexService extends StatelessService {
 
     public static final String STAT_NAME_PREFIX_QUERY_QUEUE_DEPTH = "queryQueueDepth";
 
+    public static final String STAT_NAME_FORMAT_QUERY_QUEUE_WAIT_MICROS = "queryQueueWaitMicros-%s";
+
+    public static final String STAT_NAME_FORMAT_QUERY_EXECUTION_MICROS = "queryExecutionMicros-%s";
+
+    public static final String STAT_NAME_QUERY_TIMEOUT_COUNT = "queryTimeoutCount";
+
     public static final String STAT_NAME_FORMAT_QUERY_QUEUE_DEPTH =
             STAT_NAME_PREFIX_QUERY_QUEUE_DEPTH + "-%s";
 
+    public static final String STAT_NAME_FORMAT_QUERY_CLASS_QUEUE_DEPTH =
+            "queryClassQueueDepth-%s";
+
     private static final EnumSet<AggregationType> AGGREGATION_TYPE_AVG_MAX =
             EnumSet.of(AggregationType.AVG, AggregationType.MAX);
 
@@ -211,8 +344,11 @@ public class PostgresDocumentIndexService extends StatelessService {
     private ExecutorService privateIndexingExecutor;
     private ExecutorService privateQueryExecutor;
 
-    private final RoundRobinOperationQueue queryQueue = new RoundRobinOperationQueue(
-            "index-service-query", QUERY_QUEUE_DEPTH);
+    private final PostgresQueryQueues queryQueues;
+
+    private final Set<String> backgroundQueryKinds = new HashSet<>();
+
+    private final Map<Long, Long> queryOfferTimeNanos = new ConcurrentHashMap<>();
 
     private final RoundRobinOperationQueue updateQueue = new RoundRobinOperationQueue(
             "index-service-update", UPDATE_QUEUE_DEPTH);
@@ -221,6 +357,33 @@ public class PostgresDocumentIndexService extends StatelessService {
 
     private final DataSource ds;
     private final PostgresServiceDocumentDao dao;
+    private PostgresChangeFeed changeFeed;
+
+    /**
+     * Workload classes of the queries. Each class has its own queue and concurrency limit, and
+     * the queued queries are admitted in the order of the classes, so that heavy background
+     * queries can not starve the interactive and task queries of connections, see
+     * {@link PostgresQueryQueues}.
+     */
+    public enum QueryWorkloadClass {
+        /**
+         * Queries of the users, e.g. from the UI and the API.
+         */
+        INTERACTIVE,
+
+        /**
+         * Queries of the system user, e.g. from the tasks.
+         */
+        TASK,
+
+        /**
+         * {@code GROUP_BY} queries, the queries of the
+         * {@link PostgresDocumentIndexService#BACKGROUND_QUERY_KINDS}, e.g. from the stats
+         * aggregation, and the queries sent with this class in the
+         * {@link PostgresDocumentIndexService#QUERY_WORKLOAD_CLASS_HEADER}.
+         */
+        BACKGROUND
+    }
 
     public static class DeleteQueryRuntimeContextRequest extends ServiceDocument {
         public QueryRuntimeContext context;
@@ -251,6 +414,40 @@ public class PostgresDocumentIndexService extends StatelessService {
         setHost(host);
         this.ds = ds;
         this.dao = new PostgresServiceDocumentDao(host, this, ds);
+
+        this.queryQueues = new PostgresQueryQueues(getQueryConcurrency(ds), QUERY_QUEUE_DEPTH);
+        if (BACKGROUND_QUERY_KINDS != null) {
+            for (String kind : BACKGROUND_QUERY_KINDS.split(",")) {
+                if (!kind.trim().isEmpty()) {
+                    this.backgroundQueryKinds.add(kind.trim());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the concurrency limits of the query workload classes. The limits which are not
+     * configured are derived from the size of the connection pool, reserving a quarter of the
+     * connections for the updates, and are at least {@link #MIN_QUERY_CONCURRENCY}. The
+     * connection of the change feed is not taken from the pool, see {@link PostgresChangeFeed}.
+     */
+    static int[] getQueryConcurrency(DataSource ds) {
+        int poolSize = ds instanceof HikariDataSource
+                ? ((HikariDataSource) ds).getMaximumPoolSize() : QUERY_THREAD_COUNT;
+        int queryConnections = Math.max(3, poolSize - Math.max(1, poolSize / 4));
+
+        int[] concurrency = new int[QueryWorkloadClass.values().length];
+        int minConcurrency = Math.max(1, MIN_QUERY_CONCURRENCY);
+        concurrency[QueryWorkloadClass.INTERACTIVE.ordinal()] = INTERACTIVE_QUERY_CONCURRENCY > 0
+                ? INTERACTIVE_QUERY_CONCURRENCY
+                : Math.max(minConcurrency, queryConnections * 3 / 8);
+        concurrency[QueryWorkloadClass.TASK.ordinal()] = TASK_QUERY_CONCURRENCY > 0
+                ? TASK_QUERY_CONCURRENCY
+                : Math.max(minConcurrency, queryConnections * 3 / 8);
+        concurrency[QueryWorkloadClass.BACKGROUND.ordinal()] = BACKGROUND_QUERY_CONCURRENCY > 0
+                ? BACKGROUND_QUERY_CONCURRENCY
+                : Math.max(minConcurrency, queryConnections / 4);
+        return concurrency;
     }
 
     PostgresServiceDocumentDao getDao() {
@@ -276,6 +473,12 @@ public class PostgresDocumentIndexService extends StatelessService {
                 new NamedThreadFactory(getUri() + "/updates"));
         this.privateIndexingExecutor = TracingExecutor.create(es, getHost().getTracer());
 
+        if (CHANGE_FEED_ENABLED) {
+            this.changeFeed = new PostgresChangeFeed(this, this.ds, CHANGE_FEED_BUFFER_SIZE,
+                    UPDATE_BATCH_SIZE, this.privateQueryExecutor, this::handleChangeFeed);
+            this.changeFeed.start();
+        }
+
         post.complete();
     }
 
@@ -375,6 +578,8 @@ public class PostgresDocumentIndexService extends StatelessService {
             if (a == Action.GET || a == Action.PATCH) {
                 if (offerQueryOperation(op)) {
                     this.privateQueryExecutor.submit(this.queryTaskHandler);
+                } else {
+                    this.queryOfferTimeNanos.remove(op.getId());
                 }
             } else {
                 if (offerUpdateOperation(op)) {
@@ -386,11 +591,35 @@ public class PostgresDocumentIndexService extends StatelessService {
         }
     }
 
+    /**
+     * Handles the next admitted query, see {@link PostgresQueryQueues#handleNext}.
+     */
     private void handleQueryRequest() {
-        Operation op = pollQueryOperation();
-        if (op == null) {
-            return;
+        if (this.queryQueues.handleNext(this::handleQueryOperation)
+                && !this.queryQueues.isEmpty()) {
+            submitQueryHandler();
+        }
+    }
+
+    private void submitQueryHandler() {
+        try {
+            this.privateQueryExecutor.submit(this.queryTaskHandler);
+        } catch (RejectedExecutionException e) {
+            // the queued queries are handled with the next submitted query
+            logFine("Failed to submit query handler: %s", e);
         }
+    }
+
+    private void handleQueryOperation(Operation op, QueryWorkloadClass workloadClass) {
+        long startNanos = System.nanoTime();
+        Long offerTimeNanos = this.queryOfferTimeNanos.remove(op.getId());
+        if (offerTimeNanos != null) {
+            setTimeSeriesHistogramStat(
+                    String.format(STAT_NAME_FORMAT_QUERY_QUEUE_WAIT_MICROS, workloadClass),
+                    AGGREGATION_TYPE_AVG_MAX,
+                    TimeUnit.NANOSECONDS.toMicros(startNanos - offerTimeNanos));
+        }
+
         if (op.getExpirationMicrosUtc() > 0 && op.getExpirationMicrosUtc() < Utils
                 .getSystemNowMicrosUtc()) {
             op.fail(new RejectedExecutionException("Operation has expired"));
@@ -430,12 +659,36 @@ public class PostgresDocumentIndexService extends StatelessService {
                 break;
             }
         } catch (Exception e) {
-            checkFailureAndRecover(e);
-            op.fail(e);
+            if (isQueryTimeout(e)) {
+                adjustStat(STAT_NAME_QUERY_TIMEOUT_COUNT, 1);
+                op.fail(new CancellationException("Query was cancelled: " + e.getMessage()));
+            } else {
+                checkFailureAndRecover(e);
+                op.fail(e);
+            }
         } finally {
             OperationContext.setFrom(originalContext);
             this.writerSync.release();
+            setTimeSeriesHistogramStat(
+                    String.format(STAT_NAME_FORMAT_QUERY_EXECUTION_MICROS, workloadClass),
+                    AGGREGATION_TYPE_AVG_MAX,
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        }
+    }
+
+    /**
+     * Returns whether the exception was caused by the cancellation of the statement by the
+     * query timeout.
+     */
+    private static boolean isQueryTimeout(Throwable e) {
+        while (e != null) {
+            if (e instanceof SQLException
+                    && SQL_STATE_QUERY_CANCELED.equals(((SQLException) e).getSQLState())) {
+                return true;
+            }
+            e = e.getCause();
         }
+        return false;
     }
 
     private void handleUpdateRequest() {
@@ -443,6 +696,63 @@ public class PostgresDocumentIndexService extends StatelessService {
         if (op == null) {
             return;
         }
+        if (!isUpdateIndexRequest(op)) {
+            handleUpdateOperation(op);
+            return;
+        }
+
+        // drain the queued index updates into a batch, up to the first other operation which is
+        // handled after the batch
+        List<Operation> batch = new ArrayList<>();
+        batch.add(op);
+        Operation next = null;
+        long deadlineNanos = System.nanoTime()
+                + TimeUnit.MICROSECONDS.toNanos(UPDATE_BATCH_LATENCY_MICROS);
+        while (batch.size() < UPDATE_BATCH_SIZE) {
+            next = pollUpdateOperation();
+            if (next == null) {
+                if (System.nanoTime() - deadlineNanos >= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(UPDATE_BATCH_POLL_INTERVAL_NANOS);
+                continue;
+            }
+            if (!isUpdateIndexRequest(next)) {
+                break;
+            }
+            batch.add(next);
+            next = null;
+        }
+
+        if (batch.size() == 1) {
+            handleUpdateOperation(op);
+        } else {
+            handleUpdateBatch(batch);
+        }
+        if (next != null) {
+            handleUpdateOperation(next);
+        }
+    }
+
+    private boolean isUpdateIndexRequest(Operation op) {
+        return op.getAction() == Action.POST && op.getBodyRaw() instanceof UpdateIndexRequest;
+    }
+
+    private void handleUpdateBatch(List<Operation> batch) {
+        OperationContext originalContext = OperationContext.getOperationContext();
+        try {
+            this.writerSync.acquire();
+            updateIndex(batch);
+        } catch (Exception e) {
+            checkFailureAndRecover(e);
+            batch.forEach((op) -> op.fail(e));
+        } finally {
+            OperationContext.setFrom(originalContext);
+            this.writerSync.release();
+        }
+    }
+
+    private void handleUpdateOperation(Operation op) {
         OperationContext originalContext = OperationContext.getOperationContext();
         try {
             this.writerSync.acquire();
@@ -515,6 +825,9 @@ public class PostgresDocumentIndexService extends StatelessService {
             this.activeQueries.put(task.documentSelfLink, clonedTask);
             adjustTimeSeriesStat(STAT_NAME_ACTIVE_QUERY_FILTERS, AGGREGATION_TYPE_SUM,
                     1);
+            if (this.changeFeed != null) {
+                updateChangeFeedDocumentKinds();
+            }
             logInfo("Activated continuous query task: %s", task.documentSelfLink);
             break;
         case CANCELLED:
@@ -523,6 +836,9 @@ public class PostgresDocumentIndexService extends StatelessService {
             if (this.activeQueries.remove(task.documentSelfLink) != null) {
                 adjustTimeSeriesStat(STAT_NAME_ACTIVE_QUERY_FILTERS, AGGREGATION_TYPE_SUM,
                         -1);
+                if (this.changeFeed != null) {
+                    updateChangeFeedDocumentKinds();
+                }
             }
             op.complete();
             return true;
@@ -663,10 +979,6 @@ public class PostgresDocumentIndexService extends StatelessService {
     /**
      * retrieves the next available operation given the fairness scheme
      */
-    private Operation pollQueryOperation() {
-        return this.queryQueue.poll();
-    }
-
     private Operation pollUpdateOperation() {
         return this.updateQueue.poll();
     }
@@ -676,7 +988,19 @@ public class PostgresDocumentIndexService extends StatelessService {
      */
     private boolean offerQueryOperation(Operation op) {
         String subject = getSubject(op);
-        return this.queryQueue.offer(subject, op);
+        if (hasOption(ServiceOption.INSTRUMENTATION)) {
+            this.queryOfferTimeNanos.put(op.getId(), System.nanoTime());
+        }
+        return this.queryQueues.offer(getWorkloadClass(op), subject, op);
+    }
+
+    private QueryWorkloadClass getWorkloadClass(Operation op) {
+        boolean isSystemUser = op.getAuthorizationContext() != null
+                && op.getAuthorizationContext().isSystemUser();
+        return PostgresQueryQueues.getWorkloadClass(
+                op.getRequestHeader(QUERY_WORKLOAD_CLASS_HEADER),
+                op.getAction() == Action.PATCH ? op.getBodyRaw() : null, isSystemUser,
+                this.backgroundQueryKinds);
     }
 
     private boolean offerUpdateOperation(Operation op) {
@@ -776,6 +1100,9 @@ public class PostgresDocumentIndexService extends StatelessService {
     public void handleDeleteImpl(Operation delete) throws Exception {
         setProcessingStage(ProcessingStage.STOPPED);
 
+        if (this.changeFeed != null) {
+            this.changeFeed.stop();
+        }
         this.privateIndexingExecutor.shutdown();
         this.privateQueryExecutor.shutdown();
         getHost().stopService(this);
@@ -783,44 +1110,114 @@ public class PostgresDocumentIndexService extends StatelessService {
     }
 
     protected void updateIndex(Operation updateOp) throws Exception {
+        UpdateIndexRequest r = validateUpdate(updateOp);
+        if (r == null) {
+            return;
+        }
+
+        boolean forceIndexUpdate = isForceIndexUpdate(updateOp);
+        long startNanos = System.nanoTime();
+        dao.saveDocument(r.document, r.description, forceIndexUpdate);
+        logCommitStats(startNanos, 1);
+
+        completeUpdate(updateOp, r, forceIndexUpdate);
+    }
+
+    /**
+     * Saves the documents of the given index updates with a single transaction. If the batch
+     * fails, the documents are saved one by one so that only the failing updates are failed.
+     */
+    private void updateIndex(List<Operation> updateOps) {
+        List<Operation> ops = new ArrayList<>(updateOps.size());
+        List<UpdateIndexRequest> requests = new ArrayList<>(updateOps.size());
+        List<DocumentUpdate> updates = new ArrayList<>(updateOps.size());
+        for (Operation updateOp : updateOps) {
+            UpdateIndexRequest r = validateUpdate(updateOp);
+            if (r == null) {
+                continue;
+            }
+            ops.add(updateOp);
+            requests.add(r);
+            updates.add(new DocumentUpdate(r.document, isForceIndexUpdate(updateOp)));
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        try {
+            long startNanos = System.nanoTime();
+            dao.saveDocuments(updates);
+            logCommitStats(startNanos, updates.size());
+        } catch (Exception e) {
+            logWarning("Failed to save batch of %d documents, saving them one by one: %s",
+                    updates.size(), e.toString());
+            for (int i = 0; i < ops.size(); i++) {
+                Operation updateOp = ops.get(i);
+                OperationContext.setFrom(updateOp);
+                try {
+                    updateIndex(updateOp);
+                } catch (Exception ex) {
+                    checkFailureAndRecover(ex);
+                    updateOp.fail(ex);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < ops.size(); i++) {
+            OperationContext.setFrom(ops.get(i));
+            completeUpdate(ops.get(i), requests.get(i), updates.get(i).forceIndexUpdate);
+        }
+    }
+
+    /**
+     * Returns the index update request of the operation, or <code>null</code> if the operation
+     * is not valid and has been failed.
+     */
+    private UpdateIndexRequest validateUpdate(Operation updateOp) {
         UpdateIndexRequest r = updateOp.getBody(UpdateIndexRequest.class);
         ServiceDocument s = r.document;
         ServiceDocumentDescription desc = r.description;
 
         if (updateOp.isRemote()) {
             updateOp.fail(new IllegalStateException("Remote requests not allowed"));
-            return;
+            return null;
         }
 
         if (s == null) {
             updateOp.fail(new IllegalArgumentException("document is required"));
-            return;
+            return null;
         }
 
         String link = s.documentSelfLink;
         if (link == null) {
             updateOp.fail(new IllegalArgumentException(
                     "documentSelfLink is required"));
-            return;
+            return null;
         }
 
         if (s.documentUpdateAction == null) {
             updateOp.fail(new IllegalArgumentException(
                     "documentUpdateAction is required"));
-            return;
+            return null;
         }
 
         if (desc == null) {
             updateOp.fail(new IllegalArgumentException("description is required"));
-            return;
+            return null;
         }
 
-        boolean forceIndexUpdate = updateOp.getAction() == Action.POST
-                && updateOp.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
-
         s.documentDescription = null;
-        dao.saveDocument(s, desc, forceIndexUpdate);
+        return r;
+    }
 
+    private boolean isForceIndexUpdate(Operation updateOp) {
+        return updateOp.getAction() == Action.POST
+                && updateOp.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
+    }
+
+    private void completeUpdate(Operation updateOp, UpdateIndexRequest r,
+            boolean forceIndexUpdate) {
         if (forceIndexUpdate) {
             // Delete all previous versions from the index.
             adjustStat(STAT_NAME_FORCED_UPDATE_DOCUMENT_DELETE_COUNT, 1);
@@ -832,7 +1229,18 @@ public class PostgresDocumentIndexService extends StatelessService {
         // it is possible to race with updating the searcher and NOT have this
         // change be reflected in the searcher.
         updateOp.setBodyNoCloning(null).complete();
-        applyActiveQueries(updateOp, s, desc);
+        if (this.changeFeed != null) {
+            this.changeFeed.recordLocalUpdate(r.document);
+        }
+        applyActiveQueries(updateOp, r.document, r.description);
+    }
+
+    private void logCommitStats(long startNanos, int batchSize) {
+        adjustTimeSeriesStat(STAT_NAME_COMMIT_COUNT, AGGREGATION_TYPE_SUM, 1);
+        setTimeSeriesHistogramStat(STAT_NAME_COMMIT_DURATION_MICROS, AGGREGATION_TYPE_AVG_MAX,
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        setTimeSeriesHistogramStat(STAT_NAME_COMMIT_BATCH_SIZE, AGGREGATION_TYPE_AVG_MAX,
+                batchSize);
     }
 
     /**
@@ -918,12 +1326,16 @@ public class PostgresDocumentIndexService extends StatelessService {
 
                 if (hasOption(ServiceOption.INSTRUMENTATION)) {
                     logQueueDepthStat(this.updateQueue, STAT_NAME_FORMAT_UPDATE_QUEUE_DEPTH);
-                    logQueueDepthStat(this.queryQueue, STAT_NAME_FORMAT_QUERY_QUEUE_DEPTH);
+                    logQueryQueueDepthStats();
                 }
 
                 op.complete();
             });
 
+            if (this.changeFeed != null) {
+                this.changeFeed.refreshSubscriptions();
+            }
+
             // Need to make sure only one node is expiring services
             // Logic is taken from FactoryService
             expireServicesIfOwner(op, deadline);
@@ -1039,6 +1451,28 @@ public class PostgresDocumentIndexService extends StatelessService {
         }
     }
 
+    /**
+     * Logs the depth of the query queues per subject, over all workload classes, and per
+     * workload class.
+     */
+    private void logQueryQueueDepthStats() {
+        Map<String, Integer> sizes = new HashMap<>();
+        for (QueryWorkloadClass workloadClass : QueryWorkloadClass.values()) {
+            int classSize = 0;
+            for (Entry<String, Integer> size : this.queryQueues.sizesByKey(workloadClass)
+                    .entrySet()) {
+                sizes.merge(size.getKey(), size.getValue(), Integer::sum);
+                classSize += size.getValue();
+            }
+            setTimeSeriesStat(String.format(STAT_NAME_FORMAT_QUERY_CLASS_QUEUE_DEPTH,
+                    workloadClass), AGGREGATION_TYPE_AVG_MAX, classSize);
+        }
+        for (Entry<String, Integer> e : sizes.entrySet()) {
+            setTimeSeriesStat(String.format(STAT_NAME_FORMAT_QUERY_QUEUE_DEPTH, e.getKey()),
+                    AGGREGATION_TYPE_AVG_MAX, e.getValue());
+        }
+    }
+
     private void applyDocumentExpirationPolicy(long deadline) throws Exception {
         // TODO: need better solution to expire documents, this can be very slow to have
         // deletion in batches across tables
@@ -1131,6 +1565,70 @@ public class PostgresDocumentIndexService extends StatelessService {
         // same context as the operation that updated the index
         OperationContext.setFrom(op);
 
+        notifyActiveQueries(latestState, desc);
+    }
+
+    /**
+     * Notifies the active continuous queries about the documents updated through the other nodes,
+     * loading their latest state from the database.
+     */
+    private void handleChangeFeed(List<ServiceDocument> changes) {
+        if (this.activeQueries.isEmpty()) {
+            return;
+        }
+
+        OperationContext originalContext = OperationContext.getOperationContext();
+        try {
+            OperationContext.setAuthorizationContext(getSystemAuthorizationContext());
+            for (ServiceDocument change : changes) {
+                if (getHost().isStopping()) {
+                    break;
+                }
+                // the update might have been saved by this node after the notification was
+                // buffered
+                if (this.changeFeed.isLocalUpdate(change)) {
+                    continue;
+                }
+                ServiceDocument latestState;
+                try {
+                    latestState = this.dao.loadDocument(change.documentSelfLink);
+                } catch (Exception e) {
+                    logWarning("Failed to load %s for change feed: %s",
+                            change.documentSelfLink, e.toString());
+                    continue;
+                }
+                if (latestState == null) {
+                    continue;
+                }
+                notifyActiveQueries(latestState, null);
+            }
+        } finally {
+            OperationContext.setFrom(originalContext);
+        }
+    }
+
+    private synchronized void updateChangeFeedDocumentKinds() {
+        Set<String> kinds = new HashSet<>();
+        for (QueryTask activeTask : this.activeQueries.values()) {
+            Set<String> queryKinds = PostgresChangeFeed
+                    .getDocumentKinds(activeTask.querySpec.query);
+            if (queryKinds == null) {
+                // the query matches documents of any kind
+                kinds = null;
+                break;
+            }
+            kinds.addAll(queryKinds);
+        }
+        this.changeFeed.setDocumentKinds(kinds);
+        try {
+            this.privateQueryExecutor.execute(this.changeFeed::updateSubscriptions);
+        } catch (RejectedExecutionException e) {
+            logWarning("Failed to update change feed subscriptions: %s", e.toString());
+        }
+    }
+
+    private void notifyActiveQueries(ServiceDocument latestState,
+            ServiceDocumentDescription desc) {
         // TODO Optimize. We currently traverse each query independently. We can collapse the queries
         // and evaluate clauses keeping track which clauses applied, then skip any queries accordingly.
 
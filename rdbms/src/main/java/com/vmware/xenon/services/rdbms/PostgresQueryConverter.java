@@ -14,15 +14,11 @@ package com.vmware.xenon.services.rdbms;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexingOption;
@@ -41,6 +37,22 @@ import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
  * Convert {@link QuerySpecification} to Postgres query.
  */
 final class PostgresQueryConverter {
+    /**
+     * Parameterized SQL statement compiled from a converted SQL query, see
+     * {@link PostgresQueryConverter#compile(String, boolean)}.
+     */
+    static final class CompiledQuery {
+        /** The SQL shape of the query, with JDBC parameters instead of the bind values. */
+        final String sql;
+        /** The values of the parameters, in the order of the parameters. */
+        final List<String> bindValues;
+
+        CompiledQuery(String sql, List<String> bindValues) {
+            this.sql = sql;
+            this.bindValues = bindValues;
+        }
+    }
+
     private static final Logger logger = Logger.getLogger(PostgresQueryConverter.class.getName());
 
     private static class StringBuilderThreadLocal extends ThreadLocal<StringBuilder> {
@@ -69,6 +81,16 @@ final class PostgresQueryConverter {
 
     private static final StringBuilderThreadLocal builderPerThread = new StringBuilderThreadLocal();
 
+    /*
+     * Values compared with the documents are emitted as bind values, enclosed in the following
+     * marker characters (from the Unicode private use area), while everything else, including
+     * the JSON paths and the LIKE escape characters, is emitted inline as part of the query
+     * shape, see bindValue(Object) and compile(String, boolean).
+     */
+    private static final char BIND_STRING_START = '\uE000';
+    private static final char BIND_NUMBER_START = '\uE001';
+    private static final char BIND_END = '\uE002';
+
     private static final QueryTask.QueryTerm QUERY_TERM_TRUE;
     private static final QueryTask.QueryTerm QUERY_TERM_FALSE;
 
@@ -111,6 +133,114 @@ final class PostgresQueryConverter {
         }
     }
 
+    /**
+     * Compiles a converted SQL query into a parameterized statement, so that queries of the same
+     * structure share the same SQL shape and execution plan. The bind values emitted by the
+     * converter are replaced with JDBC parameters and the <code>?</code> operators are escaped as
+     * <code>??</code>. If <code>bindValues</code> is <code>false</code>, the bind values are
+     * rendered as inline literals instead.
+     */
+    static CompiledQuery compile(String sql, boolean bindValues) {
+        StringBuilder shape = new StringBuilder(sql.length() + 16);
+        List<String> values = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == BIND_STRING_START || c == BIND_NUMBER_START) {
+                int end = sql.indexOf(BIND_END, i + 1);
+                String value = sql.substring(i + 1, end);
+                if (bindValues) {
+                    shape.append('?');
+                    values.add(value);
+                } else {
+                    appendLiteral(shape, c, value);
+                }
+                i = end + 1;
+            } else if (c == '\'' || c == '"') {
+                // inline literal or quoted identifier, quotes are escaped by doubling them
+                int end = i + 1;
+                while (end < length) {
+                    if (sql.charAt(end) == c) {
+                        if (end + 1 < length && sql.charAt(end + 1) == c) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end, length - 1);
+                shape.append(sql, i, end + 1);
+                i = end + 1;
+            } else if (c == '?') {
+                shape.append("??");
+                i++;
+            } else {
+                shape.append(c);
+                i++;
+            }
+        }
+
+        return new CompiledQuery(shape.toString(), values);
+    }
+
+    /**
+     * Renders the bind values of a converted SQL query as inline literals, for logging.
+     */
+    static String toInlineSql(String sql) {
+        int i = indexOfBindValue(sql, 0);
+        if (i == -1) {
+            return sql;
+        }
+        StringBuilder sb = new StringBuilder(sql.length() + 16);
+        int last = 0;
+        while (i != -1) {
+            int end = sql.indexOf(BIND_END, i + 1);
+            sb.append(sql, last, i);
+            appendLiteral(sb, sql.charAt(i), sql.substring(i + 1, end));
+            last = end + 1;
+            i = indexOfBindValue(sql, last);
+        }
+        return sb.append(sql, last, sql.length()).toString();
+    }
+
+    /**
+     * Returns the given value to be included in the converted SQL as a bind value, or
+     * <code>null</code> for SQL NULL. Numbers are bound as numeric literals, any other values as
+     * string literals.
+     */
+    static String bindValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        String s = value.toString();
+        if (s.indexOf(BIND_END) != -1) {
+            // can't be enclosed in the markers, included inline
+            return toSqlLiteral(value);
+        }
+        char start = value instanceof Number ? BIND_NUMBER_START : BIND_STRING_START;
+        return start + s + BIND_END;
+    }
+
+    private static int indexOfBindValue(String sql, int from) {
+        for (int i = from; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == BIND_STRING_START || c == BIND_NUMBER_START) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void appendLiteral(StringBuilder sb, char start, String value) {
+        if (start == BIND_NUMBER_START) {
+            sb.append(value);
+        } else {
+            sb.append('\'').append(escapeSqlString(value)).append('\'');
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static void convertToPostgresQuery(StringBuilder sb, boolean first, Query query,
             QueryRuntimeContext context, TableDescription td) {
@@ -302,8 +432,8 @@ final class PostgresQueryConverter {
             // TODO: Review
             // return String.format("%s @> '\"%s\"'", wrapNativeField(query.term.propertyName, cd),
             // escapeJsonString(query.term.matchValue));
-            return String.format("%s ? '%s'", wrapNativeField(query.term.propertyName, cd),
-                    escapeSqlString(query.term.matchValue));
+            return String.format("%s ? %s", wrapNativeField(query.term.propertyName, cd),
+                    bindValue(query.term.matchValue));
         }
 
         String stringField = wrapStringField(query.term.propertyName, cd);
@@ -317,8 +447,8 @@ final class PostgresQueryConverter {
         if (isTextIndexingOption(cd)) {
             // Is text field
             // TODO: use postgres text indexing?
-            return String.format("%s LIKE '%%%s%%' ESCAPE '\\'", stringField,
-                    escapeSqlLike(stringValue));
+            return String.format("%s LIKE %s ESCAPE '\\'", stringField,
+                    bindValue('%' + escapeSqlLike(stringValue) + '%'));
         }
 
         if (query.term.propertyName.contains(
@@ -331,7 +461,7 @@ final class PostgresQueryConverter {
             if (isCaseInsensitive) {
                 select = String.format("LOWER(%s)", select);
             }
-            return String.format("'%s' IN (SELECT %s)", escapeSqlString(stringValue), select);
+            return String.format("%s IN (SELECT %s)", bindValue(stringValue), select);
         }
 
         // TODO: Need to support case insensitive in MAP
@@ -347,7 +477,7 @@ final class PostgresQueryConverter {
             }
         }
 
-        return String.format("%s = '%s'", stringField, escapeSqlString(stringValue));
+        return String.format("%s = %s", stringField, bindValue(stringValue));
     }
 
     private static String toJsonContainsCondition(Query query, ColumnDescription cd) {
@@ -410,8 +540,8 @@ final class PostgresQueryConverter {
             sb.append('}');
         }
 
-        return String.format("data -> '%s' @> '%s'", escapeSqlString(fields[0]),
-                escapeSqlString(sb.toString()));
+        return String.format("data -> '%s' @> %s", escapeSqlString(fields[0]),
+                bindValue(sb.toString()));
     }
 
     // For language agnostic, or advanced token parsing a Tokenizer from the LUCENE
@@ -433,8 +563,8 @@ final class PostgresQueryConverter {
         String[] tokens = stringValue.split("\\W");
         StringJoiner joiner = new StringJoiner(" AND ");
         for (String token : tokens) {
-            joiner.add(String.format("%s LIKE '%%%s%%' ESCAPE '\\'", stringField,
-                    escapeSqlLike(token)));
+            joiner.add(String.format("%s LIKE %s ESCAPE '\\'", stringField,
+                    bindValue('%' + escapeSqlLike(token) + '%')));
         }
         return joiner.toString();
     }
@@ -460,9 +590,9 @@ final class PostgresQueryConverter {
             }
 
             return String.format(
-                    "EXISTS(SELECT FROM jsonb_array_elements_text(%s) value WHERE value %s '%s%%' ESCAPE '\\')",
+                    "EXISTS(SELECT FROM jsonb_array_elements_text(%s) value WHERE value %s %s ESCAPE '\\')",
                     wrapNativeField(query.term.propertyName, cd),
-                    isCaseInsensitive ? "ILIKE" : "LIKE", escapedPrefix);
+                    isCaseInsensitive ? "ILIKE" : "LIKE", bindValue(escapedPrefix + '%'));
 
             // TODO: Review
             // return String.format("%s LIKE '%%\"%s%%' ESCAPE '\\'", stringField, escapedPrefix);
@@ -474,12 +604,13 @@ final class PostgresQueryConverter {
             String[] s = query.term.propertyName.split(QuerySpecification.FIELD_NAME_REGEXP);
 
             return String.format(
-                    "EXISTS(SELECT FROM jsonb_array_elements(data -> '%s') value WHERE value ->> '%s' %s '%s%%' ESCAPE '\\')",
+                    "EXISTS(SELECT FROM jsonb_array_elements(data -> '%s') value WHERE value ->> '%s' %s %s ESCAPE '\\')",
                     escapeSqlString(s[0]), escapeSqlString(s[2]),
-                    isCaseInsensitive ? "ILIKE" : "LIKE", escapedPrefix);
+                    isCaseInsensitive ? "ILIKE" : "LIKE", bindValue(escapedPrefix + '%'));
         }
 
-        return String.format("%s LIKE '%s%%' ESCAPE '\\'", stringField, escapedPrefix);
+        return String.format("%s LIKE %s ESCAPE '\\'", stringField,
+                bindValue(escapedPrefix + '%'));
     }
 
     private static String convertToSqlLikeQuery(QueryTask.Query query, ColumnDescription cd) {
@@ -507,15 +638,17 @@ final class PostgresQueryConverter {
         String matchValue = escapeSqlLike(stringValue).replace('*', '%')
                 .replace('?', '_');
         if (isCollectionField(query)) {
-            return String.format("%s LIKE '%%\"%s\"%%' ESCAPE '\\'", stringField, matchValue);
+            return String.format("%s LIKE %s ESCAPE '\\'", stringField,
+                    bindValue("%\"" + matchValue + "\"%"));
         }
 
         String condition;
         // Convert to simple equals if it's not a like condition
         if (matchValue.equals(stringValue)) {
-            condition = String.format("%s = '%s'", stringField, stringValue);
+            condition = String.format("%s = %s", stringField, bindValue(stringValue));
         } else {
-            condition = String.format("%s LIKE '%s' ESCAPE '\\'", stringField, matchValue);
+            condition = String.format("%s LIKE %s ESCAPE '\\'", stringField,
+                    bindValue(matchValue));
         }
         return condition;
     }
@@ -623,19 +756,15 @@ final class PostgresQueryConverter {
                         if (values == null) {
                             values = new StringBuilder(q.term.matchValue.length()
                                     + next.term.matchValue.length() + 10);
-                            values.append('\'')
-                                    .append(escapeSqlString(
-                                            isCaseInsensitive ? q.term.matchValue.toLowerCase()
-                                                    : q.term.matchValue))
-                                    .append('\'');
+                            values.append(bindValue(
+                                    isCaseInsensitive ? q.term.matchValue.toLowerCase()
+                                            : q.term.matchValue));
                             valueCount = 1;
                         }
 
-                        values.append(',').append('\'')
-                                .append(escapeSqlString(
-                                        isCaseInsensitive ? next.term.matchValue.toLowerCase()
-                                                : next.term.matchValue))
-                                .append('\'');
+                        values.append(',').append(bindValue(
+                                isCaseInsensitive ? next.term.matchValue.toLowerCase()
+                                        : next.term.matchValue));
                         valueCount++;
                         index++;
                     } while (index + 1 < len);
@@ -858,7 +987,7 @@ final class PostgresQueryConverter {
 
         String intField = wrapField(propertyName, cd, "bigint");
         if (min == max) {
-            return String.format("%s = %d", intField, max);
+            return String.format("%s = %s", intField, bindValue(max));
         }
         if (min > max) {
             // TODO: Why need to swap while using BETWEEN?
@@ -866,7 +995,7 @@ final class PostgresQueryConverter {
             min = max;
             max = t;
         }
-        return String.format("%s BETWEEN %d AND %d", intField, min, max);
+        return String.format("%s BETWEEN %s AND %s", intField, bindValue(min), bindValue(max));
     }
 
     private static String createDoubleRangeQuery(String propertyName,
@@ -888,7 +1017,7 @@ final class PostgresQueryConverter {
         }
         String numericField = wrapField(propertyName, cd, "numeric");
         if (min == max) {
-            return String.format("%s = %s", numericField, max);
+            return String.format("%s = %s", numericField, bindValue(max));
         }
         if (min > max) {
             // TODO: Why need to swap while using BETWEEN?
@@ -898,12 +1027,13 @@ final class PostgresQueryConverter {
         }
 
         if (min == Double.NEGATIVE_INFINITY) {
-            return String.format("%s <= %s", numericField, max);
+            return String.format("%s <= %s", numericField, bindValue(max));
         }
         if (max == Double.POSITIVE_INFINITY) {
-            return String.format("%s >= %s", numericField, min);
+            return String.format("%s >= %s", numericField, bindValue(min));
         }
-        return String.format("%s BETWEEN %s AND %s", numericField, min, max);
+        return String.format("%s BETWEEN %s AND %s", numericField, bindValue(min),
+                bindValue(max));
     }
 
     static String escapeSqlString(String s) {
@@ -933,8 +1063,7 @@ final class PostgresQueryConverter {
     }
 
     private static String escapeJsonString(String s) {
-        return s.replace("'", "''")
-                .replace("\\", "\\\\")
+        return s.replace("\\", "\\\\")
                 .replace("\"", "\\\"");
     }
 
@@ -1225,80 +1354,93 @@ final class PostgresQueryConverter {
         }
     }
 
-    static String buildPaginationClause(TableDescription td, List<String> sortFields,
-            JsonObject bottom) {
-        StringBuilder names = new StringBuilder();
-        StringBuilder values = new StringBuilder();
-        boolean ascending = true;
-
-        for (String field : sortFields) {
-            field = field.trim();
-            int i = field.lastIndexOf(' ');
-            String columnName = field.substring(0, i);
-            if (names.length() == 0) {
-                String order = field.substring(i + 1);
-                ascending = order.equals("ASC");
-            }
-
-            String propertyName;
-            i = columnName.indexOf('\'');
-            if (i > 0) {
-                propertyName = columnName.substring(i + 1, field.lastIndexOf('\''));
-            } else {
-                propertyName = columnName;
+    /**
+     * Builds the keyset (seek) predicate which selects the rows following the row with the given
+     * values of the sort fields, so that the next page doesn't have to skip the rows of the
+     * previous pages with OFFSET. The values are bind values, see
+     * {@link #bindValue(Object)}, or {@code null} for SQL NULL.
+     *
+     * Rows are ordered with the Postgres defaults, i.e. NULL values are last in ascending and
+     * first in descending order. When all sort fields have the same order and the values are not
+     * NULL, a row value comparison is used, which can be served by a composite index.
+     */
+    static String buildSeekClause(List<String> sortFields, List<String> values) {
+        int size = sortFields.size();
+        String[] columns = new String[size];
+        boolean[] ascending = new boolean[size];
+        boolean rowComparison = true;
+
+        for (int i = 0; i < size; i++) {
+            String field = sortFields.get(i).trim();
+            int index = field.lastIndexOf(' ');
+            columns[i] = field.substring(0, index);
+            ascending[i] = field.substring(index + 1).equals("ASC");
+            if (values.get(i) == null || ascending[i] != ascending[0]) {
+                rowComparison = false;
             }
+        }
 
-            JsonElement value = null;
-            if (propertyName.startsWith("{") && propertyName.endsWith("}")) {
-                String[] list = propertyName.substring(1, propertyName.length() - 1)
-                        .split(",");
-                value = bottom;
-                for (String s : list) {
-                    if (!value.isJsonObject()) {
-                        value = null;
-                        break;
-                    }
-                    value = value.getAsJsonObject().get(s);
-                }
-            } else if (propertyName.startsWith("document")) {
-                for (Map.Entry<String, JsonElement> element : bottom.entrySet()) {
-                    if (element.getKey().equalsIgnoreCase(propertyName)) {
-                        value = element.getValue();
-                        break;
+        if (rowComparison) {
+            StringBuilder sb = new StringBuilder();
+            sb.append('(').append(String.join(",", columns)).append(')')
+                    .append(ascending[0] ? " > " : " < ")
+                    .append('(').append(String.join(",", values)).append(')');
+            if (ascending[0]) {
+                // NULL values of nullable columns follow all values in ascending order
+                StringBuilder equals = new StringBuilder();
+                for (int i = 0; i < size; i++) {
+                    if (!isNotNullColumn(columns[i])) {
+                        sb.append(" OR (").append(equals).append(columns[i]).append(" IS NULL)");
                     }
+                    equals.append(columns[i]).append(" = ").append(values.get(i)).append(" AND ");
                 }
-            } else {
-                value = bottom.get(propertyName);
             }
-            if (value == null || value.isJsonNull() || !value.isJsonPrimitive()) {
-                // This should not happen
-                continue;
-            }
-            if (names.length() > 0) {
-                names.append(',');
-                values.append(',');
+            return '(' + sb.toString() + ')';
+        }
+
+        // expand to: after(c1) OR (c1 = v1 AND (after(c2) OR (c2 = v2 AND ...)))
+        String clause = null;
+        for (int i = size - 1; i >= 0; i--) {
+            String value = values.get(i);
+            String after;
+            String equal;
+            if (value == null) {
+                after = ascending[i] ? null : columns[i] + " IS NOT NULL";
+                equal = columns[i] + " IS NULL";
+            } else {
+                if (!ascending[i]) {
+                    after = String.format("%s < %s", columns[i], value);
+                } else if (isNotNullColumn(columns[i])) {
+                    after = String.format("%s > %s", columns[i], value);
+                } else {
+                    after = String.format("(%s > %s OR %s IS NULL)", columns[i], value,
+                            columns[i]);
+                }
+                equal = String.format("%s = %s", columns[i], value);
             }
 
-            names.append(columnName);
-
-            if (!value.getAsJsonPrimitive().isNumber()) {
-                String strValue = value.getAsString();
-                ColumnDescription cd = PostgresQueryConverter.getColumnDescription(td,
-                        propertyName);
-                // Make sure to check against lowercase if property is case insensitive
-                if (isCaseInsensitive(cd) && strValue != null) {
-                    strValue = strValue.toLowerCase();
-                }
-                values.append('\'')
-                        .append(PostgresQueryConverter.escapeSqlString(strValue))
-                        .append('\'');
+            String next = clause != null ? String.format("(%s AND %s)", equal, clause) : null;
+            if (after == null) {
+                clause = next != null ? next : SQL_FALSE;
             } else {
-                values.append(value.getAsString());
+                clause = next != null ? String.format("(%s OR %s)", after, next) : after;
             }
         }
+        return clause;
+    }
+
+    private static boolean isNotNullColumn(String column) {
+        return column.equals("documentselflink") || column.equals("documentversion");
+    }
 
-        // TODO: This will not work if additionalSortTerms is used with different sort order
-        return String.format("(%s) %s (%s)", names, ascending ? ">" : "<", values);
+    static String toSqlLiteral(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        return '\'' + escapeSqlString(value.toString()) + '\'';
     }
 
     static boolean isSqlFalse(String tq) {
@@ -50,12 +50,6 @@ final class PostgresQueryPageService extends StatelessService {
     public static class PostgresQueryPage {
         public String previousPageLink;
         public String after;
-        public Integer groupOffset;
-
-        public PostgresQueryPage(String link, int groupOffset) {
-            this.previousPageLink = link;
-            this.groupOffset = groupOffset;
-        }
 
         public PostgresQueryPage(String link, String after) {
             this.previousPageLink = link;
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.RoundRobinOperationQueue;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.rdbms.PostgresDocumentIndexService.QueryWorkloadClass;
+
+/**
+ * Admission queues of the queries of the index, one per {@link QueryWorkloadClass}. Each class
+ * has its own concurrency limit, and the queued queries are admitted in the order of the
+ * classes, so that heavy background queries can not starve the interactive and task queries of
+ * connections.
+ */
+final class PostgresQueryQueues {
+    private static final Logger logger = Logger.getLogger(PostgresQueryQueues.class.getName());
+
+    private final Map<QueryWorkloadClass, RoundRobinOperationQueue> queues =
+            new EnumMap<>(QueryWorkloadClass.class);
+
+    private final Map<QueryWorkloadClass, Semaphore> permits =
+            new EnumMap<>(QueryWorkloadClass.class);
+
+    /**
+     * Creates the queues with the given concurrency limits, indexed by the ordinal of the
+     * workload classes.
+     */
+    PostgresQueryQueues(int[] concurrency, int queueDepth) {
+        for (QueryWorkloadClass workloadClass : QueryWorkloadClass.values()) {
+            this.queues.put(workloadClass, new RoundRobinOperationQueue(
+                    "index-service-query-" + workloadClass.name().toLowerCase(), queueDepth));
+            this.permits.put(workloadClass,
+                    new Semaphore(concurrency[workloadClass.ordinal()]));
+        }
+    }
+
+    /**
+     * Queues the query in the queue of the given workload class, using the subject as the key
+     * for the fairness between the subjects of the class.
+     */
+    boolean offer(QueryWorkloadClass workloadClass, String subject, Operation op) {
+        return this.queues.get(workloadClass).offer(subject, op);
+    }
+
+    /**
+     * Passes the next queued query of the first workload class, in the order of the classes,
+     * which has a queued query and is below its concurrency limit, to the given handler. Queries
+     * of the classes at their limit stay queued until a query of the class completes. Returns
+     * whether a query was handled.
+     */
+    boolean handleNext(BiConsumer<Operation, QueryWorkloadClass> handler) {
+        for (QueryWorkloadClass workloadClass : QueryWorkloadClass.values()) {
+            Semaphore classPermits = this.permits.get(workloadClass);
+            if (!classPermits.tryAcquire()) {
+                continue;
+            }
+            Operation op = this.queues.get(workloadClass).poll();
+            if (op == null) {
+                classPermits.release();
+                continue;
+            }
+
+            try {
+                handler.accept(op, workloadClass);
+            } finally {
+                classPermits.release();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        for (RoundRobinOperationQueue queue : this.queues.values()) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of the queued queries per subject of the given workload class.
+     */
+    Map<String, Integer> sizesByKey(QueryWorkloadClass workloadClass) {
+        return this.queues.get(workloadClass).sizesByKey();
+    }
+
+    /**
+     * Returns the workload class of a query: the class given in the request header, if any,
+     * else {@link QueryWorkloadClass#BACKGROUND} for {@code GROUP_BY} queries and the queries
+     * restricted to the given background document kinds, e.g. the collected metrics, else the
+     * class of the user the query is executed for.
+     */
+    static QueryWorkloadClass getWorkloadClass(String header, Object body,
+            boolean isSystemUser, Set<String> backgroundKinds) {
+        if (header != null) {
+            try {
+                return QueryWorkloadClass.valueOf(header.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.fine(() -> String.format("Unknown query workload class: %s", header));
+            }
+        }
+
+        if (body instanceof QueryTask) {
+            QuerySpecification qs = ((QueryTask) body).querySpec;
+            if (qs != null && qs.options != null && qs.options.contains(QueryOption.GROUP_BY)) {
+                return QueryWorkloadClass.BACKGROUND;
+            }
+            if (qs != null && qs.query != null && !backgroundKinds.isEmpty()) {
+                Set<String> kinds = PostgresChangeFeed.getDocumentKinds(qs.query);
+                if (kinds != null && !kinds.isEmpty() && backgroundKinds.containsAll(kinds)) {
+                    return QueryWorkloadClass.BACKGROUND;
+                }
+            }
+        }
+        return isSystemUser ? QueryWorkloadClass.TASK : QueryWorkloadClass.INTERACTIVE;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.xenon.services.rdbms.PostgresQueryConverter.CompiledQuery;
+
+/**
+ * Bounded LRU cache of the compiled SQL shapes of the recently executed parameterized queries.
+ * Shapes which are executed repeatedly are prepared on the server right away, so that Postgres
+ * parses and plans them once per connection, while one-off shapes don't evict the hot ones from
+ * the statement cache of the connections.
+ */
+final class PostgresQueryShapeCache {
+
+    /**
+     * Compiled SQL shape shared by the queries of the same structure.
+     */
+    static final class QueryShape {
+        /** The SQL of the shape, with JDBC parameters instead of the bind values. */
+        final String sql;
+        private final AtomicLong executionCount = new AtomicLong();
+
+        QueryShape(CompiledQuery query) {
+            this.sql = query.sql;
+        }
+
+        /**
+         * Records an execution of the shape and returns whether it has been executed before.
+         */
+        boolean execute() {
+            return this.executionCount.incrementAndGet() > 1;
+        }
+    }
+
+    private final Map<String, QueryShape> shapes;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    PostgresQueryShapeCache(int maxSize) {
+        this.shapes = new LinkedHashMap<String, QueryShape>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryShape> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached shape of the given query, caching the shape of the query if missing.
+     */
+    QueryShape get(CompiledQuery query) {
+        QueryShape shape;
+        boolean cached;
+        synchronized (this.shapes) {
+            shape = this.shapes.get(query.sql);
+            cached = shape != null;
+            if (!cached) {
+                shape = new QueryShape(query);
+                this.shapes.put(query.sql, shape);
+            }
+        }
+        if (cached) {
+            this.hitCount.incrementAndGet();
+        } else {
+            this.missCount.incrementAndGet();
+        }
+        return shape;
+    }
+
+    long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    long getMissCount() {
+        return this.missCount.get();
+    }
+
+    int size() {
+        synchronized (this.shapes) {
+            return this.shapes.size();
+        }
+    }
+}
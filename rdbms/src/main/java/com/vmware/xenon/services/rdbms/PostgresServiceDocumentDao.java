@@ -18,7 +18,6 @@ import static com.vmware.xenon.services.rdbms.PostgresQueryConverter.isSqlTrue;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
-import java.lang.reflect.Field;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -29,6 +28,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -36,6 +36,7 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -54,11 +55,11 @@ import javax.sql.DataSource;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import org.postgresql.PGStatement;
 
 import com.vmware.xenon.common.NodeSelectorService.SelectOwnerResponse;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Operation.AuthorizationContext;
-import com.vmware.xenon.common.ReflectionUtils;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.Service.Action;
 import com.vmware.xenon.common.ServiceDocument;
@@ -74,7 +75,9 @@ import com.vmware.xenon.services.common.QueryTask.Query;
 import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
 import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
 import com.vmware.xenon.services.common.ServiceUriPaths;
+import com.vmware.xenon.services.rdbms.PostgresQueryConverter.CompiledQuery;
 import com.vmware.xenon.services.rdbms.PostgresQueryPageService.PostgresQueryPage;
+import com.vmware.xenon.services.rdbms.PostgresQueryShapeCache.QueryShape;
 import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
 
 final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBean {
@@ -111,6 +114,29 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             "logSlowQueriesThresholdSeconds",
             0));
 
+    /**
+     * Whether the queries are executed as parameterized statements, see
+     * {@link PostgresQueryConverter#compile(String, boolean)}.
+     */
+    private static final boolean PARAMETERIZED_QUERIES = XenonConfiguration.bool(
+            PostgresServiceDocumentDao.class,
+            "parameterizedQueries",
+            true);
+
+    /**
+     * Maximum execution time of a query statement in seconds, 0 for no limit. The statement is
+     * also cancelled when the operation of the query expires.
+     */
+    private static final int QUERY_TIMEOUT_SECONDS = XenonConfiguration.integer(
+            PostgresServiceDocumentDao.class,
+            "queryTimeoutSeconds",
+            0);
+
+    private static final int QUERY_SHAPE_CACHE_SIZE = XenonConfiguration.integer(
+            PostgresServiceDocumentDao.class,
+            "queryShapeCacheSize",
+            1000);
+
     private static final String DOCUMENTS_WITHOUT_RESULTS = "DocumentsWithoutResults";
 
     private static final String SQL_UPSERT;
@@ -143,10 +169,122 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                 + " WHERE doc.documentversion < EXCLUDED.documentversion";
     }
 
+    /**
+     * A document to save with {@link #saveDocuments(List)}.
+     */
+    static final class DocumentUpdate {
+        final ServiceDocument document;
+        final boolean forceIndexUpdate;
+
+        DocumentUpdate(ServiceDocument document, boolean forceIndexUpdate) {
+            this.document = document;
+            this.forceIndexUpdate = forceIndexUpdate;
+        }
+    }
+
+    /**
+     * The columns selected by a query, so that only the data needed to process its results is
+     * read: the self link is always the first column, the {@code data} and {@code documentkind}
+     * columns are only selected when the state is expanded, and the properties needed for the
+     * selected fields and links are extracted from the jsonb document by the database.
+     */
+    static final class QueryProjection {
+        // jsonb_build_object accepts at most 100 arguments, i.e. 50 properties
+        private static final int MAX_PROPERTIES_PER_OBJECT = 50;
+
+        final String columns;
+        final int columnCount;
+        final boolean loadState;
+        private final int propertiesIndex;
+
+        private QueryProjection(boolean loadState, Set<String> properties) {
+            StringBuilder sb = new StringBuilder("documentselflink");
+            int count = 1;
+            if (loadState) {
+                sb.append(",data,documentkind");
+                count += 2;
+            }
+            if (!properties.isEmpty()) {
+                sb.append(',').append(buildPropertiesColumn(properties)).append(" AS properties");
+                count++;
+                this.propertiesIndex = count;
+            } else {
+                this.propertiesIndex = 0;
+            }
+            this.columns = sb.toString();
+            this.columnCount = count;
+            this.loadState = loadState;
+        }
+
+        static QueryProjection forQuery(QuerySpecification qs, EnumSet<QueryOption> options) {
+            if (options.contains(QueryOption.COUNT)) {
+                return new QueryProjection(false, Collections.emptySet());
+            }
+
+            boolean loadState = options.contains(QueryOption.EXPAND_CONTENT);
+            Set<String> properties = new TreeSet<>();
+            if (qs != null) {
+                if (!loadState && options.contains(QueryOption.EXPAND_SELECTED_FIELDS)
+                        && qs.selectTerms != null) {
+                    qs.selectTerms.forEach(qt -> properties.add(qt.propertyName));
+                }
+                if (options.contains(QueryOption.SELECT_LINKS) && qs.linkTerms != null) {
+                    qs.linkTerms.forEach(qt -> properties.add(qt.propertyName));
+                }
+            }
+            return new QueryProjection(loadState, properties);
+        }
+
+        private static String buildPropertiesColumn(Set<String> properties) {
+            List<String> objects = new ArrayList<>();
+            StringBuilder sb = null;
+            int count = 0;
+            for (String property : properties) {
+                if (count++ % MAX_PROPERTIES_PER_OBJECT == 0) {
+                    if (sb != null) {
+                        objects.add(sb.append(')').toString());
+                    }
+                    sb = new StringBuilder("jsonb_build_object(");
+                } else {
+                    sb.append(',');
+                }
+                // the key is cast, since the type of a bound parameter of jsonb_build_object
+                // can not be determined
+                String name = PostgresQueryConverter.toSqlLiteral(property);
+                sb.append(name).append("::text,data -> ").append(name);
+            }
+            objects.add(sb.append(')').toString());
+            return objects.size() == 1 ? objects.get(0)
+                    : '(' + String.join(" || ", objects) + ')';
+        }
+
+        String getData(ResultSet rs) throws SQLException {
+            return rs.getString(2);
+        }
+
+        String getKind(ResultSet rs) throws SQLException {
+            return rs.getString(3);
+        }
+
+        /**
+         * Returns the projected properties of the current row, or {@code null} if the query
+         * doesn't select any properties.
+         */
+        JsonObject getProperties(ResultSet rs) throws SQLException {
+            if (this.propertiesIndex == 0) {
+                return null;
+            }
+            String json = rs.getString(this.propertiesIndex);
+            return json != null ? Utils.fromJson(json, JsonObject.class) : new JsonObject();
+        }
+    }
+
     private final ServiceHost host;
     private final Service service;
     private final DataSource ds;
     private final PostgresSchemaManager schemaManager;
+    private final PostgresQueryShapeCache queryShapeCache = new PostgresQueryShapeCache(
+            QUERY_SHAPE_CACHE_SIZE);
 
     // Used as a filename prefix when saving query information to filesystem. The time-based prefix
     // is used to avoid overriding files on node restart.
@@ -215,6 +353,10 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                 throw new IllegalStateException("Cannot create table " + tableName, e);
             }
         }
+
+        if (PostgresDocumentIndexService.CHANGE_FEED_ENABLED) {
+            PostgresChangeFeed.installTriggers(this.ds, Collections.singletonList(tableName));
+        }
     }
 
     /**
@@ -292,10 +434,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
 
         // Delete document if action is DELETE and soft delete is disabled
         // TODO: Need to check behavior when upset is after DELETE and not using soft delete
-        boolean delete = Action.DELETE.name().equals(sd.documentUpdateAction)
-                && !this.isSoftDeleteEnabled;
-
-        if (delete) {
+        if (isDelete(sd)) {
             // SQL DELETE
             if (isDetailedLoggingEnabled) {
                 logger.info(() -> String.format("SQL delete: %s : ver=%s documentOwner=%s",
@@ -322,6 +461,108 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         // non-forced index update operations
         String sql = String.format(forceIndexUpdate ? SQL_UPSERT_FORCE_UPDATE : SQL_UPSERT,
                 tableName);
+
+        try (Connection conn = this.ds.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setUpsertParameters(stmt, sd);
+            logUpsert(sd, tableName, stmt.executeUpdate());
+        } catch (Exception e) {
+            logger.severe(String.format("Failed SQL upsert: %s : ver=%s documentOwner=%s : %s",
+                    sd.documentSelfLink, sd.documentVersion, sd.documentOwner, Utils.toString(e)));
+            throw e;
+        }
+    }
+
+    /**
+     * Saves the given documents with a single transaction, executing a JDBC batch per table and
+     * statement. The documents are saved in the given order per table, which preserves the order
+     * of the updates of each self link. The transaction is rolled back if any statement fails.
+     */
+    public void saveDocuments(List<DocumentUpdate> updates) throws SQLException {
+        // group the updates by table, preserving their order
+        Map<String, List<DocumentUpdate>> updatesPerTable = new LinkedHashMap<>();
+        for (DocumentUpdate update : updates) {
+            String tableName = this.schemaManager
+                    .getTableNameForDocumentSelfLink(update.document.documentSelfLink);
+            if (tableName == null) {
+                throw new IllegalArgumentException("Cannot determine SQL table name for document: "
+                        + update.document.documentSelfLink);
+            }
+            updatesPerTable.computeIfAbsent(tableName, (k) -> new ArrayList<>()).add(update);
+        }
+
+        try (Connection conn = this.ds.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, List<DocumentUpdate>> entry : updatesPerTable.entrySet()) {
+                    saveDocuments(conn, entry.getKey(), entry.getValue());
+                }
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                logger.severe(String.format("Failed SQL batch update of %d documents: %s",
+                        updates.size(), Utils.toString(e)));
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Saves the updates of a single table, with a batch per consecutive updates using the same
+     * statement.
+     */
+    private void saveDocuments(Connection conn, String tableName, List<DocumentUpdate> updates)
+            throws SQLException {
+        int start = 0;
+        while (start < updates.size()) {
+            String sql = getUpdateSql(tableName, updates.get(start));
+            int end = start + 1;
+            while (end < updates.size() && sql.equals(getUpdateSql(tableName, updates.get(end)))) {
+                end++;
+            }
+
+            List<DocumentUpdate> batch = updates.subList(start, end);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (DocumentUpdate update : batch) {
+                    if (isDelete(update.document)) {
+                        stmt.setString(1, update.document.documentSelfLink);
+                    } else {
+                        setUpsertParameters(stmt, update.document);
+                    }
+                    stmt.addBatch();
+                }
+
+                int[] counts = stmt.executeBatch();
+                for (int i = 0; i < batch.size(); i++) {
+                    ServiceDocument sd = batch.get(i).document;
+                    if (!isDelete(sd)) {
+                        logUpsert(sd, tableName, counts[i]);
+                    } else if (isDetailedLoggingEnabled) {
+                        logger.info(String.format("SQL delete: %s : ver=%s documentOwner=%s",
+                                sd.documentSelfLink, sd.documentVersion, sd.documentOwner));
+                    }
+                }
+            }
+            start = end;
+        }
+    }
+
+    private String getUpdateSql(String tableName, DocumentUpdate update) {
+        if (isDelete(update.document)) {
+            return String.format("DELETE FROM %s WHERE documentselflink = ?", tableName);
+        }
+        return String.format(update.forceIndexUpdate ? SQL_UPSERT_FORCE_UPDATE : SQL_UPSERT,
+                tableName);
+    }
+
+    private boolean isDelete(ServiceDocument sd) {
+        return Action.DELETE.name().equals(sd.documentUpdateAction) && !this.isSoftDeleteEnabled;
+    }
+
+    private void setUpsertParameters(PreparedStatement stmt, ServiceDocument sd)
+            throws SQLException {
         String json = Utils.toJson(sd);
 
         // Calling Utils.getBuilder() to make sure to trim large buffers from staying in the
@@ -331,33 +572,28 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             Utils.getBuilder();
         }
 
-        try (Connection conn = this.ds.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, json);
-            stmt.setString(2, sd.documentSelfLink);
-            stmt.setLong(3, sd.documentVersion);
-            stmt.setString(4, sd.documentKind);
-            stmt.setLong(5, sd.documentExpirationTimeMicros);
-            stmt.setLong(6, sd.documentUpdateTimeMicros);
-            stmt.setString(7, sd.documentTransactionId);
-            stmt.setString(8, sd.documentAuthPrincipalLink);
-            stmt.setString(9, sd.documentUpdateAction);
-
-            if (stmt.executeUpdate() == 0) {
-                // TODO: Fail operation?
-                logger.log(Level.WARNING, String.format(
-                        "Ignored SQL upsert: %s : ver=%s documentOwner=%s : most probably a newer version is already stored",
-                        sd.documentSelfLink, sd.documentVersion, sd.documentOwner));
-            } else if (isDetailedLoggingEnabled) {
-                logger.info(String.format(
-                        "SQL upsert: %s : ver=%s documentOwner=%s documentExpirationTimeMicros=%s table=%s",
-                        sd.documentSelfLink, sd.documentVersion, sd.documentOwner,
-                        sd.documentExpirationTimeMicros, tableName));
-            }
-        } catch (Exception e) {
-            logger.severe(String.format("Failed SQL upsert: %s : ver=%s documentOwner=%s : %s",
-                    sd.documentSelfLink, sd.documentVersion, sd.documentOwner, Utils.toString(e)));
-            throw e;
+        stmt.setString(1, json);
+        stmt.setString(2, sd.documentSelfLink);
+        stmt.setLong(3, sd.documentVersion);
+        stmt.setString(4, sd.documentKind);
+        stmt.setLong(5, sd.documentExpirationTimeMicros);
+        stmt.setLong(6, sd.documentUpdateTimeMicros);
+        stmt.setString(7, sd.documentTransactionId);
+        stmt.setString(8, sd.documentAuthPrincipalLink);
+        stmt.setString(9, sd.documentUpdateAction);
+    }
+
+    private void logUpsert(ServiceDocument sd, String tableName, int count) {
+        if (count == 0) {
+            // TODO: Fail operation?
+            logger.log(Level.WARNING, String.format(
+                    "Ignored SQL upsert: %s : ver=%s documentOwner=%s : most probably a newer version is already stored",
+                    sd.documentSelfLink, sd.documentVersion, sd.documentOwner));
+        } else if (isDetailedLoggingEnabled) {
+            logger.info(String.format(
+                    "SQL upsert: %s : ver=%s documentOwner=%s documentExpirationTimeMicros=%s table=%s",
+                    sd.documentSelfLink, sd.documentVersion, sd.documentOwner,
+                    sd.documentExpirationTimeMicros, tableName));
         }
     }
 
@@ -463,6 +699,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         String fields;
         String sql;
         List<String> groupSortFields = null;
+        List<String> groupColumns;
         if (qs.groupSortTerm != null) {
             groupSortFields = PostgresQueryConverter
                     .convertToPostgresSort(qs, true, firstTable, false);
@@ -470,22 +707,22 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             orderBy = groupSortFields.stream()
                     .collect(Collectors.joining(","));
 
-            String additionalFields = groupSortFields.stream()
+            groupColumns = new ArrayList<>();
+            groupColumns.add(groupBy);
+            groupSortFields.stream()
                     .map(s -> s.substring(0, s.lastIndexOf(' ')))
                     .filter(s -> !groupBy.equals(s))
-                    .collect(Collectors.joining(","));
-            if (!additionalFields.isEmpty()) {
-                fields = groupBy + ',' + additionalFields;
-            } else {
-                fields = groupBy;
-            }
+                    .forEach(groupColumns::add);
+            fields = String.join(",", groupColumns);
         } else {
             orderBy = groupBy + " ASC";
             fields = groupBy;
+            groupColumns = Collections.singletonList(groupBy);
         }
 
-        // TODO: Use keyset pagination instead of OFFSET?
-        int groupOffset = page != null ? page.groupOffset : 0;
+        List<String> groupSeekFields = groupSortFields != null ? groupSortFields
+                : Collections.singletonList(orderBy);
+        String groupAfter = page != null ? page.after : null;
         int groupLimit = qs.groupResultLimit != null ? qs.groupResultLimit
                 : PostgresDocumentIndexService.queryResultLimit;
 
@@ -497,13 +734,13 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             if (where == null) {
                 return rsp;
             }
+            if (groupAfter != null) {
+                where += " AND " + groupAfter;
+            }
 
             sql = String.format("SELECT %s FROM %s WHERE %s GROUP BY %s ORDER BY %s LIMIT %s",
                     fields, tables.iterator().next().getTableName(), where, groupBy, orderBy,
                     groupLimit + 1);
-            if (groupOffset > 0) {
-                sql += String.format(" OFFSET %d", groupOffset);
-            }
         } else {
             Collection<String> tableSelects = tables.stream()
                     .map(td -> {
@@ -513,6 +750,9 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                         if (where == null) {
                             return null;
                         }
+                        if (groupAfter != null) {
+                            where += " AND " + groupAfter;
+                        }
 
                         return String.format("SELECT %s FROM %s WHERE %s",
                                 fields, td.getTableName(), where);
@@ -525,9 +765,6 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             String unionQuery = String.join(" UNION ALL ", tableSelects);
             sql = String.format("SELECT %s FROM (%s) AS docs GROUP BY %s ORDER BY %s LIMIT %s",
                     fields, unionQuery, groupBy, orderBy, groupLimit + 1);
-            if (groupOffset > 0) {
-                sql += String.format(" OFFSET %d", groupOffset);
-            }
         }
 
         if (isDetailedLoggingEnabled) {
@@ -540,26 +777,31 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         long queryTime;
         try (Connection conn = this.ds.getConnection()) {
             conn.setAutoCommit(false);
-            try (Statement st = conn.createStatement()) {
+            try (PreparedStatement st = prepareQuery(conn, sql, op)) {
                 // Turn use of the cursor on.
                 st.setFetchSize(FETCH_SIZE);
                 long startMillis = System.currentTimeMillis();
-                try (ResultSet rs = st.executeQuery(sql)) {
+                try (ResultSet rs = st.executeQuery()) {
                     queryTime = System.currentTimeMillis() - startMillis;
                     if (isDetailedLoggingEnabled) {
                         logger.info(String.format("SQL query execution time: %d ms", queryTime));
                     }
 
+                    List<String> lastGroupValues = null;
                     while (rs.next()) {
                         if (rsp.nextPageLinksPerGroup.size() >= groupLimit) {
                             // check if we need to generate a next page for the next set of group
-                            // results
+                            // results, which continues after the last group of this page
+                            String after = PostgresQueryConverter.buildSeekClause(
+                                    groupSeekFields, lastGroupValues);
                             rsp.nextPageLink = createNextPage(op, qs, tq, groupSortFields,
-                                    null, 0, groupLimit + groupOffset,
+                                    after, null, true,
                                     expirationTimeMicros, indexLink, nodeSelectorLink,
                                     page != null);
                             break;
                         }
+                        lastGroupValues = getGroupSeekValues(rs, groupColumns,
+                                groupSeekFields);
 
                         // groupValue can be ANY OF ( GROUPS, null )
                         // The "null" group signifies documents that do not have the property.
@@ -599,7 +841,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
 
                         // for each group generate a query page link
                         String pageLink = createNextPage(op, qsPerGroup, null, null,
-                                null, 0, null,
+                                null, null, false,
                                 expirationTimeMicros, indexLink, nodeSelectorLink, false);
 
                         rsp.nextPageLinksPerGroup.put(groupValue, pageLink);
@@ -653,7 +895,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             map.put("totalQueryTimeMillis", totalQueryTimeMillis);
             map.put("executeQueryTimeMillis", queryTime);
             map.put("documentCount", rsp.documentCount);
-            map.put("sql", sql);
+            map.put("sql", PostgresQueryConverter.toInlineSql(sql));
             map.put("querySpecification", qs);
 
             logger.warning(String.format("Slow SQL Query, %d ms: %s", totalQueryTimeMillis,
@@ -736,20 +978,51 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         if (tableDescription != null) {
             stateType = tableDescription.getStateType();
         } else {
-            stateType = this.schemaManager.getStateTypeForDocumentKind(visitor.documentKind);
+            stateType = getStateTypeForDocumentKind(visitor.documentKind);
             if (stateType == null) {
-                // TODO: Remove after using registerPostgresSchema() in host
-                stateType = getTypeFromKind(visitor.documentKind);
-                if (stateType == null) {
-                    // Return null if documentKind is not known, we should be able to return JSON
-                    // after the content in the DB
-                    return null;
-                }
+                return null;
             }
         }
         // Check if kind was registered
-        ServiceDocument state = Utils.fromJson(jsonObject, stateType);
+        return completeState(Utils.fromJson(jsonObject, stateType), stateType, link);
+    }
 
+    /**
+     * Deserializes the JSON of the document directly into the state type of the given kind,
+     * without parsing it into an intermediate JSON tree. Returns {@code null} if the kind is not
+     * known.
+     */
+    private ServiceDocument getStateFromPostgresDocument(String documentKind, String json,
+            String link) {
+        if (json == null) {
+            // This should not happen
+            return null;
+        }
+
+        Class<? extends ServiceDocument> stateType = getStateTypeForDocumentKind(documentKind);
+        if (stateType == null) {
+            return null;
+        }
+        return completeState(Utils.fromJson(json, stateType), stateType, link);
+    }
+
+    private Class<? extends ServiceDocument> getStateTypeForDocumentKind(String documentKind) {
+        if (documentKind == null) {
+            return null;
+        }
+        Class<? extends ServiceDocument> stateType = this.schemaManager
+                .getStateTypeForDocumentKind(documentKind);
+        if (stateType == null) {
+            // TODO: Remove after using registerPostgresSchema() in host
+            // Return null if documentKind is not known, we should be able to return JSON
+            // after the content in the DB
+            stateType = getTypeFromKind(documentKind);
+        }
+        return stateType;
+    }
+
+    private static ServiceDocument completeState(ServiceDocument state,
+            Class<? extends ServiceDocument> stateType, String link) {
         if (state.documentSelfLink == null) {
             state.documentSelfLink = link;
         }
@@ -811,8 +1084,8 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                 && !qs.options.contains(QueryOption.INCLUDE_ALL_VERSIONS)) {
             sb.append("documentupdateaction in ('POST','PATCH','PUT')");
             sb.append(String.format(
-                    " AND (documentexpirationtimemicros = 0 OR documentexpirationtimemicros > %d)",
-                    now));
+                    " AND (documentexpirationtimemicros = 0 OR documentexpirationtimemicros > %s)",
+                    PostgresQueryConverter.bindValue(now)));
         }
 
         if (qs.options.contains(QueryOption.TIME_SNAPSHOT)
@@ -821,8 +1094,8 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             if (sb.length() > 0) {
                 sb.append(" AND ");
             }
-            sb.append(String.format("documentupdatetimemicros <= %d",
-                    qs.timeSnapshotBoundaryMicros));
+            sb.append(String.format("documentupdatetimemicros <= %s",
+                    PostgresQueryConverter.bindValue(qs.timeSnapshotBoundaryMicros)));
         }
 
         if (this.host.isAuthorizationEnabled()) {
@@ -913,8 +1186,8 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         }
 
         try (Connection conn = this.ds.getConnection();
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
+                PreparedStatement stmt = prepareQuery(conn, sql, op);
+                ResultSet rs = stmt.executeQuery()) {
             rs.next();
             response.documentCount = rs.getLong(1);
         } catch (SQLException e) {
@@ -1019,16 +1292,33 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         String sql;
         String orderBy;
         String fields;
+        String unionFields;
+        String unionOrderBy;
 
+        // select only the columns needed to process the results, followed by the sort columns
+        QueryProjection projection = QueryProjection.forQuery(qs, options);
         if (sortFields != null) {
-            orderBy = "ORDER BY " + sortFields.stream()
-                    .collect(Collectors.joining(","));
-            fields = "data," + sortFields.stream()
+            List<String> sortColumns = sortFields.stream()
                     .map(s -> s.substring(0, s.lastIndexOf(' ')))
-                    .collect(Collectors.joining(","));
+                    .collect(Collectors.toList());
+            orderBy = "ORDER BY " + String.join(",", sortFields);
+            fields = projection.columns + "," + String.join(",", sortColumns);
+
+            // the sort columns of the union are referenced by their aliases
+            List<String> aliases = new ArrayList<>(sortFields.size());
+            List<String> aliasedColumns = new ArrayList<>(sortFields.size());
+            for (int i = 0; i < sortFields.size(); i++) {
+                String field = sortFields.get(i);
+                aliases.add("sort" + i + field.substring(field.lastIndexOf(' ')));
+                aliasedColumns.add(sortColumns.get(i) + " AS sort" + i);
+            }
+            unionFields = projection.columns + "," + String.join(",", aliasedColumns);
+            unionOrderBy = "ORDER BY " + String.join(",", aliases);
         } else {
-            fields = "data";
+            fields = projection.columns;
             orderBy = "";
+            unionFields = fields;
+            unionOrderBy = orderBy;
         }
 
         if (tables.size() == 1) {
@@ -1051,10 +1341,15 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                 sql = String.format("SELECT %s FROM %s WHERE %s %s LIMIT %s",
                         fields, td.getTableName(), where, orderBy, hitCount);
                 if (offset > 0) {
-                    sql += String.format(" OFFSET %d", offset);
+                    sql += " OFFSET " + PostgresQueryConverter.bindValue(offset);
                 }
             }
         } else {
+            // the seek predicate and the limit are applied to each of the tables, so that the
+            // union is bounded by the page size regardless of the page depth
+            final String tableAfter = after;
+            final int tableLimit = hitCount + offset;
+            final boolean processTableResults = shouldProcessResults;
             Collection<String> tableSelects = tables.stream()
                     .map(td -> {
                         String where = tq != null ? tq
@@ -1063,9 +1358,16 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                         if (where == null) {
                             return null;
                         }
+                        if (!processTableResults) {
+                            return String.format("SELECT 1 FROM %s WHERE %s",
+                                    td.getTableName(), where);
+                        }
+                        if (tableAfter != null) {
+                            where += " AND " + tableAfter;
+                        }
 
-                        return String.format("SELECT %s FROM %s WHERE %s",
-                                fields, td.getTableName(), where);
+                        return String.format("(SELECT %s FROM %s WHERE %s %s LIMIT %s)",
+                                unionFields, td.getTableName(), where, orderBy, tableLimit);
                     })
                     .filter(Objects::nonNull)
                     .collect(Collectors.toList());
@@ -1076,11 +1378,10 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             if (!shouldProcessResults) {
                 sql = String.format("SELECT EXISTS (%s)", unionQuery);
             } else {
-                String where = after != null ? " WHERE " + after : "";
-                sql = String.format("SELECT %s FROM (%s) AS docs %s %s LIMIT %s",
-                        fields, unionQuery, where, orderBy, hitCount);
+                sql = String.format("SELECT * FROM (%s) AS docs %s LIMIT %s",
+                        unionQuery, unionOrderBy, hitCount);
                 if (offset > 0) {
-                    sql += String.format(" OFFSET %d", offset);
+                    sql += " OFFSET " + PostgresQueryConverter.bindValue(offset);
                 }
             }
         }
@@ -1097,13 +1398,13 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             if (shouldProcessResults) {
                 conn.setAutoCommit(false);
             }
-            try (Statement st = conn.createStatement()) {
+            try (PreparedStatement st = prepareQuery(conn, sql, op)) {
                 if (shouldProcessResults) {
                     // Turn use of the cursor on.
                     st.setFetchSize(FETCH_SIZE);
                 }
                 long startMillis = System.currentTimeMillis();
-                try (ResultSet rs = st.executeQuery(sql)) {
+                try (ResultSet rs = st.executeQuery()) {
                     queryTime = System.currentTimeMillis() - startMillis;
                     if (isDetailedLoggingEnabled) {
                         logger.info(String.format("SQL query execution time: %d ms", queryTime));
@@ -1118,13 +1419,11 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                      * + totalHits + ", QuerySpec: " + Utils.toJson(qs)); } }
                      */
 
-                    JsonObject bottom = null;
+                    List<String> bottom = null;
                     if (shouldProcessResults) {
-                        bottom = processQueryResults(qs, options, count, rsp, rs,
-                                queryStartTimeMicros, nodeSelectorLink, true);
-                        if (hasOffset) {
-                            offset += count;
-                        }
+                        bottom = processQueryResults(qs, options, count, rsp, rs, projection,
+                                sortFields != null ? sortFields.size() : 0,
+                                nodeSelectorLink, true);
                     }
 
                     boolean checkNextPage = true;
@@ -1149,14 +1448,15 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                         }
 
                         if (createNextPageLink) {
+                            // the pages following a page with results continue after its last
+                            // document; the offset only applies to the first page
+                            Integer nextOffset = hasOffset && bottom == null ? offset : null;
                             if (bottom != null) {
-                                after = PostgresQueryConverter
-                                        .buildPaginationClause(tables.iterator().next(), sortFields,
-                                                bottom);
+                                after = PostgresQueryConverter.buildSeekClause(sortFields,
+                                        bottom);
                             }
                             rsp.nextPageLink = createNextPage(op, qs,
-                                    null, sortFields, !hasOffset ? after : null,
-                                    hasOffset ? offset : null, null,
+                                    null, sortFields, after, nextOffset, false,
                                     expirationTimeMicros, indexLink, nodeSelectorLink, hasPage);
                         }
                     }
@@ -1184,6 +1484,96 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         return rsp;
     }
 
+    /**
+     * Returns the values of the group sort fields in the current row of the group
+     * query, as bind values, used to continue with the next page of groups.
+     */
+    private static List<String> getGroupSeekValues(ResultSet rs, List<String> groupColumns,
+            List<String> groupSeekFields) throws SQLException {
+        List<String> values = new ArrayList<>(groupSeekFields.size());
+        for (String field : groupSeekFields) {
+            String column = field.substring(0, field.lastIndexOf(' '));
+            int index = groupColumns.indexOf(column);
+            values.add(PostgresQueryConverter.bindValue(rs.getObject(index + 1)));
+        }
+        return values;
+    }
+
+    /**
+     * Prepares the statement of the given query. If parameterized queries are enabled, the bind
+     * values of the query are passed as parameters of its SQL shape, and the shapes executed
+     * before are prepared on the server with their first execution on the connection.
+     */
+    private PreparedStatement prepareQuery(Connection conn, String sql, Operation op)
+            throws SQLException {
+        long startNanos = System.nanoTime();
+        CompiledQuery query = PostgresQueryConverter.compile(sql, PARAMETERIZED_QUERIES);
+        QueryShape shape = PARAMETERIZED_QUERIES ? this.queryShapeCache.get(query) : null;
+        this.service.setStat(PostgresDocumentIndexService.STAT_NAME_QUERY_COMPILATION_DURATION_MICROS,
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+
+        PreparedStatement stmt = conn.prepareStatement(shape != null ? shape.sql : query.sql);
+        try {
+            setQueryTimeout(stmt, op);
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+        if (shape == null) {
+            return stmt;
+        }
+
+        try {
+            for (int i = 0; i < query.bindValues.size(); i++) {
+                // bind as untyped values, which are resolved by the server as the inline literals
+                stmt.setObject(i + 1, query.bindValues.get(i), Types.OTHER);
+            }
+
+            if (shape.execute()) {
+                this.service.adjustStat(
+                        PostgresDocumentIndexService.STAT_NAME_QUERY_SHAPE_CACHE_HIT_COUNT, 1);
+                if (stmt.isWrapperFor(PGStatement.class)) {
+                    stmt.unwrap(PGStatement.class).setPrepareThreshold(1);
+                }
+            } else {
+                this.service.adjustStat(
+                        PostgresDocumentIndexService.STAT_NAME_QUERY_SHAPE_CACHE_MISS_COUNT, 1);
+            }
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+
+        if (isDetailedLoggingEnabled) {
+            logger.info(String.format("SQL query shape: %s, values: %s",
+                    prettySqlStatement(shape.sql), query.bindValues));
+        }
+        return stmt;
+    }
+
+    /**
+     * Sets the query timeout of the statement to the configured maximum, or to the remaining time
+     * of the operation if it expires earlier. The driver cancels the statement on the server when
+     * the timeout elapses.
+     */
+    private static void setQueryTimeout(PreparedStatement stmt, Operation op)
+            throws SQLException {
+        int timeoutSeconds = QUERY_TIMEOUT_SECONDS;
+        long expirationMicros = op != null ? op.getExpirationMicrosUtc() : 0;
+        if (expirationMicros > 0) {
+            long remainingMicros = expirationMicros - Utils.getSystemNowMicrosUtc();
+            long remainingSeconds = Math.max(1,
+                    (remainingMicros + TimeUnit.SECONDS.toMicros(1) - 1)
+                            / TimeUnit.SECONDS.toMicros(1));
+            if (timeoutSeconds == 0 || remainingSeconds < timeoutSeconds) {
+                timeoutSeconds = (int) Math.min(Integer.MAX_VALUE, remainingSeconds);
+            }
+        }
+        if (timeoutSeconds > 0) {
+            stmt.setQueryTimeout(timeoutSeconds);
+        }
+    }
+
     /**
      * Starts a {@code QueryPageService} to track a partial search result set, associated with a
      * index searcher and search pointers. The page can be used for both grouped queries or document
@@ -1194,7 +1584,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             List<String> sortFields,
             String after,
             Integer offset,
-            Integer groupOffset,
+            boolean isGroupPage,
             long expiration,
             String indexLink,
             String nodeSelectorLink,
@@ -1229,19 +1619,12 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         // This method is called when query-page wants to create new page for a paginated query.
         // If a new page is going to be created then it is safe to use query-page link
         // from referrer as previous page link of this new page being created.
-        PostgresQueryPage page;
-        if (after != null || groupOffset == null) {
-            // page for documents
-            page = new PostgresQueryPage(hasPage ? prevLinkForNewPage : null, after);
-        } else {
-            // page for group results
-            page = new PostgresQueryPage(hasPage ? prevLinkForNewPage : null, groupOffset);
-        }
+        PostgresQueryPage page = new PostgresQueryPage(hasPage ? prevLinkForNewPage : null, after);
 
         QuerySpecification spec = new QuerySpecification();
         qs.copyTo(spec);
 
-        if (groupOffset == null) {
+        if (!isGroupPage) {
             spec.options.remove(QueryOption.GROUP_BY);
         }
 
@@ -1280,18 +1663,21 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         return nextLink;
     }
 
-    private JsonObject processQueryResults(QuerySpecification qs, EnumSet<QueryOption> options,
-            int resultLimit, ServiceDocumentQueryResult rsp, ResultSet rs,
-            long queryStartTimeMicros,
+    /**
+     * Processes the rows of the query and returns the bind values of the sort column values of
+     * the last row, used to continue with the next page.
+     */
+    private List<String> processQueryResults(QuerySpecification qs,
+            EnumSet<QueryOption> options, int resultLimit, ServiceDocumentQueryResult rsp,
+            ResultSet rs, QueryProjection projection, int sortColumnCount,
             String nodeSelectorPath,
             boolean populateResponse) throws Exception {
 
-        JsonObject lastDocVisited = null;
+        List<String> lastSortValues = null;
         final boolean hasCountOption = options.contains(QueryOption.COUNT);
 
         rsp.documentLinks.clear();
 
-        PostgresDocumentStoredFieldVisitor visitor = new PostgresDocumentStoredFieldVisitor();
         int resultCount = 0;
         while (true) {
             if (!hasCountOption && rsp.documentLinks.size() >= resultLimit) {
@@ -1306,12 +1692,8 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                 break;
             }
 
-            visitor.reset();
-            loadDoc(visitor, rs);
-            final String link = visitor.documentSelfLink;
-            final String json = visitor.jsonSerializedState;
-
-            lastDocVisited = visitor.getAsJsonObject();
+            final String link = rs.getString(1);
+            lastSortValues = getSortValues(rs, projection.columnCount, sortColumnCount);
 
             if (hasCountOption || !populateResponse) {
                 // count unique instances of this link
@@ -1319,34 +1701,31 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                 continue;
             }
 
-            ServiceDocument state = null;
-
-            if (options.contains(QueryOption.EXPAND_CONTENT)
-                    || options.contains(QueryOption.OWNER_SELECTION)
-                    || options.contains(QueryOption.EXPAND_SELECTED_FIELDS)) {
-                state = getStateFromPostgresDocument(null, visitor, link);
-            }
-
             if (options.contains(QueryOption.OWNER_SELECTION)) {
-                if (!processQueryResultsForOwnerSelection(json, state, nodeSelectorPath)) {
+                if (!processQueryResultsForOwnerSelection(link, nodeSelectorPath)) {
                     continue;
                 }
             }
 
             rsp.documentLinks.add(link);
 
-            if (options.contains(QueryOption.EXPAND_CONTENT)) {
+            JsonObject properties = projection.getProperties(rs);
+            if (projection.loadState) {
+                String json = projection.getData(rs);
+                ServiceDocument state = getStateFromPostgresDocument(projection.getKind(rs),
+                        json, link);
+
                 Object o;
                 if (options.contains(QueryOption.EXPAND_BUILTIN_CONTENT_ONLY)) {
                     if (state == null) {
-                        o = visitor.getServiceDocumentBuiltInContentOnly();
+                        o = Utils.fromJson(json, ServiceDocument.class);
                     } else {
                         ServiceDocument stateClone = new ServiceDocument();
                         state.copyTo(stateClone);
                         o = stateClone;
                     }
                 } else if (state == null) {
-                    o = visitor.getAsJsonObject();
+                    o = Utils.fromJson(json, JsonObject.class);
                 } else {
                     // More efficient to return same JSON object given to visitor, but there can be
                     // rare cases that db will have more fields than ServiceDocument state
@@ -1362,10 +1741,9 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                 }
 
                 // Create a new json object with selected fields
-                JsonObject fromJsonObj = visitor.getAsJsonObject();
                 JsonObject jo = new JsonObject();
                 for (String field : selectFields) {
-                    JsonElement je = fromJsonObj.get(field);
+                    JsonElement je = properties.get(field);
                     if (je != null && !je.isJsonNull()) {
                         jo.add(field, je);
                     }
@@ -1374,7 +1752,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             }
 
             if (options.contains(QueryOption.SELECT_LINKS)) {
-                processQueryResultsForSelectLinks(qs, rsp, visitor, rs, link, state);
+                processQueryResultsForSelectLinks(qs, rsp, link, properties);
             }
         }
 
@@ -1383,17 +1761,24 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         if (isDetailedLoggingEnabled) {
             logger.info(() -> String.format("Processed %s documents", rsp.documentCount));
         }
-        return lastDocVisited;
+        return lastSortValues;
+    }
+
+    private static List<String> getSortValues(ResultSet rs, int offset, int count)
+            throws SQLException {
+        List<String> values = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            values.add(PostgresQueryConverter.bindValue(rs.getObject(offset + i)));
+        }
+        return values;
     }
 
     private JsonObject toJsonObject(ServiceDocument state) {
         return (JsonObject) GsonSerializers.getJsonMapperFor(state.getClass()).toJsonElement(state);
     }
 
-    private ServiceDocument processQueryResultsForSelectLinks(
-            QuerySpecification qs, ServiceDocumentQueryResult rsp,
-            PostgresDocumentStoredFieldVisitor d, ResultSet rs,
-            String link, ServiceDocument state) throws Exception {
+    private void processQueryResultsForSelectLinks(QuerySpecification qs,
+            ServiceDocumentQueryResult rsp, String link, JsonObject properties) {
         if (rsp.selectedLinksPerDocument == null) {
             rsp.selectedLinksPerDocument = new HashMap<>();
             rsp.selectedLinks = new HashSet<>();
@@ -1402,65 +1787,40 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                 .computeIfAbsent(link, k -> new HashMap<>());
 
         for (QueryTask.QueryTerm qt : qs.linkTerms) {
-            String linkValue = d.getLink(qt.propertyName);
-            if (linkValue != null) {
+            JsonElement value = properties.get(qt.propertyName);
+            if (value == null || value.isJsonNull()) {
+                continue;
+            }
+            if (value.isJsonPrimitive()) {
+                String linkValue = value.getAsString();
                 linksPerDocument.put(qt.propertyName, linkValue);
                 rsp.selectedLinks.add(linkValue);
                 continue;
             }
 
-            // if there is no stored field with the link term property name, it might be
-            // a field with a collection of links. We do not store those in lucene, they are
-            // part of the binary serialized state.
-            if (state == null) {
-                PostgresDocumentStoredFieldVisitor visitor = new PostgresDocumentStoredFieldVisitor();
-                loadDoc(visitor, rs);
-                state = getStateFromPostgresDocument(null, visitor, link);
-                if (state == null) {
-                    logger.warning(() -> String.format("Skipping link term %s for %s, can "
-                            + "not find serialized state", qt.propertyName, link));
-                    continue;
-                }
-            }
-
-            Field linkCollectionField = ReflectionUtils
-                    .getField(state.getClass(), qt.propertyName);
-            if (linkCollectionField == null) {
-                continue;
-            }
-            Object fieldValue = linkCollectionField.get(state);
-            if (fieldValue == null) {
-                continue;
-            }
-            if (!(fieldValue instanceof Collection<?>)) {
+            // if the property is not a single link, it might be a field with a collection of
+            // links
+            if (!value.isJsonArray()) {
                 logger.warning(() -> String.format("Skipping link term %s for %s, field "
                         + "is not a collection", qt.propertyName, link));
                 continue;
             }
-            @SuppressWarnings("unchecked")
-            Collection<String> linkCollection = (Collection<String>) fieldValue;
             int index = 0;
-            for (String item : linkCollection) {
-                if (item != null) {
+            for (JsonElement item : value.getAsJsonArray()) {
+                if (item != null && !item.isJsonNull()) {
+                    String linkValue = item.getAsString();
                     linksPerDocument.put(
                             QuerySpecification
                                     .buildLinkCollectionItemName(qt.propertyName, index++),
-                            item);
-                    rsp.selectedLinks.add(item);
+                            linkValue);
+                    rsp.selectedLinks.add(linkValue);
                 }
             }
         }
-        return state;
     }
 
-    private boolean processQueryResultsForOwnerSelection(String json, ServiceDocument state,
+    private boolean processQueryResultsForOwnerSelection(String documentSelfLink,
             String nodeSelectorPath) {
-        String documentSelfLink;
-        if (state == null) {
-            documentSelfLink = Utils.fromJson(json, ServiceDocument.class).documentSelfLink;
-        } else {
-            documentSelfLink = state.documentSelfLink;
-        }
         // when node-selector is not specified via query, use the one for index-service which may be
         // null
         if (nodeSelectorPath == null) {
@@ -1582,7 +1942,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
     }
 
     static String prettySqlStatement(String stmt) {
-        stmt = stmt.replace(" WHERE ", "\nWHERE ")
+        stmt = PostgresQueryConverter.toInlineSql(stmt).replace(" WHERE ", "\nWHERE ")
                 .replace(" FROM (", "\nFROM (\n")
                 .replace(" FROM ", "\nFROM ")
                 .replace(") AS docs ", "\n) AS docs ")
@@ -1650,6 +2010,18 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         this.isDetailedLoggingEnabled = enabled;
     }
 
+    public long getQueryShapeCacheHitCount() {
+        return this.queryShapeCache.getHitCount();
+    }
+
+    public long getQueryShapeCacheMissCount() {
+        return this.queryShapeCache.getMissCount();
+    }
+
+    public int getQueryShapeCacheSize() {
+        return this.queryShapeCache.size();
+    }
+
     public long getLogSlowQueryThresholdSeconds() {
         return TimeUnit.MICROSECONDS.toSeconds(this.logSlowQueryThresholdMicros);
     }
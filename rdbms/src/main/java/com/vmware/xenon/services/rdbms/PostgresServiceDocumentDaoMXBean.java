@@ -19,4 +19,10 @@ public interface PostgresServiceDocumentDaoMXBean {
     long getLogSlowQueryThresholdSeconds();
 
     void setLogSlowQueryThresholdSeconds(long seconds);
+
+    long getQueryShapeCacheHitCount();
+
+    long getQueryShapeCacheMissCount();
+
+    int getQueryShapeCacheSize();
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
+
+public class PostgresChangeFeedTest {
+    private static final String KIND = "com:vmware:test:Kind";
+    private static final String OTHER_KIND = "com:vmware:test:OtherKind";
+
+    private static final int BUFFER_SIZE = 3;
+    private static final int BATCH_SIZE = 2;
+
+    private List<Runnable> tasks;
+    private List<List<ServiceDocument>> batches;
+    private PostgresChangeFeed changeFeed;
+
+    @Before
+    public void setup() {
+        tasks = new ArrayList<>();
+        batches = new ArrayList<>();
+        changeFeed = new PostgresChangeFeed(new StatelessService(), null, BUFFER_SIZE,
+                BATCH_SIZE, tasks::add, batches::add);
+        changeFeed.setDocumentKinds(null);
+    }
+
+    @Test
+    public void testDocumentKindsOfKindTerm() {
+        Query query = Query.Builder.create()
+                .addFieldClause(ServiceDocument.FIELD_NAME_KIND, KIND)
+                .build();
+        assertEquals(new HashSet<>(Arrays.asList(KIND)),
+                PostgresChangeFeed.getDocumentKinds(query));
+    }
+
+    @Test
+    public void testDocumentKindsOfRequiredClauses() {
+        Query query = Query.Builder.create()
+                .addFieldClause(ServiceDocument.FIELD_NAME_KIND, KIND)
+                .addFieldClause(ServiceDocument.FIELD_NAME_OWNER, "owner")
+                .build();
+        assertEquals(new HashSet<>(Arrays.asList(KIND)),
+                PostgresChangeFeed.getDocumentKinds(query));
+    }
+
+    @Test
+    public void testDocumentKindsOfOptionalClauses() {
+        Query query = Query.Builder.create()
+                .addFieldClause(ServiceDocument.FIELD_NAME_KIND, KIND,
+                        Occurance.SHOULD_OCCUR)
+                .addFieldClause(ServiceDocument.FIELD_NAME_KIND, OTHER_KIND,
+                        Occurance.SHOULD_OCCUR)
+                .build();
+        assertEquals(new HashSet<>(Arrays.asList(KIND, OTHER_KIND)),
+                PostgresChangeFeed.getDocumentKinds(query));
+
+        // an optional clause not restricted to a kind matches documents of any kind
+        query = Query.Builder.create()
+                .addFieldClause(ServiceDocument.FIELD_NAME_KIND, KIND,
+                        Occurance.SHOULD_OCCUR)
+                .addFieldClause(ServiceDocument.FIELD_NAME_OWNER, "owner",
+                        Occurance.SHOULD_OCCUR)
+                .build();
+        assertNull(PostgresChangeFeed.getDocumentKinds(query));
+    }
+
+    @Test
+    public void testDocumentKindsOfUnrestrictedQueries() {
+        Query query = Query.Builder.create()
+                .addFieldClause(ServiceDocument.FIELD_NAME_KIND, KIND,
+                        Occurance.MUST_NOT_OCCUR)
+                .build();
+        assertNull(PostgresChangeFeed.getDocumentKinds(query));
+
+        query = Query.Builder.create()
+                .addFieldClause(ServiceDocument.FIELD_NAME_KIND, "com:vmware:*",
+                        MatchType.WILDCARD)
+                .build();
+        assertNull(PostgresChangeFeed.getDocumentKinds(query));
+
+        query = Query.Builder.create()
+                .addFieldClause(ServiceDocument.FIELD_NAME_OWNER, "owner")
+                .build();
+        assertNull(PostgresChangeFeed.getDocumentKinds(query));
+    }
+
+    @Test
+    public void testNotificationsAreCoalescedPerDocument() {
+        changeFeed.offer(createChange("/docs/a", KIND, 2));
+        changeFeed.offer(createChange("/docs/a", KIND, 1));
+        changeFeed.offer(createChange("/docs/b", KIND, 1));
+        changeFeed.offer(createChange("/docs/b", KIND, 3));
+        assertEquals(1, tasks.size());
+
+        tasks.remove(0).run();
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals("/docs/a", batches.get(0).get(0).documentSelfLink);
+        assertEquals(2, batches.get(0).get(0).documentVersion);
+        assertEquals("/docs/b", batches.get(0).get(1).documentSelfLink);
+        assertEquals(3, batches.get(0).get(1).documentVersion);
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testNotificationsAreDrainedInBatches() {
+        changeFeed.offer(createChange("/docs/a", KIND, 1));
+        changeFeed.offer(createChange("/docs/b", KIND, 1));
+        changeFeed.offer(createChange("/docs/c", KIND, 1));
+        changeFeed.offer(createChange("/docs/d", KIND, 1));
+
+        // the oldest notification is dropped when the buffer is full
+        tasks.remove(0).run();
+        assertEquals(Arrays.asList("/docs/b", "/docs/c"), getLinks(batches.get(0)));
+
+        // the rest is drained by a rescheduled task
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(Arrays.asList("/docs/d"), getLinks(batches.get(1)));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testNotificationsAreFilteredByKind() {
+        changeFeed.setDocumentKinds(new HashSet<>(Arrays.asList(KIND)));
+        changeFeed.offer(createChange("/docs/a", KIND, 1));
+        changeFeed.offer(createChange("/docs/b", OTHER_KIND, 1));
+
+        tasks.remove(0).run();
+        assertEquals(Arrays.asList("/docs/a"), getLinks(batches.get(0)));
+    }
+
+    @Test
+    public void testLocalUpdatesAreSkipped() {
+        changeFeed.recordLocalUpdate(createChange("/docs/a", KIND, 2));
+        changeFeed.recordLocalUpdate(createChange("/docs/a", KIND, 1));
+        assertTrue(changeFeed.isLocalUpdate(createChange("/docs/a", KIND, 1)));
+        assertTrue(changeFeed.isLocalUpdate(createChange("/docs/a", KIND, 2)));
+        assertFalse(changeFeed.isLocalUpdate(createChange("/docs/a", KIND, 3)));
+        assertFalse(changeFeed.isLocalUpdate(createChange("/docs/b", KIND, 1)));
+
+        changeFeed.offer(createChange("/docs/a", KIND, 2));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testLocalUpdatesAreBounded() {
+        changeFeed.recordLocalUpdate(createChange("/docs/a", KIND, 1));
+        changeFeed.recordLocalUpdate(createChange("/docs/b", KIND, 1));
+        changeFeed.recordLocalUpdate(createChange("/docs/c", KIND, 1));
+
+        // the least recently used version is evicted
+        assertTrue(changeFeed.isLocalUpdate(createChange("/docs/a", KIND, 1)));
+        changeFeed.recordLocalUpdate(createChange("/docs/d", KIND, 1));
+        assertTrue(changeFeed.isLocalUpdate(createChange("/docs/a", KIND, 1)));
+        assertFalse(changeFeed.isLocalUpdate(createChange("/docs/b", KIND, 1)));
+    }
+
+    private static List<String> getLinks(List<ServiceDocument> documents) {
+        List<String> links = new ArrayList<>();
+        documents.forEach((document) -> links.add(document.documentSelfLink));
+        return links;
+    }
+
+    private static ServiceDocument createChange(String selfLink, String kind, long version) {
+        ServiceDocument change = new ServiceDocument();
+        change.documentSelfLink = selfLink;
+        change.documentKind = kind;
+        change.documentVersion = version;
+        return change;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import static org.junit.Assert.assertEquals;
+
+import static com.vmware.xenon.services.rdbms.PostgresQueryConverter.bindValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vmware.xenon.services.rdbms.PostgresQueryConverter.CompiledQuery;
+
+public class PostgresQueryConverterTest {
+
+    @Test
+    public void testJsonPathsAreInline() {
+        assertCompiled("data -> 'tags' -> 0 ->> 'key' = ?", Collections.singletonList("k1"),
+                "data -> 'tags' -> 0 ->> 'key' = " + bindValue("k1"));
+        assertCompiled("data #> '{a,1}' #>> '{b}' = ?", Collections.singletonList("v"),
+                "data #> '{a,1}' #>> '{b}' = " + bindValue("v"));
+        assertCompiled("data -> 'map' @> ?", Collections.singletonList("{\"k\":\"v\"}"),
+                "data -> 'map' @> " + bindValue("{\"k\":\"v\"}"));
+    }
+
+    @Test
+    public void testLikeEscapeIsInline() {
+        assertCompiled("name LIKE ? ESCAPE '\\'", Collections.singletonList("a\\_b%"),
+                "name LIKE " + bindValue("a\\_b%") + " ESCAPE '\\'");
+    }
+
+    @Test
+    public void testCastsAreInline() {
+        assertCompiled("(data ->> 'count')::bigint BETWEEN ? AND ?", Arrays.asList("1", "10"),
+                "(data ->> 'count')::bigint BETWEEN " + bindValue(1L) + " AND "
+                        + bindValue(10L));
+    }
+
+    @Test
+    public void testLimitAndOffset() {
+        assertCompiled("SELECT 1 FROM t WHERE TRUE LIMIT 10 OFFSET ?",
+                Collections.singletonList("20"),
+                "SELECT 1 FROM t WHERE TRUE LIMIT 10 OFFSET " + bindValue(20));
+    }
+
+    @Test
+    public void testNegativeNumbers() {
+        assertCompiled("x = ? AND y - 1 > -2 AND z >= ?", Arrays.asList("-5", "-1.5E-4"),
+                "x = " + bindValue(-5L) + " AND y - 1 > -2 AND z >= " + bindValue(-1.5E-4));
+        assertEquals("x = -5", PostgresQueryConverter.compile(
+                "x = " + bindValue(-5L), false).sql);
+    }
+
+    @Test
+    public void testQuotedLiteralsWithDigits() {
+        assertCompiled("data -> 'a1' ->> 'b2' = ? AND \"c3\" = ?", Arrays.asList("v4", "it's 5"),
+                "data -> 'a1' ->> 'b2' = " + bindValue("v4") + " AND \"c3\" = "
+                        + bindValue("it's 5"));
+        assertEquals("data ->> 'a1' = 'it''s 5'", PostgresQueryConverter.compile(
+                "data ->> 'a1' = " + bindValue("it's 5"), false).sql);
+    }
+
+    @Test
+    public void testQuestionMarkOperatorsAreEscaped() {
+        assertCompiled("data -> 'tags' ?? ? AND data -> 'ids' ??| ARRAY[?,?] AND name = '?'",
+                Arrays.asList("a?", "b", "c"),
+                "data -> 'tags' ? " + bindValue("a?") + " AND data -> 'ids' ?| ARRAY["
+                        + bindValue("b") + ',' + bindValue("c") + "] AND name = '?'");
+    }
+
+    @Test
+    public void testInlineRendering() {
+        String sql = "name = " + bindValue("it's") + " AND version > " + bindValue(3L);
+        assertEquals("name = 'it''s' AND version > 3", PostgresQueryConverter.toInlineSql(sql));
+        assertEquals("name = 'it''s' AND version > 3",
+                PostgresQueryConverter.compile(sql, false).sql);
+    }
+
+    @Test
+    public void testSeekSingleField() {
+        assertEquals("((documentselflink) > ('/a'))",
+                seek(Arrays.asList("documentselflink ASC"), "/a"));
+        assertEquals("((documentselflink) < ('/a'))",
+                seek(Arrays.asList("documentselflink DESC"), "/a"));
+        // NULL values of nullable columns are last in ascending order
+        assertEquals("(((data ->> 'name')) > ('b') OR ((data ->> 'name') IS NULL))",
+                seek(Arrays.asList("(data ->> 'name') ASC"), "b"));
+        // and first in descending order
+        assertEquals("(((data ->> 'name')) < ('b'))",
+                seek(Arrays.asList("(data ->> 'name') DESC"), "b"));
+    }
+
+    @Test
+    public void testSeekSeveralFields() {
+        assertEquals("(((data ->> 'name'),documentselflink) > ('b','/a')"
+                        + " OR ((data ->> 'name') IS NULL))",
+                seek(Arrays.asList("(data ->> 'name') ASC", "documentselflink ASC"), "b",
+                        "/a"));
+        assertEquals("(((data ->> 'name'),(data ->> 'id')) > ('b','c')"
+                        + " OR ((data ->> 'name') IS NULL)"
+                        + " OR ((data ->> 'name') = 'b' AND (data ->> 'id') IS NULL))",
+                seek(Arrays.asList("(data ->> 'name') ASC", "(data ->> 'id') ASC"), "b", "c"));
+        assertEquals("(((data ->> 'count')::bigint,documentselflink) < (5,'/a'))",
+                seek(Arrays.asList("(data ->> 'count')::bigint DESC", "documentselflink DESC"),
+                        5L, "/a"));
+    }
+
+    @Test
+    public void testSeekMixedOrder() {
+        assertEquals("((data ->> 'name') < 'b'"
+                        + " OR ((data ->> 'name') = 'b' AND documentselflink > '/a'))",
+                seek(Arrays.asList("(data ->> 'name') DESC", "documentselflink ASC"), "b",
+                        "/a"));
+        assertEquals("(((data ->> 'name') > 'b' OR (data ->> 'name') IS NULL)"
+                        + " OR ((data ->> 'name') = 'b' AND documentselflink < '/a'))",
+                seek(Arrays.asList("(data ->> 'name') ASC", "documentselflink DESC"), "b",
+                        "/a"));
+    }
+
+    @Test
+    public void testSeekNullValues() {
+        // nothing follows a NULL value in ascending order but the following sort fields
+        assertEquals(PostgresQueryConverter.SQL_FALSE,
+                seek(Arrays.asList("(data ->> 'name') ASC"), (Object) null));
+        assertEquals("((data ->> 'name') IS NULL AND documentselflink > '/a')",
+                seek(Arrays.asList("(data ->> 'name') ASC", "documentselflink ASC"), null,
+                        "/a"));
+        // all values follow a NULL value in descending order
+        assertEquals("((data ->> 'name') IS NOT NULL"
+                        + " OR ((data ->> 'name') IS NULL AND documentselflink < '/a'))",
+                seek(Arrays.asList("(data ->> 'name') DESC", "documentselflink DESC"), null,
+                        "/a"));
+        assertEquals("((data ->> 'name') < 'b' OR ((data ->> 'name') = 'b'"
+                        + " AND ((data ->> 'id') IS NULL AND documentselflink > '/a')))",
+                seek(Arrays.asList("(data ->> 'name') DESC", "(data ->> 'id') ASC",
+                        "documentselflink ASC"), "b", null, "/a"));
+    }
+
+    @Test
+    public void testSeekValuesAreEscaped() {
+        assertEquals("((documentselflink) > ('/it''s ?'))",
+                seek(Arrays.asList("documentselflink ASC"), "/it's ?"));
+
+        String clause = PostgresQueryConverter.buildSeekClause(
+                Arrays.asList("(data ->> 'name') DESC", "documentselflink ASC"),
+                Arrays.asList(bindValue("it's"), bindValue("/a?")));
+        assertCompiled("((data ->> 'name') < ? OR ((data ->> 'name') = ?"
+                + " AND documentselflink > ?))", Arrays.asList("it's", "it's", "/a?"), clause);
+    }
+
+    private static String seek(List<String> sortFields, Object... values) {
+        List<String> bindValues = new ArrayList<>();
+        for (Object value : values) {
+            bindValues.add(bindValue(value));
+        }
+        return PostgresQueryConverter.compile(
+                PostgresQueryConverter.buildSeekClause(sortFields, bindValues), false).sql;
+    }
+
+    private static void assertCompiled(String expectedSql, List<String> expectedValues,
+            String sql) {
+        CompiledQuery query = PostgresQueryConverter.compile(sql, true);
+        assertEquals(expectedSql, query.sql);
+        assertEquals(expectedValues, query.bindValues);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.rdbms.PostgresDocumentIndexService.QueryWorkloadClass;
+
+public class PostgresQueryQueuesTest {
+    private static final String METRICS_KIND = "com:vmware:test:Metrics";
+    private static final String KIND = "com:vmware:test:Kind";
+
+    private static final Set<String> BACKGROUND_KINDS = new HashSet<>(
+            Arrays.asList(METRICS_KIND));
+
+    @Test
+    public void testWorkloadClassOfUser() {
+        QueryTask task = createQueryTask(KIND);
+        assertEquals(QueryWorkloadClass.INTERACTIVE, getWorkloadClass(null, task, false));
+        assertEquals(QueryWorkloadClass.TASK, getWorkloadClass(null, task, true));
+        assertEquals(QueryWorkloadClass.TASK, getWorkloadClass(null, null, true));
+    }
+
+    @Test
+    public void testWorkloadClassOfBackgroundQueries() {
+        assertEquals(QueryWorkloadClass.BACKGROUND,
+                getWorkloadClass(null, createQueryTask(METRICS_KIND), true));
+
+        QueryTask task = createQueryTask(KIND);
+        task.querySpec.options = EnumSet.of(QueryOption.GROUP_BY);
+        assertEquals(QueryWorkloadClass.BACKGROUND, getWorkloadClass(null, task, false));
+
+        // queries of other kinds besides the background ones are not background queries
+        task = QueryTask.Builder.create()
+                .setQuery(Query.Builder.create()
+                        .addInClause(ServiceDocument.FIELD_NAME_KIND,
+                                Arrays.asList(METRICS_KIND, KIND))
+                        .build())
+                .build();
+        assertEquals(QueryWorkloadClass.TASK, getWorkloadClass(null, task, true));
+
+        assertEquals(QueryWorkloadClass.TASK, PostgresQueryQueues.getWorkloadClass(null,
+                createQueryTask(METRICS_KIND), true, Collections.emptySet()));
+    }
+
+    @Test
+    public void testWorkloadClassOfHeader() {
+        QueryTask task = createQueryTask(KIND);
+        assertEquals(QueryWorkloadClass.BACKGROUND, getWorkloadClass("background", task, false));
+        assertEquals(QueryWorkloadClass.INTERACTIVE,
+                getWorkloadClass(" INTERACTIVE ", createQueryTask(METRICS_KIND), true));
+        assertEquals(QueryWorkloadClass.TASK, getWorkloadClass("unknown", task, true));
+    }
+
+    @Test
+    public void testQueriesAreAdmittedInTheOrderOfTheClasses() {
+        PostgresQueryQueues queues = new PostgresQueryQueues(new int[] { 1, 1, 1 }, 10);
+        Operation background = createOperation();
+        Operation task = createOperation();
+        Operation interactive = createOperation();
+        assertTrue(queues.offer(QueryWorkloadClass.BACKGROUND, "subject", background));
+        assertTrue(queues.offer(QueryWorkloadClass.TASK, "subject", task));
+        assertTrue(queues.offer(QueryWorkloadClass.INTERACTIVE, "subject", interactive));
+
+        List<Operation> handled = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queues.handleNext((op, workloadClass) -> handled.add(op)));
+        }
+        assertFalse(queues.handleNext((op, workloadClass) -> handled.add(op)));
+        assertEquals(Arrays.asList(interactive, task, background), handled);
+        assertTrue(queues.isEmpty());
+    }
+
+    @Test
+    public void testQueriesOfClassAtLimitStayQueued() {
+        PostgresQueryQueues queues = new PostgresQueryQueues(new int[] { 1, 1, 1 }, 10);
+        Operation first = createOperation();
+        Operation second = createOperation();
+        Operation background = createOperation();
+        queues.offer(QueryWorkloadClass.INTERACTIVE, "subject", first);
+        queues.offer(QueryWorkloadClass.INTERACTIVE, "subject", second);
+        queues.offer(QueryWorkloadClass.BACKGROUND, "subject", background);
+
+        // while the interactive query is running, the next one waits and the background one
+        // is admitted
+        List<Operation> nested = new ArrayList<>();
+        assertTrue(queues.handleNext((op, workloadClass) -> {
+            assertSame(first, op);
+            assertTrue(queues.handleNext((nestedOp, nestedClass) -> {
+                assertEquals(QueryWorkloadClass.BACKGROUND, nestedClass);
+                nested.add(nestedOp);
+            }));
+            assertFalse(queues.handleNext((nestedOp, nestedClass) -> nested.add(nestedOp)));
+        }));
+        assertEquals(Arrays.asList(background), nested);
+        assertEquals(Integer.valueOf(1),
+                queues.sizesByKey(QueryWorkloadClass.INTERACTIVE).get("subject"));
+
+        assertTrue(queues.handleNext((op, workloadClass) -> assertSame(second, op)));
+        assertTrue(queues.isEmpty());
+    }
+
+    @Test
+    public void testQueryConcurrencyIsDerivedFromPoolSize() {
+        try (HikariDataSource ds = new HikariDataSource()) {
+            ds.setMaximumPoolSize(20);
+            int[] concurrency = PostgresDocumentIndexService.getQueryConcurrency(ds);
+            assertEquals(5, concurrency[QueryWorkloadClass.INTERACTIVE.ordinal()]);
+            assertEquals(5, concurrency[QueryWorkloadClass.TASK.ordinal()]);
+            assertEquals(3, concurrency[QueryWorkloadClass.BACKGROUND.ordinal()]);
+
+            ds.setMaximumPoolSize(4);
+            concurrency = PostgresDocumentIndexService.getQueryConcurrency(ds);
+            assertEquals(PostgresDocumentIndexService.MIN_QUERY_CONCURRENCY,
+                    concurrency[QueryWorkloadClass.BACKGROUND.ordinal()]);
+        }
+    }
+
+    private static QueryWorkloadClass getWorkloadClass(String header, QueryTask task,
+            boolean isSystemUser) {
+        return PostgresQueryQueues.getWorkloadClass(header, task, isSystemUser,
+                BACKGROUND_KINDS);
+    }
+
+    private static QueryTask createQueryTask(String kind) {
+        return QueryTask.Builder.create()
+                .setQuery(Query.Builder.create()
+                        .addFieldClause(ServiceDocument.FIELD_NAME_KIND, kind)
+                        .build())
+                .build();
+    }
+
+    private static Operation createOperation() {
+        return Operation.createGet(URI.create("http://localhost/core/document-index"));
+    }
+}
@@ -13,6 +13,7 @@ package com.vmware.admiral.host;
 
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.request.ContainerControlLoopService;
+import com.vmware.admiral.request.GroupResourcePlacementStripes;
 import com.vmware.admiral.service.common.AbstractInitialBootService;
 import com.vmware.xenon.common.Operation;
 
@@ -24,6 +25,7 @@ public class RequestInitialBootService extends AbstractInitialBootService {
 
     @Override
     public void handlePost(Operation post) {
+        GroupResourcePlacementStripes.getInstance(getHost()).restore();
         initInstances(post, ContainerControlLoopService.buildDefaultStateInstance());
     }
 
@@ -19,7 +19,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.function.Consumer;
@@ -147,6 +149,10 @@ public class ContainerPortsAllocationTaskService
             return;
         }
 
+        // group the port allocation requests of the containers by host port profile
+        Map<HostPortProfileService.HostPortProfileState,
+                List<HostPortProfileService.HostPortProfileReservationRequest>> requestsPerProfile =
+                new LinkedHashMap<>();
         for (ContainerService.ContainerState containerState : containerStates) {
             HostPortProfileService.HostPortProfileState profile = hostPortProfileStates
                     .stream()
@@ -164,6 +170,22 @@ public class ContainerPortsAllocationTaskService
                 completeSubTasksCounter(taskCallback, null);
                 continue;
             }
+            requestsPerProfile.computeIfAbsent(profile, (p) -> new ArrayList<>())
+                    .add(hostPortProfileRequest);
+        }
+
+        requestsPerProfile.forEach((profile, requests) -> {
+            HostPortProfileService.HostPortProfileReservationRequest hostPortProfileRequest;
+            if (requests.size() == 1) {
+                hostPortProfileRequest = requests.get(0);
+            } else {
+                // allocate the ports of all containers on the host with a single request
+                hostPortProfileRequest =
+                        new HostPortProfileService.HostPortProfileReservationRequest();
+                hostPortProfileRequest.mode =
+                        HostPortProfileService.HostPortProfileReservationRequestMode.ALLOCATE;
+                hostPortProfileRequest.containerRequests = requests;
+            }
 
             // allocate ports
             sendRequest(Operation
@@ -172,7 +194,8 @@ public class ContainerPortsAllocationTaskService
                     .setCompletion(
                             (op, ex) -> {
                                 if (ex != null) {
-                                    completeSubTasksCounter(taskCallback, ex);
+                                    requests.forEach(
+                                            r -> completeSubTasksCounter(taskCallback, ex));
                                     return;
                                 }
                                 // update cached host port profile state
@@ -180,10 +203,10 @@ public class ContainerPortsAllocationTaskService
                                         op.getBody(
                                                 HostPortProfileService.HostPortProfileState.class);
                                 profile.reservedPorts.putAll(result.reservedPorts);
-                                completeSubTasksCounter(taskCallback, null);
+                                requests.forEach(r -> completeSubTasksCounter(taskCallback, null));
                             }));
             proceedTo(ContainerPortsAllocationTaskState.SubStage.ALLOCATING_PORTS);
-        }
+        });
     }
 
     private HostPortProfileService.HostPortProfileReservationRequest createHostPortProfileRequest(
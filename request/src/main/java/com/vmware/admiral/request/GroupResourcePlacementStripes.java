@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.AuthorizationContext;
+import com.vmware.xenon.common.OperationContext;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.ServiceHost.ServiceNotFoundException;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+/**
+ * Node local stripes of pre-reserved GroupResourcePlacement capacity. When enabled, a reservation
+ * which can't be served from the local stripe of the placement reserves a stripe of additional
+ * instances with the same PATCH, so that the following reservations and releases on the node
+ * don't go through the single placement document. Stripes are kept per placement and memory
+ * limit of a single resource, and are released back to the placement once they are not used for
+ * the reconciliation interval. Leased instances are reported as allocated by the placement until
+ * then.
+ *
+ * The leased instances of every stripe are recorded in the placement, see
+ * {@link GroupResourcePlacementState#leasedInstances}, when the stripe is reserved and released
+ * and on every reconciliation in between if they changed, so that the node can take over its
+ * stripes after a restart, see {@link #restore()}. The record may lag behind the node
+ * by up to one reconciliation interval, so after a crash it can include instances which have
+ * been reserved from the stripe in the meantime. The restored leases are therefore limited to
+ * the allocated instances of the placement not used by its resources nor leased by other nodes.
+ */
+public class GroupResourcePlacementStripes {
+
+    public static final String STRIPE_SIZE_PROP_NAME =
+            "com.vmware.admiral.request.placement.reservation.stripe.size";
+
+    private static final long RECONCILE_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.request.placement.reservation.stripe.reconcile.interval.micros",
+            TimeUnit.SECONDS.toMicros(30));
+
+    private static final String LEASE_KEY_SEPARATOR = "|";
+
+    private static final ConcurrentMap<String, GroupResourcePlacementStripes> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final ServiceHost host;
+    private final long stripeSize;
+    private final long reconcileIntervalMicros;
+    private final ConcurrentMap<String, Stripe> stripes = new ConcurrentHashMap<>();
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean();
+    // new stripes are not reserved before the leases of the node are restored, since reserving
+    // would override them
+    private volatile boolean restored;
+
+    private static class Stripe {
+        final String placementLink;
+        final long memoryLimit;
+        long instances;
+        // the leased instances recorded in the placement, -1 if not known
+        long recordedInstances;
+        long lastUsedMicros;
+        boolean released;
+        String resourceDescriptionLink;
+        AuthorizationContext authorizationContext;
+
+        Stripe(String placementLink, long memoryLimit) {
+            this.placementLink = placementLink;
+            this.memoryLimit = memoryLimit;
+        }
+    }
+
+    public static GroupResourcePlacementStripes getInstance(ServiceHost host) {
+        return INSTANCES.computeIfAbsent(host.getId(),
+                (id) -> new GroupResourcePlacementStripes(host,
+                        Long.getLong(STRIPE_SIZE_PROP_NAME, 0), RECONCILE_INTERVAL_MICROS,
+                        false));
+    }
+
+    GroupResourcePlacementStripes(ServiceHost host, long stripeSize,
+            long reconcileIntervalMicros) {
+        this(host, stripeSize, reconcileIntervalMicros, true);
+    }
+
+    private GroupResourcePlacementStripes(ServiceHost host, long stripeSize,
+            long reconcileIntervalMicros, boolean restored) {
+        this.host = host;
+        this.stripeSize = stripeSize;
+        this.reconcileIntervalMicros = reconcileIntervalMicros;
+        this.restored = restored;
+    }
+
+    /**
+     * Takes over the stripes of this node recorded in the placements, leased before a restart of
+     * the node. They are released back to their placements once not used for the reconciliation
+     * interval, also when striping has been disabled in the meantime.
+     */
+    public void restore() {
+        String prefix = host.getId() + LEASE_KEY_SEPARATOR;
+        AuthorizationContext authorizationContext = OperationContext.getAuthorizationContext();
+        QueryTask q = QueryUtil.buildQuery(GroupResourcePlacementState.class, true);
+        QueryUtil.addExpandOption(q);
+
+        List<GroupResourcePlacementState> leased = new ArrayList<>();
+        new ServiceDocumentQuery<>(host, GroupResourcePlacementState.class).query(q, (r) -> {
+            if (r.hasException()) {
+                host.log(Level.WARNING, "Failure restoring the placement stripes: %s",
+                        Utils.toString(r.getException()));
+                return;
+            }
+            if (!r.hasResult()) {
+                restore(leased, prefix, authorizationContext);
+                return;
+            }
+            GroupResourcePlacementState placement = r.getResult();
+            if (placement.leasedInstances != null && placement.leasedInstances.keySet().stream()
+                    .anyMatch((leaseKey) -> leaseKey.startsWith(prefix))) {
+                leased.add(placement);
+            }
+        });
+    }
+
+    private void restore(List<GroupResourcePlacementState> placements, String prefix,
+            AuthorizationContext authorizationContext) {
+        if (placements.isEmpty()) {
+            completeRestore();
+            return;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(placements.size());
+        for (GroupResourcePlacementState placement : placements) {
+            QueryTask q = QueryUtil.buildPropertyQuery(ContainerState.class,
+                    ContainerState.FIELD_NAME_GROUP_RESOURCE_PLACEMENT_LINK,
+                    placement.documentSelfLink);
+            QueryUtil.addCountOption(q);
+            new ServiceDocumentQuery<>(host, ContainerState.class).query(q, (r) -> {
+                if (r.hasException()) {
+                    // the leases are kept in the placement and taken over on the next restart
+                    host.log(Level.WARNING,
+                            "Failure counting the resources of placement %s: %s",
+                            placement.documentSelfLink, Utils.toString(r.getException()));
+                } else {
+                    reconcileLeases(placement, prefix, r.getCount()).forEach(
+                            (memoryLimit, instances) -> restore(placement, memoryLimit,
+                                    instances, authorizationContext));
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    completeRestore();
+                }
+            });
+        }
+    }
+
+    private void restore(GroupResourcePlacementState placement, long memoryLimit,
+            long instances, AuthorizationContext authorizationContext) {
+        host.log(Level.INFO, "Restoring %d leased instances of placement %s (recorded: %d)",
+                instances, placement.documentSelfLink,
+                placement.leasedInstances.get(leaseKey(memoryLimit)));
+        Stripe s = stripes.computeIfAbsent(key(placement.documentSelfLink, memoryLimit),
+                (k) -> new Stripe(placement.documentSelfLink, memoryLimit));
+        synchronized (s) {
+            s.instances += instances;
+            // the record is rewritten, or removed if nothing has been restored, on the next
+            // reconciliation
+            s.recordedInstances = -1;
+            s.lastUsedMicros = Utils.getSystemNowMicrosUtc();
+            s.authorizationContext = authorizationContext;
+        }
+    }
+
+    private void completeRestore() {
+        restored = true;
+        if (!stripes.isEmpty()) {
+            scheduleReconcile();
+        }
+    }
+
+    /**
+     * Returns the instances to restore per memory limit for the leases of the node with the given
+     * lease key prefix recorded in the placement. The recorded leases are limited to the allocated
+     * instances of the placement which are neither used by one of its resources nor leased by
+     * another node, since the instances reserved from a stripe after its lease was last recorded
+     * are still included in the record.
+     */
+    static Map<Long, Long> reconcileLeases(GroupResourcePlacementState placement, String prefix,
+            long resourceCount) {
+        Map<Long, Long> recorded = new TreeMap<>();
+        long otherLeases = 0;
+        for (Map.Entry<String, Long> lease : placement.leasedInstances.entrySet()) {
+            if (lease.getValue() == null || lease.getValue() <= 0) {
+                continue;
+            }
+            if (lease.getKey().startsWith(prefix)) {
+                recorded.put(Long.parseLong(lease.getKey().substring(prefix.length())),
+                        lease.getValue());
+            } else {
+                otherLeases += lease.getValue();
+            }
+        }
+
+        long available = Math.max(0,
+                placement.allocatedInstancesCount - resourceCount - otherLeases);
+        Map<Long, Long> restored = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> lease : recorded.entrySet()) {
+            long instances = Math.min(lease.getValue(), available);
+            available -= instances;
+            restored.put(lease.getKey(), instances);
+        }
+        return restored;
+    }
+
+    /**
+     * Reserves the requested resources from the local stripe of the placement, or with a PATCH to
+     * the placement, which also reserves a new stripe if enabled.
+     */
+    public void reserve(Service sender, String placementLink,
+            ResourcePlacementReservationRequest request,
+            BiConsumer<GroupResourcePlacementState, Throwable> completion) {
+        if (stripeSize <= 0 || !restored) {
+            patch(sender, placementLink, request, completion);
+            return;
+        }
+
+        long memoryLimit = request.memoryLimit != null ? request.memoryLimit : 0;
+        Stripe stripe = stripes.get(key(placementLink, memoryLimit));
+        long leasedInstances = stripeSize;
+        if (stripe != null) {
+            boolean served = false;
+            synchronized (stripe) {
+                if (!stripe.released && stripe.instances >= request.resourceCount) {
+                    stripe.instances -= request.resourceCount;
+                    stripe.lastUsedMicros = Utils.getSystemNowMicrosUtc();
+                    served = true;
+                } else if (!stripe.released) {
+                    leasedInstances += stripe.instances;
+                }
+            }
+            if (served) {
+                getPlacement(sender, placementLink, completion);
+                return;
+            }
+        }
+
+        ResourcePlacementReservationRequest striped = copy(request,
+                request.resourceCount + stripeSize);
+        striped.leaseKey = leaseKey(memoryLimit);
+        striped.leasedInstances = leasedInstances;
+        patch(sender, placementLink, striped, (placement, e) -> {
+            if (e != null) {
+                // not enough capacity for a new stripe, reserve only the requested resources
+                patch(sender, placementLink, request, completion);
+                return;
+            }
+            Stripe s = stripes.computeIfAbsent(key(placementLink, memoryLimit),
+                    (k) -> new Stripe(placementLink, memoryLimit));
+            synchronized (s) {
+                s.instances += stripeSize;
+                s.recordedInstances = striped.leasedInstances;
+                s.lastUsedMicros = Utils.getSystemNowMicrosUtc();
+                s.resourceDescriptionLink = request.resourceDescriptionLink;
+                s.authorizationContext = OperationContext.getAuthorizationContext();
+            }
+            scheduleReconcile();
+            completion.accept(placement, null);
+        });
+    }
+
+    /**
+     * Releases the resources of the request (with negative resource count) to the local stripe of
+     * the placement, or with a PATCH to the placement if there is no stripe to release to.
+     */
+    public void release(Service sender, String placementLink,
+            ResourcePlacementReservationRequest request,
+            BiConsumer<GroupResourcePlacementState, Throwable> completion) {
+        Stripe stripe = stripeSize > 0 && request.memoryLimit != null
+                ? stripes.get(key(placementLink, request.memoryLimit)) : null;
+        if (stripe != null) {
+            boolean served = false;
+            synchronized (stripe) {
+                if (!stripe.released
+                        && stripe.instances - request.resourceCount <= 2 * stripeSize) {
+                    stripe.instances -= request.resourceCount;
+                    stripe.lastUsedMicros = Utils.getSystemNowMicrosUtc();
+                    served = true;
+                }
+            }
+            if (served) {
+                getPlacement(sender, placementLink, completion);
+                return;
+            }
+        }
+
+        patch(sender, placementLink, request, completion);
+    }
+
+    /**
+     * Returns the number of instances leased in the local stripes of the placement.
+     */
+    public long getLeasedInstances(String placementLink) {
+        long count = 0;
+        for (Stripe stripe : stripes.values()) {
+            if (stripe.placementLink.equals(placementLink)) {
+                synchronized (stripe) {
+                    count += stripe.instances;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Releases the stripes not used for the reconciliation interval back to their placements and
+     * records the leased instances of the other ones in their placements, if changed.
+     */
+    void reconcile() {
+        long now = Utils.getSystemNowMicrosUtc();
+        for (Map.Entry<String, Stripe> entry : stripes.entrySet()) {
+            Stripe stripe = entry.getValue();
+            long instances;
+            synchronized (stripe) {
+                if (now - stripe.lastUsedMicros < reconcileIntervalMicros) {
+                    if (stripe.instances != stripe.recordedInstances) {
+                        stripe.recordedInstances = stripe.instances;
+                        updatePlacement(stripe, 0, stripe.instances);
+                    }
+                    continue;
+                }
+                stripes.remove(entry.getKey(), stripe);
+                stripe.released = true;
+                instances = stripe.instances;
+                stripe.instances = 0;
+            }
+            if (instances > 0 || stripe.recordedInstances != 0) {
+                updatePlacement(stripe, -instances, 0);
+            }
+        }
+
+        reconcileScheduled.set(false);
+        if (!stripes.isEmpty()) {
+            scheduleReconcile();
+        }
+    }
+
+    private void updatePlacement(Stripe stripe, long resourceCount, long leasedInstances) {
+        ResourcePlacementReservationRequest request = new ResourcePlacementReservationRequest();
+        request.resourceCount = resourceCount;
+        request.resourceDescriptionLink = stripe.resourceDescriptionLink;
+        request.memoryLimit = stripe.memoryLimit;
+        request.referer = ManagementUriParts.REQUEST_RESERVATION_REMOVAL_TASKS;
+        request.leaseKey = leaseKey(stripe.memoryLimit);
+        request.leasedInstances = leasedInstances;
+
+        host.sendRequest(Operation
+                .createPatch(UriUtils.buildUri(host, stripe.placementLink))
+                .setBody(request)
+                .setReferer(host.getUri())
+                .setAuthorizationContext(stripe.authorizationContext)
+                .setCompletion((o, e) -> {
+                    if (e == null || e instanceof ServiceNotFoundException) {
+                        return;
+                    }
+                    host.log(Level.WARNING,
+                            "Failure updating the leased instances of placement %s: %s",
+                            stripe.placementLink, Utils.toString(e));
+                    // keep the instances leased and retry on the next reconciliation
+                    Stripe s = stripes.computeIfAbsent(
+                            key(stripe.placementLink, stripe.memoryLimit),
+                            (k) -> new Stripe(stripe.placementLink, stripe.memoryLimit));
+                    synchronized (s) {
+                        s.instances -= resourceCount;
+                        s.recordedInstances = -1;
+                        if (s.authorizationContext == null) {
+                            s.resourceDescriptionLink = stripe.resourceDescriptionLink;
+                            s.authorizationContext = stripe.authorizationContext;
+                        }
+                    }
+                    scheduleReconcile();
+                }));
+    }
+
+    private void scheduleReconcile() {
+        if (reconcileScheduled.compareAndSet(false, true)) {
+            host.schedule(this::reconcile, reconcileIntervalMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void getPlacement(Service sender, String placementLink,
+            BiConsumer<GroupResourcePlacementState, Throwable> completion) {
+        sender.sendRequest(Operation
+                .createGet(sender, placementLink)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        completion.accept(null, e);
+                        return;
+                    }
+                    completion.accept(o.getBody(GroupResourcePlacementState.class), null);
+                }));
+    }
+
+    private void patch(Service sender, String placementLink,
+            ResourcePlacementReservationRequest request,
+            BiConsumer<GroupResourcePlacementState, Throwable> completion) {
+        sender.sendRequest(Operation
+                .createPatch(sender, placementLink)
+                .setBody(request)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        completion.accept(null, e);
+                        return;
+                    }
+                    completion.accept(o.getBody(GroupResourcePlacementState.class), null);
+                }));
+    }
+
+    private String leaseKey(long memoryLimit) {
+        return host.getId() + LEASE_KEY_SEPARATOR + memoryLimit;
+    }
+
+    private static ResourcePlacementReservationRequest copy(
+            ResourcePlacementReservationRequest request, long resourceCount) {
+        ResourcePlacementReservationRequest copy = new ResourcePlacementReservationRequest();
+        copy.resourceCount = resourceCount;
+        copy.resourceDescriptionLink = request.resourceDescriptionLink;
+        copy.referer = request.referer;
+        copy.memoryLimit = request.memoryLimit;
+        return copy;
+    }
+
+    private static String key(String placementLink, long memoryLimit) {
+        return placementLink + "|" + memoryLimit;
+    }
+}
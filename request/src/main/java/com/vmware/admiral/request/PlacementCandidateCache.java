@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.compute.ContainerHostService;
+import com.vmware.admiral.compute.ContainerHostUtil;
+import com.vmware.admiral.compute.container.HostContainerAggregates;
+import com.vmware.admiral.compute.container.HostContainerAggregates.HostAggregate;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.Action;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+
+/**
+ * Node local cache of the placement candidates (the powered-on container hosts of a set of
+ * placement zones supporting a given resource type), shared by all host selection tasks on the
+ * node. Entries expire after a short interval to pick up changes of computes owned by other
+ * nodes.
+ *
+ * Changes of the computes owned by the node are followed through a continuous query. Updates
+ * that don't touch the fields the candidates are built from, like the periodic ones of the host
+ * data collection, are ignored. Changes of the fields copied to the candidates drop only the
+ * entries containing the host, while changes that can make a host join or leave a set of
+ * candidates (creation, deletion, power state, placement zone, description or tags) drop all
+ * entries.
+ */
+public class PlacementCandidateCache {
+
+    private static final long EXPIRATION_MICROS = Long.getLong(
+            "com.vmware.admiral.request.placement.candidates.expiration.micros",
+            TimeUnit.SECONDS.toMicros(30));
+
+    private static final String CONTINUOUS_QUERY_NAME = "placement-candidate-cache";
+
+    private static final ConcurrentMap<String, PlacementCandidateCache> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // placement relevant fields of the computes owned by the node, as last seen
+    private final ConcurrentMap<String, PlacementFields> placementFields =
+            new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final HostContainerAggregates aggregates;
+
+    private static class Entry {
+        final Map<String, HostSelection> hostSelectionMap;
+        final long expirationMicros;
+
+        Entry(Map<String, HostSelection> hostSelectionMap, long expirationMicros) {
+            this.hostSelectionMap = hostSelectionMap;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    /**
+     * The fields of a compute the placement candidates are selected by and built from.
+     */
+    private static class PlacementFields {
+        final List<Object> membership;
+        final List<Object> attributes;
+
+        PlacementFields(ComputeState computeState) {
+            Map<String, String> props = computeState.customProperties != null
+                    ? computeState.customProperties : Collections.emptyMap();
+            this.membership = Arrays.asList(computeState.powerState,
+                    computeState.resourcePoolLink, computeState.descriptionLink,
+                    computeState.tagLinks);
+            this.attributes = Arrays.asList(computeState.name,
+                    computeState.tenantLinks,
+                    ContainerHostUtil.getDeclaredContainerHostType(computeState),
+                    props.get(ContainerHostService.CUSTOM_PROPERTY_DEPLOYMENT_POLICY),
+                    props.get(ContainerHostService.DOCKER_HOST_AVAILABLE_MEMORY_PROP_NAME),
+                    props.get(ContainerHostService.DOCKER_HOST_CLUSTER_STORE_PROP_NAME),
+                    props.get(ContainerHostService.DOCKER_HOST_PLUGINS_PROP_NAME));
+        }
+    }
+
+    public static PlacementCandidateCache getInstance(ServiceHost host) {
+        return INSTANCES.computeIfAbsent(host.getId(), (id) -> {
+            PlacementCandidateCache cache = new PlacementCandidateCache(
+                    HostContainerAggregates.getInstance(host));
+            CommonContinuousQueries.subscribeTo(host, CONTINUOUS_QUERY_NAME,
+                    buildContinuousQueryTask(host), cache::onComputeChange);
+            return cache;
+        });
+    }
+
+    PlacementCandidateCache(HostContainerAggregates aggregates) {
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Builds the cache key of the candidates for the given resource type, zone and placement
+     * zones.
+     */
+    public static String buildKey(String resourceType, String zoneId,
+            Collection<String> resourcePoolLinks) {
+        List<String> links = new ArrayList<>(resourcePoolLinks);
+        Collections.sort(links);
+        return String.format("%s|%s|%s", resourceType, zoneId, String.join(",", links));
+    }
+
+    /**
+     * Returns the current generation of the cache, to be passed to {@link #put} for candidates
+     * retrieved after it.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns a copy of the cached candidates, which can be modified by the caller, or
+     * <code>null</code> if there are no valid candidates for the key.
+     */
+    public Map<String, HostSelection> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expirationMicros < Utils.getSystemNowMicrosUtc()) {
+            return null;
+        }
+
+        Map<String, HostSelection> copy = new LinkedHashMap<>(entry.hostSelectionMap.size());
+        entry.hostSelectionMap.forEach((hostLink, hostSelection) -> {
+            HostSelection hs = Utils.clone(hostSelection);
+            HostAggregate aggregate = aggregates.getCached(hostLink);
+            hs.containerCount = aggregate != null ? aggregate.containerCount : null;
+            hs.containerMemoryLimit = aggregate != null ? aggregate.memoryLimit : null;
+            hs.containerCpuShares = aggregate != null ? aggregate.cpuShares : null;
+            copy.put(hostLink, hs);
+        });
+        return copy;
+    }
+
+    /**
+     * Caches the candidates retrieved for the key, unless the cache has been invalidated since
+     * the given generation.
+     */
+    public void put(String key, Map<String, HostSelection> hostSelectionMap,
+            long retrievedGeneration) {
+        if (hostSelectionMap.isEmpty()) {
+            return;
+        }
+        Map<String, HostSelection> snapshot = new LinkedHashMap<>(hostSelectionMap.size());
+        hostSelectionMap.forEach((hostLink, hs) -> snapshot.put(hostLink, Utils.clone(hs)));
+        entries.put(key, new Entry(snapshot,
+                Utils.getSystemNowMicrosUtc() + EXPIRATION_MICROS));
+        if (generation.get() != retrievedGeneration) {
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * Drops the entries containing the given host.
+     */
+    public void invalidate(String hostLink) {
+        generation.incrementAndGet();
+        entries.values().removeIf((entry) -> entry.hostSelectionMap.containsKey(hostLink));
+    }
+
+    private void onComputeChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+
+        for (Object document : queryTask.results.documents.values()) {
+            onComputeChange(Utils.fromJson(document, ComputeState.class));
+        }
+    }
+
+    void onComputeChange(ComputeState computeState) {
+        String hostLink = computeState.documentSelfLink;
+        if (Action.DELETE.name().equals(computeState.documentUpdateAction)) {
+            placementFields.remove(hostLink);
+            invalidateAll();
+            return;
+        }
+
+        PlacementFields fields = new PlacementFields(computeState);
+        PlacementFields previous = placementFields.put(hostLink, fields);
+        if (previous == null || !Objects.equals(previous.membership, fields.membership)) {
+            invalidateAll();
+        } else if (!Objects.equals(previous.attributes, fields.attributes)) {
+            invalidate(hostLink);
+        }
+    }
+
+    private static QueryTask buildContinuousQueryTask(ServiceHost host) {
+        return QueryTask.Builder.create()
+                .addOption(QueryOption.CONTINUOUS)
+                .addOption(QueryOption.EXPAND_CONTENT)
+                .setQuery(Query.Builder.create()
+                        .addKindFieldClause(ComputeState.class)
+                        .addFieldClause(ServiceDocument.FIELD_NAME_OWNER, host.getId())
+                        .build())
+                .build();
+    }
+}
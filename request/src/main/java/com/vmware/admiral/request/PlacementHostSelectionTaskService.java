@@ -23,7 +23,6 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -44,11 +43,14 @@ import com.vmware.admiral.compute.container.CompositeComponentRegistry;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry.ComponentMeta;
 import com.vmware.admiral.compute.container.CompositeDescriptionFactoryService;
 import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
+import com.vmware.admiral.compute.container.HostContainerAggregates;
+import com.vmware.admiral.compute.container.HostContainerAggregates.HostAggregate;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState.SubStage;
 import com.vmware.admiral.request.allocation.filter.AffinityFilters;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelectionFilterException;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilterPipeline;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
 import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
@@ -77,6 +79,9 @@ public class PlacementHostSelectionTaskService
     // cached component description
     private volatile ReservationComponentDescription description;
 
+    // placement candidates retrieved in the CREATED stage
+    private volatile Map<String, HostSelection> candidates;
+
     public static class PlacementHostSelectionTaskState extends
             com.vmware.admiral.service.common.TaskServiceDocument<PlacementHostSelectionTaskState.SubStage> {
 
@@ -113,8 +118,9 @@ public class PlacementHostSelectionTaskService
         public Collection<HostSelection> hostSelections;
 
         /**
-         * HostLink to HostSelection map. It is passed from CREATED to FILTER stage in order to
-         * track result from hosts query.
+         * HostLink to HostSelection map. It was passed from CREATED to FILTER stage in order to
+         * track result from hosts query and is set only by tasks created by older versions. The
+         * candidates are now kept in memory and shared through {@link PlacementCandidateCache}.
          */
         @Since(ReleaseConstants.RELEASE_VERSION_0_9_5)
         @PropertyOptions(usage = { SERVICE_USE, AUTO_MERGE_IF_NOT_NULL }, indexing = STORE_ONLY)
@@ -132,7 +138,10 @@ public class PlacementHostSelectionTaskService
     protected void handleStartedStagePatch(PlacementHostSelectionTaskState state) {
         switch (state.taskSubStage) {
         case CREATED:
-            selectBasedOnDescAndResourcePool(state, description, QUERY_RETRY_COUNT);
+            retrieveCandidates(state, description, (hostSelectionMap) -> {
+                this.candidates = hostSelectionMap;
+                proceedTo(SubStage.FILTER);
+            });
             break;
         case FILTER:
             selection(state, null);
@@ -170,15 +179,47 @@ public class PlacementHostSelectionTaskService
         Map<String, HostSelection> hostSelectionMap;
     }
 
-    private void selectBasedOnDescAndResourcePool(PlacementHostSelectionTaskState state,
-            ReservationComponentDescription desc, int retries) {
+    /**
+     * Retrieves the placement candidates of the task, from the task state (for tasks created by
+     * older versions), the node local {@link PlacementCandidateCache} or by querying the
+     * powered-on container hosts of the placement zones.
+     */
+    private void retrieveCandidates(PlacementHostSelectionTaskState state,
+            ReservationComponentDescription desc,
+            Consumer<Map<String, HostSelection>> callback) {
+        if (state.hostSelectionMap != null) {
+            callback.accept(state.hostSelectionMap);
+            return;
+        }
+        if (candidates != null) {
+            callback.accept(candidates);
+            return;
+        }
         if (desc == null) {
-            getDescription(state,
-                    (contDesc) -> this
-                            .selectBasedOnDescAndResourcePool(state, contDesc, retries));
+            getDescription(state, (contDesc) -> retrieveCandidates(state, contDesc, callback));
+            return;
+        }
+
+        PlacementCandidateCache cache = PlacementCandidateCache.getInstance(getHost());
+        String key = PlacementCandidateCache.buildKey(state.resourceType,
+                desc.getCommonDescription().zoneId, state.resourcePoolLinks);
+        Map<String, HostSelection> cached = cache.get(key);
+        if (cached != null) {
+            callback.accept(cached);
             return;
         }
 
+        long generation = cache.getGeneration();
+        selectBasedOnDescAndResourcePool(state, desc, QUERY_RETRY_COUNT, (hostSelectionMap) -> {
+            cache.put(key, hostSelectionMap, generation);
+            callback.accept(hostSelectionMap);
+        });
+    }
+
+    private void selectBasedOnDescAndResourcePool(PlacementHostSelectionTaskState state,
+            ReservationComponentDescription desc, int retries,
+            Consumer<Map<String, HostSelection>> callback) {
+
         QueryTask q = QueryUtil.buildQuery(ComputeDescription.class, false);
         QueryTask.Query hostTypeClause = new QueryTask.Query()
                 .setTermPropertyName(QuerySpecification.buildCollectionItemName(
@@ -211,14 +252,16 @@ public class PlacementHostSelectionTaskService
                             state.resourceType));
                     return;
                 }
-                proceedComputeSelection(state, desc, computeDescriptionLinks, retries);
+                proceedComputeSelection(state, desc, computeDescriptionLinks, retries,
+                        callback);
             }
         });
     }
 
     private void proceedComputeSelection(PlacementHostSelectionTaskState state,
             ReservationComponentDescription desc,
-            Collection<String> computeDescriptionLinks, int retries) {
+            Collection<String> computeDescriptionLinks, int retries,
+            Consumer<Map<String, HostSelection>> callback) {
 
         ResourcePoolQueryHelper helper = ResourcePoolQueryHelper.createForResourcePools(getHost(),
                 state.resourcePoolLinks);
@@ -240,7 +283,8 @@ public class PlacementHostSelectionTaskService
                                     + " descriptions %s, retrying (%d left)...",
                             state.resourcePoolLinks, computeDescriptionLinks, retries - 1);
                     getHost().schedule(
-                            () -> selectBasedOnDescAndResourcePool(state, desc, retries - 1),
+                            () -> selectBasedOnDescAndResourcePool(state, desc, retries - 1,
+                                    callback),
                             QueryUtil.QUERY_RETRY_INTERVAL_MILLIS,
                             TimeUnit.MILLISECONDS);
                 } else {
@@ -252,11 +296,7 @@ public class PlacementHostSelectionTaskService
                 return;
             }
 
-            Map<String, HostSelection> initHostSelectionMap = buildHostSelectionMap(qr);
-
-            proceedTo(SubStage.FILTER, s -> {
-                s.hostSelectionMap = initHostSelectionMap;
-            });
+            callback.accept(buildHostSelectionMap(qr));
 
         });
     }
@@ -265,6 +305,7 @@ public class PlacementHostSelectionTaskService
         Collection<ComputeState> computes = rpQueryResult.computesByLink.values();
         final Map<String, HostSelection> initHostSelectionMap = new LinkedHashMap<>(
                 computes.size());
+        HostContainerAggregates aggregates = HostContainerAggregates.getInstance(getHost());
         for (ComputeState computeState : computes) {
             final HostSelection hostSelection = new HostSelection();
             hostSelection.hostLink = computeState.documentSelfLink;
@@ -283,6 +324,13 @@ public class PlacementHostSelectionTaskService
             hostSelection.name = computeState.name != null ? computeState.name : "N/A";
             hostSelection.hostType = ContainerHostUtil.getDeclaredContainerHostType(computeState);
 
+            HostAggregate aggregate = aggregates.getCached(computeState.documentSelfLink);
+            if (aggregate != null) {
+                hostSelection.containerCount = aggregate.containerCount;
+                hostSelection.containerMemoryLimit = aggregate.memoryLimit;
+                hostSelection.containerCpuShares = aggregate.cpuShares;
+            }
+
             initHostSelectionMap.put(hostSelection.hostLink, hostSelection);
         }
         return initHostSelectionMap;
@@ -296,8 +344,15 @@ public class PlacementHostSelectionTaskService
             return;
         }
 
+        retrieveCandidates(state, description,
+                (hostSelectionMap) -> selection(state, description, hostSelectionMap));
+    }
+
+    private void selection(final PlacementHostSelectionTaskState state,
+            final ReservationComponentDescription description,
+            final Map<String, HostSelection> candidates) {
         Map<String, HostSelection> filteredByHostType = filterHostsByType(state, description,
-                state.hostSelectionMap);
+                candidates);
 
         Map<String, HostSelection> filteredByMemory = filterHostsByMemory(description,
                 filteredByHostType);
@@ -373,20 +428,19 @@ public class PlacementHostSelectionTaskService
 
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @SuppressWarnings("rawtypes")
     private void filter(final PlacementHostSelectionTaskState state,
             final Map<String, HostSelection> hostSelectionMap,
-            final Queue<HostSelectionFilter> filters) {
+            final Collection<HostSelectionFilter> filters) {
         if (isNoSelection(hostSelectionMap)) {
             failTask(null, new LocalizableValidationException("No suitable host available",
                     "request.placement.compute.missing"));
             return;
-        } else {
-            final HostSelectionFilter filter = filters.poll();
-            if (filter == null) {
-                complete(state, hostSelectionMap);
-            } else {
-                filter.filter(state, hostSelectionMap, (filteredHostSelectionMap, e) -> {
+        }
+
+        new HostSelectionFilterPipeline(getHost(), state, filters,
+                HostSelectionFilterPipeline.hostStatsConsumer(getHost()))
+                .apply(hostSelectionMap, (filteredHostSelectionMap, e) -> {
                     if (e != null) {
                         if (e instanceof HostSelectionFilterException) {
                             failTask("Allocation Filter Error: " + e.getMessage(), null);
@@ -395,10 +449,14 @@ public class PlacementHostSelectionTaskService
                         }
                         return;
                     }
-                    filter(state, filteredHostSelectionMap, filters);
+                    if (isNoSelection(filteredHostSelectionMap)) {
+                        failTask(null, new LocalizableValidationException(
+                                "No suitable host available",
+                                "request.placement.compute.missing"));
+                        return;
+                    }
+                    complete(state, filteredHostSelectionMap);
                 });
-            }
-        }
     }
 
     private void complete(final PlacementHostSelectionTaskState state,
@@ -15,6 +15,7 @@ import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexin
 import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption.REQUIRED;
 import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption.SINGLE_ASSIGNMENT;
 
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
@@ -57,7 +58,7 @@ public class ReservationRemovalTaskService
 
     @Override
     protected void handleStartedStagePatch(ReservationRemovalTaskState state) {
-        getGroupResourcePlacements(state);
+        getResourceDescription(state);
     }
 
     @Override
@@ -68,42 +69,45 @@ public class ReservationRemovalTaskService
         }
     }
 
-    private void getGroupResourcePlacements(ReservationRemovalTaskState state) {
-        logInfo("Retrieving group resource placement: %s", state.groupResourcePlacementLink);
-        sendRequest(Operation.createGet(this, state.groupResourcePlacementLink)
+    private void getResourceDescription(ReservationRemovalTaskState state) {
+        sendRequest(Operation.createGet(this, state.resourceDescriptionLink)
                 .setCompletion((o, e) -> {
+                    Long memoryLimit;
                     if (e != null) {
-                        failTask("Failure retrieving group placement", e);
-                        return;
+                        // let the placement handle the missing description
+                        logWarning("Failure retrieving resource description %s: %s",
+                                state.resourceDescriptionLink, e.getMessage());
+                        memoryLimit = null;
+                    } else {
+                        memoryLimit = o.getBody(ContainerDescription.class).memoryLimit;
+                        if (memoryLimit == null) {
+                            memoryLimit = 0L;
+                        }
                     }
-                    GroupResourcePlacementState groupPlacementState = o
-                            .getBody(GroupResourcePlacementState.class);
-                    releaseResourcePlacement(state, groupPlacementState);
+                    releaseResourcePlacement(state, memoryLimit);
                 }));
-
     }
 
-    private void releaseResourcePlacement(ReservationRemovalTaskState state,
-            GroupResourcePlacementState groupPlacementState) {
+    private void releaseResourcePlacement(ReservationRemovalTaskState state, Long memoryLimit) {
 
         ResourcePlacementReservationRequest reservationRequest =
                 new ResourcePlacementReservationRequest();
         reservationRequest.resourceCount = -state.resourceCount;
         reservationRequest.resourceDescriptionLink = state.resourceDescriptionLink;
         reservationRequest.referer = getSelfLink();
+        reservationRequest.memoryLimit = memoryLimit;
 
         logInfo("Releasing placement instances: %d for descLink: %s and groupPlacementId: %s",
                 reservationRequest.resourceCount, reservationRequest.resourceDescriptionLink,
-                Service.getId(groupPlacementState.documentSelfLink));
+                Service.getId(state.groupResourcePlacementLink));
 
-        sendRequest(Operation.createPatch(this, groupPlacementState.documentSelfLink)
-                .setBody(reservationRequest)
-                .setCompletion((o, e) -> {
+        GroupResourcePlacementStripes.getInstance(getHost()).release(this,
+                state.groupResourcePlacementLink, reservationRequest, (placement, e) -> {
                     if (e != null) {
                         failTask("Failure releasing group placement", e);
                         return;
                     }
                     complete();
-                }));
+                });
     }
 }
@@ -507,19 +507,25 @@ public class ReservationTaskService
         // TODO: implement more sophisticated algorithm to pick the right group placement based on
         // availability and current allocation of resources.
 
+        if (description == null) {
+            getContainerDescription(state.resourceDescriptionLink, (desc) -> makeReservation(
+                    state, placementLink, resourcePoolsPerGroupPlacementLinks));
+            return;
+        }
+
         ResourcePlacementReservationRequest reservationRequest = new ResourcePlacementReservationRequest();
         reservationRequest.resourceCount = state.resourceCount;
         reservationRequest.resourceDescriptionLink = state.resourceDescriptionLink;
         reservationRequest.referer = getSelfLink();
+        Long memoryLimit = description.getCommonDescription().memoryLimit;
+        reservationRequest.memoryLimit = memoryLimit != null ? memoryLimit : 0L;
 
         logInfo("Reserving instances: %d for descLink: %s and groupPlacementId: %s",
                 reservationRequest.resourceCount, reservationRequest.resourceDescriptionLink,
                 Service.getId(placementLink));
 
-        sendRequest(Operation
-                .createPatch(this, placementLink)
-                .setBody(reservationRequest)
-                .setCompletion((o, e) -> {
+        GroupResourcePlacementStripes.getInstance(getHost()).reserve(this, placementLink,
+                reservationRequest, (placement, e) -> {
                     if (e != null) {
                         logWarning("Failure reserving group placement: %s. Retrying with the next"
                                 + " one...", e.getMessage());
@@ -527,8 +533,6 @@ public class ReservationTaskService
                         return;
                     }
 
-                    GroupResourcePlacementState placement = o
-                            .getBody(GroupResourcePlacementState.class);
                     complete(s -> {
                         s.customProperties = mergeCustomProperties(state.customProperties,
                                 placement.customProperties);
@@ -536,7 +540,7 @@ public class ReservationTaskService
                         s.resourcePoolsPerGroupPlacementLinks =
                                 state.resourcePoolsPerGroupPlacementLinks;
                     });
-                }));
+                });
     }
 
     private void getContainerDescription(String resourceDescriptionLink,
@@ -31,6 +31,7 @@ public abstract class BaseAffinityHostFilter
     protected final ServiceHost host;
     protected final String affinityPropertyName;
     protected Collection<String> affinityNames;
+    protected ContextContainersPrefetch contextContainers;
 
     protected BaseAffinityHostFilter(ServiceHost host, String affinityPropertyName) {
         this.host = host;
@@ -54,6 +55,14 @@ public abstract class BaseAffinityHostFilter
         findContainerDescriptions(state, hostSelectionMap, callback, getDescQuery());
     }
 
+    /**
+     * Sets the containers of the request context shared by the filters of a
+     * {@link HostSelectionFilterPipeline}, used instead of querying them in this filter.
+     */
+    public void setContextContainers(ContextContainersPrefetch contextContainers) {
+        this.contextContainers = contextContainers;
+    }
+
     public Collection<String> getAffinity() {
         if (affinityNames == null) {
             affinityNames = getAffinityConstraints().keySet();
@@ -119,6 +128,30 @@ public abstract class BaseAffinityHostFilter
             final Map<String, HostSelection> initHostSelectionMap,
             final Map<String, DescName> containerDescLinksWithNames,
             final HostSelectionFilterCompletion callback) {
+        if (contextContainers != null) {
+            contextContainers.get((containers, e) -> {
+                if (e != null) {
+                    host.log(
+                            Level.WARNING,
+                            "Exception while selecting containers with contextId [%s]. Error: [%s]",
+                            state.contextId, e.getMessage());
+                    callback.complete(null, e);
+                    return;
+                }
+                final Map<String, HostSelection> filteredHostSelectionMap = new HashMap<>();
+                for (ContainerState container : containers) {
+                    if (containerDescLinksWithNames.containsKey(container.descriptionLink)
+                            && initHostSelectionMap.containsKey(container.parentLink)) {
+                        addContainer(container, initHostSelectionMap, filteredHostSelectionMap,
+                                containerDescLinksWithNames);
+                    }
+                }
+                completeFindContainers(state, initHostSelectionMap, filteredHostSelectionMap,
+                        callback);
+            });
+            return;
+        }
+
         QueryTask q = QueryUtil.buildPropertyQuery(ContainerState.class,
                 ContainerState.FIELD_NAME_COMPOSITE_COMPONENT_LINK, UriUtils.buildUriPath(
                         CompositeComponentFactoryService.SELF_LINK, state.contextId));
@@ -144,31 +177,42 @@ public abstract class BaseAffinityHostFilter
                                         state.contextId, r.getException().getMessage());
                                 callback.complete(null, r.getException());
                             } else if (r.hasResult()) {
-                                final HostSelection hostSelection = initHostSelectionMap
-                                        .get(r.getResult().parentLink);
-                                filteredHostSelectionMap.put(r.getResult().parentLink,
-                                        hostSelection);
-                                final DescName descName = containerDescLinksWithNames
-                                        .get(r.getResult().descriptionLink);
-                                DescName newDescName = new DescName(descName);
-                                newDescName.addResourceNames(r.getResult().names);
-                                hostSelection.addDesc(newDescName);
+                                addContainer(r.getResult(), initHostSelectionMap,
+                                        filteredHostSelectionMap, containerDescLinksWithNames);
                             } else {
-                                try {
-                                    final Map<String, HostSelection> hostSelectionMap =
-                                            applyAffinityConstraints(state,
-                                                    initHostSelectionMap, filteredHostSelectionMap);
-                                    host.log(Level.INFO, "Selected host links for %s: %s - %s",
-                                            affinityPropertyName, getAffinity(),
-                                            hostSelectionMap.keySet());
-                                    callback.complete(hostSelectionMap, null);
-                                } catch (Throwable e) {
-                                    callback.complete(null, e);
-                                }
+                                completeFindContainers(state, initHostSelectionMap,
+                                        filteredHostSelectionMap, callback);
                             }
                         });
     }
 
+    private void addContainer(final ContainerState container,
+            final Map<String, HostSelection> initHostSelectionMap,
+            final Map<String, HostSelection> filteredHostSelectionMap,
+            final Map<String, DescName> containerDescLinksWithNames) {
+        final HostSelection hostSelection = initHostSelectionMap.get(container.parentLink);
+        filteredHostSelectionMap.put(container.parentLink, hostSelection);
+        final DescName descName = containerDescLinksWithNames.get(container.descriptionLink);
+        DescName newDescName = new DescName(descName);
+        newDescName.addResourceNames(container.names);
+        hostSelection.addDesc(newDescName);
+    }
+
+    private void completeFindContainers(final PlacementHostSelectionTaskState state,
+            final Map<String, HostSelection> initHostSelectionMap,
+            final Map<String, HostSelection> filteredHostSelectionMap,
+            final HostSelectionFilterCompletion callback) {
+        try {
+            final Map<String, HostSelection> hostSelectionMap = applyAffinityConstraints(state,
+                    initHostSelectionMap, filteredHostSelectionMap);
+            host.log(Level.INFO, "Selected host links for %s: %s - %s",
+                    affinityPropertyName, getAffinity(), hostSelectionMap.keySet());
+            callback.complete(hostSelectionMap, null);
+        } catch (Throwable e) {
+            callback.complete(null, e);
+        }
+    }
+
     protected Map<String, HostSelection> applyAffinityConstraints(
             final PlacementHostSelectionTaskState state,
             final Map<String, HostSelection> initHostSelectionMap,
@@ -13,6 +13,7 @@ package com.vmware.admiral.request.allocation.filter;
 
 import java.net.URI;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -144,9 +145,12 @@ public class BinpackAffinityHostFilter
         Map<String, HostSelection> result = new LinkedHashMap<>();
         Map<String, Long> sortedMap = new LinkedHashMap<>();
 
-        // Sort map ascending based on available memory.
+        // Sort map ascending based on available memory. Hosts with the same available memory
+        // (e.g. not reported yet) are ordered by the memory limits of their containers.
         dockerHostToMemory.entrySet().stream()
-                .sorted(Map.Entry.<String, Long> comparingByValue())
+                .sorted(Map.Entry.<String, Long> comparingByValue()
+                        .thenComparing(e -> containerMemoryLimit(hostSelectionMap, e.getKey()),
+                                Comparator.reverseOrder()))
                 .forEachOrdered(x -> sortedMap.put(x.getKey(), x.getValue()));
 
         // Traverse trough sorted hosts to memory map and find first max loaded which has at least 3
@@ -164,4 +168,11 @@ public class BinpackAffinityHostFilter
         result.put(mostLoadedHost, hostSelectionMap.get(mostLoadedHost));
         callback.complete(result, null);
     }
+
+    private static long containerMemoryLimit(Map<String, HostSelection> hostSelectionMap,
+            String hostLink) {
+        HostSelection hostSelection = hostSelectionMap.get(hostLink);
+        return hostSelection == null || hostSelection.containerMemoryLimit == null ? 0
+                : hostSelection.containerMemoryLimit;
+    }
 }
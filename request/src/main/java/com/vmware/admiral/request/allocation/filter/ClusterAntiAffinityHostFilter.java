@@ -64,6 +64,12 @@ public class ClusterAntiAffinityHostFilter
         return (desc._cluster != null) && (desc._cluster > 1);
     }
 
+    @Override
+    public boolean isApplicable(PlacementHostSelectionTaskState state) {
+        return isActive() || state.resourceCount > 1
+                || state.getCustomProperty(RequestUtils.CLUSTERING_OPERATION_CUSTOM_PROP) != null;
+    }
+
     @Override
     public Map<String, AffinityConstraint> getAffinityConstraints() {
         if (!isActive()) {
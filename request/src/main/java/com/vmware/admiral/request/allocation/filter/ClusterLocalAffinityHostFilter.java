@@ -69,6 +69,12 @@ public class ClusterLocalAffinityHostFilter
                 && (volumeNames != null && volumeNames.size() > 0);
     }
 
+    @Override
+    public boolean isApplicable(PlacementHostSelectionTaskState state) {
+        // volumes are kept local to the cluster hosts even if the container is not clustered
+        return volumeNames != null && !volumeNames.isEmpty();
+    }
+
     @Override
     public Map<String, AffinityConstraint> getAffinityConstraints() {
         return Collections.emptyMap();
@@ -673,6 +673,12 @@ public class ContainerToNetworkAffinityHostFilter
         return networks != null && networks.size() > 0 || networkMode != null;
     }
 
+    @Override
+    public boolean isApplicable(PlacementHostSelectionTaskState state) {
+        // the selection is always sorted to return consistent results
+        return true;
+    }
+
     @Override
     public Map<String, AffinityConstraint> getAffinityConstraints() {
         return isActive() ? networks.entrySet().stream().collect(
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.allocation.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.container.CompositeComponentFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.services.common.QueryTask;
+
+/**
+ * The containers of a request context placed on the candidate hosts of a host selection, shared
+ * by the affinity filters of a {@link HostSelectionFilterPipeline}. The containers are loaded with
+ * a single query when first requested, instead of a query per affinity filter.
+ */
+public class ContextContainersPrefetch {
+
+    private final ServiceHost host;
+    private final String contextId;
+    private final Collection<String> hostLinks;
+
+    private List<ContainerState> containers;
+    private Throwable failure;
+    private List<BiConsumer<List<ContainerState>, Throwable>> pending;
+
+    public ContextContainersPrefetch(ServiceHost host, String contextId,
+            Collection<String> hostLinks) {
+        this.host = host;
+        this.contextId = contextId;
+        this.hostLinks = new ArrayList<>(hostLinks);
+    }
+
+    /**
+     * Passes the containers of the context to the consumer, loading them on the first call.
+     */
+    public void get(BiConsumer<List<ContainerState>, Throwable> consumer) {
+        boolean load = false;
+        List<ContainerState> loaded;
+        Throwable e;
+        synchronized (this) {
+            loaded = containers;
+            e = failure;
+            if (loaded == null && e == null) {
+                load = pending == null;
+                if (load) {
+                    pending = new ArrayList<>();
+                }
+                pending.add(consumer);
+            }
+        }
+
+        if (load) {
+            load();
+        } else if (loaded != null || e != null) {
+            consumer.accept(loaded, e);
+        }
+    }
+
+    private void load() {
+        QueryTask q = QueryUtil.buildPropertyQuery(ContainerState.class,
+                ContainerState.FIELD_NAME_COMPOSITE_COMPONENT_LINK, UriUtils.buildUriPath(
+                        CompositeComponentFactoryService.SELF_LINK, contextId));
+        q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
+        QueryUtil.addExpandOption(q);
+        QueryUtil.addListValueClause(q, ContainerState.FIELD_NAME_PARENT_LINK, hostLinks);
+
+        List<ContainerState> result = new ArrayList<>();
+        new ServiceDocumentQuery<>(host, ContainerState.class).query(q, (r) -> {
+            if (r.hasException()) {
+                complete(null, r.getException());
+            } else if (r.hasResult()) {
+                result.add(r.getResult());
+            } else {
+                complete(Collections.unmodifiableList(result), null);
+            }
+        });
+    }
+
+    private void complete(List<ContainerState> result, Throwable e) {
+        List<BiConsumer<List<ContainerState>, Throwable>> consumers;
+        synchronized (this) {
+            containers = result;
+            failure = e;
+            consumers = pending;
+            pending = null;
+        }
+        consumers.forEach((c) -> c.accept(result, e));
+    }
+}
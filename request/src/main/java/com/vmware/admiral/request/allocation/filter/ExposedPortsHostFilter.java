@@ -113,6 +113,11 @@ public class ExposedPortsHostFilter
         return !descExposedPorts.isEmpty();
     }
 
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
+
     @Override
     public Map<String, AffinityConstraint> getAffinityConstraints() {
         return Collections.emptyMap();
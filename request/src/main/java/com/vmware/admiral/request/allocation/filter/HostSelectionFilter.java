@@ -40,6 +40,29 @@ public interface HostSelectionFilter<T> extends AffinityFilter {
     void filter(T state, Map<String, HostSelection> hostSelectionMap,
             HostSelectionFilterCompletion callback);
 
+    /**
+     * Whether the filter has to be applied for the given task. Filters which are not applicable
+     * are skipped by the {@link HostSelectionFilterPipeline}. By default only active filters are
+     * applied.
+     */
+    default boolean isApplicable(T state) {
+        return isActive();
+    }
+
+    /**
+     * Whether the filter only removes hosts based on hard constraints evaluated per host,
+     * independently of the other hosts in the selection and without modifying the
+     * {@link HostSelection}s. Adjacent independent filters are applied concurrently by the
+     * {@link HostSelectionFilterPipeline}.
+     *
+     * The affinity filters are not independent: they add the descriptions of the matched
+     * containers to the selections, and most of them fall back to the whole selection when no
+     * host matches, which depends on the hosts left by the previous filters.
+     */
+    default boolean isIndependent() {
+        return false;
+    }
+
     /**
      * Completion callback interface used when the filter is completed.
      */
@@ -55,6 +78,12 @@ public interface HostSelectionFilter<T> extends AffinityFilter {
         public Collection<String> resourcePoolLinks;
         public Map<String, DescName> descNames;
         public Long availableMemory;
+        /** Number of containers on the host, if known. */
+        public Long containerCount;
+        /** Sum of the memory limits of the containers on the host, if known. */
+        public Long containerMemoryLimit;
+        /** Sum of the CPU shares of the containers on the host, if known. */
+        public Long containerCpuShares;
         public String deploymentPolicyLink;
         public String plugins;
         public String name;
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.allocation.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjDoubleConsumer;
+
+import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelectionFilterCompletion;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.ServiceStatUtils;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
+
+/**
+ * Applies the host selection filters of a placement in order. Filters which are not applicable
+ * for the task are skipped upfront, adjacent independent filters are applied concurrently on the
+ * same selection and their results intersected, and the remaining filters are skipped as soon as
+ * the selection becomes empty. The affinity filters share the containers of the request context
+ * through a {@link ContextContainersPrefetch} and the latency of each applied filter is reported
+ * to the given stats consumer, usually the one returned by {@link #hostStatsConsumer(ServiceHost)}.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class HostSelectionFilterPipeline {
+    public static final String STAT_NAME_PREFIX_FILTER_LATENCY_MICROS =
+            "placementFilterLatencyMicros-";
+    public static final String STAT_NAME_SKIPPED_FILTERS_COUNT = "placementSkippedFiltersCount";
+
+    private static final EnumSet<AggregationType> AGGREGATION_TYPE_AVG_MAX =
+            EnumSet.of(AggregationType.AVG, AggregationType.MAX);
+
+    private final ServiceHost host;
+    private final PlacementHostSelectionTaskState state;
+    private final ObjDoubleConsumer<String> statsConsumer;
+    private final List<List<HostSelectionFilter>> stages = new ArrayList<>();
+    private final List<BaseAffinityHostFilter> affinityFilters = new ArrayList<>();
+    private int skippedFiltersCount;
+
+    public HostSelectionFilterPipeline(ServiceHost host, PlacementHostSelectionTaskState state,
+            Collection<HostSelectionFilter> filters, ObjDoubleConsumer<String> statsConsumer) {
+        this.host = host;
+        this.state = state;
+        this.statsConsumer = statsConsumer;
+
+        List<HostSelectionFilter> independent = null;
+        for (HostSelectionFilter filter : filters) {
+            if (!filter.isApplicable(state)) {
+                skippedFiltersCount++;
+                continue;
+            }
+            if (filter instanceof BaseAffinityHostFilter) {
+                affinityFilters.add((BaseAffinityHostFilter) filter);
+            }
+            if (!filter.isIndependent()) {
+                independent = null;
+                List<HostSelectionFilter> stage = new ArrayList<>(1);
+                stage.add(filter);
+                stages.add(stage);
+            } else if (independent == null) {
+                independent = new ArrayList<>();
+                independent.add(filter);
+                stages.add(independent);
+            } else {
+                independent.add(filter);
+            }
+        }
+    }
+
+    /**
+     * Returns a stats consumer recording the stats of the pipelines in hourly time series of the
+     * management service of the host, since the placement tasks applying the filters are short
+     * lived.
+     */
+    public static ObjDoubleConsumer<String> hostStatsConsumer(ServiceHost host) {
+        return (name, value) -> {
+            Service managementService = host.getManagementService();
+            if (managementService == null) {
+                return;
+            }
+            ServiceStat stat = ServiceStatUtils.getOrCreateHourlyTimeSeriesStat(
+                    managementService, name, AGGREGATION_TYPE_AVG_MAX);
+            managementService.setStat(stat, value);
+        };
+    }
+
+    /**
+     * Applies the filters on the given selection and completes the callback with the filtered
+     * selection, which is empty or <code>null</code> if no host matched the filters.
+     */
+    public void apply(Map<String, HostSelection> hostSelectionMap,
+            HostSelectionFilterCompletion callback) {
+        statsConsumer.accept(STAT_NAME_SKIPPED_FILTERS_COUNT, skippedFiltersCount);
+
+        if (affinityFilters.size() > 1 && hostSelectionMap != null && state.contextId != null) {
+            ContextContainersPrefetch contextContainers = new ContextContainersPrefetch(host,
+                    state.contextId, hostSelectionMap.keySet());
+            affinityFilters.forEach((f) -> f.setContextContainers(contextContainers));
+        }
+
+        apply(0, hostSelectionMap, callback);
+    }
+
+    /**
+     * Returns the number of stages in which the applicable filters are applied.
+     */
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    private void apply(int stageIndex, Map<String, HostSelection> hostSelectionMap,
+            HostSelectionFilterCompletion callback) {
+        if (hostSelectionMap == null || hostSelectionMap.isEmpty()
+                || stageIndex >= stages.size()) {
+            callback.complete(hostSelectionMap, null);
+            return;
+        }
+
+        List<HostSelectionFilter> stage = stages.get(stageIndex);
+        if (stage.size() == 1) {
+            apply(stage.get(0), hostSelectionMap, (filtered, e) -> {
+                if (e != null) {
+                    callback.complete(null, e);
+                    return;
+                }
+                apply(stageIndex + 1, filtered, callback);
+            });
+            return;
+        }
+
+        AtomicReferenceArray<Map<String, HostSelection>> results = new AtomicReferenceArray<>(
+                stage.size());
+        AtomicInteger remaining = new AtomicInteger(stage.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        for (int i = 0; i < stage.size(); i++) {
+            int index = i;
+            apply(stage.get(i), new LinkedHashMap<>(hostSelectionMap), (filtered, e) -> {
+                if (e != null) {
+                    if (failed.compareAndSet(false, true)) {
+                        callback.complete(null, e);
+                    }
+                    return;
+                }
+                results.set(index, filtered);
+                if (remaining.decrementAndGet() == 0) {
+                    Map<String, HostSelection> intersection = new LinkedHashMap<>(
+                            hostSelectionMap);
+                    for (int j = 0; j < results.length(); j++) {
+                        Map<String, HostSelection> result = results.get(j);
+                        if (result == null) {
+                            intersection.clear();
+                        } else {
+                            intersection.keySet().retainAll(result.keySet());
+                        }
+                    }
+                    apply(stageIndex + 1, intersection, callback);
+                }
+            });
+        }
+    }
+
+    private void apply(HostSelectionFilter filter, Map<String, HostSelection> hostSelectionMap,
+            HostSelectionFilterCompletion callback) {
+        long startNanos = System.nanoTime();
+        filter.filter(state, hostSelectionMap, (filtered, e) -> {
+            statsConsumer.accept(
+                    STAT_NAME_PREFIX_FILTER_LATENCY_MICROS + filter.getClass().getSimpleName(),
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+            callback.complete(filtered, e);
+        });
+    }
+}
@@ -156,6 +156,12 @@ public class ServiceAffinityHostFilter extends BaseAffinityHostFilter {
         return !getAffinityConstraints().isEmpty();
     }
 
+    @Override
+    public boolean isApplicable(PlacementHostSelectionTaskState state) {
+        return isActive()
+                || state.getCustomProperty(RequestUtils.CLUSTERING_OPERATION_CUSTOM_PROP) != null;
+    }
+
     @Override
     public Map<String, AffinityConstraint> getAffinityConstraints() {
         if (affinityConstraints == null) {
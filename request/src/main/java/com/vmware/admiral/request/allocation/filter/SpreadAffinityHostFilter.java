@@ -19,15 +19,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 
-import com.vmware.admiral.common.util.QueryUtil;
-import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService.ElasticPlacementZoneConfigurationState;
 import com.vmware.admiral.compute.ElasticPlacementZoneService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
-import com.vmware.admiral.compute.container.ContainerService.ContainerState;
-
+import com.vmware.admiral.compute.container.HostContainerAggregates;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
 import com.vmware.admiral.request.ReservationTaskFactoryService;
@@ -35,7 +33,6 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
-import com.vmware.xenon.services.common.QueryTask;
 
 /**
 *
@@ -125,30 +122,32 @@ public class SpreadAffinityHostFilter implements
             Map<String, HostSelection> hostSelectionMap,
             HostSelectionFilterCompletion callback) {
 
-        QueryTask.Query.Builder queryBuilder = QueryTask.Query.Builder.create()
-                .addKindFieldClause(ContainerState.class)
-                .addInClause(ContainerState.FIELD_NAME_PARENT_LINK, hostSelectionMap.keySet());
-
-        QueryTask q = QueryTask.Builder.create().setQuery(queryBuilder.build()).build();
-        q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
-        QueryUtil.addExpandOption(q);
+        List<String> missing = hostSelectionMap.values().stream()
+                .filter(hs -> hs.containerCount == null)
+                .map(hs -> hs.hostLink)
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            completeFilter(hostSelectionMap, callback);
+            return;
+        }
 
-        new ServiceDocumentQuery<>(host, ContainerState.class).query(q, (r) -> {
-            if (r.hasException()) {
+        HostContainerAggregates.getInstance(host).retrieve(host, missing, (aggregates, ex) -> {
+            if (ex != null) {
                 host.log(Level.WARNING,
                         "Exception while quering containers during 'Spread' filtering."
                                 + "Error: [%s]",
-                        r.getException().getMessage());
-                callback.complete(null, r.getException());
+                        ex.getMessage());
+                callback.complete(null, ex);
                 return;
-            } else if (r.hasResult()) {
-                HostSelection hostSelection = hostSelectionMap
-                        .get(r.getResult().parentLink);
-                hostSelection.resourceCount += 1;
-            } else {
-                // Return the host with minimum number of containers.
-                completeFilter(hostSelectionMap, callback);
             }
+            aggregates.forEach((hostLink, aggregate) -> {
+                HostSelection hostSelection = hostSelectionMap.get(hostLink);
+                hostSelection.containerCount = aggregate.containerCount;
+                hostSelection.containerMemoryLimit = aggregate.memoryLimit;
+                hostSelection.containerCpuShares = aggregate.cpuShares;
+            });
+            // Return the host with minimum number of containers.
+            completeFilter(hostSelectionMap, callback);
         });
     }
 
@@ -158,7 +157,7 @@ public class SpreadAffinityHostFilter implements
         // Sort hosts by number of resources.
         List<HostSelection> hostSelections = new ArrayList<>(hostSelectionMap.values());
         // i.e. hosts [A(5), B(3), C(9)] -> [B(3), A(5), C(9)]
-        hostSelections.sort(Comparator.comparing(h -> h.resourceCount));
+        hostSelections.sort(Comparator.comparing(h -> h.containerCount));
 
         // Host with smallest number of containers is the first element.
         HostSelection mostLoadedHost = hostSelections.get(0);
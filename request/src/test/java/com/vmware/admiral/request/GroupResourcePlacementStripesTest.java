@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
+import com.vmware.admiral.request.util.TestRequestStateFactory;
+import com.vmware.xenon.common.StatelessService;
+
+public class GroupResourcePlacementStripesTest extends RequestBaseTest {
+
+    @Test
+    public void testReservationsAreServedFromStripe() throws Throwable {
+        GroupResourcePlacementState placement = doPost(TestRequestStateFactory
+                .createGroupResourcePlacementState(), GroupResourcePlacementService.FACTORY_LINK);
+        StatelessService sender = new StatelessService();
+        host.startServiceAndWait(sender, "/test-stripes-" + UUID.randomUUID(), null);
+
+        GroupResourcePlacementStripes stripes = new GroupResourcePlacementStripes(host, 3,
+                TimeUnit.SECONDS.toMicros(5));
+
+        // the first reservation reserves the requested instances and a new stripe
+        reserve(stripes, sender, placement.documentSelfLink, 2);
+        assertEquals(5, getAllocatedInstances(placement.documentSelfLink));
+        assertEquals(3, stripes.getLeasedInstances(placement.documentSelfLink));
+        assertEquals(Long.valueOf(3), getRecordedLease(placement.documentSelfLink));
+
+        // the next ones are served from the stripe
+        reserve(stripes, sender, placement.documentSelfLink, 2);
+        assertEquals(5, getAllocatedInstances(placement.documentSelfLink));
+        assertEquals(1, stripes.getLeasedInstances(placement.documentSelfLink));
+
+        reserve(stripes, sender, placement.documentSelfLink, -3);
+        assertEquals(5, getAllocatedInstances(placement.documentSelfLink));
+        assertEquals(4, stripes.getLeasedInstances(placement.documentSelfLink));
+
+        // idle stripes are released back to the placement
+        waitFor(() -> getAllocatedInstances(placement.documentSelfLink) == 1);
+        assertEquals(0, stripes.getLeasedInstances(placement.documentSelfLink));
+        assertNull(getRecordedLease(placement.documentSelfLink));
+    }
+
+    @Test
+    public void testLocalReservationReturnsCurrentPlacement() throws Throwable {
+        GroupResourcePlacementState placement = doPost(TestRequestStateFactory
+                .createGroupResourcePlacementState(), GroupResourcePlacementService.FACTORY_LINK);
+        StatelessService sender = new StatelessService();
+        host.startServiceAndWait(sender, "/test-stripes-" + UUID.randomUUID(), null);
+
+        GroupResourcePlacementStripes stripes = new GroupResourcePlacementStripes(host, 3,
+                TimeUnit.SECONDS.toMicros(5));
+        reserve(stripes, sender, placement.documentSelfLink, 1);
+
+        // updated after the stripe was reserved
+        placement = getDocument(GroupResourcePlacementState.class,
+                placement.documentSelfLink);
+        placement.name = "updated-" + placement.name;
+        doPut(placement);
+
+        GroupResourcePlacementState reserved = reserve(stripes, sender,
+                placement.documentSelfLink, 1);
+        assertEquals(placement.name, reserved.name);
+    }
+
+    @Test
+    public void testLeasesAreRestored() throws Throwable {
+        GroupResourcePlacementState placement = doPost(TestRequestStateFactory
+                .createGroupResourcePlacementState(), GroupResourcePlacementService.FACTORY_LINK);
+        StatelessService sender = new StatelessService();
+        host.startServiceAndWait(sender, "/test-stripes-" + UUID.randomUUID(), null);
+
+        // leased by this node before a restart
+        ResourcePlacementReservationRequest lease = new ResourcePlacementReservationRequest();
+        lease.resourceCount = 3;
+        lease.memoryLimit = 0L;
+        lease.referer = ManagementUriParts.REQUEST_RESERVATION_TASKS;
+        lease.leaseKey = host.getId() + "|0";
+        lease.leasedInstances = 3L;
+        doPatch(lease, GroupResourcePlacementState.class, placement.documentSelfLink);
+
+        GroupResourcePlacementStripes stripes = new GroupResourcePlacementStripes(host, 3,
+                TimeUnit.SECONDS.toMicros(5));
+        stripes.restore();
+        waitFor(() -> stripes.getLeasedInstances(placement.documentSelfLink) == 3);
+
+        reserve(stripes, sender, placement.documentSelfLink, 2);
+        assertEquals(3, getAllocatedInstances(placement.documentSelfLink));
+        assertEquals(1, stripes.getLeasedInstances(placement.documentSelfLink));
+
+        // the restored stripe is released once idle
+        waitFor(() -> getAllocatedInstances(placement.documentSelfLink) == 2);
+        assertNull(getRecordedLease(placement.documentSelfLink));
+    }
+
+    @Test
+    public void testLeasesAreReconciledWithResourcesAfterCrash() throws Throwable {
+        GroupResourcePlacementState placement = doPost(TestRequestStateFactory
+                .createGroupResourcePlacementState(), GroupResourcePlacementService.FACTORY_LINK);
+
+        // leased by this node before a crash
+        ResourcePlacementReservationRequest lease = new ResourcePlacementReservationRequest();
+        lease.resourceCount = 3;
+        lease.memoryLimit = 0L;
+        lease.referer = ManagementUriParts.REQUEST_RESERVATION_TASKS;
+        lease.leaseKey = host.getId() + "|0";
+        lease.leasedInstances = 3L;
+        doPatch(lease, GroupResourcePlacementState.class, placement.documentSelfLink);
+
+        // two of the leased instances were reserved from the stripe and used, but the lease was
+        // not recorded again before the crash
+        for (int i = 0; i < 2; i++) {
+            ContainerState container = TestRequestStateFactory.createContainer();
+            container.groupResourcePlacementLink = placement.documentSelfLink;
+            doPost(container, ContainerFactoryService.SELF_LINK);
+        }
+
+        GroupResourcePlacementStripes stripes = new GroupResourcePlacementStripes(host, 3,
+                TimeUnit.SECONDS.toMicros(5));
+        stripes.restore();
+        waitFor(() -> stripes.getLeasedInstances(placement.documentSelfLink) == 1);
+
+        // only the instance not used by a resource is released back
+        waitFor(() -> getRecordedLease(placement.documentSelfLink) == null);
+        assertEquals(2, getAllocatedInstances(placement.documentSelfLink));
+        assertEquals(0, stripes.getLeasedInstances(placement.documentSelfLink));
+    }
+
+    @Test
+    public void testReconcileLeases() {
+        String prefix = "node-a|";
+        GroupResourcePlacementState placement = new GroupResourcePlacementState();
+        placement.leasedInstances = new HashMap<>();
+        placement.leasedInstances.put(prefix + "0", 4L);
+        placement.leasedInstances.put(prefix + "1024", 3L);
+        placement.leasedInstances.put("node-b|0", 2L);
+        placement.allocatedInstancesCount = 15;
+
+        // all recorded leases are backed by allocated instances
+        Map<Long, Long> restored = GroupResourcePlacementStripes.reconcileLeases(placement,
+                prefix, 6);
+        assertEquals(Long.valueOf(4), restored.get(0L));
+        assertEquals(Long.valueOf(3), restored.get(1024L));
+
+        // the resources and the other leases leave only 2 instances to this node
+        restored = GroupResourcePlacementStripes.reconcileLeases(placement, prefix, 11);
+        assertEquals(Long.valueOf(2), restored.get(0L));
+        assertEquals(Long.valueOf(0), restored.get(1024L));
+
+        // more resources than allocated instances
+        restored = GroupResourcePlacementStripes.reconcileLeases(placement, prefix, 20);
+        assertEquals(Long.valueOf(0), restored.get(0L));
+        assertEquals(Long.valueOf(0), restored.get(1024L));
+    }
+
+    private GroupResourcePlacementState reserve(GroupResourcePlacementStripes stripes,
+            StatelessService sender, String placementLink, long count) {
+        ResourcePlacementReservationRequest request = new ResourcePlacementReservationRequest();
+        request.resourceCount = count;
+        request.resourceDescriptionLink = containerDesc.documentSelfLink;
+        request.memoryLimit = 0L;
+        request.referer = ManagementUriParts.REQUEST_RESERVATION_TASKS;
+
+        GroupResourcePlacementState[] result = new GroupResourcePlacementState[1];
+        host.testStart(1);
+        if (count > 0) {
+            stripes.reserve(sender, placementLink, request, (placement, e) -> {
+                if (e != null) {
+                    host.failIteration(e);
+                    return;
+                }
+                result[0] = placement;
+                host.completeIteration();
+            });
+        } else {
+            stripes.release(sender, placementLink, request, (placement, e) -> {
+                if (e != null) {
+                    host.failIteration(e);
+                    return;
+                }
+                result[0] = placement;
+                host.completeIteration();
+            });
+        }
+        host.testWait();
+        return result[0];
+    }
+
+    private long getAllocatedInstances(String placementLink) throws Throwable {
+        return getDocument(GroupResourcePlacementState.class, placementLink)
+                .allocatedInstancesCount;
+    }
+
+    private Long getRecordedLease(String placementLink) throws Throwable {
+        GroupResourcePlacementState placement = getDocument(GroupResourcePlacementState.class,
+                placementLink);
+        return placement.leasedInstances == null ? null
+                : placement.leasedInstances.get(host.getId() + "|0");
+    }
+}
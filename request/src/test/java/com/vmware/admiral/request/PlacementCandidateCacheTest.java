@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.vmware.admiral.compute.ContainerHostService;
+import com.vmware.admiral.compute.ResourceType;
+import com.vmware.admiral.compute.container.HostContainerAggregates;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ComputeService.PowerState;
+import com.vmware.xenon.common.Operation.Action;
+
+public class PlacementCandidateCacheTest {
+
+    private static final String HOST_LINK = "/resources/compute/candidate-host";
+    private static final String OTHER_HOST_LINK = "/resources/compute/other-host";
+
+    @Test
+    public void testCachedCandidatesAreCopied() {
+        PlacementCandidateCache cache = new PlacementCandidateCache(
+                new HostContainerAggregates());
+        String key = PlacementCandidateCache.buildKey(ResourceType.CONTAINER_TYPE.getName(),
+                null, Arrays.asList("/resources/pools/b", "/resources/pools/a"));
+        assertEquals(key, PlacementCandidateCache.buildKey(
+                ResourceType.CONTAINER_TYPE.getName(), null,
+                Arrays.asList("/resources/pools/a", "/resources/pools/b")));
+        assertNull(cache.get(key));
+
+        cache.put(key, createCandidates(), cache.getGeneration());
+
+        Map<String, HostSelection> candidates = cache.get(key);
+        assertNotNull(candidates);
+        candidates.get(HOST_LINK).resourceCount = 5;
+        assertEquals(0, cache.get(key).get(HOST_LINK).resourceCount);
+
+        cache.invalidateAll();
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testCandidatesRetrievedBeforeInvalidationAreNotCached() {
+        PlacementCandidateCache cache = new PlacementCandidateCache(
+                new HostContainerAggregates());
+        String key = PlacementCandidateCache.buildKey(ResourceType.CONTAINER_TYPE.getName(),
+                null, Arrays.asList("/resources/pools/a"));
+
+        long generation = cache.getGeneration();
+        cache.invalidateAll();
+        cache.put(key, createCandidates(), generation);
+        assertNull(cache.get(key));
+
+        cache.put(key, new LinkedHashMap<>(), cache.getGeneration());
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testOnlyPlacementRelevantHostChangesInvalidate() {
+        PlacementCandidateCache cache = new PlacementCandidateCache(
+                new HostContainerAggregates());
+        ComputeState host = createHost(HOST_LINK, "/resources/pools/a");
+        ComputeState otherHost = createHost(OTHER_HOST_LINK, "/resources/pools/b");
+        cache.onComputeChange(host);
+        cache.onComputeChange(otherHost);
+
+        String key = PlacementCandidateCache.buildKey(ResourceType.CONTAINER_TYPE.getName(),
+                null, Arrays.asList("/resources/pools/a"));
+        String otherKey = PlacementCandidateCache.buildKey(
+                ResourceType.CONTAINER_TYPE.getName(), null, Arrays.asList("/resources/pools/b"));
+        cache.put(key, createCandidates(HOST_LINK), cache.getGeneration());
+        cache.put(otherKey, createCandidates(OTHER_HOST_LINK), cache.getGeneration());
+
+        // a data collection update not touching the placement fields keeps all entries
+        host.documentVersion++;
+        host.customProperties.put("__lastDataCollection", "now");
+        cache.onComputeChange(host);
+        assertNotNull(cache.get(key));
+        assertNotNull(cache.get(otherKey));
+
+        // a changed candidate attribute drops only the entries containing the host
+        host.customProperties.put(ContainerHostService.DOCKER_HOST_AVAILABLE_MEMORY_PROP_NAME,
+                "1024");
+        cache.onComputeChange(host);
+        assertNull(cache.get(key));
+        assertNotNull(cache.get(otherKey));
+
+        // a host leaving the candidates may affect any entry
+        cache.put(key, createCandidates(HOST_LINK), cache.getGeneration());
+        host.powerState = PowerState.OFF;
+        cache.onComputeChange(host);
+        assertNull(cache.get(key));
+        assertNull(cache.get(otherKey));
+
+        cache.put(otherKey, createCandidates(OTHER_HOST_LINK), cache.getGeneration());
+        host.documentUpdateAction = Action.DELETE.name();
+        cache.onComputeChange(host);
+        assertNull(cache.get(otherKey));
+    }
+
+    private static Map<String, HostSelection> createCandidates() {
+        return createCandidates(HOST_LINK);
+    }
+
+    private static Map<String, HostSelection> createCandidates(String hostLink) {
+        HostSelection hostSelection = new HostSelection();
+        hostSelection.hostLink = hostLink;
+        hostSelection.availableMemory = Long.MAX_VALUE;
+        Map<String, HostSelection> candidates = new LinkedHashMap<>();
+        candidates.put(hostLink, hostSelection);
+        return candidates;
+    }
+
+    private static ComputeState createHost(String hostLink, String resourcePoolLink) {
+        ComputeState host = new ComputeState();
+        host.documentSelfLink = hostLink;
+        host.documentUpdateAction = Action.PATCH.name();
+        host.resourcePoolLink = resourcePoolLink;
+        host.powerState = PowerState.ON;
+        host.customProperties = new HashMap<>();
+        return host;
+    }
+}
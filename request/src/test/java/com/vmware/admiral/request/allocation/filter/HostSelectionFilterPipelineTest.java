@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.allocation.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ContainerDescriptionService;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.admiral.request.util.TestRequestStateFactory;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+
+@SuppressWarnings("rawtypes")
+public class HostSelectionFilterPipelineTest extends BaseAffinityHostFilterTest {
+
+    private final Map<String, Double> stats = new ConcurrentHashMap<>();
+
+    @Test
+    public void testIndependentFiltersAreIntersected() throws Throwable {
+        TestFilter inactive = new TestFilter(initialHostLinks.get(0), false, false);
+        TestFilter first = new TestFilter(initialHostLinks.get(0), true, true);
+        TestFilter second = new TestFilter(initialHostLinks.get(1), true, true);
+        TestFilter last = new TestFilter(null, true, false);
+
+        HostSelectionFilterPipeline pipeline = new HostSelectionFilterPipeline(host, state,
+                Arrays.asList(inactive, first, second, last), stats::put);
+        assertEquals(2, pipeline.getStageCount());
+
+        Map<String, HostSelection> result = apply(pipeline);
+        assertEquals(Collections.singleton(initialHostLinks.get(2)), result.keySet());
+        assertFalse(inactive.applied);
+        assertTrue(last.applied);
+        assertEquals(1, stats.get(HostSelectionFilterPipeline.STAT_NAME_SKIPPED_FILTERS_COUNT),
+                0);
+        assertNotNull(stats.get(HostSelectionFilterPipeline.STAT_NAME_PREFIX_FILTER_LATENCY_MICROS
+                + TestFilter.class.getSimpleName()));
+    }
+
+    @Test
+    public void testEmptySelectionSkipsRemainingFilters() throws Throwable {
+        TestFilter first = new TestFilter(initialHostLinks.get(0), true, true);
+        TestFilter second = new TestFilter(initialHostLinks.get(1), true, true);
+        TestFilter third = new TestFilter(initialHostLinks.get(2), true, false);
+        TestFilter last = new TestFilter(null, true, false);
+
+        HostSelectionFilterPipeline pipeline = new HostSelectionFilterPipeline(host, state,
+                Arrays.asList(first, second, third, last), stats::put);
+
+        assertTrue(apply(pipeline).isEmpty());
+        assertFalse(last.applied);
+    }
+
+    @Test
+    public void testAffinityFiltersShareContextContainers() throws Throwable {
+        ContainerDescription linked = createDescription("linked-container", null);
+        createContainer(linked, initialHostLinks.get(1));
+        ContainerDescription desc = createDescription("random-name",
+                new String[] { "linked-container" });
+
+        List<HostSelectionFilter> filters = new ArrayList<>();
+        filters.add(new ServiceAffinityHostFilter(host, desc));
+        filters.add(new VolumesFromAffinityHostFilter(host, desc));
+        filters.add(new ServiceAffinityHostFilter(host, desc));
+        HostSelectionFilterPipeline pipeline = new HostSelectionFilterPipeline(host, state,
+                filters, stats::put);
+        assertEquals(2, pipeline.getStageCount());
+
+        Map<String, HostSelection> result = apply(pipeline);
+        assertEquals(Collections.singleton(initialHostLinks.get(1)), result.keySet());
+        assertNotNull(result.get(initialHostLinks.get(1)).descNames.get("linked-container"));
+    }
+
+    @Test
+    public void testStatsAreRecordedOnManagementService() {
+        String name = HostSelectionFilterPipeline.STAT_NAME_PREFIX_FILTER_LATENCY_MICROS
+                + TestFilter.class.getSimpleName();
+        HostSelectionFilterPipeline.hostStatsConsumer(host).accept(name, 5);
+
+        ServiceStat stat = host.getManagementService().getStat(name
+                + ServiceStats.STAT_NAME_SUFFIX_PER_HOUR);
+        assertNotNull(stat);
+        assertEquals(5, stat.latestValue, 0);
+        assertNotNull(stat.timeSeriesStats);
+    }
+
+    private Map<String, HostSelection> apply(HostSelectionFilterPipeline pipeline)
+            throws Throwable {
+        AtomicReference<Map<String, HostSelection>> result = new AtomicReference<>();
+        Map<String, HostSelection> hostSelectionMap = prepareHostSelectionMap();
+        host.testStart(1);
+        pipeline.apply(hostSelectionMap, (filtered, e) -> {
+            if (e != null) {
+                host.failIteration(e);
+                return;
+            }
+            result.set(filtered);
+            host.completeIteration();
+        });
+        host.testWait();
+        return result.get();
+    }
+
+    private ContainerDescription createDescription(String name, String[] affinity)
+            throws Throwable {
+        ContainerDescription desc = TestRequestStateFactory.createContainerDescription();
+        desc.documentSelfLink = UUID.randomUUID().toString();
+        desc.name = name;
+        desc.affinity = affinity;
+        desc = doPost(desc, ContainerDescriptionService.FACTORY_LINK);
+        assertNotNull(desc);
+        addForDeletion(desc);
+        return desc;
+    }
+
+    private static class TestFilter
+            implements HostSelectionFilter<PlacementHostSelectionTaskState> {
+        private final String removedHostLink;
+        private final boolean active;
+        private final boolean independent;
+        private volatile boolean applied;
+
+        TestFilter(String removedHostLink, boolean active, boolean independent) {
+            this.removedHostLink = removedHostLink;
+            this.active = active;
+            this.independent = independent;
+        }
+
+        @Override
+        public void filter(PlacementHostSelectionTaskState state,
+                Map<String, HostSelection> hostSelectionMap,
+                HostSelectionFilterCompletion callback) {
+            applied = true;
+            if (removedHostLink != null) {
+                hostSelectionMap.remove(removedHostLink);
+            }
+            callback.complete(hostSelectionMap, null);
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public boolean isIndependent() {
+            return independent;
+        }
+
+        @Override
+        public Map<String, AffinityConstraint> getAffinityConstraints() {
+            return Collections.emptyMap();
+        }
+    }
+}
@@ -19,6 +19,7 @@ import static com.vmware.admiral.test.integration.TestPropertiesUtil.getSystemOr
 import java.lang.reflect.Field;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Map;
 
 import org.junit.Before;
@@ -246,7 +247,10 @@ public class RegistryHostValidatingHelperServiceIT extends BaseTestCase {
         f.setAccessible(true);
         @SuppressWarnings("rawtypes")
         Map delegates = (Map) f.get(delegatingX509TrustManager);
-        delegates.clear();
+        // remove through the trust manager to drop the trust index entries as well
+        for (Object key : new ArrayList<>(delegates.keySet())) {
+            delegatingX509TrustManager.removeDelegate(key);
+        }
     }
 
     @Test